@@ -38,6 +38,8 @@ import com.intellij.openapi.projectRoots.impl.JavaAwareProjectJdkTableImpl;
 import com.intellij.openapi.roots.ModuleRootEvent;
 import com.intellij.openapi.roots.ModuleRootListener;
 import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.roots.libraries.Library;
 import com.intellij.openapi.roots.libraries.LibraryTablesRegistrar;
 import com.intellij.openapi.util.Key;
@@ -46,8 +48,10 @@ import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.JarFileSystem;
-import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.*;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import com.intellij.util.Processor;
 import com.intellij.util.concurrency.Semaphore;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.util.net.NetUtils;
@@ -94,6 +98,7 @@ public class JpsServerManager implements ApplicationComponent{
     mySystemDirectory = system;
 
     projectManager.addProjectManagerListener(new ProjectWatcher());
+    ApplicationManager.getApplication().getMessageBus().connect().subscribe(VirtualFileManager.VFS_CHANGES, new FileChangesReporter());
 
     ShutDownTracker.getInstance().registerShutdownTask(new Runnable() {
       @Override
@@ -233,6 +238,10 @@ public class JpsServerManager implements ApplicationComponent{
         if (connected) {
           final RequestFuture setupFuture = sendSetupRequest(client);
           setupFuture.get();
+          for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            // the changes made from now on will be reported
+            client.sendFSEvent(project.getLocation(), Collections.<String>emptyList(), Collections.<String>emptyList());
+          }
           myProcessHandler = processHandler;
           myClient = client;
         }
@@ -414,6 +423,94 @@ public class JpsServerManager implements ApplicationComponent{
     return builder.toString();
   }
 
+  private void sendFSEvent(final Project project, final Collection<String> changedPaths, final Collection<String> deletedPaths) {
+    myTaskExecutor.submit(new Runnable() {
+      public void run() {
+        try {
+          // the changes made while the server is not running don't matter, a new server compares the timestamps
+          final Client client = ensureServerRunningAndClientConnected(false);
+          if (client != null) {
+            client.sendFSEvent(project.getLocation(), changedPaths, deletedPaths);
+          }
+        }
+        catch (Throwable e) {
+          LOG.info(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Reports the changes of the files in the content of the open projects to the server, so that makes don't have to compare
+   * the timestamps of all the project files.
+   */
+  private class FileChangesReporter implements BulkFileListener {
+    private final Map<Project, Set<String>> myDeletedPaths = new HashMap<Project, Set<String>>();
+
+    public void before(List<? extends VFileEvent> events) {
+      for (VFileEvent event : events) {
+        if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent || isRename(event)) {
+          // the file is still at the old location
+          collectPaths(event.getFile(), myDeletedPaths);
+        }
+      }
+    }
+
+    public void after(List<? extends VFileEvent> events) {
+      final Map<Project, Set<String>> changedPaths = new HashMap<Project, Set<String>>();
+      for (VFileEvent event : events) {
+        if (event instanceof VFileDeleteEvent) {
+          continue;
+        }
+        if (event instanceof VFileCopyEvent) {
+          final VFileCopyEvent copyEvent = (VFileCopyEvent)event;
+          collectPaths(copyEvent.getNewParent().findChild(copyEvent.getNewChildName()), changedPaths);
+        }
+        else if (!(event instanceof VFilePropertyChangeEvent) || isRename(event)) {
+          collectPaths(event.getFile(), changedPaths);
+        }
+      }
+
+      final Set<Project> projects = new HashSet<Project>(changedPaths.keySet());
+      projects.addAll(myDeletedPaths.keySet());
+      for (Project project : projects) {
+        final Set<String> changed = changedPaths.get(project);
+        final Set<String> deleted = myDeletedPaths.get(project);
+        sendFSEvent(project, changed != null ? changed : Collections.<String>emptySet(), deleted != null ? deleted : Collections.<String>emptySet());
+      }
+      myDeletedPaths.clear();
+    }
+
+    private boolean isRename(VFileEvent event) {
+      return event instanceof VFilePropertyChangeEvent && VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent)event).getPropertyName());
+    }
+
+    private void collectPaths(@Nullable VirtualFile file, final Map<Project, Set<String>> paths) {
+      if (file == null || !file.isValid() || !(file.getFileSystem() instanceof LocalFileSystem)) {
+        return;
+      }
+      for (final Project project : ProjectManager.getInstance().getOpenProjects()) {
+        final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
+        if (!fileIndex.isInContent(file)) {
+          continue;
+        }
+        VfsUtil.processFilesRecursively(file, new Processor<VirtualFile>() {
+          public boolean process(VirtualFile child) {
+            if (!child.isDirectory() && fileIndex.isInContent(child)) {
+              Set<String> projectPaths = paths.get(project);
+              if (projectPaths == null) {
+                projectPaths = new HashSet<String>();
+                paths.put(project, projectPaths);
+              }
+              projectPaths.add(child.getPath());
+            }
+            return true;
+          }
+        });
+      }
+    }
+  }
+
   private class ProjectWatcher extends ProjectManagerAdapter {
     private final Map<Project, MessageBusConnection> myConnections = new HashMap<Project, MessageBusConnection>();
 
@@ -442,7 +539,7 @@ public class JpsServerManager implements ApplicationComponent{
           });
         }
       });
-
+      sendFSEvent(project, Collections.<String>emptyList(), Collections.<String>emptyList());
     }
 
     public void projectClosing(Project project) {
@@ -18,6 +18,7 @@ package com.intellij.psi.impl.source;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiImplUtil;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
 import com.intellij.util.IncorrectOperationException;
 
 import java.util.ArrayList;
@@ -54,6 +55,10 @@ public class PsiLabelReference implements PsiReference{
 
     @Override
     public PsiElement resolve(){
+      return ResolveCache.getInstance(myStatement.getProject()).resolveWithCaching(this, MyResolver.INSTANCE, false, false);
+    }
+
+    private PsiElement resolveInner(){
       final String label = myIdentifier.getText();
       if(label == null) return null;
       PsiElement context = myStatement;
@@ -112,4 +117,14 @@ public class PsiLabelReference implements PsiReference{
   public boolean isSoft(){
     return false;
   }
+
+  // the labeled statements are looked for among the parents only
+  private static class MyResolver implements ResolveCache.Resolver, ResolveCache.FileLocalResolver {
+    private static final MyResolver INSTANCE = new MyResolver();
+
+    @Override
+    public PsiElement resolve(PsiReference ref, boolean incompleteCode) {
+      return ((PsiLabelReference)ref).resolveInner();
+    }
+  }
 }
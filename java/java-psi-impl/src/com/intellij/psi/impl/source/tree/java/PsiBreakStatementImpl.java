@@ -32,10 +32,19 @@ import org.jetbrains.annotations.NotNull;
 public class PsiBreakStatementImpl extends CompositePsiElement implements PsiBreakStatement, Constants {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.tree.java.PsiBreakStatementImpl");
 
+  // the same reference each time, so that its resolve result is cached
+  private volatile PsiLabelReference myLabelReference;
+
   public PsiBreakStatementImpl() {
     super(BREAK_STATEMENT);
   }
 
+  @Override
+  public void clearCaches() {
+    super.clearCaches();
+    myLabelReference = null;
+  }
+
   @Override
   public PsiIdentifier getLabelIdentifier() {
     return (PsiIdentifier)findChildByRoleAsPsiElement(ChildRole.LABEL);
@@ -128,9 +137,14 @@ public class PsiBreakStatementImpl extends CompositePsiElement implements PsiBre
   @Override
   @NotNull
   public PsiReference[] getReferences() {
-    if (getLabelIdentifier() == null)
-      return PsiReference.EMPTY_ARRAY;
-    return new PsiReference[]{new PsiLabelReference(this, getLabelIdentifier())};
+    PsiLabelReference reference = myLabelReference;
+    if (reference == null) {
+      final PsiIdentifier label = getLabelIdentifier();
+      if (label == null)
+        return PsiReference.EMPTY_ARRAY;
+      myLabelReference = reference = new PsiLabelReference(this, label);
+    }
+    return new PsiReference[]{reference};
   }
 
   public String toString() {
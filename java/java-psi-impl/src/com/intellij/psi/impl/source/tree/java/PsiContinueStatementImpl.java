@@ -29,10 +29,19 @@ import org.jetbrains.annotations.NotNull;
 public class PsiContinueStatementImpl extends CompositePsiElement implements PsiContinueStatement, Constants {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.tree.java.PsiContinueStatementImpl");
 
+  // the same reference each time, so that its resolve result is cached
+  private volatile PsiLabelReference myLabelReference;
+
   public PsiContinueStatementImpl() {
     super(CONTINUE_STATEMENT);
   }
 
+  @Override
+  public void clearCaches() {
+    super.clearCaches();
+    myLabelReference = null;
+  }
+
   @Override
   public PsiIdentifier getLabelIdentifier() {
     return (PsiIdentifier)findChildByRoleAsPsiElement(ChildRole.LABEL);
@@ -128,8 +137,13 @@ public class PsiContinueStatementImpl extends CompositePsiElement implements Psi
   @Override
   @NotNull
   public PsiReference[] getReferences() {
-    if (getLabelIdentifier() == null)
-      return PsiReference.EMPTY_ARRAY;
-    return new PsiReference[]{new PsiLabelReference(this, getLabelIdentifier())};
+    PsiLabelReference reference = myLabelReference;
+    if (reference == null) {
+      final PsiIdentifier label = getLabelIdentifier();
+      if (label == null)
+        return PsiReference.EMPTY_ARRAY;
+      myLabelReference = reference = new PsiLabelReference(this, label);
+    }
+    return new PsiReference[]{reference};
   }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.lang.java.parser;
+
+import com.intellij.openapi.application.ex.PathManagerEx;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiRecursiveElementVisitor;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class JavaParsingPerformanceTest extends JavaParsingTestCase {
+  // a parse of the file below allocated 1226 MB before PsiBuilderImpl kept its markers in flat arrays, 768 MB after
+  private static final long MAX_ALLOCATED_BYTES = 1000L * 1024 * 1024;
+
+  public JavaParsingPerformanceTest() {
+    super("parser-full");
+  }
+
+  public void testLargeGeneratedFile() throws Exception {
+    final String source = FileUtil.loadFile(new File(PathManagerEx.getTestDataPath() + "/psi/stub/StubPerformanceTest.java"));
+    final StringBuilder sb = new StringBuilder();
+    while (StringUtil.countNewLines(sb) < 10000) {
+      sb.append(source);
+    }
+    final String text = sb.toString();
+    final int lines = StringUtil.countNewLines(text);
+
+    PlatformTestUtil.startPerformanceTest("Parsing " + lines + " lines", 8000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        final long allocated = getAllocatedBytes();
+        final PsiFile file = createPsiFile("Level2NewGeneration", text);
+        file.accept(new PsiRecursiveElementVisitor() { });
+        assertEquals(text.length(), file.getTextLength());
+        if (allocated >= 0) {
+          final long bytes = getAllocatedBytes() - allocated;
+          assertTrue(bytes / 1024 / 1024 + " MB allocated", bytes < MAX_ALLOCATED_BYTES);
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  private static long getAllocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
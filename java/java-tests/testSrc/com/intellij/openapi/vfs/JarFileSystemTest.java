@@ -3,9 +3,12 @@ package com.intellij.openapi.vfs;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.vfs.impl.jar.JarFileSystemImpl;
 import com.intellij.testFramework.IdeaTestCase;
 
 import java.io.File;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
 
 public class JarFileSystemTest extends IdeaTestCase{
   public void testFindFile() throws Exception{
@@ -45,6 +48,25 @@ public class JarFileSystemTest extends IdeaTestCase{
     assertEquals(1, children.length);
   }
 
+  public void testEntryIndex() throws Exception {
+    Sdk jdk = ModuleRootManager.getInstance(myModule).getSdk();
+    VirtualFile jdkHome = jdk.getHomeDirectory();
+    String rtJarPath = jdkHome.getPath() + "/jre/lib/rt.jar";
+
+    VirtualFile jarRoot = JarFileSystem.getInstance().findFileByPath(rtJarPath + JarFileSystem.JAR_SEPARATOR);
+    assertNotNull(jarRoot);
+
+    JarFileSystemImpl fileSystem = (JarFileSystemImpl)JarFileSystem.getInstance();
+    Enumeration<? extends ZipEntry> entries = fileSystem.getJarFile(jarRoot).entries();
+    for (int i = 0; i < 1000 && entries.hasMoreElements(); i++) {
+      ZipEntry entry = entries.nextElement();
+      if (entry.isDirectory()) continue;
+      VirtualFile file = jarRoot.findFileByRelativePath(entry.getName());
+      assertNotNull(entry.getName(), file);
+      assertEquals(entry.getName(), i, fileSystem.getEntryIndex(file));
+    }
+  }
+
   private static VirtualFile findByPath(String path) {
     VirtualFile file = JarFileSystem.getInstance().findFileByPath(path);
     assertNotNull(file);
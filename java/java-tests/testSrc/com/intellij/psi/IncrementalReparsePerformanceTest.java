@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi;
+
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.testFramework.LightCodeInsightTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+
+public class IncrementalReparsePerformanceTest extends LightCodeInsightTestCase {
+  private static final int KEYSTROKES = 100;
+
+  public void testTypingInCommentBetweenMembers() throws Exception {
+    doTest("// type", 'x', 5000);
+  }
+
+  public void testTypingInCommentInMethodBody() throws Exception {
+    doTest("/* and", 'x', 5000);
+  }
+
+  public void testTypingSpacesBeforeMember() throws Exception {
+    doTest("}\n\n ", ' ', 5000);
+  }
+
+  private static void doTest(String typeAfter, final char c, int maxMillis) throws Exception {
+    final String text = generateFile(5000);
+    configureFromFileText("Large.java", text);
+    PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    final int offset = text.indexOf(typeAfter) + typeAfter.length();
+
+    PlatformTestUtil.startPerformanceTest("Typing in " + text.length() + " chars", maxMillis, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        getEditor().getCaretModel().moveToOffset(offset);
+        for (int i = 0; i < KEYSTROKES; i++) {
+          type(c);
+          PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+        }
+      }
+    }).cpuBound().assertTiming();
+
+    final PsiFile reparsed = PsiFileFactory.getInstance(getProject()).createFileFromText("Large.java", getFile().getText());
+    assertEquals(DebugUtil.psiToString(reparsed, false), DebugUtil.psiToString(getFile(), false));
+  }
+
+  // five lines a method, with a comment in every tenth one
+  private static String generateFile(int methods) {
+    final StringBuilder sb = new StringBuilder("class Large {\n  // type here\n");
+    for (int i = 0; i < methods; i++) {
+      sb.append("\n  void method").append(i).append("() {\n");
+      if (i % 10 == 0) {
+        sb.append("    /* and here */\n");
+      }
+      sb.append("    int i = ").append(i).append(";\n    System.out.println(i);\n  }\n");
+    }
+    return sb.append("}\n").toString();
+  }
+}
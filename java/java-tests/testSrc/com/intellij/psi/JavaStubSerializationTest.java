@@ -0,0 +1,104 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.impl.java.stubs.index.JavaShortClassNameIndex;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.SerializationManager;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubSerializer;
+import com.intellij.psi.stubs.StubTree;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.List;
+
+public class JavaStubSerializationTest extends LightCodeInsightFixtureTestCase {
+  private static final String TEXT = "package p;\n" +
+                                     "import java.util.*;\n" +
+                                     "class A<T> implements Runnable {\n" +
+                                     "  Runnable r = new Runnable() { public void run() { } };\n" +
+                                     "  public void run() {\n" +
+                                     "    class Local { }\n" +
+                                     "    for (String s : new ArrayList<String>()) { }\n" +
+                                     "    try { } catch (RuntimeException e) { }\n" +
+                                     "  }\n" +
+                                     "  @Deprecated static class Inner { int f; void m(int p) { } }\n" +
+                                     "}\n" +
+                                     "interface B { }\n";
+
+  public void testRoundTrip() {
+    final StubTree tree = ((PsiFileImpl)myFixture.addFileToProject("p/A.java", TEXT)).calcStubTree();
+    final byte[] bytes = serialize(tree);
+
+    final StubElement restored = SerializationManager.getInstance().deserialize(new ByteArrayInputStream(bytes));
+    assertEquals(DebugUtil.stubTreeToString(tree.getRoot()), DebugUtil.stubTreeToString(restored));
+  }
+
+  public void testStubTypes() {
+    final StubTree tree = ((PsiFileImpl)myFixture.addFileToProject("p/A.java", TEXT)).calcStubTree();
+    final List<StubElement<?>> stubs = tree.getPlainList();
+
+    final StubSerializer[] types = SerializationManager.getInstance().readStubTypes(new ByteArrayInputStream(serialize(tree)));
+    assertEquals(stubs.size(), types.length);
+    for (int i = 0; i < types.length; i++) {
+      assertSame(String.valueOf(i), SerializationManager.getInstance().getSerializer(stubs.get(i)), types[i]);
+    }
+  }
+
+  public void testFindTreeForStub() {
+    final PsiFileImpl file = (PsiFileImpl)myFixture.addFileToProject("p/A.java", TEXT);
+    final List<StubElement<?>> stubs = file.calcStubTree().getPlainList();
+
+    for (int i = 1; i < stubs.size(); i++) {
+      final ASTNode node = file.findTreeForStub(i);
+      assertNotNull(String.valueOf(i), node);
+      assertSame(String.valueOf(i), stubs.get(i).getStubType(), node.getElementType());
+      assertSame(String.valueOf(i), stubs.get(i).getPsi(), node.getPsi());
+    }
+    assertNull(file.findTreeForStub(stubs.size()));
+  }
+
+  public void testIndexOnLoadedAst() {
+    final PsiJavaFile file = (PsiJavaFile)myFixture.addFileToProject("p/A.java", TEXT);
+    assertNotNull(file.getNode());
+    final PsiClass inner = file.getClasses()[0].findInnerClassByName("Inner", false);
+
+    final Collection<PsiClass> found = JavaShortClassNameIndex.getInstance().get("Inner", getProject(), GlobalSearchScope.allScope(getProject()));
+    assertEquals(1, found.size());
+    assertSame(inner, found.iterator().next());
+  }
+
+  public void testIndexWithoutAst() {
+    final PsiFileImpl file = (PsiFileImpl)myFixture.addFileToProject("p/A.java", TEXT);
+
+    final Collection<PsiClass> found = JavaShortClassNameIndex.getInstance().get("Inner", getProject(), GlobalSearchScope.allScope(getProject()));
+    assertEquals(1, found.size());
+    assertEquals("p.A.Inner", found.iterator().next().getQualifiedName());
+    assertNull(file.getTreeElement());
+  }
+
+  private static byte[] serialize(StubTree tree) {
+    final BufferExposingByteArrayOutputStream stream = new BufferExposingByteArrayOutputStream();
+    SerializationManager.getInstance().serialize(tree.getRoot(), stream);
+    return stream.toByteArray();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.resolve;
+
+import com.intellij.lang.Language;
+import com.intellij.lang.java.JavaLanguage;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.Result;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.impl.FakePsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResolveCacheTest extends LightCodeInsightFixtureTestCase {
+  private final AtomicInteger myResolveCount = new AtomicInteger();
+
+  public void testLocalResultsSurviveChangesOfOtherFiles() {
+    final PsiJavaFile a = (PsiJavaFile)myFixture.addFileToProject("A.java", "class A { int f; void m() { l: while (true) { f++; break l; } } }");
+    final PsiJavaFile b = (PsiJavaFile)myFixture.addFileToProject("B.java", "class B { }");
+    final PsiReference label = PsiTreeUtil.findChildOfType(a, PsiBreakStatement.class).getReference();
+    final PsiReference field = PsiTreeUtil.findChildOfType(a, PsiReferenceExpression.class);
+    final PsiLabeledStatement labeled = PsiTreeUtil.findChildOfType(a, PsiLabeledStatement.class);
+    assertSame(labeled, label.resolve());
+    assertNotNull(field.resolve());
+
+    addMethod(b);
+    long misses = getStatistics().getMisses();
+    assertSame(label, PsiTreeUtil.findChildOfType(a, PsiBreakStatement.class).getReference());
+    assertSame(labeled, label.resolve());
+    assertEquals(misses, getStatistics().getMisses());
+    assertNotNull(field.resolve());
+    assertTrue(getStatistics().getMisses() > misses);
+
+    addMethod(a);
+    misses = getStatistics().getMisses();
+    assertSame(labeled, label.resolve());
+    assertEquals(misses + 1, getStatistics().getMisses());
+  }
+
+  public void testResultsDroppedOnChange() {
+    final PsiFile file = myFixture.addFileToProject("A.java", "class A { int f; void m() { f++; } }");
+    final ResolveCache cache = new ResolveCache(null);
+    final PsiReference reference = PsiTreeUtil.findChildOfType(file, PsiReferenceExpression.class);
+
+    resolve(cache, reference);
+    resolve(cache, reference);
+    assertEquals(1, myResolveCount.get());
+
+    cache.clearCache(false);
+    resolve(cache, reference);
+    assertEquals(1, myResolveCount.get());
+
+    cache.clearCache(true);
+    resolve(cache, reference);
+    assertEquals(2, myResolveCount.get());
+  }
+
+  public void testSizeIsBounded() {
+    final ResolveCache cache = new ResolveCache(null, 100);
+    final List<PsiReference> references = new ArrayList<PsiReference>();
+    for (int i = 0; i < 20; i++) {
+      references.addAll(getReferences(myFixture.addFileToProject("A" + i + ".java", createClassText("A" + i, 20))));
+    }
+    // the references outside of files are evicted too
+    for (int i = 0; i < 200; i++) {
+      references.add(new DetachedReference());
+    }
+
+    for (PsiReference reference : references) {
+      assertSame(reference.getElement(), resolve(cache, reference));
+      assertTrue(String.valueOf(cache.getSize()), cache.getSize() <= 100);
+    }
+    assertEquals(references.size(), myResolveCount.get());
+    final long detachedEvictions = cache.getStatistics().get(Language.ANY).getEvictions();
+    assertTrue(detachedEvictions > 0);
+    assertEquals(references.size() - cache.getSize(), cache.getStatistics().get(JavaLanguage.INSTANCE).getEvictions() + detachedEvictions);
+  }
+
+  public void testConcurrentResolveAndInvalidation() throws Exception {
+    final ResolveCache cache = new ResolveCache(null, 300);
+    final List<PsiReference> references = new ArrayList<PsiReference>();
+    for (int i = 0; i < 10; i++) {
+      references.addAll(getReferences(myFixture.addFileToProject("A" + i + ".java", createClassText("A" + i, 50))));
+    }
+
+    ConcurrencyTestUtil.runConcurrently(4, new ConcurrencyTestUtil.ThreadBody() {
+      @Override
+      public void run(final int thread) {
+        ApplicationManager.getApplication().runReadAction(new Runnable() {
+          @Override
+          public void run() {
+            final Random random = new Random(thread);
+            for (int i = 0; i < 100000; i++) {
+              if (thread == 0 && i % 100 == 0) {
+                cache.clearCache(random.nextBoolean());
+              }
+              final PsiReference reference = references.get(random.nextInt(references.size()));
+              assertSame(reference.getElement(), resolve(cache, reference));
+            }
+          }
+        });
+      }
+    });
+    assertTrue(String.valueOf(cache.getSize()), cache.getSize() <= 300 + 4);
+  }
+
+  private PsiElement resolve(ResolveCache cache, PsiReference reference) {
+    return cache.resolveWithCaching(reference, new ResolveCache.Resolver() {
+      @Override
+      public PsiElement resolve(PsiReference ref, boolean incompleteCode) {
+        myResolveCount.incrementAndGet();
+        return ref.getElement();
+      }
+    }, false, false);
+  }
+
+  private ResolveCache.Statistics getStatistics() {
+    return ResolveCache.getInstance(getProject()).getStatistics().get(JavaLanguage.INSTANCE);
+  }
+
+  private void addMethod(final PsiJavaFile file) {
+    new WriteCommandAction(getProject()) {
+      @Override
+      protected void run(Result result) {
+        final PsiClass aClass = file.getClasses()[0];
+        aClass.add(JavaPsiFacade.getElementFactory(getProject()).createMethodFromText("void added() { }", aClass));
+      }
+    }.execute();
+  }
+
+  private static String createClassText(String name, int fields) {
+    final StringBuilder text = new StringBuilder("class " + name + " {\n");
+    for (int i = 0; i < fields; i++) {
+      text.append("  int f").append(i).append(" = f").append(i).append(";\n");
+    }
+    return text.append("}").toString();
+  }
+
+  private static Collection<PsiReferenceExpression> getReferences(PsiFile file) {
+    return PsiTreeUtil.collectElementsOfType(file, PsiReferenceExpression.class);
+  }
+
+  private static class DetachedReference extends PsiReferenceBase<PsiElement> {
+    private DetachedReference() {
+      super(new FakePsiElement() {
+        @Override
+        public PsiElement getParent() {
+          return null;
+        }
+
+        @Override
+        public PsiFile getContainingFile() {
+          return null;
+        }
+
+        @Override
+        public boolean isValid() {
+          return true;
+        }
+      }, TextRange.EMPTY_RANGE);
+    }
+
+    @Override
+    public PsiElement resolve() {
+      return null;
+    }
+
+    @Override
+    public Object[] getVariants() {
+      return ArrayUtil.EMPTY_OBJECT_ARRAY;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.text;
+
+import com.intellij.lang.java.parser.JavaParsingTestCase;
+import com.intellij.pom.PomModel;
+import com.intellij.pom.core.impl.PomModelImpl;
+import com.intellij.pom.tree.TreeAspect;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.impl.DebugUtil;
+import com.intellij.psi.impl.source.PsiFileImpl;
+
+import java.util.Random;
+
+public class LeafReparseTest extends JavaParsingTestCase {
+  private static final int EDITS = 1500;
+  private static final String CHARS = "  \n\n\tab/*\"'{}();x1";
+
+  public LeafReparseTest() {
+    super("parser-full");
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    // the changes are applied through the tree aspect of the model
+    final PomModelImpl model = new PomModelImpl(getProject());
+    new TreeAspect(model);
+    getProject().registerService(PomModel.class, model);
+  }
+
+  public void testRandomEdits() throws Exception {
+    final String text = generateFile(30);
+    final Random random = new Random(1);
+    int reparsed = 0;
+    for (int i = 0; i < EDITS; i++) {
+      final PsiFileImpl file = (PsiFileImpl)createPsiFile("a", text);
+      assertNotNull(file.getNode().getFirstChildNode());
+
+      // an edit inside a whitespace or a comment, which may or may not keep it a single token of the same type
+      int offset;
+      PsiElement leaf;
+      do {
+        offset = random.nextInt(text.length());
+        leaf = file.findElementAt(offset);
+      }
+      while (!(leaf instanceof PsiWhiteSpace) && !(leaf instanceof PsiComment));
+      final int end = random.nextInt(3) == 0 ? Math.min(leaf.getTextRange().getEndOffset(), offset + 1 + random.nextInt(3)) : offset;
+      final String inserted = end == offset ? String.valueOf(CHARS.charAt(random.nextInt(CHARS.length()))) : "";
+      final String newText = text.substring(0, offset) + inserted + text.substring(end);
+
+      // the start is moved back by one the way BlockSupportImpl.reparseRange does
+      final DiffLog diffLog = BlockSupportImpl.reparseLeaf(file, file.getTreeElement(), Math.max(0, offset - 1), end,
+                                                           inserted.length() - (end - offset), newText);
+      if (diffLog == null) continue;
+      diffLog.performActualPsiChange(file);
+      reparsed++;
+
+      final String message = "edit " + i + ": '" + inserted + "' at " + offset + ".." + end;
+      assertEquals(message, newText, file.getText());
+      final PsiFile fresh = createPsiFile("a", newText);
+      assertEquals(message, DebugUtil.psiToString(fresh, false), DebugUtil.psiToString(file, false));
+    }
+    assertTrue(String.valueOf(reparsed), reparsed > EDITS / 4);
+  }
+
+  // a class of methods with javadoc, line and block comments, string and character literals
+  private static String generateFile(int methods) {
+    final StringBuilder sb = new StringBuilder("package p;\n\n/**\n * A generated class.\n */\nclass A {\n  // fields\n  int f = 0; /* tail */\n");
+    for (int i = 0; i < methods; i++) {
+      sb.append("\n  /**\n   * Method ").append(i).append(".\n   * @param p a parameter\n   */\n");
+      sb.append("  void m").append(i).append("(int p) {\n");
+      sb.append("    // line comment\n");
+      sb.append("    String s = \"a string\" + 'c'; /* block */\n");
+      sb.append("    if (p > ").append(i).append(") {\n      f += p;\n    }\n");
+      sb.append("  }\n");
+    }
+    return sb.append("}\n").toString();
+  }
+}
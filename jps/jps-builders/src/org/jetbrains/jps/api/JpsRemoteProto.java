@@ -718,6 +718,7 @@ public final class JpsRemoteProto {
         SHUTDOWN_COMMAND(1, 2),
         SETUP_COMMAND(2, 3),
         RELOAD_PROJECT_COMMAND(3, 4),
+        FS_EVENT(4, 5),
         ;
         
         
@@ -729,6 +730,7 @@ public final class JpsRemoteProto {
             case 2: return SHUTDOWN_COMMAND;
             case 3: return SETUP_COMMAND;
             case 4: return RELOAD_PROJECT_COMMAND;
+            case 5: return FS_EVENT;
             default: return null;
           }
         }
@@ -2836,6 +2838,417 @@ public final class JpsRemoteProto {
         // @@protoc_insertion_point(class_scope:org.jetbrains.jpsservice.Message.Request.ReloadProjectCommand)
       }
       
+      public static final class FSEvent extends
+          com.google.protobuf.GeneratedMessageLite {
+        // Use FSEvent.newBuilder() to construct.
+        private FSEvent() {
+          initFields();
+        }
+        private FSEvent(boolean noInit) {}
+        
+        private static final FSEvent defaultInstance;
+        public static FSEvent getDefaultInstance() {
+          return defaultInstance;
+        }
+        
+        public FSEvent getDefaultInstanceForType() {
+          return defaultInstance;
+        }
+        
+        // optional string project_id = 1;
+        public static final int PROJECT_ID_FIELD_NUMBER = 1;
+        private boolean hasProjectId;
+        private java.lang.String projectId_ = "";
+        public boolean hasProjectId() { return hasProjectId; }
+        public java.lang.String getProjectId() { return projectId_; }
+        
+        // repeated string changed_path = 2;
+        public static final int CHANGED_PATH_FIELD_NUMBER = 2;
+        private java.util.List<java.lang.String> changedPath_ =
+          java.util.Collections.emptyList();
+        public java.util.List<java.lang.String> getChangedPathList() {
+          return changedPath_;
+        }
+        public int getChangedPathCount() { return changedPath_.size(); }
+        public java.lang.String getChangedPath(int index) {
+          return changedPath_.get(index);
+        }
+        
+        // repeated string deleted_path = 3;
+        public static final int DELETED_PATH_FIELD_NUMBER = 3;
+        private java.util.List<java.lang.String> deletedPath_ =
+          java.util.Collections.emptyList();
+        public java.util.List<java.lang.String> getDeletedPathList() {
+          return deletedPath_;
+        }
+        public int getDeletedPathCount() { return deletedPath_.size(); }
+        public java.lang.String getDeletedPath(int index) {
+          return deletedPath_.get(index);
+        }
+        
+        private void initFields() {
+        }
+        public final boolean isInitialized() {
+          return true;
+        }
+        
+        public void writeTo(com.google.protobuf.CodedOutputStream output)
+                            throws java.io.IOException {
+          getSerializedSize();
+          if (hasProjectId()) {
+            output.writeString(1, getProjectId());
+          }
+          for (java.lang.String element : getChangedPathList()) {
+            output.writeString(2, element);
+          }
+          for (java.lang.String element : getDeletedPathList()) {
+            output.writeString(3, element);
+          }
+        }
+        
+        private int memoizedSerializedSize = -1;
+        public int getSerializedSize() {
+          int size = memoizedSerializedSize;
+          if (size != -1) return size;
+        
+          size = 0;
+          if (hasProjectId()) {
+            size += com.google.protobuf.CodedOutputStream
+              .computeStringSize(1, getProjectId());
+          }
+          {
+            int dataSize = 0;
+            for (java.lang.String element : getChangedPathList()) {
+              dataSize += com.google.protobuf.CodedOutputStream
+                .computeStringSizeNoTag(element);
+            }
+            size += dataSize;
+            size += 1 * getChangedPathList().size();
+          }
+          {
+            int dataSize = 0;
+            for (java.lang.String element : getDeletedPathList()) {
+              dataSize += com.google.protobuf.CodedOutputStream
+                .computeStringSizeNoTag(element);
+            }
+            size += dataSize;
+            size += 1 * getDeletedPathList().size();
+          }
+          memoizedSerializedSize = size;
+          return size;
+        }
+        
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            com.google.protobuf.ByteString data)
+            throws com.google.protobuf.InvalidProtocolBufferException {
+          return newBuilder().mergeFrom(data).buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            com.google.protobuf.ByteString data,
+            com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+            throws com.google.protobuf.InvalidProtocolBufferException {
+          return newBuilder().mergeFrom(data, extensionRegistry)
+                   .buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(byte[] data)
+            throws com.google.protobuf.InvalidProtocolBufferException {
+          return newBuilder().mergeFrom(data).buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            byte[] data,
+            com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+            throws com.google.protobuf.InvalidProtocolBufferException {
+          return newBuilder().mergeFrom(data, extensionRegistry)
+                   .buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(java.io.InputStream input)
+            throws java.io.IOException {
+          return newBuilder().mergeFrom(input).buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            java.io.InputStream input,
+            com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+            throws java.io.IOException {
+          return newBuilder().mergeFrom(input, extensionRegistry)
+                   .buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseDelimitedFrom(java.io.InputStream input)
+            throws java.io.IOException {
+          Builder builder = newBuilder();
+          if (builder.mergeDelimitedFrom(input)) {
+            return builder.buildParsed();
+          } else {
+            return null;
+          }
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseDelimitedFrom(
+            java.io.InputStream input,
+            com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+            throws java.io.IOException {
+          Builder builder = newBuilder();
+          if (builder.mergeDelimitedFrom(input, extensionRegistry)) {
+            return builder.buildParsed();
+          } else {
+            return null;
+          }
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            com.google.protobuf.CodedInputStream input)
+            throws java.io.IOException {
+          return newBuilder().mergeFrom(input).buildParsed();
+        }
+        public static org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent parseFrom(
+            com.google.protobuf.CodedInputStream input,
+            com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+            throws java.io.IOException {
+          return newBuilder().mergeFrom(input, extensionRegistry)
+                   .buildParsed();
+        }
+        
+        public static Builder newBuilder() { return Builder.create(); }
+        public Builder newBuilderForType() { return newBuilder(); }
+        public static Builder newBuilder(org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent prototype) {
+          return newBuilder().mergeFrom(prototype);
+        }
+        public Builder toBuilder() { return newBuilder(this); }
+        
+        public static final class Builder extends
+            com.google.protobuf.GeneratedMessageLite.Builder<
+              org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent, Builder> {
+          private org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent result;
+          
+          // Construct using org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.newBuilder()
+          private Builder() {}
+          
+          private static Builder create() {
+            Builder builder = new Builder();
+            builder.result = new org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent();
+            return builder;
+          }
+          
+          protected org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent internalGetResult() {
+            return result;
+          }
+          
+          public Builder clear() {
+            if (result == null) {
+              throw new IllegalStateException(
+                "Cannot call clear() after build().");
+            }
+            result = new org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent();
+            return this;
+          }
+          
+          public Builder clone() {
+            return create().mergeFrom(result);
+          }
+          
+          public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent getDefaultInstanceForType() {
+            return org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.getDefaultInstance();
+          }
+          
+          public boolean isInitialized() {
+            return result.isInitialized();
+          }
+          public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent build() {
+            if (result != null && !isInitialized()) {
+              throw newUninitializedMessageException(result);
+            }
+            return buildPartial();
+          }
+          
+          private org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent buildParsed()
+              throws com.google.protobuf.InvalidProtocolBufferException {
+            if (!isInitialized()) {
+              throw newUninitializedMessageException(
+                result).asInvalidProtocolBufferException();
+            }
+            return buildPartial();
+          }
+          
+          public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent buildPartial() {
+            if (result == null) {
+              throw new IllegalStateException(
+                "build() has already been called on this Builder.");
+            }
+            if (result.changedPath_ != java.util.Collections.EMPTY_LIST) {
+              result.changedPath_ =
+                java.util.Collections.unmodifiableList(result.changedPath_);
+            }
+            if (result.deletedPath_ != java.util.Collections.EMPTY_LIST) {
+              result.deletedPath_ =
+                java.util.Collections.unmodifiableList(result.deletedPath_);
+            }
+            org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent returnMe = result;
+            result = null;
+            return returnMe;
+          }
+          
+          public Builder mergeFrom(org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent other) {
+            if (other == org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.getDefaultInstance()) return this;
+            if (other.hasProjectId()) {
+              setProjectId(other.getProjectId());
+            }
+            if (!other.changedPath_.isEmpty()) {
+              if (result.changedPath_.isEmpty()) {
+                result.changedPath_ = new java.util.ArrayList<java.lang.String>();
+              }
+              result.changedPath_.addAll(other.changedPath_);
+            }
+            if (!other.deletedPath_.isEmpty()) {
+              if (result.deletedPath_.isEmpty()) {
+                result.deletedPath_ = new java.util.ArrayList<java.lang.String>();
+              }
+              result.deletedPath_.addAll(other.deletedPath_);
+            }
+            return this;
+          }
+          
+          public Builder mergeFrom(
+              com.google.protobuf.CodedInputStream input,
+              com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+              throws java.io.IOException {
+            while (true) {
+              int tag = input.readTag();
+              switch (tag) {
+                case 0:
+                  return this;
+                default: {
+                  if (!parseUnknownField(input, extensionRegistry, tag)) {
+                    return this;
+                  }
+                  break;
+                }
+                case 10: {
+                  setProjectId(input.readString());
+                  break;
+                }
+                case 18: {
+                  addChangedPath(input.readString());
+                  break;
+                }
+                case 26: {
+                  addDeletedPath(input.readString());
+                  break;
+                }
+              }
+            }
+          }
+          
+          
+          // optional string project_id = 1;
+          public boolean hasProjectId() {
+            return result.hasProjectId();
+          }
+          public java.lang.String getProjectId() {
+            return result.getProjectId();
+          }
+          public Builder setProjectId(java.lang.String value) {
+            if (value == null) {
+    throw new NullPointerException();
+  }
+  result.hasProjectId = true;
+            result.projectId_ = value;
+            return this;
+          }
+          public Builder clearProjectId() {
+            result.hasProjectId = false;
+            result.projectId_ = getDefaultInstance().getProjectId();
+            return this;
+          }
+          
+          // repeated string changed_path = 2;
+          public java.util.List<java.lang.String> getChangedPathList() {
+            return java.util.Collections.unmodifiableList(result.changedPath_);
+          }
+          public int getChangedPathCount() {
+            return result.getChangedPathCount();
+          }
+          public java.lang.String getChangedPath(int index) {
+            return result.getChangedPath(index);
+          }
+          public Builder setChangedPath(int index, java.lang.String value) {
+            if (value == null) {
+    throw new NullPointerException();
+  }
+  result.changedPath_.set(index, value);
+            return this;
+          }
+          public Builder addChangedPath(java.lang.String value) {
+            if (value == null) {
+    throw new NullPointerException();
+  }
+  if (result.changedPath_.isEmpty()) {
+              result.changedPath_ = new java.util.ArrayList<java.lang.String>();
+            }
+            result.changedPath_.add(value);
+            return this;
+          }
+          public Builder addAllChangedPath(
+              java.lang.Iterable<? extends java.lang.String> values) {
+            if (result.changedPath_.isEmpty()) {
+              result.changedPath_ = new java.util.ArrayList<java.lang.String>();
+            }
+            super.addAll(values, result.changedPath_);
+            return this;
+          }
+          public Builder clearChangedPath() {
+            result.changedPath_ = java.util.Collections.emptyList();
+            return this;
+          }
+          
+          // repeated string deleted_path = 3;
+          public java.util.List<java.lang.String> getDeletedPathList() {
+            return java.util.Collections.unmodifiableList(result.deletedPath_);
+          }
+          public int getDeletedPathCount() {
+            return result.getDeletedPathCount();
+          }
+          public java.lang.String getDeletedPath(int index) {
+            return result.getDeletedPath(index);
+          }
+          public Builder setDeletedPath(int index, java.lang.String value) {
+            if (value == null) {
+    throw new NullPointerException();
+  }
+  result.deletedPath_.set(index, value);
+            return this;
+          }
+          public Builder addDeletedPath(java.lang.String value) {
+            if (value == null) {
+    throw new NullPointerException();
+  }
+  if (result.deletedPath_.isEmpty()) {
+              result.deletedPath_ = new java.util.ArrayList<java.lang.String>();
+            }
+            result.deletedPath_.add(value);
+            return this;
+          }
+          public Builder addAllDeletedPath(
+              java.lang.Iterable<? extends java.lang.String> values) {
+            if (result.deletedPath_.isEmpty()) {
+              result.deletedPath_ = new java.util.ArrayList<java.lang.String>();
+            }
+            super.addAll(values, result.deletedPath_);
+            return this;
+          }
+          public Builder clearDeletedPath() {
+            result.deletedPath_ = java.util.Collections.emptyList();
+            return this;
+          }
+          
+          // @@protoc_insertion_point(builder_scope:org.jetbrains.jpsservice.Message.Request.FSEvent)
+        }
+        
+        static {
+          defaultInstance = new FSEvent(true);
+          org.jetbrains.jps.api.JpsRemoteProto.internalForceInit();
+          defaultInstance.initFields();
+        }
+        
+        // @@protoc_insertion_point(class_scope:org.jetbrains.jpsservice.Message.Request.FSEvent)
+      }
+      
       // required .org.jetbrains.jpsservice.Message.Request.Type request_type = 1;
       public static final int REQUEST_TYPE_FIELD_NUMBER = 1;
       private boolean hasRequestType;
@@ -2871,12 +3284,20 @@ public final class JpsRemoteProto {
       public boolean hasReloadProjectCommand() { return hasReloadProjectCommand; }
       public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.ReloadProjectCommand getReloadProjectCommand() { return reloadProjectCommand_; }
       
+      // optional .org.jetbrains.jpsservice.Message.Request.FSEvent fs_event = 6;
+      public static final int FS_EVENT_FIELD_NUMBER = 6;
+      private boolean hasFsEvent;
+      private org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent fsEvent_;
+      public boolean hasFsEvent() { return hasFsEvent; }
+      public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent getFsEvent() { return fsEvent_; }
+      
       private void initFields() {
         requestType_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.Type.COMPILE_REQUEST;
         compileRequest_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.CompilationRequest.getDefaultInstance();
         shutdownCommand_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.ShutdownCommand.getDefaultInstance();
         setupCommand_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.SetupCommand.getDefaultInstance();
         reloadProjectCommand_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.ReloadProjectCommand.getDefaultInstance();
+        fsEvent_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.getDefaultInstance();
       }
       public final boolean isInitialized() {
         if (!hasRequestType) return false;
@@ -2910,6 +3331,9 @@ public final class JpsRemoteProto {
         if (hasReloadProjectCommand()) {
           output.writeMessage(5, getReloadProjectCommand());
         }
+        if (hasFsEvent()) {
+          output.writeMessage(6, getFsEvent());
+        }
       }
       
       private int memoizedSerializedSize = -1;
@@ -2938,6 +3362,10 @@ public final class JpsRemoteProto {
           size += com.google.protobuf.CodedOutputStream
             .computeMessageSize(5, getReloadProjectCommand());
         }
+        if (hasFsEvent()) {
+          size += com.google.protobuf.CodedOutputStream
+            .computeMessageSize(6, getFsEvent());
+        }
         memoizedSerializedSize = size;
         return size;
       }
@@ -3097,6 +3525,9 @@ public final class JpsRemoteProto {
           if (other.hasReloadProjectCommand()) {
             mergeReloadProjectCommand(other.getReloadProjectCommand());
           }
+          if (other.hasFsEvent()) {
+            mergeFsEvent(other.getFsEvent());
+          }
           return this;
         }
         
@@ -3159,6 +3590,15 @@ public final class JpsRemoteProto {
                 setReloadProjectCommand(subBuilder.buildPartial());
                 break;
               }
+              case 50: {
+                org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.Builder subBuilder = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.newBuilder();
+                if (hasFsEvent()) {
+                  subBuilder.mergeFrom(getFsEvent());
+                }
+                input.readMessage(subBuilder, extensionRegistry);
+                setFsEvent(subBuilder.buildPartial());
+                break;
+              }
             }
           }
         }
@@ -3333,6 +3773,43 @@ public final class JpsRemoteProto {
           return this;
         }
         
+        // optional .org.jetbrains.jpsservice.Message.Request.FSEvent fs_event = 6;
+        public boolean hasFsEvent() {
+          return result.hasFsEvent();
+        }
+        public org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent getFsEvent() {
+          return result.getFsEvent();
+        }
+        public Builder setFsEvent(org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent value) {
+          if (value == null) {
+            throw new NullPointerException();
+          }
+          result.hasFsEvent = true;
+          result.fsEvent_ = value;
+          return this;
+        }
+        public Builder setFsEvent(org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.Builder builderForValue) {
+          result.hasFsEvent = true;
+          result.fsEvent_ = builderForValue.build();
+          return this;
+        }
+        public Builder mergeFsEvent(org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent value) {
+          if (result.hasFsEvent() &&
+              result.fsEvent_ != org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.getDefaultInstance()) {
+            result.fsEvent_ =
+              org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.newBuilder(result.fsEvent_).mergeFrom(value).buildPartial();
+          } else {
+            result.fsEvent_ = value;
+          }
+          result.hasFsEvent = true;
+          return this;
+        }
+        public Builder clearFsEvent() {
+          result.hasFsEvent = false;
+          result.fsEvent_ = org.jetbrains.jps.api.JpsRemoteProto.Message.Request.FSEvent.getDefaultInstance();
+          return this;
+        }
+        
         // @@protoc_insertion_point(builder_scope:org.jetbrains.jpsservice.Message.Request)
       }
       
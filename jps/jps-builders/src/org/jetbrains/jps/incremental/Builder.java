@@ -37,7 +37,7 @@ public abstract class Builder {
   }
 
   public static boolean isFileDirty(File file, CompileContext context, TimestampStorage tsStorage) throws Exception {
-    return !context.isMake() || tsStorage.getStamp(file) != file.lastModified();
+    return !context.isMake() || tsStorage.isDirty(file);
   }
 
   /**
@@ -4,6 +4,7 @@ import com.intellij.openapi.util.UserDataHolderBase;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.containers.SLRUCache;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.ether.dependencyView.ClassRepr;
 import org.jetbrains.ether.dependencyView.Mappings;
 import org.jetbrains.jps.*;
@@ -27,15 +28,10 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
   private volatile boolean myCompilingTests = false;
   private final BuildDataManager myDataManager;
   private final Mappings myMappings;
-  private final Set<Module> myDirtyModules = new HashSet<Module>();
-  private final Map<Module, Collection<File>> myTempSourceRoots = new HashMap<Module, Collection<File>>();
+  private final Set<Module> myDirtyModules;
+  private final Map<Module, Collection<File>> myTempSourceRoots;
 
-  private SLRUCache<Module, FSSnapshot> myFilesCache = new SLRUCache<Module, FSSnapshot>(10, 10) {
-    @NotNull
-    public FSSnapshot createValue(Module key) {
-      return buildSnapshot(key);
-    }
-  };
+  private final SLRUCache<Module, FSSnapshot> myFilesCache;
   private final ProjectPaths myProjectPaths;
 
   public CompileContext(CompileScope scope,
@@ -44,15 +40,47 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
                         final Mappings mappings,
                         ProjectChunks productionChunks,
                         ProjectChunks testChunks,
+                        @Nullable FSState fsState,
                         MessageHandler delegateMessageHandler) {
     myScope = scope;
     myIsMake = isMake;
     myProductionChunks = productionChunks;
     myTestChunks = testChunks;
     myDelegateMessageHandler = delegateMessageHandler;
-    myDataManager = new BuildDataManager(projectName);
+    myDataManager = new BuildDataManager(projectName, fsState);
     myMappings = mappings;
     myProjectPaths = new ProjectPaths(scope.getProject());
+    myDirtyModules = new HashSet<Module>();
+    myTempSourceRoots = new HashMap<Module, Collection<File>>();
+    myFilesCache = new SLRUCache<Module, FSSnapshot>(10, 10) {
+      @NotNull
+      public FSSnapshot createValue(Module key) {
+        return buildSnapshot(key);
+      }
+    };
+  }
+
+  /**
+   * The context shares the build state with the parent context but has its own user data,
+   * so that the chunk-scoped data builders keep there doesn't clash when several chunks are built at once.
+   */
+  private CompileContext(CompileContext parent) {
+    myScope = parent.myScope;
+    myIsMake = parent.myIsMake;
+    myProductionChunks = parent.myProductionChunks;
+    myTestChunks = parent.myTestChunks;
+    myDelegateMessageHandler = parent.myDelegateMessageHandler;
+    myCompilingTests = parent.myCompilingTests;
+    myDataManager = parent.myDataManager;
+    myMappings = parent.myMappings;
+    myDirtyModules = parent.myDirtyModules;
+    myTempSourceRoots = parent.myTempSourceRoots;
+    myFilesCache = parent.myFilesCache;
+    myProjectPaths = parent.myProjectPaths;
+  }
+
+  CompileContext createChunkContext() {
+    return new CompileContext(this);
   }
 
   public Project getProject() {
@@ -77,10 +105,18 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
   }
 
   public boolean isDirty(Module module) {
-    return myDirtyModules.contains(module);
+    synchronized (myDirtyModules) {
+      return myDirtyModules.contains(module);
+    }
   }
 
   public void setDirty(ModuleChunk chunk, boolean isDirty) {
+    synchronized (myDirtyModules) {
+      doSetDirty(chunk, isDirty);
+    }
+  }
+
+  private void doSetDirty(ModuleChunk chunk, boolean isDirty) {
     final Set<Module> modules = chunk.getModules();
     
     if (!isDirty) {
@@ -117,7 +153,9 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
   }
   
   public Mappings createDelta() {
-    return myMappings.createDelta();
+    synchronized (myMappings) {
+      return myMappings.createDelta();
+    }
   }
 
   public boolean isCompilingTests() {
@@ -126,22 +164,36 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
 
   void setCompilingTests(boolean compilingTests) {
     myCompilingTests = compilingTests;
-    myFilesCache.clear();
-    for (Collection<File> roots : myTempSourceRoots.values()) {
-      if (roots != null) {
-        for (File root : roots) {
-          FileUtil.delete(root);
+    synchronized (myFilesCache) {
+      myFilesCache.clear();
+    }
+    synchronized (myTempSourceRoots) {
+      for (Collection<File> roots : myTempSourceRoots.values()) {
+        if (roots != null) {
+          for (File root : roots) {
+            FileUtil.delete(root);
+          }
         }
       }
+      myTempSourceRoots.clear();
     }
-    myTempSourceRoots.clear();
   }
 
   void onChunkBuildComplete(@NotNull ModuleChunk chunk) {
-    myFilesCache.clear();
-    myMappings.clearMemoryCaches();
+    synchronized (myFilesCache) {
+      // only the chunk's modules are cached when chunks are built one by one; keep the snapshots of the chunks being built
+      for (Module module : chunk.getModules()) {
+        myFilesCache.remove(module);
+      }
+    }
+    synchronized (myMappings) {
+      myMappings.clearMemoryCaches();
+    }
     for (Module module : chunk.getModules()) {
-      final Collection<File> roots = myTempSourceRoots.remove(module);
+      final Collection<File> roots;
+      synchronized (myTempSourceRoots) {
+        roots = myTempSourceRoots.remove(module);
+      }
       if (roots != null) {
         for (File root : roots) {
           FileUtil.delete(root);
@@ -164,13 +216,28 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
 
   public void processFiles(ModuleChunk chunk, FileProcessor processor) throws Exception {
     for (Module module : chunk.getModules()) {
-      final FSSnapshot snapshot = myFilesCache.get(module);
+      final FSSnapshot snapshot = getSnapshot(module);
       if (!snapshot.processFiles(processor)) {
         return;
       }
     }
   }
 
+  private FSSnapshot getSnapshot(Module module) {
+    synchronized (myFilesCache) {
+      final FSSnapshot cached = myFilesCache.getIfCached(module);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    // file system is scanned outside the lock: other chunks may be processing their files meanwhile
+    final FSSnapshot snapshot = buildSnapshot(module);
+    synchronized (myFilesCache) {
+      myFilesCache.put(module, snapshot);
+    }
+    return snapshot;
+  }
+
   public boolean hasRemovedSources() {
     final Set<File> removed = Paths.CHUNK_REMOVED_SOURCES_KEY.get(this);
     return removed != null && !removed.isEmpty();
@@ -181,7 +248,11 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
     if (isMake() && !sources.isEmpty()) {
       final Mappings mappings = getMappings();
       for (File file : sources) {
-        final Set<ClassRepr> classes = mappings.getClasses(FileUtil.toSystemIndependentName(file.getPath()));
+        final Set<ClassRepr> classes;
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (mappings) {
+          classes = mappings.getClasses(FileUtil.toSystemIndependentName(file.getPath()));
+        }
         if (classes != null) {
           for (ClassRepr aClass : classes) {
             final String fileName = aClass.getFileName();
@@ -196,12 +267,14 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
 
   // assuming the root file exists
   public void registerTempSourceRoot(Module module, File root) {
-    Collection<File> roots = myTempSourceRoots.get(module);
-    if (roots == null) {
-      roots = new HashSet<File>();
-      myTempSourceRoots.put(module, roots);
+    synchronized (myTempSourceRoots) {
+      Collection<File> roots = myTempSourceRoots.get(module);
+      if (roots == null) {
+        roots = new HashSet<File>();
+        myTempSourceRoots.put(module, roots);
+      }
+      roots.add(root);
     }
-    roots.add(root);
   }
 
 
@@ -221,7 +294,11 @@ public class CompileContext extends UserDataHolderBase implements MessageHandler
         buildStructure(root.getNode(), excludes);
       }
     }
-    final Collection<File> tempRoots = myTempSourceRoots.get(module);
+    final Collection<File> tempRoots;
+    synchronized (myTempSourceRoots) {
+      final Collection<File> registered = myTempSourceRoots.get(module);
+      tempRoots = registered != null ? new ArrayList<File>(registered) : null;
+    }
     if (tempRoots != null) {
       for (File tempRoot : tempRoots) {
         final FSSnapshot.Root root = snapshot.addRoot(tempRoot, FileUtil.toSystemIndependentName(tempRoot.getPath()));
@@ -0,0 +1,93 @@
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Files of a project changed since they were last processed by each builder, as reported by the IDE.
+ * Once the IDE has started reporting the changes and a build of the whole project has succeeded after that, the reported changes
+ * are complete and makes take the dirty files from here instead of comparing the timestamps of all the project files with the stored ones.
+ * Until then, and after a build with errors, the timestamps are compared.
+ */
+public class FSState {
+  private final Map<String, Set<File>> myDirtyFiles = new HashMap<String, Set<File>>();
+  private volatile boolean myChangesReported;
+  private volatile boolean myInitialized;
+
+  public FSState(BuilderRegistry registry) {
+    for (BuilderCategory category : BuilderCategory.values()) {
+      for (Builder builder : registry.getBuilders(category)) {
+        myDirtyFiles.put(builder.getName(), Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>()));
+      }
+    }
+  }
+
+  /**
+   * Called for every batch of the changes the IDE reports, an empty one included: the first call tells that the changes
+   * made from now on will be reported.
+   */
+  public void notifyFileChanges(Collection<String> changedPaths, Collection<String> deletedPaths) {
+    markDirty(changedPaths);
+    markDeleted(deletedPaths);
+    myChangesReported = true;
+  }
+
+  private void markDirty(Collection<String> paths) {
+    for (String path : paths) {
+      final File file = toFile(path);
+      for (Set<File> files : myDirtyFiles.values()) {
+        files.add(file);
+      }
+    }
+  }
+
+  private void markDeleted(Collection<String> paths) {
+    for (String path : paths) {
+      final File file = toFile(path);
+      for (Set<File> files : myDirtyFiles.values()) {
+        files.remove(file);
+      }
+    }
+  }
+
+  /**
+   * @return the files the builder has to process; the builder removes a file when saving its timestamp and adds the files it marks dirty
+   */
+  @Nullable
+  public Set<File> getDirtyFiles(String builderName) {
+    return myDirtyFiles.get(builderName);
+  }
+
+  /**
+   * @return true if the dirty files can be used instead of the timestamps
+   */
+  public boolean isInitialized() {
+    return myInitialized;
+  }
+
+  void beforeBuild() {
+    if (!myInitialized) {
+      // the timestamps will be compared, only the changes made during the build matter
+      for (Set<File> files : myDirtyFiles.values()) {
+        files.clear();
+      }
+    }
+  }
+
+  void afterBuild(boolean wholeProject, boolean successful) {
+    if (!successful) {
+      myInitialized = false;
+    }
+    else if (wholeProject && myChangesReported) {
+      myInitialized = true;
+    }
+  }
+
+  private static File toFile(String path) {
+    return new File(FileUtil.toCanonicalPath(path));
+  }
+}
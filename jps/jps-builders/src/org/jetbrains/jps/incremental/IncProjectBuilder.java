@@ -2,6 +2,7 @@ package org.jetbrains.jps.incremental;
 
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.io.PersistentEnumerator;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.ether.dependencyView.Mappings;
 import org.jetbrains.jps.*;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
@@ -13,6 +14,7 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * @author Eugene Zhuravlev
@@ -20,6 +22,7 @@ import java.util.*;
  */
 public class IncProjectBuilder {
   public static final String JPS_SERVER_NAME = "JPS BUILD";
+  public static final String CHUNK_BUILD_THREADS_PROPERTY = "jps.chunk.build.threads";
 
   private final String myProjectName;
   private final BuilderRegistry myBuilderRegistry;
@@ -27,6 +30,9 @@ public class IncProjectBuilder {
   private ProjectChunks myTestChunks;
   private final List<MessageHandler> myMessageHandlers = new ArrayList<MessageHandler>();
   private final Mappings myMappings;
+  private int myChunkBuildThreads = Integer.getInteger(CHUNK_BUILD_THREADS_PROPERTY, 1);
+  @Nullable private FSState myFSState;
+  private volatile boolean myErrorsReported;
 
   public IncProjectBuilder(String projectName,
                            Project project,
@@ -42,16 +48,36 @@ public class IncProjectBuilder {
   public void addMessageHandler(MessageHandler handler) {
     myMessageHandlers.add(handler);
   }
+
+  /**
+   * @param threads maximum number of module chunks built simultaneously; chunks are built after all the chunks they depend on
+   */
+  public void setChunkBuildThreads(int threads) {
+    myChunkBuildThreads = threads;
+  }
+
+  /**
+   * @param fsState changes of the project files reported by the IDE; makes use them instead of the file timestamps when they are complete
+   */
+  public void setFSState(@Nullable FSState fsState) {
+    myFSState = fsState;
+  }
   
   // todo: pass dirty and removed sources from outside
   
   
   public void build(CompileScope scope, final boolean isMake) {
+    if (myFSState != null) {
+      myFSState.beforeBuild();
+    }
+    myErrorsReported = false;
+    boolean completed = false;
 
     final CompileContext context = createContext(scope, isMake);
     try {
       try {
         runBuild(context);
+        completed = true;
       }
       catch (ProjectBuildException e) {
         if (e.getCause() instanceof PersistentEnumerator.CorruptedException) {
@@ -61,6 +87,7 @@ public class IncProjectBuilder {
             "Internal caches are corrupted or have outdated format, forcing project rebuild: " + e.getMessage())
           );
           runBuild(createContext(new CompileScope(scope.getProject()), false));
+          completed = true;
         }
         else {
           throw e;
@@ -80,6 +107,10 @@ public class IncProjectBuilder {
     finally {
       context.getBuildDataManager().close();
       cleanupJavacNameTable();
+      if (myFSState != null) {
+        final boolean wholeProject = scope.getAffectedModules().containsAll(scope.getProject().getModules().values());
+        myFSState.afterBuild(wholeProject, completed && !myErrorsReported);
+      }
     }
   }
 
@@ -114,9 +145,12 @@ public class IncProjectBuilder {
 
   private CompileContext createContext(CompileScope scope, boolean isMake) {
     return new CompileContext(
-      scope, myProjectName, isMake, myMappings, myProductionChunks, myTestChunks, new MessageHandler() {
+      scope, myProjectName, isMake, myMappings, myProductionChunks, myTestChunks, myFSState, new MessageHandler() {
 
       public void processMessage(BuildMessage msg) {
+        if (msg.getKind() == BuildMessage.Kind.ERROR) {
+          myErrorsReported = true;
+        }
         for (MessageHandler h : myMessageHandlers) {
           h.processMessage(msg);
         }
@@ -214,13 +248,132 @@ public class IncProjectBuilder {
 
   private void buildChunks(CompileContext context, ProjectChunks chunks) throws ProjectBuildException {
     final CompileScope scope = context.getScope();
+    final List<ModuleChunk> affected = new ArrayList<ModuleChunk>();
     for (ModuleChunk chunk : chunks.getChunkList()) {
       if (scope.isAffected(chunk)) {
+        affected.add(chunk);
+      }
+    }
+    if (myChunkBuildThreads > 1 && affected.size() > 1) {
+      buildChunksInParallel(context, chunks, affected);
+    }
+    else {
+      for (ModuleChunk chunk : affected) {
         buildChunk(context, chunk);
       }
     }
   }
 
+  private void buildChunksInParallel(final CompileContext context, ProjectChunks chunks, List<ModuleChunk> affected)
+    throws ProjectBuildException {
+    // the chunk list is topologically sorted, so the dependencies of a chunk are always built before it in the sequential mode
+    final ClasspathKind classpathKind = ClasspathKind.compile(context.isCompilingTests());
+    final Set<ModuleChunk> toBuild = new HashSet<ModuleChunk>(affected);
+    final Map<ModuleChunk, Integer> unbuiltDependencies = new HashMap<ModuleChunk, Integer>();
+    final Map<ModuleChunk, List<ModuleChunk>> dependents = new HashMap<ModuleChunk, List<ModuleChunk>>();
+    for (ModuleChunk chunk : affected) {
+      final Set<ModuleChunk> dependencies = new HashSet<ModuleChunk>();
+      final Set<Module> processed = new HashSet<Module>();
+      for (Module module : chunk.getModules()) {
+        collectDependencies(module, classpathKind, chunks, toBuild, processed, dependencies);
+      }
+      dependencies.remove(chunk);
+      unbuiltDependencies.put(chunk, dependencies.size());
+      for (ModuleChunk dependency : dependencies) {
+        List<ModuleChunk> list = dependents.get(dependency);
+        if (list == null) {
+          list = new ArrayList<ModuleChunk>();
+          dependents.put(dependency, list);
+        }
+        list.add(chunk);
+      }
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(myChunkBuildThreads, affected.size()));
+    final CompletionService<ModuleChunk> completionService = new ExecutorCompletionService<ModuleChunk>(executor);
+    int running = 0;
+    Throwable failure = null;
+    try {
+      for (ModuleChunk chunk : affected) {
+        if (unbuiltDependencies.get(chunk) == 0) {
+          submitChunk(completionService, context, chunk);
+          running++;
+        }
+      }
+      while (running > 0) {
+        final Future<ModuleChunk> future = completionService.take();
+        running--;
+        final ModuleChunk built;
+        try {
+          built = future.get();
+        }
+        catch (ExecutionException e) {
+          // let the chunks already being built finish, but do not start new ones
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          continue;
+        }
+        if (failure != null) {
+          continue;
+        }
+        final List<ModuleChunk> chunkDependents = dependents.get(built);
+        if (chunkDependents != null) {
+          for (ModuleChunk dependent : chunkDependents) {
+            final int count = unbuiltDependencies.get(dependent) - 1;
+            unbuiltDependencies.put(dependent, count);
+            if (count == 0) {
+              submitChunk(completionService, context, dependent);
+              running++;
+            }
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      throw new ProjectBuildException(e);
+    }
+    finally {
+      executor.shutdown();
+    }
+
+    if (failure instanceof ProjectBuildException) {
+      throw (ProjectBuildException)failure;
+    }
+    if (failure != null) {
+      throw new ProjectBuildException(failure);
+    }
+  }
+
+  /**
+   * Collects the chunks of all the modules the given one depends on, directly or not: exported dependencies of a dependency
+   * are on the compile classpath too (see {@link org.jetbrains.jps.ProjectPaths}), and they may belong to another chunk being built.
+   */
+  private static void collectDependencies(Module module, ClasspathKind kind, ProjectChunks chunks, Set<ModuleChunk> toBuild,
+                                          Set<Module> processed, Set<ModuleChunk> dependencies) {
+    if (!processed.add(module)) {
+      return;
+    }
+    for (ClasspathItem item : module.getClasspath(kind)) {
+      if (item instanceof Module) {
+        final ModuleChunk dependency = chunks.findChunk((Module)item);
+        if (dependency != null && toBuild.contains(dependency)) {
+          dependencies.add(dependency);
+        }
+        collectDependencies((Module)item, kind, chunks, toBuild, processed, dependencies);
+      }
+    }
+  }
+
+  private void submitChunk(CompletionService<ModuleChunk> completionService, final CompileContext context, final ModuleChunk chunk) {
+    completionService.submit(new Callable<ModuleChunk>() {
+      public ModuleChunk call() throws Exception {
+        buildChunk(context.createChunkContext(), chunk);
+        return chunk;
+      }
+    });
+  }
+
   private void buildChunk(CompileContext context, ModuleChunk chunk) throws ProjectBuildException{
     try {
          // TODO: check how the output-source storage is filled and!
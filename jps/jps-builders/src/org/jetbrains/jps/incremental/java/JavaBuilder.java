@@ -80,12 +80,9 @@ public class JavaBuilder extends Builder{
               context.processMessage(new CompilerMessage(BUILDER_NAME, e));
             }
             final ClassReader reader = new ClassReader(content.getBuffer(), content.getOffset(), content.getLength());
-            // todo: the callback is not thread-safe?
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (context.getMappings()) {
-              // todo: parse class data out of synchronized block (move it from the 'associate' implementation)
-              callback.associate(outputPath, Callbacks.getDefaultLookup(sourcePath), reader);
-            }
+            // the callback of the chunk's delta is thread-safe and parses the class outside its lock,
+            // so the global mappings needn't be locked while javac is still producing classes
+            callback.associate(outputPath, Callbacks.getDefaultLookup(sourcePath), reader);
           }
         }
       }
@@ -2,9 +2,11 @@ package org.jetbrains.jps.incremental.storage;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.incremental.Builder;
 import org.jetbrains.jps.incremental.BuilderCategory;
 import org.jetbrains.jps.incremental.BuilderRegistry;
+import org.jetbrains.jps.incremental.FSState;
 import org.jetbrains.jps.incremental.Paths;
 
 import java.io.File;
@@ -21,12 +23,20 @@ public class BuildDataManager {
   private static final String TIMESTAMP_STORAGE = "stamps";
   private static final String OUTPUTS_STORAGE = "out-src";
   private final String myProjectName;
+  @Nullable private final FSState myFSState;
+  private final boolean myUseDirtyFiles;
 
   private final Map<String, TimestampStorage> myBuilderToStampStorageMap = new HashMap<String, TimestampStorage>();
   private final OutputToSourceMapping myOutputToSourceMap;
 
   public BuildDataManager(String projectName)  {
+    this(projectName, null);
+  }
+
+  public BuildDataManager(String projectName, @Nullable FSState fsState)  {
     myProjectName = projectName;
+    myFSState = fsState;
+    myUseDirtyFiles = fsState != null && fsState.isInitialized();
     myOutputToSourceMap = createOutputToSourceMap();
   }
 
@@ -51,7 +61,10 @@ public class BuildDataManager {
     synchronized (myBuilderToStampStorageMap) {
       TimestampStorage storage = myBuilderToStampStorageMap.get(builderName);
       if (storage == null) {
-        storage = new TimestampStorage(new File(getTimestampsStorageRoot(builderName), "data"));
+        final File storePath = new File(getTimestampsStorageRoot(builderName), "data");
+        storage = myFSState != null ?
+                  new TimestampStorage(storePath, myFSState.getDirtyFiles(builderName), myUseDirtyFiles) :
+                  new TimestampStorage(storePath);
         myBuilderToStampStorageMap.put(builderName, storage);
       }
       return storage;
@@ -3,20 +3,33 @@ package org.jetbrains.jps.incremental.storage;
 import com.intellij.util.io.DataExternalizer;
 import com.intellij.util.io.IOUtil;
 import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * @author Eugene Zhuravlev
  *         Date: 10/7/11
  */
 public class TimestampStorage extends AbstractStateStorage<File, TimestampValidityState> {
+  @Nullable private final Set<File> myDirtyFiles; // files changed since their stamps were saved, as reported by the IDE
+  private final boolean myUseDirtyFiles;
 
   public TimestampStorage(File storePath) throws Exception {
+    this(storePath, null, false);
+  }
+
+  /**
+   * @param useDirtyFiles whether the dirty files are complete and can be used instead of the timestamps of the files
+   */
+  public TimestampStorage(File storePath, @Nullable Set<File> dirtyFiles, boolean useDirtyFiles) throws Exception {
     super(storePath, new FileKeyDescriptor(), new StateExternalizer());
+    myDirtyFiles = dirtyFiles;
+    myUseDirtyFiles = dirtyFiles != null && useDirtyFiles;
   }
 
   public void saveStamp(File file) throws Exception {
@@ -30,10 +43,23 @@ public class TimestampStorage extends AbstractStateStorage<File, TimestampValidi
 
   public void saveStamp(File file, long timestamp) throws Exception {
     update(file, new TimestampValidityState(timestamp));
+    if (myDirtyFiles != null) {
+      myDirtyFiles.remove(file);
+    }
   }
 
   public void markDirty(File file) throws Exception {
     update(file, null);
+    if (myDirtyFiles != null) {
+      myDirtyFiles.add(file);
+    }
+  }
+
+  public boolean isDirty(File file) throws Exception {
+    if (myUseDirtyFiles) {
+      return myDirtyFiles.contains(file);
+    }
+    return getStamp(file) != file.lastModified();
   }
 
   private static class FileKeyDescriptor implements KeyDescriptor<File> {
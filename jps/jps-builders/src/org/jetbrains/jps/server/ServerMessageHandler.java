@@ -54,6 +54,11 @@ class ServerMessageHandler extends SimpleChannelHandler {
           final JpsRemoteProto.Message.Request.ReloadProjectCommand reloadProjectCommand = request.getReloadProjectCommand();
           facade.clearProjectCache(reloadProjectCommand.getProjectIdList());
           break;
+        case FS_EVENT:
+          final JpsRemoteProto.Message.Request.FSEvent fsEvent = request.getFsEvent();
+          facade.notifyFileChanges(fsEvent.getProjectId(), fsEvent.getChangedPathList(), fsEvent.getDeletedPathList());
+          reply = ProtoUtil.toMessage(sessionId, ProtoUtil.createCommandCompletedEvent(null));
+          break;
         case SETUP_COMMAND:
           final Map<String, String> pathVars = new HashMap<String, String>();
           final JpsRemoteProto.Message.Request.SetupCommand setupCommand = request.getSetupCommand();
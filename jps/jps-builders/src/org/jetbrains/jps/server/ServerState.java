@@ -33,6 +33,7 @@ class ServerState {
   public static final String IDEA_PROJECT_DIRNAME = ".idea";
 
   private final Map<String, Project> myProjects = new HashMap<String, Project>();
+  private final Map<String, FSState> myFSStates = new HashMap<String, FSState>();
 
   private final Object myConfigurationLock = new Object();
   private final Map<String, String> myPathVariables = new HashMap<String, String>();
@@ -41,6 +42,7 @@ class ServerState {
   public void setGlobals(List<GlobalLibrary> libs, Map<String, String> pathVars) {
     synchronized (myConfigurationLock) {
       myProjects.clear(); // projects should be reloaded against the latest data
+      myFSStates.clear();
       myGlobalLibraries.clear();
       myGlobalLibraries.addAll(libs);
       myPathVariables.clear();
@@ -51,6 +53,22 @@ class ServerState {
   public void clearProjectCache(Collection<String> projectPaths) {
     synchronized (myConfigurationLock) {
       myProjects.keySet().removeAll(projectPaths);
+      myFSStates.keySet().removeAll(projectPaths); // the changes reported so far may not cover the roots of the reloaded project
+    }
+  }
+
+  public void notifyFileChanges(String projectPath, Collection<String> changedPaths, Collection<String> deletedPaths) {
+    getFSState(projectPath).notifyFileChanges(changedPaths, deletedPaths);
+  }
+
+  private FSState getFSState(String projectPath) {
+    synchronized (myConfigurationLock) {
+      FSState fsState = myFSStates.get(projectPath);
+      if (fsState == null) {
+        fsState = new FSState(BuilderRegistry.getInstance());
+        myFSStates.put(projectPath, fsState);
+      }
+      return fsState;
     }
   }
 
@@ -58,6 +76,7 @@ class ServerState {
     final String projectName = getProjectName(projectPath);
     BuildType buildType = params.buildType;
 
+    final FSState fsState = getFSState(projectPath);
     Project project;
     synchronized (myConfigurationLock) {
       project = myProjects.get(projectPath);
@@ -98,6 +117,7 @@ class ServerState {
       final CompileScope compileScope = new CompileScope(project, toCompile);
 
       final IncProjectBuilder builder = new IncProjectBuilder(projectName, project, mappings, BuilderRegistry.getInstance());
+      builder.setFSState(fsState);
       if (msgHandler != null) {
         builder.addMessageHandler(msgHandler);
       }
@@ -1296,27 +1296,29 @@ public class Mappings {
     mySourceFileToAnnotationUsages.putAll(delta.mySourceFileToAnnotationUsages);
     myClassToSourceFile.putAll(delta.myClassToSourceFile);
 
-    for (DependencyContext.S file : delta.myClassToClassDependency.keyCollection()) {
-      final Collection<DependencyContext.S> now = delta.myClassToClassDependency.get(file);
+    // the compiled files are enumerated once for the whole delta, and every dependency record is rewritten in a single update
+    final Set<DependencyContext.S> compiledNames = new HashSet<DependencyContext.S>();
+    for (File c : compiled) {
+      compiledNames.add(myContext.get(FileUtil.toSystemIndependentName(c.getAbsolutePath())));
+    }
+
+    for (Map.Entry<DependencyContext.S, Collection<DependencyContext.S>> entry : delta.myClassToClassDependency.entrySet()) {
+      final DependencyContext.S file = entry.getKey();
+      final Collection<DependencyContext.S> now = entry.getValue();
       final Collection<DependencyContext.S> past = myClassToClassDependency.get(file);
 
       if (past == null) {
         myClassToClassDependency.put(file, now);
       }
       else {
-        final Collection<DependencyContext.S> removeSet = new HashSet<DependencyContext.S>();
-
-        for (File c : compiled) {
-          removeSet.add(myContext.get(FileUtil.toSystemIndependentName(c.getAbsolutePath())));
+        for (DependencyContext.S name : compiledNames) {
+          if (!now.contains(name)) {
+            past.remove(name);
+          }
         }
-
-        removeSet.removeAll(now);
-
         past.addAll(now);
-        past.removeAll(removeSet);
 
-        myClassToClassDependency.remove(file);
-        myClassToClassDependency.put(file, past);
+        myClassToClassDependency.replace(file, past);
       }
     }
   }
@@ -1336,19 +1338,26 @@ public class Mappings {
     mySourceFileToAnnotationUsages.put(source, usages);
   }
 
+  /**
+   * The callback may be used from several threads at once. Other methods of the mappings are not thread-safe:
+   * the callers synchronize on the global mappings instance.
+   */
   public Callbacks.Backend getCallback() {
     return new Callbacks.Backend() {
       public Collection<String> getClassFiles() {
         final HashSet<String> result = new HashSet<String>();
 
-        for (DependencyContext.S s : myClassToSourceFile.keyCollection()) {
-          result.add(myContext.getValue(s));
+        synchronized (Mappings.this) {
+          for (DependencyContext.S s : myClassToSourceFile.keyCollection()) {
+            result.add(myContext.getValue(s));
+          }
         }
 
         return result;
       }
 
       public void associate(final String classFileName, final Callbacks.SourceFileNameLookup sourceFileName, final ClassReader cr) {
+        // class file analysis only needs the (thread-safe) context, so class files are analyzed concurrently
         final DependencyContext.S classFileNameS = myContext.get(classFileName);
         final Pair<ClassRepr, Pair<UsageRepr.Cluster, Set<UsageRepr.Usage>>> result =
           new ClassfileAnalyzer(myContext).analyze(classFileNameS, cr);
@@ -1359,32 +1368,39 @@ public class Mappings {
         final String srcFileName = sourceFileName.get(repr == null ? null : myContext.getValue(repr.getSourceFileName()));
         final DependencyContext.S sourceFileNameS = myContext.get(srcFileName);
 
-        if (repr != null) {
-          final DependencyContext.S className = repr.name;
-
-          for (UsageRepr.Usage u : localUsages.getUsages()) {
-            myClassToClassDependency.put(u.getOwner(), className);
-          }
+        synchronized (Mappings.this) {
+          addClass(repr, sourceFileNameS, localUsages, localAnnotationUsages);
         }
+      }
+    };
+  }
 
-        if (repr != null) {
-          myClassToSourceFile.put(repr.name, sourceFileNameS);
-          mySourceFileToClasses.put(sourceFileNameS, repr);
+  private void addClass(@Nullable final ClassRepr repr,
+                        final DependencyContext.S sourceFileNameS,
+                        final UsageRepr.Cluster localUsages,
+                        final Set<UsageRepr.Usage> localAnnotationUsages) {
+    if (repr != null) {
+      final DependencyContext.S className = repr.name;
 
-          for (DependencyContext.S s : repr.getSupers()) {
-            myClassToSubclasses.put(s, repr.name);
-          }
-        }
+      for (UsageRepr.Usage u : localUsages.getUsages()) {
+        myClassToClassDependency.put(u.getOwner(), className);
+      }
 
-        if (!localUsages.isEmpty()) {
-          updateSourceToUsages(sourceFileNameS, localUsages);
-        }
+      myClassToSourceFile.put(repr.name, sourceFileNameS);
+      mySourceFileToClasses.put(sourceFileNameS, repr);
 
-        if (!localAnnotationUsages.isEmpty()) {
-          updateSourceToAnnotationUsages(sourceFileNameS, localAnnotationUsages);
-        }
+      for (DependencyContext.S s : repr.getSupers()) {
+        myClassToSubclasses.put(s, repr.name);
       }
-    };
+    }
+
+    if (!localUsages.isEmpty()) {
+      updateSourceToUsages(sourceFileNameS, localUsages);
+    }
+
+    if (!localAnnotationUsages.isEmpty()) {
+      updateSourceToAnnotationUsages(sourceFileNameS, localAnnotationUsages);
+    }
   }
 
   @Nullable
@@ -65,6 +65,11 @@ class TransientMultiMaplet<K, V> implements MultiMaplet<K, V> {
     }
   }
 
+  @Override
+  public void replace(final K key, final Collection<V> value) {
+    myMap.put(key, value);
+  }
+
   @Override
   public void put(final K key, final V value) {
     final Collection<V> x = constr.create();
@@ -0,0 +1,119 @@
+package org.jetbrains.jps.incremental
+
+import junit.framework.TestCase
+import org.jetbrains.ether.dependencyView.Mappings
+import org.jetbrains.jps.Project
+import org.jetbrains.jps.incremental.messages.BuildMessage
+import org.jetbrains.jps.util.TempFiles
+
+/**
+ * Makes a project with the file changes reported the way the IDE reports them to the build server.
+ */
+class FSStateTest extends TestCase {
+  private TempFiles myTempFiles
+  private File myRoot
+  private Project myProject
+  private FSState myFSState
+
+  @Override
+  protected void setUp() {
+    myTempFiles = new TempFiles()
+    myRoot = myTempFiles.createTempDir()
+    Paths.getInstance().setSystemRoot(new File(myRoot, "system"))
+    myProject = createProject()
+    myFSState = new FSState(BuilderRegistry.getInstance())
+  }
+
+  @Override
+  protected void tearDown() {
+    myTempFiles.cleanup()
+  }
+
+  public void testTimestampsUntilChangesAreReported() {
+    assertTrue(build(false).isEmpty())
+    assertFalse(myFSState.isInitialized())
+
+    source("B").text = "public class B { void foo() {} }"
+    assertTrue(make())
+  }
+
+  public void testReportedChangesAreCompiled() {
+    myFSState.notifyFileChanges([], [])
+    assertTrue(build(false).isEmpty())
+    assertTrue(myFSState.isInitialized())
+
+    assertFalse(make())
+    source("B").text = "public class B { void foo() {} }"
+    myFSState.notifyFileChanges([source("B").path], [])
+    assertTrue(make())
+    assertFalse(make())
+  }
+
+  public void testErrorsSwitchToTimestamps() {
+    myFSState.notifyFileChanges([], [])
+    assertTrue(build(false).isEmpty())
+
+    source("A").text = "public class A { error }"
+    myFSState.notifyFileChanges([source("A").path], [])
+    assertFalse(build(true).isEmpty())
+    assertFalse(myFSState.isInitialized())
+
+    // the fix is noticed without being reported
+    source("A").text = "public class A {}"
+    assertTrue(build(true).isEmpty())
+    assertTrue(myFSState.isInitialized())
+  }
+
+  /**
+   * @return true if B has been compiled
+   */
+  private boolean make() {
+    def output = new File(myRoot, "out/B.class")
+    output.setLastModified(0)
+    assertTrue(build(true).isEmpty())
+    return output.lastModified() != 0
+  }
+
+  private List<String> build(boolean make) {
+    def errors = []
+    def mappings = new Mappings(Paths.getMappingsStorageRoot("fsstate"))
+    try {
+      def builder = new IncProjectBuilder("fsstate", myProject, mappings, BuilderRegistry.getInstance())
+      builder.setFSState(myFSState)
+      builder.addMessageHandler({BuildMessage msg ->
+        if (msg.kind == BuildMessage.Kind.ERROR) errors << msg.toString()
+      } as MessageHandler)
+      builder.build(new CompileScope(myProject), make)
+    }
+    finally {
+      mappings.close()
+    }
+    return errors
+  }
+
+  private File source(String className) {
+    return new File(myRoot, "src/${className}.java")
+  }
+
+  private Project createProject() {
+    source("A").parentFile.mkdirs()
+    source("A").text = "public class A {}"
+    source("B").text = "public class B {}"
+
+    def project = new Project()
+    def bootClasspath = System.getProperty("sun.boot.class.path").split(File.pathSeparator).findAll {new File(it).isFile()}
+    def sdk = project.createJavaSdk("jdk", System.getProperty("java.home")) {
+      bootClasspath.each {classpath it}
+    }
+    def srcDir = source("A").parentFile.absolutePath
+    def module = project.createModule("m") {
+      classpath sdk
+      src srcDir
+      moduleSource()
+    }
+    module.sdk = sdk
+    module.outputPath = new File(myRoot, "out").absolutePath
+    module.testOutputPath = new File(myRoot, "out-tests").absolutePath
+    return project
+  }
+}
@@ -0,0 +1,188 @@
+package org.jetbrains.jps.incremental
+
+import junit.framework.TestCase
+import org.jetbrains.ether.dependencyView.Mappings
+import org.jetbrains.jps.Module
+import org.jetbrains.jps.PredefinedDependencyScopes
+import org.jetbrains.jps.Project
+import org.jetbrains.jps.incremental.messages.BuildMessage
+import org.jetbrains.jps.incremental.messages.CompilerMessage
+import org.jetbrains.jps.util.TempFiles
+
+/**
+ * Builds generated projects sequentially and with several threads and compares the outputs and, in the performance test,
+ * the wall-clock times.
+ */
+class ParallelChunksBuildTest extends TestCase {
+  private static final int LAYERS = 4
+  private static final int MODULES_PER_LAYER = 6
+  private static final int CLASSES_PER_MODULE = 40
+  private static final int THREADS = Math.max(4, Runtime.runtime.availableProcessors())
+
+  private TempFiles myTempFiles
+
+  @Override
+  protected void setUp() {
+    myTempFiles = new TempFiles()
+  }
+
+  @Override
+  protected void tearDown() {
+    myTempFiles.cleanup()
+  }
+
+  public void testParallelBuildProducesSameOutput() {
+    def sequential = rebuild(1, this.&generateLayeredProject, null)
+    def parallel = rebuild(THREADS, this.&generateLayeredProject, null)
+    assertEquals(sequential, parallel)
+    assertEquals(LAYERS * MODULES_PER_LAYER * CLASSES_PER_MODULE, parallel.size())
+  }
+
+  public void testParallelBuildPerformance() {
+    rebuild(1, this.&generateLayeredProject, null) // warm up the compiler
+    long sequential = bestBuildTime(1)
+    long parallel = bestBuildTime(THREADS)
+    int cores = Runtime.runtime.availableProcessors()
+    String times = "${sequential} ms sequentially, ${parallel} ms with $THREADS threads on $cores CPUs"
+    if (cores > 1) {
+      // the modules of a layer are independent, so they are compiled at once
+      assertTrue(times, parallel < sequential * 0.8)
+    }
+    else {
+      // nothing to gain on a single CPU, but the scheduling of chunks must not cost much either
+      assertTrue(times, parallel < sequential * 1.2)
+    }
+  }
+
+  private long bestBuildTime(int threads) {
+    long best = Long.MAX_VALUE
+    3.times {
+      long start = System.currentTimeMillis()
+      rebuild(threads, this.&generateLayeredProject, null)
+      best = Math.min(best, System.currentTimeMillis() - start)
+    }
+    return best
+  }
+
+  public void testExportedDependencyOfUnaffectedModule() {
+    // 'user' sees the classes of 'lib' through the module 'api' exporting it, 'api' itself is not built
+    def classes = rebuild(THREADS, this.&generateExportingProject, ["lib", "user"])
+    assertEquals(CLASSES_PER_MODULE + 1, classes.size())
+  }
+
+  private Set<String> rebuild(int threads, Closure<Project> generator, List<String> affectedModules) {
+    def root = myTempFiles.createTempDir()
+    Paths.getInstance().setSystemRoot(new File(root, "system"))
+    Project project = generator(new File(root, "project"))
+    def scope = affectedModules == null ? new CompileScope(project) : new CompileScope(project, affectedModules.collect {project.modules[it]})
+    def mappings = new Mappings(Paths.getMappingsStorageRoot("benchmark"))
+    def errors = []
+    try {
+      def builder = new IncProjectBuilder("benchmark", project, mappings, BuilderRegistry.getInstance())
+      builder.setChunkBuildThreads(threads)
+      builder.addMessageHandler({BuildMessage msg ->
+        if (msg instanceof CompilerMessage && msg.kind == BuildMessage.Kind.ERROR || msg.toString().startsWith("Compilation failed")) {
+          errors << msg.toString()
+        }
+      } as MessageHandler)
+      builder.build(scope, false)
+      assertEquals([], errors)
+
+      def classes = new TreeSet<String>()
+      new File(root, "out").eachFileRecurse {File file ->
+        if (file.name.endsWith(".class")) classes << file.path.substring(root.path.length())
+      }
+      return classes
+    }
+    finally {
+      mappings.close()
+    }
+  }
+
+  private Project generateLayeredProject(File projectDir) {
+    def project = new Project()
+    def sdk = createSdk(project)
+    for (int layer = 0; layer < LAYERS; layer++) {
+      for (int i = 0; i < MODULES_PER_LAYER; i++) {
+        def name = moduleName(layer, i)
+        def srcDir = new File(projectDir, "$name/src")
+        for (int c = 0; c < CLASSES_PER_MODULE; c++) {
+          def body = new StringBuilder("package $name;\npublic class C$c {\n")
+          if (layer > 0) {
+            // use the classes of two modules of the previous layer
+            body << "  ${moduleName(layer - 1, i)}.C$c a;\n"
+            body << "  ${moduleName(layer - 1, (i + 1) % MODULES_PER_LAYER)}.C$c b;\n"
+          }
+          for (int m = 0; m < 20; m++) {
+            body << "  public int m$m(java.util.List<String> list) { int r = 0; for (String s : list) r += s.length() * $m; return r; }\n"
+          }
+          body << "}\n"
+          def file = new File(srcDir, "$name/C${c}.java")
+          file.parentFile.mkdirs()
+          file.text = body.toString()
+        }
+        def dependencies = layer > 0 ? [project.modules[moduleName(layer - 1, i)], project.modules[moduleName(layer - 1, (i + 1) % MODULES_PER_LAYER)]] : []
+        def outputDir = new File(projectDir.parentFile, "out/$name").absolutePath
+        Module module = project.createModule(name) {
+          classpath sdk
+          src srcDir.absolutePath
+          dependencies.each {classpath it}
+          moduleSource()
+        }
+        module.sdk = sdk
+        module.outputPath = outputDir
+        module.testOutputPath = outputDir + "-tests"
+      }
+    }
+    return project
+  }
+
+  private Project generateExportingProject(File projectDir) {
+    def project = new Project()
+    def sdk = createSdk(project)
+    def libSrc = new File(projectDir, "lib/src")
+    for (int c = 0; c < CLASSES_PER_MODULE; c++) {
+      def file = new File(libSrc, "lib/C${c}.java")
+      file.parentFile.mkdirs()
+      file.text = "package lib;\npublic class C$c { public int m(java.util.List<String> list) { return list.size(); } }\n"
+    }
+    def userSrc = new File(projectDir, "user/src")
+    new File(userSrc, "user").mkdirs()
+    new File(userSrc, "user/User.java").text = "package user;\npublic class User { lib.C${CLASSES_PER_MODULE - 1} c; }\n"
+
+    def lib = createModule(project, sdk, "lib", libSrc, projectDir) {}
+    def api = createModule(project, sdk, "api", new File(projectDir, "api/src"), projectDir) {
+      dependency(lib, PredefinedDependencyScopes.COMPILE, true)
+    }
+    createModule(project, sdk, "user", userSrc, projectDir) {
+      dependency(api, PredefinedDependencyScopes.COMPILE, false)
+    }
+    return project
+  }
+
+  private static Module createModule(Project project, sdk, String name, File srcDir, File projectDir, Closure dependencies) {
+    def outputDir = new File(projectDir.parentFile, "out/$name").absolutePath
+    Module module = project.createModule(name) {
+      classpath sdk
+      src srcDir.absolutePath
+      dependencies.delegate = delegate
+      dependencies()
+      moduleSource()
+    }
+    module.sdk = sdk
+    module.outputPath = outputDir
+    module.testOutputPath = outputDir + "-tests"
+    return module
+  }
+
+  private static createSdk(Project project) {
+    def bootClasspath = System.getProperty("sun.boot.class.path").split(File.pathSeparator).findAll {new File(it).isFile()}
+    return project.createJavaSdk("jdk", System.getProperty("java.home")) {
+      bootClasspath.each {classpath it}
+    }
+  }
+
+  private static String moduleName(int layer, int index) {
+    return "m${layer}_$index"
+  }
+}
@@ -36,6 +36,12 @@ public abstract class SerializationManager {
 
   public abstract StubElement deserialize(InputStream stream);
 
+  /**
+   * @return serializers (element types) of the serialized stubs in the order of {@link StubTree#getPlainList()},
+   * the stubs themselves are not deserialized
+   */
+  public abstract StubSerializer[] readStubTypes(InputStream stream);
+
   public abstract StubSerializer getSerializer(StubElement rootStub);
 
   public abstract boolean isNameStorageCorrupted();
@@ -36,23 +36,23 @@ import com.intellij.psi.impl.source.text.DiffLog;
 import com.intellij.psi.impl.source.tree.*;
 import com.intellij.psi.text.BlockSupport;
 import com.intellij.psi.tree.*;
+import com.intellij.util.ArrayUtil;
 import com.intellij.util.CharTable;
 import com.intellij.util.ThreeState;
 import com.intellij.util.TripleFunction;
 import com.intellij.util.containers.CollectionFactory;
 import com.intellij.util.containers.Convertor;
 import com.intellij.util.containers.LimitedPool;
-import com.intellij.util.containers.Stack;
 import com.intellij.util.diff.DiffTreeChangeBuilder;
 import com.intellij.util.diff.FlyweightCapableTreeStructure;
 import com.intellij.util.diff.ShallowNodeComparator;
 import com.intellij.util.text.CharArrayUtil;
+import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Field;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -73,7 +73,42 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private IElementType[] myLexTypes;
   private int myCurrentLexeme;
 
-  private final MyList myProduction = new MyList();
+  // the production: the id of a marker or an error item where it starts, ~id of a marker where it is done
+  private int[] myProduction;
+  private int myProductionSize;
+
+  // the markers and error items are kept in the arrays below, indexed by their ids,
+  // so a parse only allocates a small handle per marker and no objects at all for the rest
+  private int myMarkerCount;
+  private ProductionMarker[] myMarkers;
+  private byte[] myMarkerFlags;
+  private IElementType[] myMarkerTypes;
+  private int[] myMarkerLexemes;
+  private int[] myDoneLexemes;
+  // the ids of the dropped and rolled back markers, reused with their handles by the next markers
+  private int[] myFreeIds = ArrayUtil.EMPTY_INT_ARRAY;
+  private int myFreeIdCount;
+
+  // the tree of the markers, built by prepareLightTree()
+  private int[] myParents;
+  private int[] myFirstChildren;
+  private int[] myLastChildren;
+  private int[] myNextSiblings;
+  private int[] myHashCodes;
+
+  // rarely used marker data
+  private TIntObjectHashMap<String> myErrorMessages;
+  private TIntObjectHashMap<WhitespacesAndCommentsBinder> myLeftEdgeBinders;
+  private TIntObjectHashMap<WhitespacesAndCommentsBinder> myRightEdgeBinders;
+  private TIntObjectHashMap<Throwable> myDebugAllocationPositions;
+
+  private static final byte ERROR_ITEM = 1;
+  private static final byte DONE = 2;
+  private static final byte COLLAPSED = 4;
+  private static final byte TIED_TO_THE_LEFT = 8;
+  // the id has entries in the maps above to be cleared when it is reused
+  private static final byte HAS_EXTRAS = 16;
+  private static final byte FREE = 32;
 
   private final Lexer myLexer;
   private final TokenSet myWhitespaces;
@@ -95,30 +130,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   private Map<Key, Object> myUserData = null;
 
-  private final LimitedPool<StartMarker> START_MARKERS = new LimitedPool<StartMarker>(2000, new LimitedPool.ObjectFactory<StartMarker>() {
-    @Override
-    public StartMarker create() {
-      return new StartMarker();
-    }
-
-    @Override
-    public void cleanup(final StartMarker startMarker) {
-      startMarker.clean();
-    }
-  });
-
-  private final LimitedPool<DoneMarker> DONE_MARKERS = new LimitedPool<DoneMarker>(2000, new LimitedPool.ObjectFactory<DoneMarker>() {
-    @Override
-    public DoneMarker create() {
-      return new DoneMarker();
-    }
-
-    @Override
-    public void cleanup(final DoneMarker doneMarker) {
-      doneMarker.clean();
-    }
-  });
-
   private static final WhitespacesAndCommentsBinder DEFAULT_LEFT_EDGE_TOKEN_BINDER = new WhitespacesAndCommentsBinder() {
     @Override
     public int getEdgePosition(final List<IElementType> tokens, final boolean atStreamEdge, final TokenTextGetter getter) {
@@ -172,6 +183,15 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     myParentLightTree = parentLightTree;
 
     cacheLexemes();
+
+    // most builders are made for chameleons with a few markers only
+    final int markers = Math.min(128, myLexemeCount + 1);
+    myMarkers = new ProductionMarker[markers];
+    myMarkerFlags = new byte[markers];
+    myMarkerTypes = new IElementType[markers];
+    myMarkerLexemes = new int[markers];
+    myDoneLexemes = new int[markers];
+    myProduction = new int[markers * 2];
   }
 
   public PsiBuilderImpl(@NotNull final Project project,
@@ -251,10 +271,10 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   @Override
   @Nullable
   public LighterASTNode getLatestDoneMarker() {
-    int index = myProduction.size() - 1;
+    int index = myProductionSize - 1;
     while (index >= 0) {
-      ProductionMarker marker = myProduction.get(index);
-      if (marker instanceof DoneMarker) return ((DoneMarker)marker).myStart;
+      final int item = myProduction[index];
+      if (item < 0) return myMarkers[~item];
       --index;
     }
     return null;
@@ -269,95 +289,37 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return lexemIndex < myLexemeCount && lexemIndex >= 0 ? myLexTypes[lexemIndex] : null;
   }
 
+  /**
+   * A handle of a marker or an error item, all their data is kept in the arrays of the builder.
+   */
   public abstract static class ProductionMarker extends Node {
-    protected int myLexemeIndex;
-    protected WhitespacesAndCommentsBinder myEdgeTokenBinder;
-    protected ProductionMarker myParent;
-    protected ProductionMarker myNext;
+    protected final PsiBuilderImpl myBuilder;
+    protected final int myId;
 
-    public void clean() {
-      myLexemeIndex = 0;
-      myParent = myNext = null;
-    }
-  }
-
-  private static class StartMarker extends ProductionMarker implements Marker {
-    private PsiBuilderImpl myBuilder;
-    private IElementType myType;
-    private DoneMarker myDoneMarker;
-    private Throwable myDebugAllocationPosition;
-    private ProductionMarker myFirstChild;
-    private ProductionMarker myLastChild;
-    private int myHC = -1;
-
-    private StartMarker() {
-      myEdgeTokenBinder = DEFAULT_LEFT_EDGE_TOKEN_BINDER;
+    protected ProductionMarker(final PsiBuilderImpl builder, final int id) {
+      myBuilder = builder;
+      myId = id;
     }
 
     @Override
-    public void clean() {
-      super.clean();
-      myBuilder = null;
-      myType = null;
-      myDoneMarker = null;
-      myDebugAllocationPosition = null;
-      myFirstChild = myLastChild = null;
-      myHC = -1;
-      myEdgeTokenBinder = DEFAULT_LEFT_EDGE_TOKEN_BINDER;
+    public int getStartOffset() {
+      return myBuilder.myLexStarts[myBuilder.myMarkerLexemes[myId]];
     }
+  }
 
-    @Override
-    public int hc() {
-      if (myHC == -1) {
-        PsiBuilderImpl builder = myBuilder;
-        int hc = 0;
-        final CharSequence buf = builder.myText;
-        final char[] bufArray = builder.myTextArray;
-        ProductionMarker child = myFirstChild;
-        int lexIdx = myLexemeIndex;
-
-        while (child != null) {
-          int lastLeaf = child.myLexemeIndex;
-          for (int i = builder.myLexStarts[lexIdx]; i < builder.myLexStarts[lastLeaf]; i++) {
-            hc += bufArray != null ? bufArray[i] : buf.charAt(i);
-          }
-          lexIdx = lastLeaf;
-          hc += child.hc();
-          if (child instanceof StartMarker) {
-            lexIdx = ((StartMarker)child).myDoneMarker.myLexemeIndex;
-          }
-          child = child.myNext;
-        }
-
-        for (int i = builder.myLexStarts[lexIdx]; i < builder.myLexStarts[myDoneMarker.myLexemeIndex]; i++) {
-          hc += bufArray != null ? bufArray[i] : buf.charAt(i);
-        }
-
-        myHC = hc;
-      }
-
-      return myHC;
+  private static class StartMarker extends ProductionMarker implements Marker {
+    private StartMarker(final PsiBuilderImpl builder, final int id) {
+      super(builder, id);
     }
 
     @Override
-    public int getStartOffset() {
-      return myBuilder.myLexStarts[myLexemeIndex];
+    public int hc() {
+      return myBuilder.hashCode(myId);
     }
 
     @Override
     public int getEndOffset() {
-      return myBuilder.myLexStarts[myDoneMarker.myLexemeIndex];
-    }
-
-    public void addChild(ProductionMarker node) {
-      if (myFirstChild == null) {
-        myFirstChild = node;
-        myLastChild = node;
-      }
-      else {
-        myLastChild.myNext = node;
-        myLastChild = node;
-      }
+      return myBuilder.myLexStarts[myBuilder.myDoneLexemes[myId]];
     }
 
     @Override
@@ -377,70 +339,116 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
     @Override
     public void done(IElementType type) {
-      myType = type;
+      myBuilder.myMarkerTypes[myId] = type;
       myBuilder.done(this);
     }
 
     @Override
     public void collapse(IElementType type) {
-      myType = type;
+      myBuilder.myMarkerTypes[myId] = type;
       myBuilder.collapse(this);
     }
 
     @Override
     public void doneBefore(IElementType type, Marker before) {
-      myType = type;
+      myBuilder.myMarkerTypes[myId] = type;
       myBuilder.doneBefore(this, before);
     }
 
     @Override
     public void doneBefore(final IElementType type, final Marker before, final String errorMessage) {
       final StartMarker marker = (StartMarker)before;
-      myBuilder.myProduction.add(myBuilder.myProduction.lastIndexOf(marker),
-                                 new ErrorItem(myBuilder, errorMessage, marker.myLexemeIndex));
+      myBuilder.addProduction(myBuilder.indexOf(marker), myBuilder.createErrorItem(errorMessage, myBuilder.myMarkerLexemes[marker.myId]));
       doneBefore(type, before);
     }
 
     @Override
     public void error(String message) {
-      myType = TokenType.ERROR_ELEMENT;
+      myBuilder.myMarkerTypes[myId] = TokenType.ERROR_ELEMENT;
       myBuilder.error(this, message);
     }
 
     @Override
     public void errorBefore(final String message, final Marker before) {
-      myType = TokenType.ERROR_ELEMENT;
+      myBuilder.myMarkerTypes[myId] = TokenType.ERROR_ELEMENT;
       myBuilder.errorBefore(this, message, before);
     }
 
     @Override
     public IElementType getTokenType() {
-      return myType;
+      return myBuilder.myMarkerTypes[myId];
     }
 
     @Override
     public void setCustomEdgeTokenBinders(final WhitespacesAndCommentsBinder left, final WhitespacesAndCommentsBinder right) {
-      if (left != null) {
-        myEdgeTokenBinder = left;
-      }
-
-      if (right != null) {
-        if (myDoneMarker == null) throw new IllegalArgumentException("Cannot set right-edge processor for unclosed marker");
-        myDoneMarker.myEdgeTokenBinder = right;
-      }
+      myBuilder.setCustomEdgeTokenBinders(this, left, right);
     }
   }
 
   private Marker precede(final StartMarker marker) {
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = indexOf(marker);
     if (idx < 0) {
       LOG.error("Cannot precede dropped or rolled-back marker");
     }
-    StartMarker pre = createMarker(marker.myLexemeIndex);
-    myProduction.add(idx, pre);
+    StartMarker pre = createMarker(myMarkerLexemes[marker.myId]);
+    addProduction(idx, pre.myId);
     return pre;
   }
 
+  private void setCustomEdgeTokenBinders(final StartMarker marker,
+                                         final WhitespacesAndCommentsBinder left,
+                                         final WhitespacesAndCommentsBinder right) {
+    if (left != null) {
+      if (myLeftEdgeBinders == null) myLeftEdgeBinders = new TIntObjectHashMap<WhitespacesAndCommentsBinder>();
+      myLeftEdgeBinders.put(marker.myId, left);
+      myMarkerFlags[marker.myId] |= HAS_EXTRAS;
+    }
+
+    if (right != null) {
+      if ((myMarkerFlags[marker.myId] & DONE) == 0) throw new IllegalArgumentException("Cannot set right-edge processor for unclosed marker");
+      if (myRightEdgeBinders == null) myRightEdgeBinders = new TIntObjectHashMap<WhitespacesAndCommentsBinder>();
+      myRightEdgeBinders.put(marker.myId, right);
+      myMarkerFlags[marker.myId] |= HAS_EXTRAS;
+    }
+  }
+
+  private int hashCode(final int id) {
+    if (myHashCodes == null) {
+      myHashCodes = new int[myMarkerCount];
+      Arrays.fill(myHashCodes, -1);
+    }
+    if (myHashCodes[id] == -1) {
+      int hc = 0;
+      int child = myFirstChildren[id];
+      int lexIdx = myMarkerLexemes[id];
+
+      while (child >= 0) {
+        int lastLeaf = myMarkerLexemes[child];
+        hc += textHashCode(myLexStarts[lexIdx], myLexStarts[lastLeaf]);
+        lexIdx = lastLeaf;
+        if ((myMarkerFlags[child] & ERROR_ITEM) == 0) {
+          hc += hashCode(child);
+          lexIdx = myDoneLexemes[child];
+        }
+        child = myNextSiblings[child];
+      }
+
+      hc += textHashCode(myLexStarts[lexIdx], myLexStarts[myDoneLexemes[id]]);
+
+      myHashCodes[id] = hc;
+    }
+
+    return myHashCodes[id];
+  }
+
+  private int textHashCode(final int start, final int end) {
+    int hc = 0;
+    for (int i = start; i < end; i++) {
+      hc += myTextArray != null ? myTextArray[i] : myText.charAt(i);
+    }
+    return hc;
+  }
+
   private abstract static class Token extends Node {
     protected PsiBuilderImpl myBuilder;
     private IElementType myTokenType;
@@ -553,78 +561,9 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   }
 
-  private static class DoneMarker extends ProductionMarker {
-    private StartMarker myStart;
-    private boolean myCollapse = false;
-
-    public DoneMarker() {
-      myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-    }
-
-    public DoneMarker(final StartMarker marker, final int currentLexeme) {
-      this();
-      myLexemeIndex = currentLexeme;
-      myStart = marker;
-    }
-
-    @Override
-    public void clean() {
-      super.clean();
-      myStart = null;
-      myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-    }
-
-    @Override
-    public int hc() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public IElementType getTokenType() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public int getEndOffset() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-
-    @Override
-    public int getStartOffset() {
-      throw new UnsupportedOperationException("Shall not be called on this kind of markers");
-    }
-  }
-
-  private static class DoneWithErrorMarker extends DoneMarker {
-    private String myMessage;
-
-    public DoneWithErrorMarker(final StartMarker marker, final int currentLexeme, final String message) {
-      super(marker, currentLexeme);
-      myMessage = message;
-    }
-
-    @Override
-    public void clean() {
-      super.clean();
-      myMessage = null;
-    }
-  }
-
   private static class ErrorItem extends ProductionMarker {
-    private final PsiBuilderImpl myBuilder;
-    private String myMessage;
-
-    public ErrorItem(final PsiBuilderImpl builder, final String message, final int idx) {
-      myBuilder = builder;
-      myMessage = message;
-      myLexemeIndex = idx;
-      myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-    }
-
-    @Override
-    public void clean() {
-      super.clean();
-      myMessage = null;
+    private ErrorItem(final PsiBuilderImpl builder, final int id) {
+      super(builder, id);
     }
 
     @Override
@@ -634,12 +573,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
     @Override
     public int getEndOffset() {
-      return myBuilder.myLexStarts[myLexemeIndex];
-    }
-
-    @Override
-    public int getStartOffset() {
-      return myBuilder.myLexStarts[myLexemeIndex];
+      return getStartOffset();
     }
 
     @Override
@@ -774,22 +708,123 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   @Override
   public Marker mark() {
-    if (!myProduction.isEmpty()) {
+    if (myProductionSize > 0) {
       skipWhitespace();
     }
     StartMarker marker = createMarker(myCurrentLexeme);
 
-    myProduction.add(marker);
+    addProduction(myProductionSize, marker.myId);
     return marker;
   }
 
   private StartMarker createMarker(final int lexemeIndex) {
-    StartMarker marker = START_MARKERS.alloc();
-    marker.myLexemeIndex = lexemeIndex;
-    marker.myBuilder = this;
+    final int id = allocateMarker(lexemeIndex, (byte)0);
+    // the handle of a rolled back marker is kept with its id, as the markers pool used to do
+    final ProductionMarker reclaimed = myMarkers[id];
+    final StartMarker marker = reclaimed instanceof StartMarker ? (StartMarker)reclaimed : new StartMarker(this, id);
+    myMarkers[id] = marker;
 
     if (myDebugMode) {
-      marker.myDebugAllocationPosition = new Throwable("Created at the following trace.");
+      if (myDebugAllocationPositions == null) myDebugAllocationPositions = new TIntObjectHashMap<Throwable>();
+      myDebugAllocationPositions.put(id, new Throwable("Created at the following trace."));
+      myMarkerFlags[id] |= HAS_EXTRAS;
+    }
+    return marker;
+  }
+
+  private int createErrorItem(final String message, final int lexemeIndex) {
+    final int id = allocateMarker(lexemeIndex, ERROR_ITEM);
+    myMarkers[id] = null;
+    setErrorMessage(id, message);
+    return id;
+  }
+
+  private int allocateMarker(final int lexemeIndex, final byte flags) {
+    final int id;
+    if (myFreeIdCount > 0) {
+      id = myFreeIds[--myFreeIdCount];
+    }
+    else {
+      if (myMarkerCount == myMarkers.length) {
+        resizeMarkers(myMarkerCount * 2);
+      }
+      id = myMarkerCount++;
+    }
+    if ((myMarkerFlags[id] & HAS_EXTRAS) != 0) {
+      // the id was used by a dropped or rolled back marker
+      if (myErrorMessages != null) myErrorMessages.remove(id);
+      if (myLeftEdgeBinders != null) myLeftEdgeBinders.remove(id);
+      if (myRightEdgeBinders != null) myRightEdgeBinders.remove(id);
+      if (myDebugAllocationPositions != null) myDebugAllocationPositions.remove(id);
+    }
+    myMarkerFlags[id] = flags;
+    myMarkerTypes[id] = null;
+    myMarkerLexemes[id] = lexemeIndex;
+    myDoneLexemes[id] = -1;
+    return id;
+  }
+
+  private void setErrorMessage(final int id, final String message) {
+    if (myErrorMessages == null) myErrorMessages = new TIntObjectHashMap<String>();
+    myErrorMessages.put(id, message);
+    myMarkerFlags[id] |= HAS_EXTRAS;
+  }
+
+  private void resizeMarkers(final int newSize) {
+    final int count = myMarkerCount;
+    ProductionMarker[] newMarkers = new ProductionMarker[newSize];
+    System.arraycopy(myMarkers, 0, newMarkers, 0, count);
+    myMarkers = newMarkers;
+
+    IElementType[] newTypes = new IElementType[newSize];
+    System.arraycopy(myMarkerTypes, 0, newTypes, 0, count);
+    myMarkerTypes = newTypes;
+
+    myMarkerFlags = ArrayUtil.realloc(myMarkerFlags, newSize);
+    myMarkerLexemes = ArrayUtil.realloc(myMarkerLexemes, newSize);
+    myDoneLexemes = ArrayUtil.realloc(myDoneLexemes, newSize);
+  }
+
+  private void freeId(final int id) {
+    if (myFreeIdCount == myFreeIds.length) {
+      myFreeIds = ArrayUtil.realloc(myFreeIds, Math.max(16, myFreeIdCount * 2));
+    }
+    myFreeIds[myFreeIdCount++] = id;
+    myMarkerFlags[id] |= FREE;
+  }
+
+  private void addProduction(final int index, final int item) {
+    if (myProductionSize == myProduction.length) {
+      myProduction = ArrayUtil.realloc(myProduction, myProductionSize * 2);
+    }
+    System.arraycopy(myProduction, index, myProduction, index + 1, myProductionSize - index);
+    myProduction[index] = item;
+    myProductionSize++;
+  }
+
+  private void removeProduction(final int index) {
+    System.arraycopy(myProduction, index + 1, myProduction, index, myProductionSize - index - 1);
+    myProductionSize--;
+  }
+
+  private int lastIndexOf(final int item) {
+    for (int i = myProductionSize - 1; i >= 0; i--) {
+      if (myProduction[i] == item) return i;
+    }
+    return -1;
+  }
+
+  private int indexOf(final Marker marker) {
+    final StartMarker start = (StartMarker)marker;
+    return start.myId < myMarkerCount && myMarkers[start.myId] == start ? lastIndexOf(start.myId) : -1;
+  }
+
+  private ProductionMarker getProductionMarker(final int id) {
+    ProductionMarker marker = myMarkers[id];
+    if (marker == null) {
+      // error items get their handles only when they make it to a light tree
+      marker = new ErrorItem(this, id);
+      myMarkers[id] = marker;
     }
     return marker;
   }
@@ -810,86 +845,108 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return true;
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   private void rollbackTo(Marker marker) {
-    myCurrentLexeme = ((StartMarker)marker).myLexemeIndex;
+    myCurrentLexeme = myMarkerLexemes[((StartMarker)marker).myId];
     markTokenTypeChecked();
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = indexOf(marker);
     if (idx < 0) {
       LOG.error("The marker must be added before rolled back to.");
     }
-    myProduction.removeRange(idx, myProduction.size());
-    START_MARKERS.recycle((StartMarker)marker);
+
+    // the ids of the markers rolled back are reused: cut off if no other markers were created after them, freed otherwise
+    int minId = myMarkerCount;
+    int ids = 0;
+    for (int i = idx; i < myProductionSize; i++) {
+      final int item = myProduction[i];
+      if (item >= 0) {
+        minId = Math.min(minId, item);
+        ids++;
+      }
+      else {
+        myMarkerFlags[~item] &= ~DONE;
+      }
+    }
+    if (ids == myMarkerCount - minId) {
+      myMarkerCount = minId;
+    }
+    else {
+      for (int i = idx; i < myProductionSize; i++) {
+        if (myProduction[i] >= 0) freeId(myProduction[i]);
+      }
+    }
+    myProductionSize = idx;
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void drop(Marker marker) {
-    final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
-    if (doneMarker != null) {
-      myProduction.remove(myProduction.lastIndexOf(doneMarker));
-      DONE_MARKERS.recycle(doneMarker);
-    }
-    final boolean removed = myProduction.remove(myProduction.lastIndexOf(marker)) == marker;
-    if (!removed) {
+    final int id = ((StartMarker)marker).myId;
+    final int idx = indexOf(marker);
+    if (idx < 0) {
       LOG.error("The marker must be added before it is dropped.");
     }
-    START_MARKERS.recycle((StartMarker)marker);
+    if ((myMarkerFlags[id] & DONE) != 0) {
+      removeProduction(lastIndexOf(~id));
+    }
+    removeProduction(idx);
+
+    if (id == myMarkerCount - 1) {
+      myMarkerCount--;
+    }
+    else {
+      freeId(id);
+    }
   }
 
   public void error(Marker marker, String message) {
     doValidityChecks(marker, null);
 
-    DoneWithErrorMarker doneMarker = new DoneWithErrorMarker((StartMarker)marker, myCurrentLexeme, message);
-    boolean tieToTheLeft = isEmpty(((StartMarker)marker).myLexemeIndex, myCurrentLexeme);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    final int id = ((StartMarker)marker).myId;
+    setErrorMessage(id, message);
+    boolean tieToTheLeft = isEmpty(myMarkerLexemes[id], myCurrentLexeme);
+    markDone(id, myCurrentLexeme, tieToTheLeft);
+    addProduction(myProductionSize, ~id);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void errorBefore(Marker marker, String message, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
-
-    DoneWithErrorMarker doneMarker = new DoneWithErrorMarker((StartMarker)marker, ((StartMarker)before).myLexemeIndex, message);
-    boolean tieToTheLeft = isEmpty(((StartMarker)marker).myLexemeIndex, ((StartMarker)before).myLexemeIndex);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    int beforeIndex = indexOf(before);
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+    final int id = ((StartMarker)marker).myId;
+    final int beforeLexeme = myMarkerLexemes[((StartMarker)before).myId];
+    setErrorMessage(id, message);
+    boolean tieToTheLeft = isEmpty(myMarkerLexemes[id], beforeLexeme);
+    markDone(id, beforeLexeme, tieToTheLeft);
+    addProduction(beforeIndex, ~id);
   }
 
   public void done(final Marker marker) {
     doValidityChecks(marker, null);
 
-    DoneMarker doneMarker = DONE_MARKERS.alloc();
-    doneMarker.myStart = (StartMarker)marker;
-    doneMarker.myLexemeIndex = myCurrentLexeme;
-    boolean tieToTheLeft = doneMarker.myStart.myType.isLeftBound() &&
-                           isEmpty(((StartMarker)marker).myLexemeIndex, myCurrentLexeme);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
-
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(doneMarker);
+    final int id = ((StartMarker)marker).myId;
+    boolean tieToTheLeft = myMarkerTypes[id].isLeftBound() && isEmpty(myMarkerLexemes[id], myCurrentLexeme);
+    markDone(id, myCurrentLexeme, tieToTheLeft);
+    addProduction(myProductionSize, ~id);
   }
 
-  @SuppressWarnings({"SuspiciousMethodCalls"})
   public void doneBefore(Marker marker, Marker before) {
     doValidityChecks(marker, before);
 
-    int beforeIndex = myProduction.lastIndexOf(before);
+    int beforeIndex = indexOf(before);
 
-    DoneMarker doneMarker = DONE_MARKERS.alloc();
-    doneMarker.myLexemeIndex = ((StartMarker)before).myLexemeIndex;
-    doneMarker.myStart = (StartMarker)marker;
-    boolean tieToTheLeft = doneMarker.myStart.myType.isLeftBound() &&
-                           isEmpty(((StartMarker)marker).myLexemeIndex, ((StartMarker)before).myLexemeIndex);
-    if (tieToTheLeft) ((StartMarker)marker).myEdgeTokenBinder = DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    final int id = ((StartMarker)marker).myId;
+    final int beforeLexeme = myMarkerLexemes[((StartMarker)before).myId];
+    boolean tieToTheLeft = myMarkerTypes[id].isLeftBound() && isEmpty(myMarkerLexemes[id], beforeLexeme);
+    markDone(id, beforeLexeme, tieToTheLeft);
+    addProduction(beforeIndex, ~id);
+  }
 
-    ((StartMarker)marker).myDoneMarker = doneMarker;
-    myProduction.add(beforeIndex, doneMarker);
+  private void markDone(final int id, final int lexemeIndex, final boolean tieToTheLeft) {
+    myDoneLexemes[id] = lexemeIndex;
+    myMarkerFlags[id] |= DONE;
+    if (tieToTheLeft) {
+      myMarkerFlags[id] |= TIED_TO_THE_LEFT;
+      if (myLeftEdgeBinders != null) myLeftEdgeBinders.remove(id);
+    }
   }
 
   private boolean isEmpty(final int startIdx, final int endIdx) {
@@ -902,26 +959,29 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   public void collapse(final Marker marker) {
     done(marker);
-    ((StartMarker)marker).myDoneMarker.myCollapse = true;
+    myMarkerFlags[((StartMarker)marker).myId] |= COLLAPSED;
   }
 
-  @SuppressWarnings({"UseOfSystemOutOrSystemErr", "SuspiciousMethodCalls"})
+  @SuppressWarnings({"UseOfSystemOutOrSystemErr"})
   private void doValidityChecks(final Marker marker, @Nullable final Marker before) {
-    final DoneMarker doneMarker = ((StartMarker)marker).myDoneMarker;
-    if (doneMarker != null) {
+    final int id = ((StartMarker)marker).myId;
+    if (id >= myMarkerCount || myMarkers[id] != marker || (myMarkerFlags[id] & FREE) != 0) {
+      LOG.error("Marker has been dropped or rolled back.");
+    }
+    if ((myMarkerFlags[id] & DONE) != 0) {
       LOG.error("Marker already done.");
     }
 
     if (!myDebugMode) return;
 
-    int idx = myProduction.lastIndexOf(marker);
+    int idx = indexOf(marker);
     if (idx < 0) {
       LOG.error("Marker has never been added.");
     }
 
-    int endIdx = myProduction.size();
+    int endIdx = myProductionSize;
     if (before != null) {
-      endIdx = myProduction.lastIndexOf(before);
+      endIdx = indexOf(before);
       if (endIdx < 0) {
         LOG.error("'Before' marker has never been added.");
       }
@@ -931,47 +991,31 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
 
     for (int i = endIdx - 1; i > idx; i--) {
-      Object item = myProduction.get(i);
-      if (item instanceof StartMarker) {
-        StartMarker otherMarker = (StartMarker)item;
-        if (otherMarker.myDoneMarker == null) {
-          final Throwable debugAllocOther = otherMarker.myDebugAllocationPosition;
-          final Throwable debugAllocThis = ((StartMarker)marker).myDebugAllocationPosition;
-          if (debugAllocOther != null) {
-            debugAllocThis.printStackTrace(System.err);
-            debugAllocOther.printStackTrace(System.err);
-          }
-          LOG.error("Another not done marker added after this one. Must be done before this.");
+      final int item = myProduction[i];
+      if (item >= 0 && (myMarkerFlags[item] & (ERROR_ITEM | DONE)) == 0) {
+        final Throwable debugAllocOther = myDebugAllocationPositions.get(item);
+        final Throwable debugAllocThis = myDebugAllocationPositions.get(id);
+        if (debugAllocOther != null) {
+          debugAllocThis.printStackTrace(System.err);
+          debugAllocOther.printStackTrace(System.err);
         }
+        LOG.error("Another not done marker added after this one. Must be done before this.");
       }
     }
   }
 
   @Override
   public void error(String messageText) {
-    final ProductionMarker lastMarker = myProduction.get(myProduction.size() - 1);
-    if (lastMarker instanceof ErrorItem && lastMarker.myLexemeIndex == myCurrentLexeme) {
+    final int lastItem = myProduction[myProductionSize - 1];
+    if (lastItem >= 0 && (myMarkerFlags[lastItem] & ERROR_ITEM) != 0 && myMarkerLexemes[lastItem] == myCurrentLexeme) {
       return;
     }
-    myProduction.add(new ErrorItem(this, messageText, myCurrentLexeme));
+    addProduction(myProductionSize, createErrorItem(messageText, myCurrentLexeme));
   }
 
   @Override
   public ASTNode getTreeBuilt() {
-    try {
-      return buildTree();
-    }
-    finally {
-      for (int i = 0, myProductionSize = myProduction.size(); i < myProductionSize; i++) {
-        ProductionMarker marker = myProduction.get(i);
-        if (marker instanceof StartMarker) {
-          START_MARKERS.recycle((StartMarker)marker);
-        }
-        else if (marker instanceof DoneMarker) {
-          DONE_MARKERS.recycle((DoneMarker)marker);
-        }
-      }
-    }
+    return buildTree();
   }
 
   private ASTNode buildTree() {
@@ -984,7 +1028,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
 
     final ASTNode rootNode = createRootAST(rootMarker);
-    bind(rootMarker, (CompositeElement)rootNode);
+    bind(rootMarker.myId, (CompositeElement)rootNode);
 
     if (isTooDeep && !(rootNode instanceof FileElement)) {
       final ASTNode childNode = rootNode.getFirstChildNode();
@@ -1003,7 +1047,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   private ASTNode createRootAST(final StartMarker rootMarker) {
     final IElementType type = rootMarker.getTokenType();
     final ASTNode rootNode = type instanceof ILazyParseableElementType ?
-                             ASTFactory.lazy((ILazyParseableElementType)type, null) : createComposite(rootMarker);
+                             ASTFactory.lazy((ILazyParseableElementType)type, null) : createComposite(rootMarker.myId);
     if (myCharTable == null) {
       myCharTable = rootNode instanceof FileElement ? ((FileElement)rootNode).getCharTable() : new CharTableImpl();
     }
@@ -1061,40 +1105,54 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     markTokenTypeChecked();
     balanceWhiteSpaces();
 
-    LOG.assertTrue(!myProduction.isEmpty(), "Parser produced no markers. Text:\n" + myText);
+    LOG.assertTrue(myProductionSize > 0, "Parser produced no markers. Text:\n" + myText);
 
-    final StartMarker rootMarker = (StartMarker)myProduction.get(0);
-    rootMarker.myParent = rootMarker.myFirstChild = rootMarker.myLastChild = rootMarker.myNext = null;
-    StartMarker curNode = rootMarker;
-    final Stack<StartMarker> nodes = new Stack<StartMarker>();
-    nodes.push(rootMarker);
+    final int count = myMarkerCount;
+    if (myParents == null || myParents.length < count) {
+      myParents = new int[count];
+      myFirstChildren = new int[count];
+      myLastChildren = new int[count];
+      myNextSiblings = new int[count];
+    }
+    myHashCodes = null;
+
+    final int rootId = myProduction[0];
+    final StartMarker rootMarker = (StartMarker)myMarkers[rootId];
+    myParents[rootId] = myFirstChildren[rootId] = myLastChildren[rootId] = myNextSiblings[rootId] = -1;
+    int curNode = rootId;
 
     @SuppressWarnings({"MultipleVariablesInDeclaration"}) int lastErrorIndex = -1, maxDepth = 0, curDepth = 0;
-    for (int i = 1; i < myProduction.size(); i++) {
-      final ProductionMarker item = myProduction.get(i);
-
-      if (curNode == null) LOG.error("Unexpected end of the production");
-
-      item.myParent = curNode;
-      if (item instanceof StartMarker) {
-        final StartMarker marker = (StartMarker)item;
-        marker.myFirstChild = marker.myLastChild = marker.myNext = null;
-        curNode.addChild(marker);
-        nodes.push(curNode);
-        curNode = marker;
-        curDepth++;
-        if (curDepth > maxDepth) maxDepth = curDepth;
-      }
-      else if (item instanceof DoneMarker) {
-        if (((DoneMarker)item).myStart != curNode) LOG.error(UNBALANCED_MESSAGE);
-        curNode = nodes.pop();
+    for (int i = 1; i < myProductionSize; i++) {
+      final int item = myProduction[i];
+
+      if (item < 0) {
+        if (~item != curNode) LOG.error(UNBALANCED_MESSAGE);
+        // the root stays current after it is done
+        if (curNode != rootId) curNode = myParents[curNode];
         curDepth--;
+        continue;
       }
-      else if (item instanceof ErrorItem) {
-        int curToken = item.myLexemeIndex;
+
+      if ((myMarkerFlags[item] & ERROR_ITEM) != 0) {
+        int curToken = myMarkerLexemes[item];
         if (curToken == lastErrorIndex) continue;
         lastErrorIndex = curToken;
-        curNode.addChild(item);
+      }
+
+      myParents[item] = curNode;
+      myFirstChildren[item] = myLastChildren[item] = myNextSiblings[item] = -1;
+      if (myFirstChildren[curNode] < 0) {
+        myFirstChildren[curNode] = item;
+      }
+      else {
+        myNextSiblings[myLastChildren[curNode]] = item;
+      }
+      myLastChildren[curNode] = item;
+
+      if ((myMarkerFlags[item] & ERROR_ITEM) == 0) {
+        curNode = item;
+        curDepth++;
+        if (curDepth > maxDepth) maxDepth = curDepth;
       }
     }
 
@@ -1103,9 +1161,9 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       LOG.error("Tokens " + missed + " were not inserted into the tree. Text:\n" + myText);
     }
 
-    if (rootMarker.myDoneMarker.myLexemeIndex < myLexemeCount) {
-      final List<IElementType> missed = CollectionFactory.arrayList(myLexTypes, rootMarker.myDoneMarker.myLexemeIndex, myLexemeCount);
-      LOG.error("Tokens " + missed + " are outside of root element \"" + rootMarker.myType + "\". Text:\n" + myText);
+    if ((myMarkerFlags[rootId] & DONE) != 0 && myDoneLexemes[rootId] < myLexemeCount) {
+      final List<IElementType> missed = CollectionFactory.arrayList(myLexTypes, myDoneLexemes[rootId], myLexemeCount);
+      LOG.error("Tokens " + missed + " are outside of root element \"" + myMarkerTypes[rootId] + "\". Text:\n" + myText);
     }
 
     if (myLexStarts.length <= myCurrentLexeme + 1) {
@@ -1116,7 +1174,7 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     myLexStarts[myCurrentLexeme + 1] = 0;
     myLexTypes[myCurrentLexeme] = null;
 
-    LOG.assertTrue(curNode == rootMarker, UNBALANCED_MESSAGE);
+    LOG.assertTrue(curNode == rootId && (myMarkerFlags[rootId] & DONE) != 0, UNBALANCED_MESSAGE);
 
     checkTreeDepth(maxDepth, rootMarker.getTokenType() instanceof IFileElementType);
 
@@ -1124,31 +1182,66 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
   }
 
   private void balanceWhiteSpaces() {
-    for (int i = 1; i < myProduction.size() - 1; i++) {
-      final ProductionMarker item = myProduction.get(i);
+    for (int i = 1; i < myProductionSize - 1; i++) {
+      final int item = myProduction[i];
+      final int id = item < 0 ? ~item : item;
 
-      if (item instanceof StartMarker && ((StartMarker)item).myDoneMarker == null) {
+      if (item >= 0 && (myMarkerFlags[id] & (ERROR_ITEM | DONE)) == 0) {
         LOG.error(UNBALANCED_MESSAGE);
       }
 
-      final int prevProductionLexIndex = myProduction.get(i - 1).myLexemeIndex;
-      int idx = item.myLexemeIndex;
+      final int prevItem = myProduction[i - 1];
+      final int prevProductionLexIndex = prevItem < 0 ? myDoneLexemes[~prevItem] : myMarkerLexemes[prevItem];
+      final int lexemeIndex = item < 0 ? myDoneLexemes[id] : myMarkerLexemes[id];
+      int idx = lexemeIndex;
       while (idx > prevProductionLexIndex && whitespaceOrComment(myLexTypes[idx - 1])) idx--;
       final int wsStartIndex = idx;
 
-      int wsEndIndex = item.myLexemeIndex;
+      int wsEndIndex = lexemeIndex;
       while (wsEndIndex < myLexemeCount && whitespaceOrComment(myLexTypes[wsEndIndex])) wsEndIndex++;
 
-      final List<IElementType> wsTokens = CollectionFactory.arrayList(myLexTypes, wsStartIndex, wsEndIndex);
-      final boolean atEnd = wsStartIndex == 0 || wsEndIndex == myLexemeCount;
-      final WhitespacesAndCommentsBinder.TokenTextGetter getter = new WhitespacesAndCommentsBinder.TokenTextGetter() {
-        @Override
-        public CharSequence get(final int i) {
-          return myText.subSequence(myLexStarts[wsStartIndex + i], myLexStarts[wsStartIndex + i + 1]);
-        }
-      };
-      item.myLexemeIndex = wsStartIndex + item.myEdgeTokenBinder.getEdgePosition(wsTokens, atEnd, getter);
+      if (wsStartIndex == wsEndIndex) continue;
+
+      final WhitespacesAndCommentsBinder binder = getEdgeTokenBinder(item);
+      final int edgePosition;
+      if (binder == DEFAULT_LEFT_EDGE_TOKEN_BINDER) {
+        edgePosition = wsEndIndex - wsStartIndex;
+      }
+      else if (binder == DEFAULT_RIGHT_EDGE_TOKEN_BINDER) {
+        edgePosition = 0;
+      }
+      else {
+        final List<IElementType> wsTokens = CollectionFactory.arrayList(myLexTypes, wsStartIndex, wsEndIndex);
+        final boolean atEnd = wsStartIndex == 0 || wsEndIndex == myLexemeCount;
+        final WhitespacesAndCommentsBinder.TokenTextGetter getter = new WhitespacesAndCommentsBinder.TokenTextGetter() {
+          @Override
+          public CharSequence get(final int i) {
+            return myText.subSequence(myLexStarts[wsStartIndex + i], myLexStarts[wsStartIndex + i + 1]);
+          }
+        };
+        edgePosition = binder.getEdgePosition(wsTokens, atEnd, getter);
+      }
+
+      if (item < 0) {
+        myDoneLexemes[id] = wsStartIndex + edgePosition;
+      }
+      else {
+        myMarkerLexemes[id] = wsStartIndex + edgePosition;
+      }
+    }
+  }
+
+  private WhitespacesAndCommentsBinder getEdgeTokenBinder(final int item) {
+    if (item < 0) {
+      final WhitespacesAndCommentsBinder binder = myRightEdgeBinders != null ? myRightEdgeBinders.get(~item) : null;
+      return binder != null ? binder : DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
     }
+    if ((myMarkerFlags[item] & ERROR_ITEM) != 0) {
+      return DEFAULT_RIGHT_EDGE_TOKEN_BINDER;
+    }
+    final WhitespacesAndCommentsBinder binder = myLeftEdgeBinders != null ? myLeftEdgeBinders.get(item) : null;
+    if (binder != null) return binder;
+    return (myMarkerFlags[item] & TIED_TO_THE_LEFT) != 0 ? DEFAULT_RIGHT_EDGE_TOKEN_BINDER : DEFAULT_LEFT_EDGE_TOKEN_BINDER;
   }
 
   private void checkTreeDepth(final int maxDepth, final boolean isFileRoot) {
@@ -1165,44 +1258,43 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     }
   }
 
-  private void bind(final StartMarker rootMarker, final CompositeElement rootNode) {
-    StartMarker curMarker = rootMarker;
+  private void bind(final int rootMarker, final CompositeElement rootNode) {
+    // the items walked are the ids of the markers and error items, and ~id where a marker is done
+    int curMarker = rootMarker;
     CompositeElement curNode = rootNode;
 
-    int lexIndex = rootMarker.myLexemeIndex;
-    ProductionMarker item = rootMarker.myFirstChild != null ? rootMarker.myFirstChild : rootMarker.myDoneMarker;
+    int lexIndex = myMarkerLexemes[rootMarker];
+    int item = myFirstChildren[rootMarker] >= 0 ? myFirstChildren[rootMarker] : ~rootMarker;
     while (true) {
-      lexIndex = insertLeaves(lexIndex, item.myLexemeIndex, curNode);
-
-      if (item == rootMarker.myDoneMarker) break;
+      lexIndex = insertLeaves(lexIndex, item < 0 ? myDoneLexemes[~item] : myMarkerLexemes[item], curNode);
 
-      if (item instanceof StartMarker) {
-        final StartMarker marker = (StartMarker)item;
-        if (!marker.myDoneMarker.myCollapse) {
-          curMarker = marker;
+      if (item == ~rootMarker) break;
 
-          final CompositeElement childNode = createComposite(marker);
-          curNode.rawAddChildrenWithoutNotifications(childNode);
-          curNode = childNode;
-
-          item = marker.myFirstChild != null ? marker.myFirstChild : marker.myDoneMarker;
-          continue;
-        }
-        else {
-          lexIndex = collapseLeaves(curNode, marker);
-        }
+      if (item < 0) {
+        final int start = ~item;
+        curMarker = myParents[start];
+        curNode = curNode.getTreeParent();
+        item = start;
       }
-      else if (item instanceof ErrorItem) {
-        final CompositeElement errorElement = Factory.createErrorElement(((ErrorItem)item).myMessage);
+      else if ((myMarkerFlags[item] & ERROR_ITEM) != 0) {
+        final CompositeElement errorElement = Factory.createErrorElement(myErrorMessages.get(item));
         curNode.rawAddChildrenWithoutNotifications(errorElement);
       }
-      else if (item instanceof DoneMarker) {
-        curMarker = (StartMarker)((DoneMarker)item).myStart.myParent;
-        curNode = curNode.getTreeParent();
-        item = ((DoneMarker)item).myStart;
+      else if ((myMarkerFlags[item] & COLLAPSED) == 0) {
+        curMarker = item;
+
+        final CompositeElement childNode = createComposite(item);
+        curNode.rawAddChildrenWithoutNotifications(childNode);
+        curNode = childNode;
+
+        item = myFirstChildren[item] >= 0 ? myFirstChildren[item] : ~item;
+        continue;
+      }
+      else {
+        lexIndex = collapseLeaves(curNode, item);
       }
 
-      item = item.myNext != null ? item.myNext : curMarker.myDoneMarker;
+      item = myNextSiblings[item] >= 0 ? myNextSiblings[item] : ~curMarker;
     }
   }
 
@@ -1223,18 +1315,18 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return curToken;
   }
 
-  private int collapseLeaves(final CompositeElement ast, final StartMarker startMarker) {
-    final int start = myLexStarts[startMarker.myLexemeIndex];
-    final int end = myLexStarts[startMarker.myDoneMarker.myLexemeIndex];
-    final TreeElement leaf = createLeaf(startMarker.myType, start, end);
+  private int collapseLeaves(final CompositeElement ast, final int marker) {
+    final int start = myLexStarts[myMarkerLexemes[marker]];
+    final int end = myLexStarts[myDoneLexemes[marker]];
+    final TreeElement leaf = createLeaf(myMarkerTypes[marker], start, end);
     ast.rawAddChildrenWithoutNotifications(leaf);
-    return startMarker.myDoneMarker.myLexemeIndex;
+    return myDoneLexemes[marker];
   }
 
-  private static CompositeElement createComposite(final StartMarker marker) {
-    final IElementType type = marker.myType;
+  private CompositeElement createComposite(final int marker) {
+    final IElementType type = myMarkerTypes[marker];
     if (type == TokenType.ERROR_ELEMENT) {
-      String message = marker.myDoneMarker instanceof DoneWithErrorMarker ? ((DoneWithErrorMarker)marker.myDoneMarker).myMessage : null;
+      String message = myErrorMessages != null ? myErrorMessages.get(marker) : null;
       return Factory.createErrorElement(message);
     }
 
@@ -1247,11 +1339,14 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
 
   @Nullable
   public static String getErrorMessage(final LighterASTNode node) {
-    if (node instanceof ErrorItem) return ((ErrorItem)node).myMessage;
+    if (node instanceof ErrorItem) {
+      final ErrorItem item = (ErrorItem)node;
+      return item.myBuilder.myErrorMessages.get(item.myId);
+    }
     if (node instanceof StartMarker) {
       final StartMarker marker = (StartMarker)node;
-      if (marker.myType == TokenType.ERROR_ELEMENT && marker.myDoneMarker instanceof DoneWithErrorMarker) {
-        return ((DoneWithErrorMarker)marker.myDoneMarker).myMessage;
+      if (marker.getTokenType() == TokenType.ERROR_ELEMENT && marker.myBuilder.myErrorMessages != null) {
+        return marker.myBuilder.myErrorMessages.get(marker.myId);
       }
     }
 
@@ -1406,7 +1501,9 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     @Override
     public LighterASTNode getParent(@NotNull final LighterASTNode node) {
       if (node instanceof StartMarker) {
-        return ((StartMarker)node).myParent;
+        final StartMarker marker = (StartMarker)node;
+        final int parent = marker.myBuilder.myParents[marker.myId];
+        return parent >= 0 ? marker.myBuilder.myMarkers[parent] : null;
       }
       throw new UnsupportedOperationException("Unknown node type: " + node);
     }
@@ -1428,30 +1525,32 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
       }
 
       if (item instanceof Token || item instanceof ErrorItem) return 0;
-      StartMarker marker = (StartMarker)item;
+      final StartMarker marker = (StartMarker)item;
+      final PsiBuilderImpl builder = marker.myBuilder;
 
       count = 0;
-      ProductionMarker child = marker.myFirstChild;
-      int lexIndex = marker.myLexemeIndex;
-      while (child != null) {
-        lexIndex = insertLeaves(lexIndex, child.myLexemeIndex, into, marker.myBuilder);
-
-        if (child instanceof StartMarker && ((StartMarker)child).myDoneMarker.myCollapse) {
-          int lastIndex = ((StartMarker)child).myDoneMarker.myLexemeIndex;
-          insertLeaf(into, child.getTokenType(), marker.myBuilder, child.myLexemeIndex, lastIndex);
+      int child = builder.myFirstChildren[marker.myId];
+      int lexIndex = builder.myMarkerLexemes[marker.myId];
+      while (child >= 0) {
+        lexIndex = insertLeaves(lexIndex, builder.myMarkerLexemes[child], into, builder);
+
+        final byte flags = builder.myMarkerFlags[child];
+        if ((flags & COLLAPSED) != 0) {
+          int lastIndex = builder.myDoneLexemes[child];
+          insertLeaf(into, builder.myMarkerTypes[child], builder, builder.myMarkerLexemes[child], lastIndex);
         }
         else {
           ensureCapacity(into);
-          into.get()[count++] = child;
+          into.get()[count++] = builder.getProductionMarker(child);
         }
 
-        if (child instanceof StartMarker) {
-          lexIndex = ((StartMarker)child).myDoneMarker.myLexemeIndex;
+        if ((flags & ERROR_ITEM) == 0) {
+          lexIndex = builder.myDoneLexemes[child];
         }
-        child = child.myNext;
+        child = builder.myNextSiblings[child];
       }
 
-      insertLeaves(lexIndex, marker.myDoneMarker.myLexemeIndex, into, marker.myBuilder);
+      insertLeaves(lexIndex, builder.myDoneLexemes[marker.myId], into, builder);
 
       return count;
     }
@@ -1532,13 +1631,13 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
         return token.myBuilder.createLeaf(token.getTokenType(), token.myTokenStart, token.myTokenEnd);
       }
       else if (n instanceof ErrorItem) {
-        return Factory.createErrorElement(((ErrorItem)n).myMessage);
+        return Factory.createErrorElement(getErrorMessage(n));
       }
       else {
         final StartMarker startMarker = (StartMarker)n;
         final CompositeElement composite = n == myRoot ? (CompositeElement)myRoot.myBuilder.createRootAST(myRoot)
-                                                         : createComposite(startMarker);
-        startMarker.myBuilder.bind(startMarker, composite);
+                                                         : startMarker.myBuilder.createComposite(startMarker.myId);
+        startMarker.myBuilder.bind(startMarker.myId, composite);
         return composite;
       }
     }
@@ -1571,65 +1670,6 @@ public class PsiBuilderImpl extends UserDataHolderBase implements PsiBuilder, AS
     return ASTFactory.leaf(type, text);
   }
 
-  /**
-   * just to make removeRange method available.
-   */
-  private static class MyList extends ArrayList<ProductionMarker> {
-    private static final Field ourElementDataField;
-
-    static {
-      Field f;
-      try {
-        f = ArrayList.class.getDeclaredField("elementData");
-        f.setAccessible(true);
-      }
-      catch(NoSuchFieldException e) {
-        // IBM J9 does not have the field
-        f = null;
-
-      }
-      ourElementDataField = f;
-    }
-
-    private Object[] cachedElementData;
-
-    @Override
-    public void removeRange(final int fromIndex, final int toIndex) {
-      super.removeRange(fromIndex, toIndex);
-    }
-
-    MyList() {
-      super(256);
-    }
-
-    @Override
-    public int lastIndexOf(final Object o) {
-      if (cachedElementData == null) return super.lastIndexOf(o);
-      for (int i = size() - 1; i >= 0; i--) {
-        if (cachedElementData[i] == o) return i;
-      }
-      return -1;
-    }
-
-    @Override
-    public void ensureCapacity(final int minCapacity) {
-      if (cachedElementData == null || minCapacity >= cachedElementData.length) {
-        super.ensureCapacity(minCapacity);
-        initCachedField();
-      }
-    }
-
-    private void initCachedField() {
-      if (ourElementDataField == null) return;
-      try {
-        cachedElementData = (Object[])ourElementDataField.get(this);
-      }
-      catch (Exception e) {
-        LOG.error(e);
-      }
-    }
-  }
-
   @SuppressWarnings("unchecked")
   @Override
   public <T> T getUserDataUnprotected(@NotNull final Key<T> key) {
@@ -18,6 +18,7 @@ package com.intellij.openapi.editor.impl;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.TextChange;
 import com.intellij.util.text.CharArrayCharSequence;
+import com.intellij.util.text.CharArrayUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
@@ -49,6 +50,43 @@ public class BulkChangesMerger {
   public CharSequence mergeToCharSequence(@NotNull char[] text, int textLength, @NotNull List<? extends TextChange> changes) {
     return new CharArrayCharSequence(mergeToCharArray(text, textLength, changes));
   }
+
+  /**
+   * Same as {@link #mergeToCharSequence(char[], int, List)} but doesn't need the whole text in an array, only the unchanged
+   * parts of the given text are copied to the result.
+   */
+  public CharSequence mergeToCharSequence(@NotNull CharSequence text, int textLength, @NotNull List<? extends TextChange> changes) {
+    int newLength = textLength;
+    for (TextChange change : changes) {
+      newLength += change.getText().length() - (change.getEnd() - change.getStart());
+    }
+    char[] data = new char[newLength];
+    int oldEndOffset = textLength;
+    int newEndOffset = data.length;
+    for (int i = changes.size() - 1; i >= 0; i--) {
+      TextChange change = changes.get(i);
+      int symbolsToMoveNumber = oldEndOffset - change.getEnd();
+      getChars(text, change.getEnd(), data, newEndOffset - symbolsToMoveNumber, symbolsToMoveNumber);
+      newEndOffset -= symbolsToMoveNumber;
+
+      char[] changeSymbols = change.getChars();
+      newEndOffset -= changeSymbols.length;
+      System.arraycopy(changeSymbols, 0, data, newEndOffset, changeSymbols.length);
+      oldEndOffset = change.getStart();
+    }
+    getChars(text, 0, data, 0, oldEndOffset);
+    return new CharArrayCharSequence(data);
+  }
+
+  private static void getChars(@NotNull CharSequence src, int srcOffset, @NotNull char[] dst, int dstOffset, int length) {
+    if (length <= 0) return;
+    if (src instanceof ImmutableText) {
+      ((ImmutableText)src).getChars(srcOffset, srcOffset + length, dst, dstOffset);
+    }
+    else {
+      CharArrayUtil.getChars(src, dst, srcOffset, dstOffset, length);
+    }
+  }
   
   /**
    * Merges given changes within the given text and returns result as a new char array.
@@ -40,6 +40,12 @@ abstract class CharArray implements CharSequenceBackedByArray {
   private static final boolean DISABLE_DEFERRED_PROCESSING = Boolean.getBoolean("idea.document.deny.deferred.changes");
   @SuppressWarnings("UseOfArchaicSystemPropertyAccessors")
   private static final boolean DEBUG_DEFERRED_PROCESSING = Boolean.getBoolean("idea.document.debug.bulk.processing");
+
+  /**
+   * Texts of at least that many chars are kept as {@link ImmutableText} instead of an array, so that modifications don't move
+   * the text after the modified fragment and the original text isn't copied on the first modification.
+   */
+  private static final int IMMUTABLE_TEXT_THRESHOLD = Integer.getInteger("idea.document.immutable.text.threshold", 8 * 1024 * 1024);
   
   private static final Logger LOG = Logger.getInstance("#" + CharArray.class.getName());
 
@@ -64,6 +70,8 @@ abstract class CharArray implements CharSequenceBackedByArray {
   private CharSequence          myOriginalSequence;
   private char[]                myArray;
   private SoftReference<String> myStringRef; // buffers String value - for not to generate it every time
+  private ImmutableText         myImmutableText; // text of a large document, myArray and myOriginalSequence are not used then
+  private SoftReference<char[]> myImmutableTextCharsRef;
   private int                   myBufferSize;
   private int                   myDeferredShift;
   private boolean               myDeferredChangeMode;
@@ -151,10 +159,18 @@ abstract class CharArray implements CharSequenceBackedByArray {
   protected abstract void afterChangedUpdate(@NotNull DocumentEvent event, long newModificationStamp);
 
   public void setText(@Nullable final DocumentImpl subj, final CharSequence chars) {
-    myOriginalSequence = chars;
+    if (chars.length() >= IMMUTABLE_TEXT_THRESHOLD && !myDebugDeferredProcessing) {
+      myImmutableText = ImmutableText.valueOf(chars);
+      myOriginalSequence = null;
+    }
+    else {
+      myImmutableText = null;
+      myOriginalSequence = chars;
+    }
     myArray = null;
     myCount = chars.length();
     myStringRef = null;
+    myImmutableTextCharsRef = null;
     TextChangesStorage storage = myDeferredChangesStorage.get();
     storage.getLock().lock();
     try {
@@ -192,6 +208,10 @@ abstract class CharArray implements CharSequenceBackedByArray {
   }
 
   private void doReplace(int startOffset, int endOffset, CharSequence newString) {
+    if (myImmutableText != null) {
+      updateImmutableText(myImmutableText.replace(startOffset, endOffset, newString));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -227,6 +247,10 @@ abstract class CharArray implements CharSequenceBackedByArray {
     if (startIndex == endIndex) {
       return;
     }
+    if (myImmutableText != null) {
+      updateImmutableText(myImmutableText.delete(startIndex, endIndex));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -253,6 +277,10 @@ abstract class CharArray implements CharSequenceBackedByArray {
   }
 
   private void doInsert(final CharSequence s, final int startIndex) {
+    if (myImmutableText != null) {
+      updateImmutableText(myImmutableText.insert(startIndex, s));
+      return;
+    }
     prepareForModification();
 
     if (isDeferredChangeMode()) {
@@ -310,6 +338,13 @@ abstract class CharArray implements CharSequenceBackedByArray {
     }
   }
   
+  private void updateImmutableText(@NotNull ImmutableText text) {
+    myImmutableText = text;
+    myCount = text.length();
+    myStringRef = null;
+    myImmutableTextCharsRef = null;
+  }
+
   private void prepareForModification() {
     if (myOriginalSequence != null) {
       myArray = new char[myOriginalSequence.length()];
@@ -321,6 +356,7 @@ abstract class CharArray implements CharSequenceBackedByArray {
 
   public CharSequence getCharArray() {
     if (myOriginalSequence != null) return myOriginalSequence;
+    if (myImmutableText != null) return myImmutableText;
     return this;
   }
 
@@ -330,6 +366,9 @@ abstract class CharArray implements CharSequenceBackedByArray {
       if (myOriginalSequence != null) {
         str = myOriginalSequence.toString();
       }
+      else if (myImmutableText != null) {
+        str = myImmutableText.toString();
+      }
       else if (!hasDeferredChanges()) {
         str = new String(myArray, myStart, myCount);
       }
@@ -364,6 +403,7 @@ abstract class CharArray implements CharSequenceBackedByArray {
     }
     i += myStart;
     if (myOriginalSequence != null) return myOriginalSequence.charAt(i);
+    if (myImmutableText != null) return myImmutableText.charAt(i);
     final char result;
     if (hasDeferredChanges()) {
       TextChangesStorage storage = myDeferredChangesStorage.get();
@@ -396,6 +436,9 @@ abstract class CharArray implements CharSequenceBackedByArray {
     if (myOriginalSequence != null) {
       return myOriginalSequence.subSequence(start, end);
     }
+    if (myImmutableText != null) {
+      return myImmutableText.subSequence(start, end);
+    }
     if (hasDeferredChanges()) {
       return new CharArray(myBufferSize, myDeferredChangesStorage.get(), myArray, myStart + start, myStart + end) {
         @NotNull
@@ -434,6 +477,14 @@ abstract class CharArray implements CharSequenceBackedByArray {
   
   @Override
   public char[] getChars() {
+    if (myImmutableText != null) {
+      char[] chars = myImmutableTextCharsRef != null ? myImmutableTextCharsRef.get() : null;
+      if (chars == null) {
+        chars = myImmutableText.toCharArray();
+        myImmutableTextCharsRef = new SoftReference<char[]>(chars);
+      }
+      return chars;
+    }
     if (myOriginalSequence != null) {
       if (myArray == null) {
         myArray = CharArrayUtil.fromSequence(myOriginalSequence);
@@ -458,6 +509,9 @@ abstract class CharArray implements CharSequenceBackedByArray {
     if (myOriginalSequence != null) {
       CharArrayUtil.getChars(myOriginalSequence,dst, dstOffset);
     }
+    else if (myImmutableText != null) {
+      myImmutableText.getChars(0, myCount, dst, dstOffset);
+    }
     else {
       System.arraycopy(myArray, myStart, dst, dstOffset, length());
     }
@@ -478,7 +532,10 @@ abstract class CharArray implements CharSequenceBackedByArray {
   public CharSequence substring(final int start, final int end) {
     if (start == end) return "";
     final CharSequence result;
-    if (myOriginalSequence == null) {
+    if (myImmutableText != null) {
+      result = myImmutableText.subSequence(start, end);
+    }
+    else if (myOriginalSequence == null) {
       TextChangesStorage storage = myDeferredChangesStorage.get();
       storage.getLock().lock();
       try {
@@ -529,7 +586,8 @@ abstract class CharArray implements CharSequenceBackedByArray {
    *            <code>false</code> otherwise
    */
   public boolean isDeferredChangeMode() {
-    return !DISABLE_DEFERRED_PROCESSING && myDeferredChangeMode;
+    // modifications of the immutable text don't move the rest of the text, there is nothing to defer
+    return !DISABLE_DEFERRED_PROCESSING && myDeferredChangeMode && myImmutableText == null;
   }
 
   public boolean hasDeferredChanges() {
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.util.text.CharArrayCharSequence;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable text kept as a balanced tree (rope) of pieces of other char sequences. Modifications produce new texts sharing most of
+ * the tree with the original one, so inserting or removing a fragment takes O(log n) time and doesn't copy the text around it.
+ * <p/>
+ * Pieces of the initial text are not copied, the inserted fragments are copied to strings, small neighbouring pieces are merged.
+ */
+final class ImmutableText implements CharSequence {
+  static final ImmutableText EMPTY = new ImmutableText(new Leaf("", 0, 0));
+
+  /** Pieces not longer than that are merged with their neighbours. */
+  private static final int BLOCK_SIZE = 64;
+
+  private final Node myRoot;
+  /** The last leaf {@link #charAt(int)} has found in, for the sequential access not to descend from the root every time. */
+  private volatile LeafRef myLastLeaf;
+
+  private ImmutableText(@NotNull Node root) {
+    myRoot = root;
+  }
+
+  @NotNull
+  static ImmutableText valueOf(@NotNull CharSequence text) {
+    if (text instanceof ImmutableText) return (ImmutableText)text;
+    if (text.length() == 0) return EMPTY;
+    return new ImmutableText(new Leaf(text, 0, text.length()));
+  }
+
+  @Override
+  public int length() {
+    return myRoot.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException("Wrong offset: " + index + "; count:" + length());
+    }
+    LeafRef ref = myLastLeaf;
+    if (ref == null || index < ref.start || index >= ref.start + ref.leaf.length()) {
+      ref = findLeaf(index);
+      myLastLeaf = ref;
+    }
+    return ref.leaf.charAt(index - ref.start);
+  }
+
+  private LeafRef findLeaf(int index) {
+    Node node = myRoot;
+    int start = 0;
+    while (node instanceof Concat) {
+      final Concat concat = (Concat)node;
+      final int leftLength = concat.myLeft.length();
+      if (index < leftLength) {
+        node = concat.myLeft;
+      }
+      else {
+        start += leftLength;
+        index -= leftLength;
+        node = concat.myRight;
+      }
+    }
+    return new LeafRef((Leaf)node, start);
+  }
+
+  @NotNull
+  @Override
+  public ImmutableText subSequence(int start, int end) {
+    checkRange(start, end);
+    if (start == 0 && end == length()) return this;
+    if (start == end) return EMPTY;
+    return new ImmutableText(myRoot.subNode(start, end));
+  }
+
+  @NotNull
+  ImmutableText insert(int index, @NotNull CharSequence text) {
+    checkRange(index, index);
+    if (text.length() == 0) return this;
+    final Node inserted = text instanceof ImmutableText ? ((ImmutableText)text).myRoot : new Leaf(text.toString(), 0, text.length());
+    return new ImmutableText(concat(concat(prefix(index), inserted), suffix(index)));
+  }
+
+  @NotNull
+  ImmutableText delete(int start, int end) {
+    checkRange(start, end);
+    if (start == end) return this;
+    return new ImmutableText(concat(prefix(start), suffix(end)));
+  }
+
+  @NotNull
+  ImmutableText replace(int start, int end, @NotNull CharSequence text) {
+    return delete(start, end).insert(start, text);
+  }
+
+  private Node prefix(int end) {
+    return end == 0 ? EMPTY.myRoot : myRoot.subNode(0, end);
+  }
+
+  private Node suffix(int start) {
+    return start == length() ? EMPTY.myRoot : myRoot.subNode(start, length());
+  }
+
+  /**
+   * Copies the characters of the text to the given array.
+   */
+  void getChars(int start, int end, @NotNull char[] dest, int destPos) {
+    checkRange(start, end);
+    myRoot.getChars(start, end, dest, destPos);
+  }
+
+  @NotNull
+  char[] toCharArray() {
+    final char[] result = new char[length()];
+    getChars(0, result.length, result, 0);
+    return result;
+  }
+
+  @NotNull
+  @Override
+  public String toString() {
+    return new String(toCharArray());
+  }
+
+  int getDepth() {
+    return myRoot.depth();
+  }
+
+  private void checkRange(int start, int end) {
+    if (start < 0 || start > end || end > length()) {
+      throw new IndexOutOfBoundsException("Wrong range: [" + start + ", " + end + "); length: " + length());
+    }
+  }
+
+  private static Node concat(Node left, Node right) {
+    if (left.length() == 0) return right;
+    if (right.length() == 0) return left;
+    if (left.length() + right.length() <= BLOCK_SIZE) {
+      final char[] chars = new char[left.length() + right.length()];
+      left.getChars(0, left.length(), chars, 0);
+      right.getChars(0, right.length(), chars, left.length());
+      return new Leaf(new String(chars), 0, chars.length);
+    }
+
+    // AVL join: descend along the side of the higher tree and rotate on the way back if the heights differ by two
+    if (left.depth() > right.depth() + 1) {
+      final Concat l = (Concat)left;
+      final Node joined = concat(l.myRight, right);
+      if (joined.depth() <= l.myLeft.depth() + 1) return new Concat(l.myLeft, joined);
+      final Concat j = (Concat)joined;
+      if (j.myLeft.depth() > j.myRight.depth()) {
+        final Concat jl = (Concat)j.myLeft;
+        return new Concat(new Concat(l.myLeft, jl.myLeft), new Concat(jl.myRight, j.myRight));
+      }
+      return new Concat(new Concat(l.myLeft, j.myLeft), j.myRight);
+    }
+    if (right.depth() > left.depth() + 1) {
+      final Concat r = (Concat)right;
+      final Node joined = concat(left, r.myLeft);
+      if (joined.depth() <= r.myRight.depth() + 1) return new Concat(joined, r.myRight);
+      final Concat j = (Concat)joined;
+      if (j.myRight.depth() > j.myLeft.depth()) {
+        final Concat jr = (Concat)j.myRight;
+        return new Concat(new Concat(j.myLeft, jr.myLeft), new Concat(jr.myRight, r.myRight));
+      }
+      return new Concat(j.myLeft, new Concat(j.myRight, r.myRight));
+    }
+    return new Concat(left, right);
+  }
+
+  private abstract static class Node {
+    abstract int length();
+
+    abstract int depth();
+
+    abstract Node subNode(int start, int end);
+
+    abstract void getChars(int start, int end, char[] dest, int destPos);
+  }
+
+  /**
+   * A piece of a char sequence which is not modified anymore.
+   */
+  private static class Leaf extends Node {
+    private final CharSequence myText;
+    private final int myStart;
+    private final int myLength;
+
+    Leaf(CharSequence text, int start, int length) {
+      myText = text;
+      myStart = start;
+      myLength = length;
+    }
+
+    @Override
+    int length() {
+      return myLength;
+    }
+
+    @Override
+    int depth() {
+      return 0;
+    }
+
+    char charAt(int index) {
+      return myText.charAt(myStart + index);
+    }
+
+    @Override
+    Node subNode(int start, int end) {
+      if (start == 0 && end == myLength) return this;
+      return new Leaf(myText, myStart + start, end - start);
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dest, int destPos) {
+      if (myText instanceof String) {
+        ((String)myText).getChars(myStart + start, myStart + end, dest, destPos);
+      }
+      else if (myText instanceof CharArrayCharSequence) {
+        ((CharArrayCharSequence)myText).readCharsTo(myStart + start, dest, destPos, end - start);
+      }
+      else {
+        for (int i = start; i < end; i++) {
+          dest[destPos++] = myText.charAt(myStart + i);
+        }
+      }
+    }
+  }
+
+  private static class Concat extends Node {
+    private final Node myLeft;
+    private final Node myRight;
+    private final int myLength;
+    private final int myDepth;
+
+    Concat(Node left, Node right) {
+      myLeft = left;
+      myRight = right;
+      myLength = left.length() + right.length();
+      myDepth = Math.max(left.depth(), right.depth()) + 1;
+    }
+
+    @Override
+    int length() {
+      return myLength;
+    }
+
+    @Override
+    int depth() {
+      return myDepth;
+    }
+
+    @Override
+    Node subNode(int start, int end) {
+      if (start == 0 && end == myLength) return this;
+      final int leftLength = myLeft.length();
+      if (end <= leftLength) return myLeft.subNode(start, end);
+      if (start >= leftLength) return myRight.subNode(start - leftLength, end - leftLength);
+      return concat(myLeft.subNode(start, leftLength), myRight.subNode(0, end - leftLength));
+    }
+
+    @Override
+    void getChars(int start, int end, char[] dest, int destPos) {
+      final int leftLength = myLeft.length();
+      if (start < leftLength) {
+        final int leftEnd = Math.min(end, leftLength);
+        myLeft.getChars(start, leftEnd, dest, destPos);
+        destPos += leftEnd - start;
+      }
+      if (end > leftLength) {
+        myRight.getChars(Math.max(start - leftLength, 0), end - leftLength, dest, destPos);
+      }
+    }
+  }
+
+  private static class LeafRef {
+    final Leaf leaf;
+    final int start;
+
+    LeafRef(Leaf leaf, int start) {
+      this.leaf = leaf;
+      this.start = start;
+    }
+  }
+}
@@ -43,12 +43,19 @@ public class JarHandlerBase {
 
   protected static class EntryInfo {
     public EntryInfo(final String shortName, final EntryInfo parent, final boolean directory) {
+      this(shortName, parent, directory, -1);
+    }
+
+    public EntryInfo(final String shortName, final EntryInfo parent, final boolean directory, final int index) {
       this.shortName = new String(shortName);
       this.parent = parent;
       isDirectory = directory;
+      this.index = index;
     }
 
     final boolean isDirectory;
+    // position of the entry in the archive, -1 for the directories having no entries of their own
+    final int index;
     protected final String shortName;
     final EntryInfo parent;
   }
@@ -68,11 +75,12 @@ public class JarHandlerBase {
         if (zip != null) {
           map.put("", new EntryInfo("", null, true));
           final Enumeration<? extends ZipEntry> entries = zip.entries();
+          int index = 0;
           while (entries.hasMoreElements()) {
             ZipEntry entry = entries.nextElement();
             final String name = entry.getName();
             final boolean isDirectory = name.endsWith("/");
-            getOrCreate(isDirectory ? name.substring(0, name.length() - 1) : name, isDirectory, map);
+            getOrCreate(isDirectory ? name.substring(0, name.length() - 1) : name, isDirectory, index++, map);
           }
 
           myRelPathsToEntries = new SoftReference<Map<String, EntryInfo>>(map);
@@ -106,15 +114,15 @@ public class JarHandlerBase {
     return new File(myBasePath);
   }
 
-  private static EntryInfo getOrCreate(String entryName, boolean isDirectory, Map<String, EntryInfo> map) {
+  private static EntryInfo getOrCreate(String entryName, boolean isDirectory, int index, Map<String, EntryInfo> map) {
     EntryInfo info = map.get(entryName);
     if (info == null) {
       int idx = entryName.lastIndexOf('/');
       final String parentEntryName = idx > 0 ? entryName.substring(0, idx) : "";
       String shortName = idx > 0 ? entryName.substring(idx + 1) : entryName;
-      if (".".equals(shortName)) return getOrCreate(parentEntryName, true, map);
+      if (".".equals(shortName)) return getOrCreate(parentEntryName, true, index, map);
 
-      info = new EntryInfo(shortName, getOrCreate(parentEntryName, true, map), isDirectory);
+      info = new EntryInfo(shortName, getOrCreate(parentEntryName, true, -1, map), isDirectory, index);
       map.put(entryName, info);
     }
 
@@ -144,6 +152,15 @@ public class JarHandlerBase {
     }
   }
 
+  /**
+   * @return the position of the file in the archive, or -1 if the file has no entry in it. Reading the files in the increasing
+   *         order of their positions reads the archive sequentially.
+   */
+  public int getEntryIndex(@NotNull final VirtualFile file) {
+    final EntryInfo info = getEntryInfo(file);
+    return info != null ? info.index : -1;
+  }
+
   public EntryInfo getEntryInfo(String parentPath) {
     return getEntriesMap().get(parentPath);
   }
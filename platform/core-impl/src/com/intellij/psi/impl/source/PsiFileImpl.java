@@ -266,6 +266,40 @@ public abstract class PsiFileImpl extends ElementBase implements PsiFileEx, PsiF
     return null;
   }
 
+  /**
+   * @param stubIndex index of the stub in {@link StubTree#getPlainList()}
+   * @return AST node the stub has been built for, found without the stub tree
+   */
+  @Nullable
+  public ASTNode findTreeForStub(int stubIndex) {
+    final CompositeElement ast = calcTreeElement();
+    if (stubIndex == 0) return ast;
+
+    final IElementType contentElementType = getContentElementType();
+    if (!(contentElementType instanceof IStubFileElementType)) return null;
+    final StubBuilder builder = ((IStubFileElementType)contentElementType).getBuilder();
+
+    final int[] stubsToSkip = {stubIndex};
+    final ASTNode[] result = {null};
+    ast.acceptTree(new RecursiveTreeElementWalkingVisitor() {
+      @Override
+      protected void visitNode(TreeElement tree) {
+        final IElementType type = tree.getElementType();
+        final CompositeElement treeParent = tree.getTreeParent();
+        if (treeParent != null && builder.skipChildProcessingWhenBuildingStubs(treeParent, type)) {
+          return;
+        }
+        if (type instanceof IStubElementType && ((IStubElementType)type).shouldCreateStub(tree) && --stubsToSkip[0] == 0) {
+          result[0] = tree;
+          stopWalking();
+          return;
+        }
+        super.visitNode(tree);
+      }
+    });
+    return result[0];
+  }
+
   private void switchFromStubToAST(final ASTNode root, final Iterator<StubElement<?>> stubs) {
     final IElementType contentElementType = getContentElementType();
     if (!(contentElementType instanceof IStubFileElementType)) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2000-2009 JetBrains s.r.o.
+ * Copyright 2000-2011 JetBrains s.r.o.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package com.intellij.psi.impl.source.resolve;
 
+import com.intellij.lang.Language;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
@@ -25,13 +26,11 @@ import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.RecursionGuard;
 import com.intellij.openapi.util.RecursionManager;
 import com.intellij.openapi.util.Trinity;
-import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiPolyVariantReference;
-import com.intellij.psi.PsiReference;
-import com.intellij.psi.ResolveResult;
+import com.intellij.psi.*;
 import com.intellij.psi.impl.AnyPsiChangeListener;
 import com.intellij.psi.impl.PsiManagerImpl;
 import com.intellij.reference.SoftReference;
+import com.intellij.util.containers.ConcurrentHashMap;
 import com.intellij.util.containers.ConcurrentWeakHashMap;
 import com.intellij.util.messages.MessageBus;
 import gnu.trove.TObjectHashingStrategy;
@@ -39,15 +38,30 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.Reference;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * The results are kept per file of the reference: a PSI change drops the results of all files lazily, on their next access,
+ * while the results of {@link FileLocalResolver}s survive until their own file is changed.
+ * When there are more than -Didea.resolve.cache.size results, the ones of the least recently used files are dropped.
+ */
 public class ResolveCache {
   private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.source.resolve.ResolveCache");
-  private final Map<PsiPolyVariantReference,Reference<ResolveResult[]>>[] myPolyVariantResolveMaps = new Map[4];
-  private final Map<PsiReference,Reference>[] myResolveMaps = new Map[4];
+  private static final int MAX_SIZE = Integer.getInteger("idea.resolve.cache.size", 100000);
+
+  private final ConcurrentWeakHashMap<PsiFile, Shard> myShards = createWeakMap();
+  // for the references outside of files, physical and non-physical
+  private final Shard[] myDetachedShards = new Shard[2];
   private final AtomicInteger myClearCount = new AtomicInteger(0);
+  private final AtomicInteger myPhysicalClearCount = new AtomicInteger(0);
+  private final AtomicInteger mySize = new AtomicInteger(0);
+  private final AtomicBoolean myEvicting = new AtomicBoolean(false);
+  private final Map<Language, Statistics> myStatistics = new ConcurrentHashMap<Language, Statistics>();
   private final RecursionGuard myGuard = RecursionManager.createGuard("resolveCache");
+  private final int myMaxSize;
 
   public static ResolveCache getInstance(Project project) {
     ProgressIndicatorProvider.checkCanceled(); // We hope this method is being called often enough to cancel daemon processes smoothly
@@ -63,16 +77,55 @@ public class ResolveCache {
   public interface Resolver extends AbstractResolver<PsiReference,PsiElement>{
   }
 
+  /**
+   * Marks the resolvers whose results depend on nothing but the file of the reference, e.g. the ones looking only for
+   * the declarations of the same file. Their results are dropped when that file changes instead of on any PSI change.
+   * The files with a context (code fragments, injected fragments) are not local: the context may be looked at.
+   */
+  public interface FileLocalResolver {
+  }
+
+  public static class Statistics {
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myMisses = new AtomicLong();
+    private final AtomicLong myInvalidations = new AtomicLong();
+    private final AtomicLong myEvictions = new AtomicLong();
+
+    public long getHits() {
+      return myHits.get();
+    }
+
+    public long getMisses() {
+      return myMisses.get();
+    }
+
+    /**
+     * @return the number of references whose results have been dropped because of PSI changes
+     */
+    public long getInvalidations() {
+      return myInvalidations.get();
+    }
+
+    /**
+     * @return the number of references whose results have been dropped to keep the cache size bounded
+     */
+    public long getEvictions() {
+      return myEvictions.get();
+    }
+
+    public String toString() {
+      return "hits: " + getHits() + ", misses: " + getMisses() + ", invalidations: " + getInvalidations() + ", evictions: " + getEvictions();
+    }
+  }
+
   public ResolveCache(@Nullable MessageBus messageBus) {
-    myPolyVariantResolveMaps[0] = createWeakMap();
-    myPolyVariantResolveMaps[1] = createWeakMap();
-    myResolveMaps[0] = createWeakMap();
-    myResolveMaps[1] = createWeakMap();
+    this(messageBus, MAX_SIZE);
+  }
 
-    myPolyVariantResolveMaps[2] = createWeakMap();
-    myPolyVariantResolveMaps[3] = createWeakMap();
-    myResolveMaps[2] = createWeakMap();
-    myResolveMaps[3] = createWeakMap();
+  ResolveCache(@Nullable MessageBus messageBus, int maxSize) {
+    myMaxSize = maxSize;
+    myDetachedShards[0] = new Shard(true, getStatistics(Language.ANY));
+    myDetachedShards[1] = new Shard(false, getStatistics(Language.ANY));
 
     if (messageBus != null) {
       messageBus.connect().subscribe(PsiManagerImpl.ANY_PSI_CHANGE_TOPIC, new AnyPsiChangeListener() {
@@ -89,39 +142,83 @@ public class ResolveCache {
   }
 
   private static <K,V> ConcurrentWeakHashMap<K, V> createWeakMap() {
-    return new ConcurrentWeakHashMap<K,V>(100, 0.75f, Runtime.getRuntime().availableProcessors(), TObjectHashingStrategy.CANONICAL);
+    return new ConcurrentWeakHashMap<K,V>(16, 0.75f, Runtime.getRuntime().availableProcessors(), TObjectHashingStrategy.CANONICAL);
+  }
+
+  /**
+   * @return the number of references with cached results, the ones already collected may be counted too
+   */
+  public int getSize() {
+    return mySize.get();
   }
 
   public void clearCache(boolean isPhysical) {
-    myClearCount.incrementAndGet();
+    // the shards compare the counters with the ones their results have been cached with
     if (isPhysical) {
-      myPolyVariantResolveMaps[0].clear();  //physical complete
-      myPolyVariantResolveMaps[1].clear();  //physical incomplete
-      myResolveMaps[0].clear();             //physical complete
-      myResolveMaps[1].clear();             //physical incomplete
+      myPhysicalClearCount.incrementAndGet();
     }
+    myClearCount.incrementAndGet();
+  }
 
-    myPolyVariantResolveMaps[2].clear();   //nonphysical complete
-    myPolyVariantResolveMaps[3].clear();   //nonphysical incomplete
-    myResolveMaps[2].clear();              //nonphysical complete
-    myResolveMaps[3].clear();              //nonphysical incomplete
+  /**
+   * @return the hit and miss counters per language of the files of the references
+   */
+  @NotNull
+  public Map<Language, Statistics> getStatistics() {
+    return Collections.unmodifiableMap(myStatistics);
+  }
+
+  @NotNull
+  private Statistics getStatistics(@NotNull Language language) {
+    Statistics statistics = myStatistics.get(language);
+    if (statistics == null) {
+      statistics = new Statistics();
+      final Statistics existing = ((ConcurrentHashMap<Language, Statistics>)myStatistics).putIfAbsent(language, statistics);
+      if (existing != null) {
+        statistics = existing;
+      }
+    }
+    return statistics;
+  }
+
+  @NotNull
+  private Shard getShard(@Nullable PsiFile file, @NotNull PsiElement element) {
+    if (file == null) {
+      return myDetachedShards[element.isPhysical() ? 0 : 1];
+    }
+    Shard shard = myShards.get(file);
+    if (shard == null) {
+      shard = new Shard(file.isPhysical(), getStatistics(file.getLanguage()));
+      final Shard existing = myShards.putIfAbsent(file, shard);
+      if (existing != null) {
+        shard = existing;
+      }
+    }
+    return shard;
   }
 
   @Nullable
   private <TRef extends PsiReference, TResult> TResult resolve(@NotNull final TRef ref,
                                                                @NotNull final AbstractResolver<TRef, TResult> resolver,
-                                                               @NotNull Map<? super TRef,Reference<TResult>>[] maps,
                                                                boolean needToPreventRecursion,
                                                                final boolean incompleteCode, boolean poly) {
     ProgressIndicatorProvider.checkCanceled();
     ApplicationManager.getApplication().assertReadAccessAllowed();
 
-    int clearCountOnStart = myClearCount.intValue();
-    boolean physical = ref.getElement().isPhysical();
-    TResult result = getCached(ref, maps, physical, incompleteCode);
+    final PsiElement element = ref.getElement();
+    final PsiFile file = element.getContainingFile();
+    final Shard shard = getShard(file, element);
+    final boolean local = file != null && resolver instanceof FileLocalResolver && file.getContext() == null;
+    final int slot = (poly ? 2 : 0) | (incompleteCode ? 1 : 0);
+    final long stampOnStart = getStamp(shard, local ? file : null);
+
+    //noinspection unchecked
+    TResult result = (TResult)shard.get(ref, slot, local, stampOnStart);
     if (result != null) {
+      shard.myStatistics.myHits.incrementAndGet();
       return result;
     }
+    shard.myStatistics.myMisses.incrementAndGet();
 
     Computable<TResult> computable = new Computable<TResult>() {
       @Override
@@ -132,17 +229,28 @@ public class ResolveCache {
 
     RecursionGuard.StackStamp stamp = myGuard.markStack();
     result = needToPreventRecursion ? myGuard.doPreventingRecursion(Trinity.create(ref, incompleteCode, poly), true, computable) : computable.compute();
-    if (stamp.mayCacheNow()) {
-      cache(ref, result, maps, physical, incompleteCode, clearCountOnStart);
+    if (stamp.mayCacheNow() && result != null) {
+      PsiElement resultElement = result instanceof ResolveResult ? ((ResolveResult)result).getElement() : null;
+      LOG.assertTrue(resultElement == null || resultElement.isValid(), result);
+
+      if (getStamp(shard, local ? file : null) == stampOnStart) {
+        shard.put(ref, slot, local, result, stampOnStart);
+      }
     }
     return result;
   }
 
+  // the results of the file local resolvers are valid while the file is not changed, the other ones until any PSI change
+  private long getStamp(@NotNull Shard shard, @Nullable PsiFile localFile) {
+    if (localFile != null) return localFile.getModificationStamp();
+    return shard.myPhysical ? myPhysicalClearCount.get() : myClearCount.get();
+  }
+
    public <T extends PsiPolyVariantReference> ResolveResult[] resolveWithCaching(@NotNull T ref,
                                                                                  @NotNull PolyVariantResolver<T> resolver,
                                                                                  boolean needToPreventRecursion,
                                                                                  boolean incompleteCode) {
-    ResolveResult[] result = resolve(ref, resolver, myPolyVariantResolveMaps, needToPreventRecursion, incompleteCode, true);
+    ResolveResult[] result = resolve(ref, resolver, needToPreventRecursion, incompleteCode, true);
     return result == null ? ResolveResult.EMPTY_ARRAY : result;
   }
 
@@ -150,7 +258,7 @@ public class ResolveCache {
                                        @NotNull Resolver resolver,
                                        boolean needToPreventRecursion,
                                        boolean incompleteCode) {
-    return resolve(ref, resolver, (Map[]) myResolveMaps, needToPreventRecursion, incompleteCode, false);
+    return resolve(ref, resolver, needToPreventRecursion, incompleteCode, false);
   }
 
   @Nullable
@@ -158,33 +266,155 @@ public class ResolveCache {
                                        @NotNull AbstractResolver<TRef, TResult> resolver,
                                        boolean needToPreventRecursion,
                                        boolean incompleteCode) {
-    return (TResult)resolve(ref, resolver, (Map[]) myResolveMaps, needToPreventRecursion, incompleteCode, false);
+    return resolve(ref, resolver, needToPreventRecursion, incompleteCode, false);
   }
 
-  private static int getIndex(boolean physical, boolean incompleteCode){
-    return (physical ? 0 : 1) << 1 | (incompleteCode ? 1 : 0);
+  // drops the results of the least recently used files until the cache is a quarter below the limit, so that walking all
+  // the shards happens at most once per limit / 4 new references
+  private void evict() {
+    if (!myEvicting.compareAndSet(false, true)) return;
+    try {
+      // the sizes are recounted, as the results of the collected references and files are dropped silently
+      final List<Shard> shards = new ArrayList<Shard>(myShards.values());
+      shards.addAll(Arrays.asList(myDetachedShards));
+      int size = 0;
+      for (Shard shard : shards) {
+        size += shard.recount();
+      }
+      mySize.set(size);
+
+      // the access times are taken once, as they change while sorting
+      final long[] order = new long[shards.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = ((long)shards.get(i).myLastAccess << 32) | i;
+      }
+      Arrays.sort(order);
+      for (long key : order) {
+        if (mySize.get() <= myMaxSize / 4 * 3) break;
+        shards.get((int)key).evict();
+      }
+    }
+    finally {
+      myEvicting.set(false);
+    }
   }
 
-  private static <TRef, TResult> TResult getCached(TRef ref, Map<? super TRef,Reference<TResult>>[] maps, boolean physical, boolean incompleteCode){
-    int index = getIndex(physical, incompleteCode);
-    Reference<TResult> reference = maps[index].get(ref);
-    if(reference == null) return null;
-    return reference.get();
+  private class Shard {
+    private final boolean myPhysical;
+    private final Statistics myStatistics;
+    // in seconds; not volatile and only updated when a second has passed: a rough order is enough to evict, and the gets
+    // mostly don't write
+    private int myLastAccess;
+
+    // dropped on any PSI change (only on the physical ones for a physical file)
+    private volatile Results myResults;
+    // the results of FileLocalResolvers, dropped when the file changes
+    private volatile Results myLocalResults;
+
+    private Shard(boolean physical, @NotNull Statistics statistics) {
+      myPhysical = physical;
+      myStatistics = statistics;
+    }
+
+    @Nullable
+    private Object get(@NotNull PsiReference ref, int slot, boolean local, long stamp) {
+      final int now = (int)(System.currentTimeMillis() / 1000);
+      if (myLastAccess != now) {
+        myLastAccess = now;
+      }
+      final Results results = local ? myLocalResults : myResults;
+      // the results cached after the changes the caller doesn't know of yet are still good
+      if (results == null || (local ? results.myStamp != stamp : results.myStamp - stamp < 0)) return null;
+      final Reference[] slots = results.myMap.get(ref);
+      final Reference reference = slots == null ? null : slots[slot];
+      return reference == null ? null : reference.get();
+    }
+
+    private void put(@NotNull PsiReference ref, int slot, boolean local, @NotNull Object result, long stamp) {
+      Results results = local ? myLocalResults : myResults;
+      if (results == null || results.myStamp != stamp) {
+        results = replaceResults(local, stamp);
+        if (results == null) return;
+      }
+      Reference[] slots = results.myMap.get(ref);
+      if (slots == null) {
+        slots = new Reference[4];
+        final Reference[] existing = results.myMap.putIfAbsent(ref, slots);
+        if (existing != null) {
+          slots = existing;
+        }
+        else {
+          results.mySize.incrementAndGet();
+          if (mySize.incrementAndGet() > myMaxSize) {
+            evict();
+          }
+        }
+      }
+      // optimization: lower contention
+      final Reference cached = slots[slot];
+      if (cached == null || cached.get() != result) {
+        slots[slot] = new SoftReference<Object>(result);
+      }
+    }
+
+    /**
+     * Drops the results cached before the changes the caller has seen.
+     *
+     * @return null if the caller's view is outdated, so its results can't be cached
+     */
+    @Nullable
+    private synchronized Results replaceResults(boolean local, long stamp) {
+      Results results = local ? myLocalResults : myResults;
+      if (results != null) {
+        if (results.myStamp == stamp) return results;
+        if (!local && results.myStamp - stamp > 0) return null;
+        drop(results, myStatistics.myInvalidations);
+      }
+      results = new Results(stamp);
+      if (local) {
+        myLocalResults = results;
+      }
+      else {
+        myResults = results;
+      }
+      return results;
+    }
+
+    private synchronized void evict() {
+      if (myResults != null) {
+        drop(myResults, myStatistics.myEvictions);
+        myResults = null;
+      }
+      if (myLocalResults != null) {
+        drop(myLocalResults, myStatistics.myEvictions);
+        myLocalResults = null;
+      }
+    }
+
+    private synchronized int recount() {
+      return (myResults == null ? 0 : myResults.recount()) + (myLocalResults == null ? 0 : myLocalResults.recount());
+    }
+
+    private void drop(@NotNull Results results, @NotNull AtomicLong counter) {
+      final int dropped = results.mySize.getAndSet(0);
+      mySize.addAndGet(-dropped);
+      counter.addAndGet(dropped);
+    }
   }
 
-  private <TRef extends PsiReference, TResult> void cache(TRef ref, TResult result, Map<? super TRef,Reference<TResult>>[] maps, boolean physical, boolean incompleteCode, final int clearCountOnStart) {
-    if (clearCountOnStart != myClearCount.intValue() && result != null) return;
-    PsiElement element = result instanceof ResolveResult ? ((ResolveResult)result).getElement() : null;
-    LOG.assertTrue(element == null || element.isValid(), result);
+  private static class Results {
+    private final ConcurrentWeakHashMap<PsiReference, Reference[]> myMap = createWeakMap();
+    // the clear count or the modification stamp of the file the results are valid for
+    private final long myStamp;
+    private final AtomicInteger mySize = new AtomicInteger(0);
 
-    int index = getIndex(physical, incompleteCode);
-    // optimization: lower contention
-    Map<? super TRef, Reference<TResult>> map = maps[index];
-    Reference<TResult> cached = map.get(ref);
-    if (cached != null && cached.get() == result) {
-      return;
+    private Results(long stamp) {
+      myStamp = stamp;
     }
 
-    map.put(ref, new SoftReference<TResult>(result/*, myQueue*/));
+    private int recount() {
+      mySize.set(myMap.size());
+      return mySize.get();
+    }
   }
 }
@@ -16,8 +16,12 @@
 
 package com.intellij.psi.impl.source.text;
 
+import com.intellij.lang.ASTFactory;
 import com.intellij.lang.ASTNode;
 import com.intellij.lang.Language;
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lexer.Lexer;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -27,6 +31,7 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiManagerEx;
 import com.intellij.psi.impl.PsiManagerImpl;
@@ -37,7 +42,9 @@ import com.intellij.psi.impl.source.PsiFileImpl;
 import com.intellij.psi.impl.source.tree.*;
 import com.intellij.psi.templateLanguages.ITemplateDataElementType;
 import com.intellij.psi.text.BlockSupport;
+import com.intellij.psi.tree.CustomParsingType;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.ILazyParseableElementType;
 import com.intellij.psi.tree.IReparseableElementType;
 import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.util.CharTable;
@@ -46,6 +53,8 @@ import com.intellij.util.diff.DiffTree;
 import com.intellij.util.diff.DiffTreeChangeBuilder;
 import com.intellij.util.diff.FlyweightCapableTreeStructure;
 import com.intellij.util.diff.ShallowNodeComparator;
+import com.intellij.util.text.CharSequenceSubSequence;
+import com.intellij.util.text.MergingCharSequence;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -102,6 +111,11 @@ public class BlockSupportImpl extends BlockSupport {
       return makeFullParse(treeFileElement, newFileText, textLength, fileImpl, indicator);
     }
 
+    if (fileImpl.getUserData(DO_NOT_REPARSE_INCREMENTALLY) == null) {
+      final DiffLog leafDiffLog = reparseLeaf(fileImpl, treeFileElement, startOffset, endOffset, lengthShift, newFileText);
+      if (leafDiffLog != null) return leafDiffLog;
+    }
+
     final ASTNode leafAtStart = treeFileElement.findLeafElementAt(startOffset);
     final ASTNode leafAtEnd = treeFileElement.findLeafElementAt(endOffset);
     ASTNode node = leafAtStart != null && leafAtEnd != null ? TreeUtil.findCommonParent(leafAtStart, leafAtEnd) : treeFileElement;
@@ -144,6 +158,84 @@ public class BlockSupportImpl extends BlockSupport {
     return makeFullParse(node, newFileText, textLength, fileImpl, indicator);
   }
 
+  /**
+   * Replaces a whitespace or comment leaf containing the whole change with a new one, without reparsing anything.
+   * The parser never sees such tokens, so it is enough for the lexer to make a single token of the same type from the new text,
+   * ending in the same lexer state as the old one, to know that the rest of the tokens are the same.
+   * The lexer is restarted at the closest reparseable element, which is lexed from its start in the initial state anyway.
+   */
+  @Nullable
+  static DiffLog reparseLeaf(@NotNull PsiFileImpl file,
+                             @NotNull FileElement fileElement,
+                             int startOffset,
+                             int endOffset,
+                             int lengthShift,
+                             @NotNull CharSequence newFileText) {
+    final LeafElement leaf = fileElement.findLeafElementAt(startOffset);
+    if (leaf == null) return null;
+    final int leafStart = leaf.getStartOffset();
+    final int leafEnd = leafStart + leaf.getTextLength();
+    final int newLeafEnd = leafEnd + lengthShift;
+    if (endOffset > leafEnd || newLeafEnd <= leafStart || newLeafEnd > newFileText.length()) return null;
+
+    final Language language = file.getLanguage();
+    if (file.getViewProvider().getLanguages().size() != 1) return null;
+    final ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(language);
+    if (parserDefinition == null) return null;
+
+    final IElementType type = leaf.getElementType();
+    final boolean whitespace = leaf instanceof PsiWhiteSpace;
+    if (!whitespace && !parserDefinition.getCommentTokens().contains(type) || type instanceof CustomParsingType) return null;
+
+    final CharSequence newLeafText = newFileText.subSequence(leafStart, newLeafEnd);
+    if (whitespace && StringUtil.getLineBreakCount(newLeafText) != StringUtil.getLineBreakCount(leaf.getChars())) {
+      // the line breaks decide which element the comments next to the whitespace are bound to
+      return null;
+    }
+
+    int restartOffset = 0;
+    for (ASTNode parent = leaf.getTreeParent(); parent != null && parent != fileElement; parent = parent.getTreeParent()) {
+      final IElementType parentType = parent.getElementType();
+      if (parentType instanceof ILazyParseableElementType) {
+        if (!(parentType instanceof IReparseableElementType) || parentType.getLanguage() != language) return null;
+        restartOffset = parent.getStartOffset();
+        break;
+      }
+    }
+
+    final Lexer lexer = parserDefinition.createLexer(file.getProject());
+    lexer.start(newFileText, restartOffset, newFileText.length(), 0);
+    while (lexer.getTokenType() != null && lexer.getTokenStart() < leafStart) {
+      lexer.advance();
+    }
+    if (lexer.getTokenStart() != leafStart || lexer.getTokenEnd() != newLeafEnd || !isLeafToken(lexer, leaf, parserDefinition)) return null;
+    final int leafState = lexer.getState();
+    lexer.advance();
+    final int newState = lexer.getState();
+
+    final CharSequence oldText = new MergingCharSequence(leaf.getChars(), new CharSequenceSubSequence(newFileText, newLeafEnd, newFileText.length()));
+    lexer.start(oldText, 0, oldText.length(), leafState);
+    if (lexer.getTokenEnd() != leaf.getTextLength() || !isLeafToken(lexer, leaf, parserDefinition)) return null;
+    lexer.advance();
+    if (lexer.getState() != newState) return null;
+
+    final CharTable charTable = fileElement.getCharTable();
+    final CharSequence text = charTable.intern(newLeafText);
+    final LeafElement newLeaf = whitespace ? new PsiWhiteSpaceImpl(text) : ASTFactory.leaf(type, text);
+    final DummyHolder holder = DummyHolderFactory.createHolder(file.getManager(), null, leaf.getTreeParent().getPsi(), charTable);
+    holder.getTreeElement().rawAddChildren(newLeaf);
+
+    final DiffLog diffLog = new DiffLog();
+    diffLog.nodeReplaced(leaf, newLeaf);
+    return diffLog;
+  }
+
+  private static boolean isLeafToken(@NotNull Lexer lexer, @NotNull LeafElement leaf, @NotNull ParserDefinition parserDefinition) {
+    final IElementType tokenType = lexer.getTokenType();
+    // PsiBuilder makes whitespace leaves of the language whitespace tokens
+    return tokenType == leaf.getElementType() || leaf instanceof PsiWhiteSpace && parserDefinition.getWhitespaceTokens().contains(tokenType);
+  }
+
   private static void assertFileLength(PsiFile file, CharSequence newFileText, ASTNode node, IElementType elementType, int start, int end) {
     if (end > newFileText.length() && ApplicationManager.getApplication().isInternal()) {
       String newTextBefore = newFileText.subSequence(0, start).toString();
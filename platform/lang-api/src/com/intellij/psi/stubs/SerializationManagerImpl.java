@@ -21,17 +21,16 @@ import com.intellij.openapi.diagnostic.LogUtil;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IStubFileElementType;
 import com.intellij.util.io.DataInputOutputUtil;
 import com.intellij.util.io.PersistentStringEnumerator;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -166,24 +165,42 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     mySerializersLoaded = true;
   }
 
+  /**
+   * Writes the serializer ids of all the stubs in the order of {@link StubTree#getPlainList()} followed by the stubs' data,
+   * so that the types of the stubs can be read without deserializing the stubs (see {@link #readStubTypes(InputStream)}).
+   */
   public void serialize(StubElement rootStub, OutputStream stream) {
     if (!mySerializersLoaded) initSerializers();
-    StubOutputStream stubOutputStream = new StubOutputStream(stream, myNameStorage);
-    doSerialize(rootStub, stubOutputStream);
+    final BufferExposingByteArrayOutputStream data = new BufferExposingByteArrayOutputStream();
+    final TIntArrayList classIds = new TIntArrayList();
+    doSerialize(rootStub, new StubOutputStream(data, myNameStorage), classIds);
+
+    try {
+      final StubOutputStream stubOutputStream = new StubOutputStream(stream, myNameStorage);
+      DataInputOutputUtil.writeINT(stubOutputStream, classIds.size());
+      for (int i = 0; i < classIds.size(); i++) {
+        DataInputOutputUtil.writeINT(stubOutputStream, classIds.get(i));
+      }
+      stubOutputStream.write(data.getInternalBuffer(), 0, data.size());
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      myNameStorageCrashed.set(true);
+    }
   }
 
-  private void doSerialize(final StubElement rootStub, final StubOutputStream stream) {
+  private void doSerialize(final StubElement rootStub, final StubOutputStream stream, final TIntArrayList classIds) {
     try {
       final StubSerializer serializer = getSerializer(rootStub);
 
-      DataInputOutputUtil.writeINT(stream, getClassId(serializer));
+      classIds.add(getClassId(serializer));
       serializer.serialize(rootStub, stream);
 
       final List<StubElement> children = rootStub.getChildrenStubs();
       final int childrenSize = children.size();
       DataInputOutputUtil.writeINT(stream, childrenSize);
       for (int i = 0; i < childrenSize; ++i) {
-        doSerialize(children.get(i), stream);
+        doSerialize(children.get(i), stream, classIds);
       }
     }
     catch (IOException e) {
@@ -205,7 +222,8 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     StubInputStream inputStream = new StubInputStream(stream, myNameStorage);
     if (!mySerializersLoaded) initSerializers();
     try {
-      return deserialize(inputStream, null);
+      final int[] classIds = readClassIds(inputStream);
+      return deserialize(inputStream, null, classIds, new int[1]);
     }
     catch (IOException e) {
       myNameStorageCrashed.set(true);
@@ -214,8 +232,35 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     }
   }
 
-  private StubElement deserialize(StubInputStream stream, StubElement parentStub) throws IOException {
-    final int id = DataInputOutputUtil.readINT(stream);
+  @NotNull
+  public StubSerializer[] readStubTypes(InputStream stream) {
+    if (!mySerializersLoaded) initSerializers();
+    try {
+      final int[] classIds = readClassIds(new DataInputStream(stream));
+      final StubSerializer[] result = new StubSerializer[classIds.length];
+      for (int i = 0; i < classIds.length; i++) {
+        result[i] = getClassById(classIds[i]);
+        assert result[i] != null : "No serializer registered for stub: ID=" + classIds[i];
+      }
+      return result;
+    }
+    catch (IOException e) {
+      myNameStorageCrashed.set(true);
+      LOG.info(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static int[] readClassIds(DataInput stream) throws IOException {
+    final int[] classIds = new int[DataInputOutputUtil.readINT(stream)];
+    for (int i = 0; i < classIds.length; i++) {
+      classIds[i] = DataInputOutputUtil.readINT(stream);
+    }
+    return classIds;
+  }
+
+  private StubElement deserialize(StubInputStream stream, StubElement parentStub, int[] classIds, int[] stubIndex) throws IOException {
+    final int id = classIds[stubIndex[0]++];
     final StubSerializer serializer = getClassById(id);
     
     assert serializer != null : "No serializer registered for stub: ID=" + id + "; parent stub class=" + (parentStub != null? parentStub.getClass().getName() : "null");
@@ -223,7 +268,7 @@ public class SerializationManagerImpl extends SerializationManager implements Ap
     StubElement stub = serializer.deserialize(stream, parentStub);
     int childCount = DataInputOutputUtil.readINT(stream);
     for (int i = 0; i < childCount; i++) {
-      deserialize(stream, stub);
+      deserialize(stream, stub, classIds, stubIndex);
     }
     return stub;
   }
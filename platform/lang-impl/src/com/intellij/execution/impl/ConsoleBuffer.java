@@ -109,7 +109,14 @@ public class ConsoleBuffer {
   private final Set<ConsoleViewContentType> myDeferredTypes = new HashSet<ConsoleViewContentType>();
 
   public ConsoleBuffer() {
-    this(useCycleBuffer(), getCycleBufferSize(), DEFAULT_CYCLIC_BUFFER_UNIT_SIZE);
+    this(useCycleBuffer());
+  }
+
+  /**
+   * @param useCyclicBuffer whether the text exceeding the cyclic buffer size is stripped regardless of the configuration
+   */
+  public ConsoleBuffer(boolean useCyclicBuffer) {
+    this(useCyclicBuffer, getCycleBufferSize(), DEFAULT_CYCLIC_BUFFER_UNIT_SIZE);
   }
 
   public ConsoleBuffer(boolean useCyclicBuffer, int cyclicBufferSize, int cyclicBufferUnitSize) {
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.impl;
+
+import com.intellij.execution.ExecutionBundle;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ScrollType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+
+/**
+ * Shows the occurrences of a text in the output history of a console, see {@link ConsoleRingBuffer}.
+ * Only the lines around the current occurrence are copied from the history to the document of the viewer.
+ */
+public class ConsoleHistoryViewer extends DialogWrapper {
+  /**
+   * How many characters before and after the occurrence are shown, the fragment shown is cut to whole lines.
+   */
+  static final int WINDOW_MARGIN = 64 * 1024;
+
+  private final Project myProject;
+  private final ConsoleRingBuffer myHistory;
+  private final String myPattern;
+  private final Editor myEditor;
+  private long myOccurrence;
+
+  private ConsoleHistoryViewer(@NotNull Project project, @NotNull ConsoleRingBuffer history, @NotNull String pattern, long occurrence) {
+    super(project, false);
+    myProject = project;
+    myHistory = history;
+    myPattern = pattern;
+    final EditorFactory editorFactory = EditorFactory.getInstance();
+    myEditor = editorFactory.createViewer(editorFactory.createDocument(""), project);
+    setTitle(ExecutionBundle.message("console.history.viewer.title", pattern));
+    setCancelButtonText(ExecutionBundle.message("console.history.viewer.close"));
+    init();
+    showOccurrence(occurrence);
+  }
+
+  /**
+   * Looks for the last occurrence of the text in the history and shows it, or tells the text is not found.
+   */
+  public static void showLastOccurrence(@NotNull Project project, @NotNull ConsoleRingBuffer history, @NotNull String pattern) {
+    final long occurrence = history.findLast(pattern, Long.MAX_VALUE, false);
+    if (occurrence < 0) {
+      Messages.showInfoMessage(project, ExecutionBundle.message("console.history.not.found", pattern),
+                               ExecutionBundle.message("console.history.search.title"));
+      return;
+    }
+    new ConsoleHistoryViewer(project, history, pattern, occurrence).show();
+  }
+
+  @Override
+  protected JComponent createCenterPanel() {
+    final JComponent component = myEditor.getComponent();
+    component.setPreferredSize(new Dimension(800, 500));
+    return component;
+  }
+
+  @Override
+  public JComponent getPreferredFocusedComponent() {
+    return myEditor.getContentComponent();
+  }
+
+  @Override
+  protected String getDimensionServiceKey() {
+    return "#com.intellij.execution.impl.ConsoleHistoryViewer";
+  }
+
+  @Override
+  protected Action[] createActions() {
+    return new Action[]{new DialogWrapperAction(ExecutionBundle.message("console.history.viewer.previous")) {
+      @Override
+      protected void doAction(ActionEvent e) {
+        showNext(false);
+      }
+    }, new DialogWrapperAction(ExecutionBundle.message("console.history.viewer.next")) {
+      @Override
+      protected void doAction(ActionEvent e) {
+        showNext(true);
+      }
+    }, getCancelAction()};
+  }
+
+  @Override
+  protected void dispose() {
+    EditorFactory.getInstance().releaseEditor(myEditor);
+    super.dispose();
+  }
+
+  private void showNext(boolean forward) {
+    final long occurrence = forward ? myHistory.find(myPattern, myOccurrence + 1, false) : myHistory.findLast(myPattern, myOccurrence, false);
+    if (occurrence < 0) {
+      Messages.showInfoMessage(myProject, ExecutionBundle.message("console.history.no.more", myPattern),
+                               ExecutionBundle.message("console.history.search.title"));
+      return;
+    }
+    showOccurrence(occurrence);
+  }
+
+  private void showOccurrence(long occurrence) {
+    final Fragment fragment = getFragment(myHistory, occurrence, myPattern.length(), WINDOW_MARGIN);
+    if (fragment == null) {
+      // the output has been cleared or overwritten meanwhile
+      return;
+    }
+    myOccurrence = occurrence;
+    final Document document = myEditor.getDocument();
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      public void run() {
+        // a lone CR, which makes the console overwrite the line, starts a new line here so that the offsets stay the same
+        document.setText(fragment.text.replace('\r', '\n'));
+      }
+    });
+    final int start = (int)(occurrence - fragment.start);
+    myEditor.getCaretModel().moveToOffset(start);
+    myEditor.getSelectionModel().setSelection(start, start + myPattern.length());
+    myEditor.getScrollingModel().scrollToCaret(ScrollType.CENTER);
+  }
+
+  /**
+   * @return the lines of the history around the given range, at most the margin characters before and after it,
+   *         or null if the range is not retained anymore
+   */
+  @Nullable
+  static Fragment getFragment(@NotNull ConsoleRingBuffer history, long offset, int length, int margin) {
+    synchronized (history) {
+      final long historyStart = history.getStartOffset();
+      final long historyEnd = history.getEndOffset();
+      if (offset < historyStart || offset + length > historyEnd) return null;
+
+      long start = Math.max(historyStart, offset - margin);
+      final long end = Math.min(historyEnd, offset + length + margin);
+      String text = history.getText(start, end);
+      if (end < historyEnd) {
+        final int lineEnd = text.lastIndexOf('\n');
+        if (lineEnd >= offset + length - start) {
+          text = text.substring(0, lineEnd + 1);
+        }
+      }
+      if (start > historyStart) {
+        final int lineStart = text.indexOf('\n') + 1;
+        if (lineStart > 0 && lineStart <= offset - start) {
+          text = text.substring(lineStart);
+          start += lineStart;
+        }
+      }
+      return new Fragment(start, text);
+    }
+  }
+
+  static class Fragment {
+    final long start;
+    final String text;
+
+    Fragment(long start, @NotNull String text) {
+      this.start = start;
+      this.text = text;
+    }
+  }
+}
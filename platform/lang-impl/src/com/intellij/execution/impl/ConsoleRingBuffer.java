@@ -0,0 +1,193 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.execution.impl;
+
+import org.jetbrains.annotations.NotNull;
+import sun.misc.Cleaner;
+import sun.nio.ch.DirectBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * The last characters printed to a console, kept out of the java heap in a buffer of fixed size.
+ * <p/>
+ * Offsets are counted from the first character ever appended, so they stay the same when older text is overwritten:
+ * the retained text is [{@link #getStartOffset()}, {@link #getEndOffset()}).
+ * <p/>
+ * The memory is allocated on the first append and freed by {@link #dispose()}, the buffer retains nothing afterwards.
+ * <p/>
+ * Thread-safe.
+ */
+public class ConsoleRingBuffer {
+  private final int myCapacity;
+  private ByteBuffer myBytes;
+  private CharBuffer myChars;
+  private long myEndOffset;
+  private boolean myDisposed;
+
+  public ConsoleRingBuffer(int capacity) {
+    if (capacity <= 0) throw new IllegalArgumentException("capacity: " + capacity);
+    myCapacity = capacity;
+  }
+
+  public int getCapacity() {
+    return myCapacity;
+  }
+
+  public synchronized long getStartOffset() {
+    return Math.max(0, myEndOffset - myCapacity);
+  }
+
+  public synchronized long getEndOffset() {
+    return myEndOffset;
+  }
+
+  public synchronized void append(@NotNull CharSequence text) {
+    if (myDisposed) return;
+    if (myChars == null) {
+      myBytes = ByteBuffer.allocateDirect(myCapacity * 2);
+      myChars = myBytes.asCharBuffer();
+    }
+    int length = text.length();
+    int from = Math.max(0, length - myCapacity); // the beginning would be overwritten anyway
+    myEndOffset += from;
+    int index = (int)(myEndOffset % myCapacity);
+    for (int i = from; i < length; i++) {
+      myChars.put(index, text.charAt(i));
+      if (++index == myCapacity) index = 0;
+    }
+    myEndOffset += length - from;
+  }
+
+  public synchronized void clear() {
+    myEndOffset = 0;
+  }
+
+  public synchronized void dispose() {
+    myDisposed = true;
+    myEndOffset = 0;
+    if (myBytes != null) {
+      Cleaner cleaner = ((DirectBuffer)myBytes).cleaner();
+      if (cleaner != null) cleaner.clean();
+      myBytes = null;
+      myChars = null;
+    }
+  }
+
+  @NotNull
+  public synchronized String getText(long start, long end) {
+    checkRange(start, end);
+    char[] result = new char[(int)(end - start)];
+    int index = (int)(start % myCapacity);
+    for (int i = 0; i < result.length; i++) {
+      result[i] = myChars.get(index);
+      if (++index == myCapacity) index = 0;
+    }
+    return new String(result);
+  }
+
+  /**
+   * @return the offset of the first occurrence of the pattern starting at or after the given offset, -1 if not found
+   */
+  public synchronized long find(@NotNull String pattern, long from, boolean caseSensitive) {
+    from = Math.max(from, getStartOffset());
+    int length = pattern.length();
+    if (length == 0) return from <= myEndOffset ? from : -1;
+
+    // Boyer-Moore-Horspool with the characters hashed to their lower byte, taking the smallest shift on collisions
+    char[] chars = toSearchChars(pattern, caseSensitive);
+    int[] shifts = createShifts(length);
+    for (int i = 0; i < length - 1; i++) {
+      shifts[chars[i] & 0xFF] = length - 1 - i;
+    }
+
+    long offset = from;
+    while (offset + length <= myEndOffset) {
+      int i = length - 1;
+      char last = charAt(offset + i, caseSensitive);
+      if (last == chars[i]) {
+        while (i > 0 && charAt(offset + i - 1, caseSensitive) == chars[i - 1]) {
+          i--;
+        }
+        if (i == 0) return offset;
+      }
+      offset += shifts[last & 0xFF];
+    }
+    return -1;
+  }
+
+  /**
+   * @return the offset of the last occurrence of the pattern starting before the given offset, -1 if not found
+   */
+  public synchronized long findLast(@NotNull String pattern, long before, boolean caseSensitive) {
+    long start = getStartOffset();
+    int length = pattern.length();
+    long offset = Math.min(before - 1, myEndOffset - length);
+    if (length == 0) return offset >= start ? offset : -1;
+
+    // the search above mirrored: the window moves to the left and is compared from its first character
+    char[] chars = toSearchChars(pattern, caseSensitive);
+    int[] shifts = createShifts(length);
+    for (int i = length - 1; i > 0; i--) {
+      shifts[chars[i] & 0xFF] = i;
+    }
+
+    while (offset >= start) {
+      char first = charAt(offset, caseSensitive);
+      if (first == chars[0]) {
+        int i = 1;
+        while (i < length && charAt(offset + i, caseSensitive) == chars[i]) {
+          i++;
+        }
+        if (i == length) return offset;
+      }
+      offset -= shifts[first & 0xFF];
+    }
+    return -1;
+  }
+
+  private static char[] toSearchChars(String pattern, boolean caseSensitive) {
+    char[] chars = new char[pattern.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = caseSensitive ? pattern.charAt(i) : fold(pattern.charAt(i));
+    }
+    return chars;
+  }
+
+  private static int[] createShifts(int length) {
+    int[] shifts = new int[256];
+    for (int i = 0; i < shifts.length; i++) {
+      shifts[i] = length;
+    }
+    return shifts;
+  }
+
+  private char charAt(long offset, boolean caseSensitive) {
+    char c = myChars.get((int)(offset % myCapacity));
+    return caseSensitive ? c : fold(c);
+  }
+
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private void checkRange(long start, long end) {
+    if (start < getStartOffset() || start > end || end > myEndOffset) {
+      throw new IndexOutOfBoundsException("Wrong range: [" + start + ", " + end + "); retained: [" + getStartOffset() + ", " + myEndOffset + ")");
+    }
+  }
+}
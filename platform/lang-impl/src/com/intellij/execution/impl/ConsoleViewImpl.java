@@ -60,6 +60,7 @@ import com.intellij.openapi.keymap.KeymapManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.DumbAwareAction;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.text.LineTokenizer;
 import com.intellij.openapi.util.text.StringUtil;
@@ -94,6 +95,10 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
   private static final Logger LOG = Logger.getInstance("#com.intellij.execution.impl.ConsoleViewImpl");
 
   private static final int FLUSH_DELAY = 200; //TODO : make it an option
+  /**
+   * Size of the output history in kilobytes, the history is not kept by default.
+   */
+  private static final int HISTORY_SIZE = Integer.getInteger("idea.console.history.size", 0);
 
   private static final Key<ConsoleViewImpl> CONSOLE_VIEW_IN_EDITOR_VIEW = Key.create("CONSOLE_VIEW_IN_EDITOR_VIEW");
 
@@ -120,7 +125,13 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
 
   private final CopyOnWriteArraySet<ChangeListener> myListeners = new CopyOnWriteArraySet<ChangeListener>();
   private final ArrayList<AnAction> customActions = new ArrayList<AnAction>();
-  private final ConsoleBuffer myBuffer = new ConsoleBuffer();
+  // with the history kept, the document holds only the last part of the output, see idea.cycle.buffer.size
+  private final ConsoleBuffer myBuffer = HISTORY_SIZE > 0 ? new ConsoleBuffer(true) : new ConsoleBuffer();
+  /**
+   * All the output including the text the cyclic buffer has removed from the document, appended under {@link #LOCK}.
+   */
+  @Nullable
+  private final ConsoleRingBuffer myHistory = HISTORY_SIZE > 0 ? new ConsoleRingBuffer(HISTORY_SIZE * 1024) : null;
   private boolean myUpdateFoldingsEnabled = true;
   private EditorHyperlinkSupport myHyperlinks;
   private MyDiffContainer myJLayeredPane;
@@ -451,6 +462,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
       disposeEditor();
       synchronized (LOCK) {
         myBuffer.clear();
+        if (myHistory != null) myHistory.dispose();
       }
       myEditor = null;
       myHyperlinks = null;
@@ -519,6 +531,15 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     return true;
   }
 
+  /**
+   * @return the output printed to the console, retained even after it has been removed from the document by the cyclic buffer,
+   * or null if the history is not kept (see idea.console.history.size)
+   */
+  @Nullable
+  public ConsoleRingBuffer getHistory() {
+    return myHistory;
+  }
+
   @TestOnly
   public void flushDeferredText() {
     flushDeferredText(false);
@@ -534,6 +555,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
       synchronized (LOCK) {
         myHyperlinks.clearHyperlinks();
         myTokens.clear();
+        if (myHistory != null) myHistory.clear();
         if (myEditor == null) return;
         myEditor.getMarkupModel().removeAllHighlighters();
         document = myEditor.getDocument();
@@ -556,6 +578,7 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
       if (myEditor == null) return;
 
       text = myBuffer.getText();
+      if (myHistory != null) myHistory.append(text);
 
       contentTypes = Collections.unmodifiableCollection(new HashSet<ConsoleViewContentType>(myBuffer.getDeferredTokenTypes()));
       List<TokenInfo> deferredTokens = myBuffer.getDeferredTokens();
@@ -1002,6 +1025,21 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     }
   }
 
+  private class SearchHistoryAction extends DumbAwareAction {
+    private SearchHistoryAction() {
+      super(ExecutionBundle.message("console.history.search.action.name"), null, IconLoader.getIcon("/actions/find.png"));
+    }
+
+    @Override
+    public void actionPerformed(AnActionEvent e) {
+      final String pattern = Messages.showInputDialog(myProject, ExecutionBundle.message("console.history.search.prompt"),
+                                                      ExecutionBundle.message("console.history.search.title"), null);
+      if (!StringUtil.isEmpty(pattern) && myHistory != null) {
+        ConsoleHistoryViewer.showLastOccurrence(myProject, myHistory, pattern);
+      }
+    }
+  }
+
   public static class CopyAction extends EditorCopyAction {
     @Override
     protected boolean isEnabled(AnActionEvent e) {
@@ -1355,17 +1393,18 @@ public class ConsoleViewImpl extends JPanel implements ConsoleView, ObservableCo
     final AnAction autoScrollToTheEndAction = new ScrollToTheEndToolbarAction(myEditor);
 
     //Initializing custom actions
-    final AnAction[] consoleActions = new AnAction[4 + customActions.size()];
-    consoleActions[0] = prevAction;
-    consoleActions[1] = nextAction;
-    consoleActions[2] = switchSoftWrapsAction;
-    consoleActions[3] = autoScrollToTheEndAction;
-    //consoleActions[4] = new ShowRecentlyChanged();
-    for (int i = 0; i < customActions.size(); ++i) {
-      consoleActions[i + 4] = customActions.get(i);
-    }
+    final List<AnAction> consoleActions = new ArrayList<AnAction>(5 + customActions.size());
+    consoleActions.add(prevAction);
+    consoleActions.add(nextAction);
+    consoleActions.add(switchSoftWrapsAction);
+    consoleActions.add(autoScrollToTheEndAction);
+    //consoleActions.add(new ShowRecentlyChanged());
+    if (myHistory != null) {
+      consoleActions.add(new SearchHistoryAction());
+    }
+    consoleActions.addAll(customActions);
     ConsoleActionsPostProcessor[] postProcessors = Extensions.getExtensions(ConsoleActionsPostProcessor.EP_NAME);
-    AnAction[] result = consoleActions;
+    AnAction[] result = consoleActions.toArray(new AnAction[consoleActions.size()]);
     if (postProcessors != null) {
       for (ConsoleActionsPostProcessor postProcessor : postProcessors) {
         result = postProcessor.postProcess(this, result);
@@ -18,6 +18,7 @@ package com.intellij.find.impl;
 
 import com.intellij.find.*;
 import com.intellij.find.ngrams.TrigramIndex;
+import com.intellij.find.ngrams.TrigramQueryBuilder;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.actionSystem.DataContext;
 import com.intellij.openapi.actionSystem.LangDataKeys;
@@ -47,7 +48,6 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.util.text.TrigramBuilder;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -66,8 +66,6 @@ import com.intellij.util.Processor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
 import gnu.trove.THashSet;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntIterator;
 import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -375,7 +373,8 @@ public class FindInProjectUtil {
       Pair<Boolean, Collection<PsiFile>> fastWords = getFilesForFastWordSearch(findModel, project, psiDirectory, fileMaskRegExp, module);
       final Collection<PsiFile> filesForFastWordSearch = fastWords.getSecond();
 
-      if (fastWords.getFirst() && canOptimizeForFastWordSearch(findModel)) return filesForFastWordSearch;
+      // the indices have found every matching file but the ones too large to be indexed, only those are still enumerated
+      final boolean onlyTooLargeFiles = fastWords.getFirst() && canOptimizeForFastWordSearch(findModel);
 
       final SearchScope customScope = findModel.getCustomScope();
 
@@ -385,6 +384,7 @@ public class FindInProjectUtil {
 
         @Override
         public boolean processFile(VirtualFile virtualFile) {
+          if (onlyTooLargeFiles && !SingleRootFileViewProvider.isTooLarge(virtualFile)) return true;
           if (!virtualFile.isDirectory() && (fileMaskRegExp == null || fileMaskRegExp.matcher(virtualFile.getName()).matches()) && (!(customScope instanceof GlobalSearchScope) || ((GlobalSearchScope)customScope).contains(virtualFile))) {
             final PsiFile psiFile = psiManager.findFile(virtualFile);
             if (psiFile != null && !filesForFastWordSearch.contains(psiFile)) {
@@ -458,32 +458,27 @@ public class FindInProjectUtil {
                                            ? (GlobalSearchScope)customScope
                                            : GlobalSearchScope.projectScope(project);
 
-    Set<Integer> keys = new THashSet<Integer>(30);
     Set<PsiFile> resultFiles = new THashSet<PsiFile>();
     boolean fast = false;
+    boolean filteredByTrigrams = false;
 
     if (TrigramIndex.ENABLED) {
-      TIntHashSet trigrams = TrigramBuilder.buildTrigram(findModel.getStringToFind());
-      TIntIterator it = trigrams.iterator();
-      while (it.hasNext()) {
-        keys.add(it.next());
-      }
-
-      if (!keys.isEmpty()) {
-        fast = true;
-        List<VirtualFile> hits = new ArrayList<VirtualFile>();
-        FileBasedIndex.getInstance()
-          .getFilesWithKey(TrigramIndex.INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(hits), scope);
-
+      Set<VirtualFile> hits = TrigramIndex.getFilesMatching(TrigramQueryBuilder.forFindModel(findModel), scope);
+      if (hits != null) {
+        fast = filteredByTrigrams = true;
         for (VirtualFile hit : hits) {
-          resultFiles.add(pm.findFile(hit));
+          ContainerUtil.addIfNotNull(pm.findFile(hit), resultFiles);
         }
 
         filterMaskedFiles(resultFiles, fileMaskRegExp);
-        if (resultFiles.isEmpty()) return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
+        if (resultFiles.isEmpty() || findModel.isRegularExpressions()) return new Pair<Boolean, Collection<PsiFile>>(true, resultFiles);
       }
     }
 
+    if (findModel.isRegularExpressions()) {
+      // the words of a regular expression are not necessarily present in the matched text
+      return new Pair<Boolean, Collection<PsiFile>>(false, resultFiles);
+    }
 
     // $ is used to separate words when indexing plain-text files but not when indexing
     // Java identifiers, so we can't consistently break a string containing $ characters into words
@@ -511,7 +506,7 @@ public class FindInProjectUtil {
 
       final List<PsiFile> psiFiles = Arrays.asList(files);
 
-      if (i == 0 && keys.isEmpty()) {
+      if (i == 0 && !filteredByTrigrams) {
         resultFiles.addAll(psiFiles);
       }
       else {
@@ -561,7 +556,8 @@ public class FindInProjectUtil {
   }
 
   private static boolean canOptimizeForFastWordSearch(final FindModel findModel) {
-    return !findModel.isRegularExpressions()
+    // regular expression searches are optimized by the trigram index only
+    return (!findModel.isRegularExpressions() || TrigramIndex.ENABLED)
            && (findModel.getCustomScope() == null || findModel.getCustomScope() instanceof GlobalSearchScope);
   }
 
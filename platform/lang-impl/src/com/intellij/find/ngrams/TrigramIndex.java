@@ -21,6 +21,8 @@ package com.intellij.find.ngrams;
 
 import com.intellij.openapi.util.text.TrigramBuilder;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.CommonProcessors;
 import com.intellij.util.indexing.*;
 import com.intellij.util.io.EnumeratorIntegerDescriptor;
 import com.intellij.util.io.KeyDescriptor;
@@ -28,11 +30,12 @@ import gnu.trove.THashMap;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
+import java.util.*;
 
 public class TrigramIndex extends ScalarIndexExtension<Integer> {
-  public static final boolean ENABLED = "true".equals(System.getProperty("idea.internal.trigramindex.enabled"));
+  public static final boolean ENABLED = !"false".equals(System.getProperty("idea.internal.trigramindex.enabled"));
 
   public static final ID<Integer,Void> INDEX_ID = ID.create("Trigram.Index");
 
@@ -94,8 +97,62 @@ public class TrigramIndex extends ScalarIndexExtension<Integer> {
     return true;
   }
 
+  @Override
+  public boolean dependsOnFileContentOnly() {
+    return true;
+  }
+
   @Override
   public int getVersion() {
     return ENABLED ? 2 : 1;
   }
+
+  /**
+   * @return files in the scope whose content satisfies the query, null if the query doesn't restrict the files
+   */
+  @Nullable
+  public static Set<VirtualFile> getFilesMatching(@NotNull TrigramQuery query, @NotNull GlobalSearchScope scope) {
+    if (query.isAll()) return null;
+
+    final int[] trigrams = query.getTrigrams();
+    Set<VirtualFile> result = null;
+    if (query.isAnd()) {
+      if (trigrams.length > 0) {
+        result = getFilesWithTrigrams(trigrams, scope);
+      }
+      for (TrigramQuery subQuery : query.getSubQueries()) {
+        if (result != null && result.isEmpty()) break;
+        final Set<VirtualFile> files = getFilesMatching(subQuery, scope);
+        if (files == null) continue;
+        if (result == null) {
+          result = files;
+        }
+        else {
+          result.retainAll(files);
+        }
+      }
+    }
+    else {
+      result = new HashSet<VirtualFile>();
+      for (int trigram : trigrams) {
+        result.addAll(getFilesWithTrigrams(new int[]{trigram}, scope));
+      }
+      for (TrigramQuery subQuery : query.getSubQueries()) {
+        final Set<VirtualFile> files = getFilesMatching(subQuery, scope);
+        if (files == null) return null;
+        result.addAll(files);
+      }
+    }
+    return result;
+  }
+
+  private static Set<VirtualFile> getFilesWithTrigrams(int[] trigrams, GlobalSearchScope scope) {
+    final Set<Integer> keys = new HashSet<Integer>(trigrams.length);
+    for (int trigram : trigrams) {
+      keys.add(trigram);
+    }
+    final Set<VirtualFile> files = new HashSet<VirtualFile>();
+    FileBasedIndex.getInstance().getFilesWithKey(INDEX_ID, keys, new CommonProcessors.CollectProcessor<VirtualFile>(files), scope);
+    return files;
+  }
 }
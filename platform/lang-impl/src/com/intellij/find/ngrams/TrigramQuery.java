@@ -0,0 +1,143 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Boolean combination of trigrams a text must contain in order to possibly match a search.
+ * An AND query requires all its trigrams and sub-queries, an OR query requires at least one of them.
+ * The query without trigrams and sub-queries is {@link #ALL}, it is satisfied by any text.
+ *
+ * @see TrigramQueryBuilder
+ */
+public class TrigramQuery {
+  public static final TrigramQuery ALL = new TrigramQuery(true, new TIntHashSet(), Collections.<TrigramQuery>emptyList());
+
+  private final boolean myAnd;
+  private final TIntHashSet myTrigrams;
+  private final List<TrigramQuery> mySubQueries;
+
+  private TrigramQuery(boolean and, TIntHashSet trigrams, List<TrigramQuery> subQueries) {
+    myAnd = and;
+    myTrigrams = trigrams;
+    mySubQueries = subQueries;
+  }
+
+  public boolean isAnd() {
+    return myAnd;
+  }
+
+  public boolean isAll() {
+    return myAnd && myTrigrams.isEmpty() && mySubQueries.isEmpty();
+  }
+
+  @NotNull
+  public int[] getTrigrams() {
+    int[] trigrams = myTrigrams.toArray();
+    Arrays.sort(trigrams);
+    return trigrams;
+  }
+
+  @NotNull
+  public List<TrigramQuery> getSubQueries() {
+    return mySubQueries;
+  }
+
+  /**
+   * @return query requiring all the (case-insensitive) trigrams of the text, {@link #ALL} if the text is shorter than three characters
+   */
+  @NotNull
+  public static TrigramQuery literal(@NotNull CharSequence text) {
+    final TIntHashSet trigrams = TrigramBuilder.buildTrigram(text);
+    return trigrams.isEmpty() ? ALL : new TrigramQuery(true, trigrams, Collections.<TrigramQuery>emptyList());
+  }
+
+  /**
+   * @return query satisfied by the texts containing at least one of the given strings
+   */
+  @NotNull
+  public static TrigramQuery anyOf(@NotNull Collection<String> strings) {
+    TrigramQuery result = null;
+    for (String s : strings) {
+      final TrigramQuery query = literal(s);
+      result = result == null ? query : or(result, query);
+    }
+    return result == null ? ALL : result;
+  }
+
+  @NotNull
+  public static TrigramQuery and(@NotNull TrigramQuery q1, @NotNull TrigramQuery q2) {
+    if (q1.isAll()) return q2;
+    if (q2.isAll()) return q1;
+    return combine(true, q1, q2);
+  }
+
+  @NotNull
+  public static TrigramQuery or(@NotNull TrigramQuery q1, @NotNull TrigramQuery q2) {
+    if (q1.isAll() || q2.isAll()) return ALL;
+    // a OR (a AND b) == a
+    if (q1.isTrigramConjunction() && q2.isTrigramConjunction()) {
+      if (q2.myTrigrams.containsAll(q1.myTrigrams.toArray())) return q1;
+      if (q1.myTrigrams.containsAll(q2.myTrigrams.toArray())) return q2;
+    }
+    return combine(false, q1, q2);
+  }
+
+  private boolean isTrigramConjunction() {
+    return (myAnd || myTrigrams.size() == 1) && mySubQueries.isEmpty();
+  }
+
+  private static TrigramQuery combine(boolean and, TrigramQuery q1, TrigramQuery q2) {
+    final TIntHashSet trigrams = new TIntHashSet();
+    final List<TrigramQuery> subQueries = new ArrayList<TrigramQuery>();
+    addOperand(and, q1, trigrams, subQueries);
+    addOperand(and, q2, trigrams, subQueries);
+    return new TrigramQuery(and, trigrams, subQueries);
+  }
+
+  private static void addOperand(boolean and, TrigramQuery operand, TIntHashSet trigrams, List<TrigramQuery> subQueries) {
+    if (operand.myAnd == and || operand.myTrigrams.size() + operand.mySubQueries.size() == 1) {
+      // same operation or a single operand: flatten
+      trigrams.addAll(operand.myTrigrams.toArray());
+      subQueries.addAll(operand.mySubQueries);
+    }
+    else {
+      subQueries.add(operand);
+    }
+  }
+
+  public String toString() {
+    if (isAll()) return "ALL";
+    final StringBuilder result = new StringBuilder(myAnd ? "AND(" : "OR(");
+    boolean first = true;
+    for (int trigram : getTrigrams()) {
+      if (!first) result.append(' ');
+      first = false;
+      result.append((char)((trigram >> 16) & 0xff)).append((char)((trigram >> 8) & 0xff)).append((char)(trigram & 0xff));
+    }
+    for (TrigramQuery subQuery : mySubQueries) {
+      if (!first) result.append(' ');
+      first = false;
+      result.append(subQuery);
+    }
+    return result.append(')').toString();
+  }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.find.FindModel;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Computes the trigrams a text has to contain in order to match a search string or a {@link java.util.regex.Pattern}.
+ * <p/>
+ * For every regular expression node the builder tracks whether it can match the empty string, the exact set of strings
+ * it can match (while that set is small), the sets of possible prefixes and suffixes of its matches and the trigram query
+ * every match satisfies. Concatenation combines suffixes of the left part with prefixes of the right one, which gives
+ * the trigrams spanning the parts; alternation unites the sets and ORs the queries. Whatever the builder doesn't understand
+ * is treated as "any string", so the resulting query never rejects a text the expression could match in.
+ * <p/>
+ * All the strings are lowercased, as the trigram index is case-insensitive.
+ */
+public class TrigramQueryBuilder {
+  private static final int MAX_EXACT_SIZE = 16;
+  private static final int MAX_SET_SIZE = 64;
+  private static final int MAX_CLASS_SIZE = 8;
+
+  private final String myRegExp;
+  private int myPos;
+
+  private TrigramQueryBuilder(String regExp) {
+    myRegExp = regExp;
+  }
+
+  @NotNull
+  public static TrigramQuery forFindModel(@NotNull FindModel model) {
+    final String toFind = model.getStringToFind();
+    return model.isRegularExpressions() ? forRegExp(toFind) : TrigramQuery.literal(toFind);
+  }
+
+  @NotNull
+  public static TrigramQuery forRegExp(@NotNull String regExp) {
+    try {
+      Pattern.compile(regExp);
+    }
+    catch (PatternSyntaxException e) {
+      return TrigramQuery.ALL;
+    }
+
+    final TrigramQueryBuilder builder = new TrigramQueryBuilder(regExp);
+    final Info info;
+    try {
+      info = builder.parseAlternation();
+    }
+    catch (UnsupportedSyntaxException e) {
+      return TrigramQuery.ALL;
+    }
+    if (builder.myPos < regExp.length()) return TrigramQuery.ALL; // unbalanced ')'
+
+    if (info.exact != null) {
+      return TrigramQuery.and(info.match, TrigramQuery.anyOf(info.exact));
+    }
+    return TrigramQuery.and(info.match, TrigramQuery.and(TrigramQuery.anyOf(info.prefix), TrigramQuery.anyOf(info.suffix)));
+  }
+
+  private Info parseAlternation() {
+    Info result = parseConcatenation();
+    while (myPos < myRegExp.length() && myRegExp.charAt(myPos) == '|') {
+      myPos++;
+      result = alternate(result, parseConcatenation());
+    }
+    return result;
+  }
+
+  private Info parseConcatenation() {
+    Info result = Info.emptyString();
+    while (myPos < myRegExp.length()) {
+      final char c = myRegExp.charAt(myPos);
+      if (c == '|' || c == ')') break;
+      result = concatenate(result, parseRepetition());
+    }
+    return result;
+  }
+
+  private Info parseRepetition() {
+    Info atom = parseAtom();
+    while (myPos < myRegExp.length()) {
+      final char c = myRegExp.charAt(myPos);
+      if (c == '*') {
+        myPos++;
+        atom = Info.anyString();
+      }
+      else if (c == '?') {
+        myPos++;
+        atom = optional(atom);
+      }
+      else if (c == '+') {
+        myPos++;
+        atom = concatenate(atom, Info.anyString());
+      }
+      else if (c == '{') {
+        final int close = myRegExp.indexOf('}', myPos);
+        if (close < 0) throw new UnsupportedSyntaxException();
+        final String bounds = myRegExp.substring(myPos + 1, close);
+        myPos = close + 1;
+        final int min;
+        try {
+          final int comma = bounds.indexOf(',');
+          min = Integer.parseInt((comma < 0 ? bounds : bounds.substring(0, comma)).trim());
+        }
+        catch (NumberFormatException e) {
+          throw new UnsupportedSyntaxException();
+        }
+        // x{n,m} with n > 0 contains at least one x, repetitions past the first are treated as any string
+        atom = min == 0 ? Info.anyString() : concatenate(atom, Info.anyString());
+      }
+      else {
+        break;
+      }
+      // reluctant and possessive quantifiers match the same strings
+      if (myPos < myRegExp.length() && (myRegExp.charAt(myPos) == '?' || myRegExp.charAt(myPos) == '+')) {
+        myPos++;
+      }
+    }
+    return atom;
+  }
+
+  private Info parseAtom() {
+    final char c = myRegExp.charAt(myPos++);
+    switch (c) {
+      case '(':
+        return parseGroup();
+      case '[':
+        return parseClass();
+      case '.':
+        return Info.anyChar();
+      case '^':
+      case '$':
+        return Info.emptyString();
+      case '\\':
+        return parseEscape();
+      default:
+        return Info.literal(String.valueOf(c));
+    }
+  }
+
+  private Info parseGroup() {
+    boolean lookaround = false;
+    if (myRegExp.startsWith("?", myPos)) {
+      if (myRegExp.startsWith("?:", myPos) || myRegExp.startsWith("?>", myPos)) {
+        myPos += 2;
+      }
+      else if (myRegExp.startsWith("?=", myPos) || myRegExp.startsWith("?!", myPos)) {
+        myPos += 2;
+        lookaround = true;
+      }
+      else if (myRegExp.startsWith("?<=", myPos) || myRegExp.startsWith("?<!", myPos)) {
+        myPos += 3;
+        lookaround = true;
+      }
+      else if (myRegExp.startsWith("?<", myPos)) {
+        skipTo('>'); // named group
+      }
+      else {
+        // embedded flags: (?idmsux-idmsux) or (?idmsux-idmsux:X)
+        int i = myPos + 1;
+        while (i < myRegExp.length() && (Character.isLetter(myRegExp.charAt(i)) || myRegExp.charAt(i) == '-')) {
+          // in the comments mode whitespace and #-comments are ignored, which changes the meaning of the literals
+          if (myRegExp.charAt(i) == 'x') throw new UnsupportedSyntaxException();
+          i++;
+        }
+        if (i >= myRegExp.length()) throw new UnsupportedSyntaxException();
+        myPos = i + 1;
+        if (myRegExp.charAt(i) == ')') return Info.emptyString();
+        if (myRegExp.charAt(i) != ':') throw new UnsupportedSyntaxException();
+      }
+    }
+
+    final Info group = parseAlternation();
+    if (myPos >= myRegExp.length() || myRegExp.charAt(myPos) != ')') throw new UnsupportedSyntaxException();
+    myPos++;
+    // lookarounds don't consume characters, the text they check is matched by the rest of the expression, if at all
+    return lookaround ? Info.emptyString() : group;
+  }
+
+  private Info parseClass() {
+    final Set<String> chars = new LinkedHashSet<String>();
+    boolean complex = false;
+    if (myPos < myRegExp.length() && myRegExp.charAt(myPos) == '^') {
+      myPos++;
+      complex = true;
+    }
+    boolean first = true;
+    int depth = 1;
+    while (true) {
+      if (myPos >= myRegExp.length()) throw new UnsupportedSyntaxException();
+      char c = myRegExp.charAt(myPos++);
+      if (c == ']' && !first) {
+        if (--depth == 0) break;
+        continue;
+      }
+      first = false;
+      if (c == '[') {
+        depth++;
+        complex = true;
+        continue;
+      }
+      if (c == '&' && myPos < myRegExp.length() && myRegExp.charAt(myPos) == '&') {
+        complex = true;
+        continue;
+      }
+      if (c == '\\') {
+        if (myPos >= myRegExp.length()) throw new UnsupportedSyntaxException();
+        final char escaped = myRegExp.charAt(myPos++);
+        if (escaped == 'Q') throw new UnsupportedSyntaxException();
+        final Character decoded = decodeSimpleEscape(escaped);
+        if (decoded == null) {
+          if (Character.isLetterOrDigit(escaped)) {
+            // \d, \w, \p{...}, octal and hex escapes: don't try to enumerate the characters
+            complex = true;
+            continue;
+          }
+          c = escaped;
+        }
+        else {
+          c = decoded.charValue();
+        }
+      }
+      if (myPos + 1 < myRegExp.length() && myRegExp.charAt(myPos) == '-' && myRegExp.charAt(myPos + 1) != ']') {
+        final char to = myRegExp.charAt(myPos + 1);
+        myPos += 2;
+        if (to == '\\' || to < c || to - c >= MAX_CLASS_SIZE) {
+          complex = true;
+          if (to == '\\' && myPos < myRegExp.length()) myPos++;
+          continue;
+        }
+        for (char ch = c; ch <= to; ch++) {
+          chars.add(String.valueOf(StringUtil.toLowerCase(ch)));
+        }
+        continue;
+      }
+      chars.add(String.valueOf(StringUtil.toLowerCase(c)));
+    }
+
+    if (complex || chars.isEmpty() || chars.size() > MAX_CLASS_SIZE) return Info.anyChar();
+    final Info info = new Info();
+    info.exact = chars;
+    return info;
+  }
+
+  private Info parseEscape() {
+    if (myPos >= myRegExp.length()) throw new UnsupportedSyntaxException();
+    final char c = myRegExp.charAt(myPos++);
+    switch (c) {
+      case 'Q': {
+        int end = myRegExp.indexOf("\\E", myPos);
+        if (end < 0) end = myRegExp.length();
+        final String quoted = myRegExp.substring(myPos, end);
+        myPos = Math.min(end + 2, myRegExp.length());
+        return Info.literal(quoted);
+      }
+      case 'b':
+      case 'B':
+      case 'A':
+      case 'z':
+      case 'Z':
+      case 'G':
+        return Info.emptyString();
+      case 'p':
+      case 'P':
+        if (myPos < myRegExp.length() && myRegExp.charAt(myPos) == '{') {
+          skipTo('}');
+        }
+        else {
+          myPos++;
+        }
+        return Info.anyChar();
+      case 'k':
+        skipTo('>');
+        return Info.anyString(); // named back reference
+      case 'x':
+        if (myPos < myRegExp.length() && myRegExp.charAt(myPos) == '{') {
+          skipTo('}');
+        }
+        else {
+          myPos += 2;
+        }
+        return Info.anyChar();
+      case 'u':
+        myPos += 4;
+        return Info.anyChar();
+      case '0':
+        for (int i = 0; i < 3 && myPos < myRegExp.length() && myRegExp.charAt(myPos) >= '0' && myRegExp.charAt(myPos) <= '7'; i++) {
+          myPos++;
+        }
+        return Info.anyChar();
+      case 'c':
+        myPos++;
+        return Info.anyChar();
+      default:
+        if (c >= '1' && c <= '9') {
+          // back reference: the referenced group has already required its trigrams
+          while (myPos < myRegExp.length() && Character.isDigit(myRegExp.charAt(myPos))) myPos++;
+          return Info.anyString();
+        }
+        final Character decoded = decodeSimpleEscape(c);
+        if (decoded != null) return Info.literal(String.valueOf(decoded.charValue()));
+        if (Character.isLetter(c)) return Info.anyChar(); // \d, \w, \s and their negations
+        return Info.literal(String.valueOf(c));
+    }
+  }
+
+  private void skipTo(char c) {
+    final int index = myRegExp.indexOf(c, myPos);
+    if (index < 0) throw new UnsupportedSyntaxException();
+    myPos = index + 1;
+  }
+
+  private static Character decodeSimpleEscape(char c) {
+    switch (c) {
+      case 't': return '\t';
+      case 'n': return '\n';
+      case 'r': return '\r';
+      case 'f': return '\f';
+      case 'a': return '\u0007';
+      case 'e': return '\u001B';
+      default: return null;
+    }
+  }
+
+  private static Info optional(Info x) {
+    if (x.exact != null) {
+      final Info result = new Info();
+      result.exact = new LinkedHashSet<String>(x.exact);
+      result.exact.add("");
+      result.emptyable = true;
+      return result;
+    }
+    return Info.anyString();
+  }
+
+  private static Info concatenate(Info x, Info y) {
+    final Info result = new Info();
+    result.emptyable = x.emptyable && y.emptyable;
+    result.match = TrigramQuery.and(x.match, y.match);
+
+    if (x.exact != null && y.exact != null && x.exact.size() * y.exact.size() <= MAX_EXACT_SIZE) {
+      result.exact = cross(x.exact, y.exact);
+      return result;
+    }
+
+    if (x.exact != null) {
+      result.prefix = x.exact.size() * y.prefix.size() <= MAX_SET_SIZE ? cross(x.exact, y.prefix) : x.exact;
+    }
+    else {
+      result.prefix = x.emptyable ? union(x.prefix, y.exact != null ? y.exact : y.prefix) : x.prefix;
+    }
+    if (y.exact != null) {
+      result.suffix = x.suffix.size() * y.exact.size() <= MAX_SET_SIZE ? cross(x.suffix, y.exact) : y.exact;
+    }
+    else {
+      result.suffix = y.emptyable ? union(y.suffix, x.exact != null ? x.exact : x.suffix) : y.suffix;
+    }
+
+    // the trigrams spanning the boundary between x and y
+    final Set<String> left = x.exact != null ? x.exact : x.suffix;
+    final Set<String> right = y.exact != null ? y.exact : y.prefix;
+    if (left.size() * right.size() <= MAX_SET_SIZE) {
+      result.match = TrigramQuery.and(result.match, TrigramQuery.anyOf(cross(left, right)));
+    }
+    return result.simplify();
+  }
+
+  private static Info alternate(Info x, Info y) {
+    final Info result = new Info();
+    result.emptyable = x.emptyable || y.emptyable;
+    if (x.exact != null && y.exact != null) {
+      result.exact = union(x.exact, y.exact);
+      result.match = TrigramQuery.or(x.match, y.match);
+      if (result.exact.size() <= MAX_EXACT_SIZE) return result;
+      return result.simplify();
+    }
+
+    final TrigramQuery xMatch = x.exact != null ? TrigramQuery.and(x.match, TrigramQuery.anyOf(x.exact)) : x.match;
+    final TrigramQuery yMatch = y.exact != null ? TrigramQuery.and(y.match, TrigramQuery.anyOf(y.exact)) : y.match;
+    result.match = TrigramQuery.or(xMatch, yMatch);
+    result.prefix = union(x.exact != null ? x.exact : x.prefix, y.exact != null ? y.exact : y.prefix);
+    result.suffix = union(x.exact != null ? x.exact : x.suffix, y.exact != null ? y.exact : y.suffix);
+    return result.simplify();
+  }
+
+  private static Set<String> cross(Set<String> s1, Set<String> s2) {
+    final Set<String> result = new LinkedHashSet<String>();
+    for (String a : s1) {
+      for (String b : s2) {
+        result.add(a + b);
+      }
+    }
+    return result;
+  }
+
+  private static Set<String> union(Set<String> s1, Set<String> s2) {
+    final Set<String> result = new LinkedHashSet<String>(s1);
+    result.addAll(s2);
+    return result;
+  }
+
+  private static class Info {
+    boolean emptyable;
+    // all the strings the node can match, null if there are too many of them
+    Set<String> exact;
+    // every match of the node starts with one of the prefixes and ends with one of the suffixes, used when exact == null
+    Set<String> prefix = Collections.singleton("");
+    Set<String> suffix = Collections.singleton("");
+    TrigramQuery match = TrigramQuery.ALL;
+
+    static Info emptyString() {
+      return literal("");
+    }
+
+    static Info literal(String s) {
+      final Info info = new Info();
+      info.exact = Collections.singleton(StringUtil.toLowerCase(s));
+      info.emptyable = s.length() == 0;
+      return info;
+    }
+
+    static Info anyChar() {
+      return new Info();
+    }
+
+    static Info anyString() {
+      final Info info = new Info();
+      info.emptyable = true;
+      return info;
+    }
+
+    /**
+     * Moves the trigrams of too large or too long sets to the query and keeps only the ends of the strings
+     * still needed to compute the trigrams spanning this node and its neighbours.
+     */
+    Info simplify() {
+      if (exact != null && exact.size() > MAX_EXACT_SIZE) {
+        match = TrigramQuery.and(match, TrigramQuery.anyOf(exact));
+        prefix = exact;
+        suffix = exact;
+        exact = null;
+      }
+      if (exact == null) {
+        prefix = trim(prefix, true);
+        suffix = trim(suffix, false);
+      }
+      return this;
+    }
+
+    private Set<String> trim(Set<String> strings, boolean prefixes) {
+      boolean hasLong = false;
+      for (String s : strings) {
+        if (s.length() > 2) {
+          hasLong = true;
+          break;
+        }
+      }
+      if (!hasLong && strings.size() <= MAX_SET_SIZE) return strings;
+
+      match = TrigramQuery.and(match, TrigramQuery.anyOf(strings));
+      for (int length = 2; length > 0; length--) {
+        final Set<String> trimmed = new LinkedHashSet<String>();
+        for (String s : strings) {
+          trimmed.add(s.length() <= length ? s : prefixes ? s.substring(0, length) : s.substring(s.length() - length));
+        }
+        if (trimmed.size() <= MAX_SET_SIZE) return trimmed;
+      }
+      return Collections.singleton("");
+    }
+  }
+
+  private static class UnsupportedSyntaxException extends RuntimeException {
+  }
+}
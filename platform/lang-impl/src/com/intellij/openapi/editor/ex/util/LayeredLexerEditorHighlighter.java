@@ -70,6 +70,12 @@ public class LayeredLexerEditorHighlighter extends LexerEditorHighlighter {
     }
   }
 
+  @Override
+  protected boolean isLazyLexingSupported() {
+    // the layer documents are built for all the tokens at once
+    return false;
+  }
+
   public MappingSegments getSegments() {
     return (MappingSegments)super.getSegments();
   }
@@ -17,30 +17,36 @@
 package com.intellij.psi.impl.cache.impl.id;
 
 import com.intellij.lang.cacheBuilder.CacheBuilderRegistry;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.LanguageFileType;
 import com.intellij.openapi.fileTypes.impl.AbstractFileType;
 import com.intellij.openapi.project.ProjectUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWithId;
 import com.intellij.util.indexing.*;
-import com.intellij.util.io.DataExternalizer;
-import com.intellij.util.io.InlineKeyDescriptor;
-import com.intellij.util.io.KeyDescriptor;
+import com.intellij.util.io.*;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * @author Eugene Zhuravlev
  *         Date: Jan 16, 2008
  */
-public class IdIndex extends FileBasedIndexExtension<IdIndexEntry, Integer> {
+public class IdIndex extends CustomImplementationFileBasedIndexExtension<IdIndexEntry, Integer, FileContent> {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.psi.impl.cache.impl.id.IdIndex");
   @NonNls public static final ID<IdIndexEntry, Integer> NAME = ID.create("IdIndex");
+
+  private static volatile MyIndex ourIndex;
   
   private final FileBasedIndex.InputFilter myInputFilter = new FileBasedIndex.InputFilter() {
     @Override
@@ -89,7 +95,7 @@ public class IdIndex extends FileBasedIndexExtension<IdIndexEntry, Integer> {
 
   @Override
   public int getVersion() {
-    return 9; // TODO: version should enumerate all word scanner versions and build version upon that set
+    return 10; // TODO: version should enumerate all word scanner versions and build version upon that set
   }
 
   @Override
@@ -97,6 +103,11 @@ public class IdIndex extends FileBasedIndexExtension<IdIndexEntry, Integer> {
     return true;
   }
 
+  @Override
+  public boolean dependsOnFileContentOnly() {
+    return true;
+  }
+
   @Override
   public ID<IdIndexEntry,Integer> getName() {
     return NAME;
@@ -122,6 +133,27 @@ public class IdIndex extends FileBasedIndexExtension<IdIndexEntry, Integer> {
     return myInputFilter;
   }
   
+  @Override
+  public UpdatableIndex<IdIndexEntry, Integer, FileContent> createIndexImplementation(ID<IdIndexEntry, Integer> indexId,
+                                                                                    FileBasedIndex owner,
+                                                                                    IndexStorage<IdIndexEntry, Integer> storage) {
+    final MyIndex index = new MyIndex(indexId, getIndexer(), storage);
+    ourIndex = index;
+    return index;
+  }
+
+  /**
+   * Checks the filter of the file built along with its index data (see {@link IdIndexFilter}), which is much cheaper than
+   * reading the posting list of the word when the files are already known, e.g. to intersect the files containing several words.
+   *
+   * @param occurrenceMask the contexts to look for, see {@link com.intellij.psi.search.UsageSearchContext}
+   * @return false if the file has no occurrences of the word in any of the contexts
+   */
+  public static boolean mayContain(@NotNull VirtualFile file, @NotNull IdIndexEntry entry, int occurrenceMask) {
+    final MyIndex index = ourIndex;
+    return index == null || !(file instanceof VirtualFileWithId) || index.mayContain(Math.abs(FileBasedIndex.getFileId(file)), entry, occurrenceMask);
+  }
+
   private static boolean isIndexable(FileType fileType) {
     return fileType instanceof LanguageFileType ||
            fileType instanceof AbstractFileType ||
@@ -129,4 +161,121 @@ public class IdIndex extends FileBasedIndexExtension<IdIndexEntry, Integer> {
            CacheBuilderRegistry.getInstance().getCacheBuilder(fileType) != null;
   }
 
+  private static class MyIndex extends MapReduceIndex<IdIndexEntry, Integer, FileContent> {
+    private final File myFiltersFile;
+    private PersistentHashMap<Integer, int[]> myFilters;
+
+    public MyIndex(final ID<IdIndexEntry, Integer> indexId,
+                   final DataIndexer<IdIndexEntry, Integer, FileContent> indexer,
+                   final IndexStorage<IdIndexEntry, Integer> storage) {
+      super(indexId, indexer, storage);
+      myFiltersFile = new File(IndexInfrastructure.getIndexRootDir(indexId), "filters");
+      myFilters = createFilters();
+    }
+
+    @Override
+    protected void updateWithMap(int inputId, Map<IdIndexEntry, Integer> newData, Callable<Collection<IdIndexEntry>> oldKeysGetter)
+      throws StorageException {
+      getWriteLock().lock();
+      try {
+        super.updateWithMap(inputId, newData, oldKeysGetter);
+        if (myFilters == null) return;
+        try {
+          if (newData.isEmpty() || myStorage instanceof MemoryIndexStorage && ((MemoryIndexStorage)myStorage).isBufferingEnabled()) {
+            // the data of unsaved documents is dropped later, so their files are left without a filter: a missing filter matches any word
+            myFilters.remove(inputId);
+          }
+          else {
+            myFilters.put(inputId, IdIndexFilter.create(newData));
+          }
+        }
+        catch (IOException e) {
+          throw new StorageException(e);
+        }
+      }
+      finally {
+        getWriteLock().unlock();
+      }
+    }
+
+    private boolean mayContain(int inputId, @NotNull IdIndexEntry entry, int occurrenceMask) {
+      getReadLock().lock();
+      try {
+        if (myFilters == null) return true;
+        final int[] filter = myFilters.get(inputId);
+        return filter == null || IdIndexFilter.mayContain(filter, entry, occurrenceMask);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        return true;
+      }
+      finally {
+        getReadLock().unlock();
+      }
+    }
+
+    @Override
+    public void clear() throws StorageException {
+      getWriteLock().lock();
+      try {
+        super.clear();
+        closeFilters();
+        PersistentHashMap.deleteFilesStartingWith(myFiltersFile);
+        myFilters = createFilters();
+      }
+      finally {
+        getWriteLock().unlock();
+      }
+    }
+
+    @Override
+    public void flush() throws StorageException {
+      super.flush();
+      getReadLock().lock();
+      try {
+        if (myFilters != null && myFilters.isDirty()) {
+          myFilters.force();
+        }
+      }
+      finally {
+        getReadLock().unlock();
+      }
+    }
+
+    @Override
+    public void dispose() {
+      super.dispose();
+      getWriteLock().lock();
+      try {
+        closeFilters();
+        myFilters = null;
+      }
+      finally {
+        getWriteLock().unlock();
+      }
+    }
+
+    private PersistentHashMap<Integer, int[]> createFilters() {
+      try {
+        return new PersistentHashMap<Integer, int[]>(myFiltersFile, new EnumeratorIntegerDescriptor(), IdIndexFilter.EXTERNALIZER);
+      }
+      catch (IOException e) {
+        // the index works without the filters, just slower
+        LOG.info(e);
+        PersistentHashMap.deleteFilesStartingWith(myFiltersFile);
+        return null;
+      }
+    }
+
+    private void closeFilters() {
+      if (myFilters != null) {
+        try {
+          myFilters.close();
+        }
+        catch (IOException e) {
+          LOG.info(e);
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.cache.impl.id;
+
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Bloom filter of the words of a file together with the contexts they occur in: tells for sure that the file has no occurrences
+ * of a word, without reading the posting list of the word in {@link IdIndex}.
+ */
+public class IdIndexFilter {
+  // about 1% of false positives
+  private static final int BITS_PER_ELEMENT = 10;
+  private static final int HASH_COUNT = 5;
+  private static final int CONTEXTS = 8;
+
+  public static final DataExternalizer<int[]> EXTERNALIZER = new DataExternalizer<int[]>() {
+    @Override
+    public void save(DataOutput out, int[] value) throws IOException {
+      DataInputOutputUtil.writeINT(out, value.length);
+      for (int word : value) {
+        out.writeInt(word);
+      }
+    }
+
+    @Override
+    public int[] read(DataInput in) throws IOException {
+      final int[] result = new int[DataInputOutputUtil.readINT(in)];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = in.readInt();
+      }
+      return result;
+    }
+  };
+
+  private IdIndexFilter() {
+  }
+
+  /**
+   * @param data the words of the file with the masks of the contexts they occur in, as built by {@link IdIndex}
+   */
+  @NotNull
+  public static int[] create(@NotNull Map<IdIndexEntry, Integer> data) {
+    int elements = 0;
+    for (Integer mask : data.values()) {
+      elements += Integer.bitCount(mask.intValue() & 0xFF);
+    }
+    final int[] filter = new int[Math.max(2, (elements * BITS_PER_ELEMENT + 31) / 32)];
+    final int bits = filter.length * 32;
+    for (Map.Entry<IdIndexEntry, Integer> entry : data.entrySet()) {
+      final int wordHash = entry.getKey().getWordHashCode();
+      final int mask = entry.getValue().intValue();
+      for (int context = 0; context < CONTEXTS; context++) {
+        if ((mask & (1 << context)) == 0) continue;
+        final long hash = hash(wordHash, context);
+        final int h1 = (int)hash;
+        final int h2 = (int)(hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+          final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+          filter[bit >>> 5] |= 1 << bit;
+        }
+      }
+    }
+    return filter;
+  }
+
+  /**
+   * @param occurrenceMask the contexts to look for, see {@link com.intellij.psi.search.UsageSearchContext}
+   * @return false if the file has no occurrences of the word in any of the contexts
+   */
+  public static boolean mayContain(@NotNull int[] filter, @NotNull IdIndexEntry entry, int occurrenceMask) {
+    final int bits = filter.length * 32;
+    final int wordHash = entry.getWordHashCode();
+    contexts:
+    for (int context = 0; context < CONTEXTS; context++) {
+      if ((occurrenceMask & (1 << context)) == 0) continue;
+      final long hash = hash(wordHash, context);
+      final int h1 = (int)hash;
+      final int h2 = (int)(hash >>> 32);
+      for (int i = 0; i < HASH_COUNT; i++) {
+        final int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+        if ((filter[bit >>> 5] & (1 << bit)) == 0) continue contexts;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static long hash(int wordHash, int context) {
+    // the finalizer of MurmurHash3
+    long h = ((long)wordHash << 3) | context;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -41,14 +41,12 @@ import com.intellij.psi.impl.cache.impl.id.IdIndexEntry;
 import com.intellij.psi.search.*;
 import com.intellij.psi.search.searches.IndexPatternSearch;
 import com.intellij.psi.util.PsiUtilBase;
-import com.intellij.util.CommonProcessors;
 import com.intellij.util.Processor;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.CollectionFactory;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.text.StringSearcher;
-import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -366,7 +364,7 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
                                        final boolean caseSensitively,
                                        @NotNull String text,
                                        @NotNull final Processor<PsiFile> processor,
-                                       @Nullable ProgressIndicator progress) {
+                                       @Nullable final ProgressIndicator progress) {
     List<String> words = StringUtil.getWordsIn(text);
     if (words.isEmpty()) return true;
     Collections.sort(words, new Comparator<String>() {
@@ -375,42 +373,24 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
         return o2.length() - o1.length();
       }
     });
-    final Set<PsiFile> fileSet;
-    if (words.size() > 1) {
-      fileSet = new THashSet<PsiFile>();
-      Set<PsiFile> copy = new THashSet<PsiFile>();
-      for (int i = 0; i < words.size() - 1; i++) {
-        if (progress != null) {
-          progress.checkCanceled();
-        }
-        else {
-          ProgressManager.checkCanceled();
-        }
-        final String word = words.get(i);
-        CacheManager.SERVICE.getInstance(myManager.getProject()).processFilesWithWord(new CommonProcessors.CollectProcessor<PsiFile>(copy), word, searchContext, scope, caseSensitively);
-        if (i == 0) {
-          fileSet.addAll(copy);
-        }
-        else {
-          fileSet.retainAll(copy);
-        }
-        copy.clear();
-        if (fileSet.isEmpty()) break;
-      }
-      if (fileSet.isEmpty()) return true;
-    }
-    else {
-      fileSet = null;
+    // only the posting list of the longest word is read, the files are checked for the other words with their filters
+    final List<IdIndexEntry> otherEntries = new ArrayList<IdIndexEntry>(words.size() - 1);
+    for (int i = 1; i < words.size(); i++) {
+      otherEntries.add(new IdIndexEntry(words.get(i), caseSensitively));
     }
     return CacheManager.SERVICE.getInstance(myManager.getProject()).processFilesWithWord(new Processor<PsiFile>() {
       @Override
       public boolean process(PsiFile psiFile) {
-        if (fileSet != null && !fileSet.contains(psiFile)) {
-          return true;
+        if (progress != null) progress.checkCanceled();
+        final VirtualFile virtualFile = psiFile.getVirtualFile();
+        if (virtualFile != null) {
+          for (IdIndexEntry entry : otherEntries) {
+            if (!IdIndex.mayContain(virtualFile, entry, searchContext)) return true;
+          }
         }
         return processor.process(psiFile);
       }
-    }, words.get(words.size() - 1), searchContext, scope, caseSensitively);
+    }, words.get(0), searchContext, scope, caseSensitively);
   }
 
   @Override
@@ -705,21 +685,11 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
       final Collection<RequestWithProcessor> data = singles.get(key);
       GlobalSearchScope commonScope = uniteScopes(data);
 
-      MultiMap<VirtualFile, RequestWithProcessor> intersection = null;
-
-      boolean first = true;
-      for (IdIndexEntry entry : key) {
-        final MultiMap<VirtualFile, RequestWithProcessor> local = findFilesWithIndexEntry(entry, index, data, commonScope, progress);
-        if (first) {
-          intersection = local;
-          first = false;
-        }
-        else {
-          intersection.keySet().retainAll(local.keySet());
-          for (VirtualFile file : intersection.keySet()) {
-            intersection.get(file).retainAll(local.get(file));
-          }
-        }
+      // only the posting list of the first word is read, the files are checked for the other words with their filters
+      final Iterator<IdIndexEntry> entries = key.iterator();
+      final MultiMap<VirtualFile, RequestWithProcessor> intersection = findFilesWithIndexEntry(entries.next(), index, data, commonScope, progress);
+      while (entries.hasNext()) {
+        retainFilesWithIndexEntry(intersection, entries.next(), progress);
       }
       result.putAllValues(intersection);
     }
@@ -745,6 +715,24 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
     return commonScope;
   }
 
+  private static void retainFilesWithIndexEntry(final MultiMap<VirtualFile, RequestWithProcessor> files,
+                                                final IdIndexEntry entry,
+                                                final ProgressIndicator progress) {
+    for (Iterator<VirtualFile> fileIterator = files.keySet().iterator(); fileIterator.hasNext();) {
+      if (progress != null) progress.checkCanceled();
+      final VirtualFile file = fileIterator.next();
+      final Collection<RequestWithProcessor> requests = files.get(file);
+      for (Iterator<RequestWithProcessor> iterator = requests.iterator(); iterator.hasNext();) {
+        if (!IdIndex.mayContain(file, entry, iterator.next().request.searchContext)) {
+          iterator.remove();
+        }
+      }
+      if (requests.isEmpty()) {
+        fileIterator.remove();
+      }
+    }
+  }
+
   private static MultiMap<VirtualFile, RequestWithProcessor> findFilesWithIndexEntry(final IdIndexEntry entry,
                                                                                      final FileIndexFacade index,
                                                                                      final Collection<RequestWithProcessor> data,
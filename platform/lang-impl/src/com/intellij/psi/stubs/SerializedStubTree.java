@@ -19,24 +19,36 @@
  */
 package com.intellij.psi.stubs;
 
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.Nullable;
+
 import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Map;
 
 public class SerializedStubTree {
   private final byte[] myBytes;
   private final int myLength;
+  // the stub indices data of the tree when it is known without deserializing the tree, not persisted
+  private final Map<StubIndexKey, Map<Object, TIntArrayList>> myIndexedStubs;
 
   public SerializedStubTree(final byte[] bytes, int length) {
+    this(bytes, length, null);
+  }
+
+  public SerializedStubTree(final byte[] bytes, int length, @Nullable Map<StubIndexKey, Map<Object, TIntArrayList>> indexedStubs) {
     myBytes = bytes;
     myLength = length;
+    myIndexedStubs = indexedStubs;
   }
   
   public SerializedStubTree(DataInput in) throws IOException {
     myLength = in.readInt();
     myBytes = new byte[myLength];
     in.readFully(myBytes);
+    myIndexedStubs = null;
   }
 
   public void write(DataOutput out) throws IOException{
@@ -48,6 +60,21 @@ public class SerializedStubTree {
     return SerializationManager.getInstance().deserialize(new ByteArrayInputStream(myBytes));
   }
 
+  /**
+   * @return the result of {@link StubTree#indexStubTree()} for the tree if it has been computed when the tree was serialized
+   */
+  @Nullable
+  Map<StubIndexKey, Map<Object, TIntArrayList>> getIndexedStubs() {
+    return myIndexedStubs;
+  }
+
+  /**
+   * @return types of the stubs in the order of {@link StubTree#getPlainList()}, cheaper than {@link #getStub()}
+   */
+  public StubSerializer[] getStubTypes() {
+    return SerializationManager.getInstance().readStubTypes(new ByteArrayInputStream(myBytes, 0, myLength));
+  }
+
   public boolean equals(final Object that) {
     if (this == that) {
       return true;
@@ -223,6 +223,9 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
               return;
             }
             if (stubTree == null) {
+              if (psiFile instanceof PsiFileImpl && addPsiByStubTypes((PsiFileImpl)psiFile, project, file, value, result)) {
+                return;
+              }
               stubTree = StubTreeLoader.getInstance().readFromVFile(project, file);
               if (stubTree == null) {
                 return;
@@ -296,6 +299,38 @@ public class StubIndexImpl extends StubIndex implements ApplicationComponent, Pe
     return result;
   }
 
+  /**
+   * Finds the AST nodes for the stubs with the given indices using the stub types only, so that the stub tree isn't deserialized.
+   * @return false if the stub types don't match the AST and the stub tree has to be examined
+   */
+  private static <Psi extends PsiElement> boolean addPsiByStubTypes(PsiFileImpl psiFile,
+                                                                   Project project,
+                                                                   VirtualFile file,
+                                                                   TIntArrayList stubIndices,
+                                                                   List<Psi> result) {
+    final SerializedStubTree serializedTree = StubTreeLoaderImpl.readSerializedTree(project, file);
+    if (serializedTree == null) {
+      return true;
+    }
+    final StubSerializer[] stubTypes = serializedTree.getStubTypes();
+    final List<Psi> found = new SmartList<Psi>();
+    for (int i = 0; i < stubIndices.size(); i++) {
+      final int stubIndex = stubIndices.get(i);
+      if (stubIndex >= stubTypes.length) {
+        return false;
+      }
+      final ASTNode tree = psiFile.findTreeForStub(stubIndex);
+      if (tree != null) {
+        if (tree.getElementType() != stubTypes[stubIndex]) {
+          return false;
+        }
+        found.add((Psi)tree.getPsi());
+      }
+    }
+    result.addAll(found);
+    return true;
+  }
+
   private static IElementType stubType(final StubElement<?> stub) {
     if (stub instanceof PsiFileStub) {
       return ((PsiFileStub)stub).getType();
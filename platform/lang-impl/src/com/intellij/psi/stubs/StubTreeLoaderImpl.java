@@ -66,6 +66,12 @@ public class StubTreeLoaderImpl extends StubTreeLoader {
   @Override
   @Nullable
   public StubTree readFromVFile(Project project, final VirtualFile vFile) {
+    final SerializedStubTree serializedTree = readSerializedTree(project, vFile);
+    return serializedTree != null ? new StubTree((PsiFileStub)serializedTree.getStub()) : null;
+  }
+
+  @Nullable
+  static SerializedStubTree readSerializedTree(Project project, final VirtualFile vFile) {
     if (DumbService.getInstance(project).isDumb()) {
       return null;
     }
@@ -77,8 +83,7 @@ public class StubTreeLoaderImpl extends StubTreeLoader {
       final int size = datas.size();
 
       if (size == 1) {
-        StubElement stub = datas.get(0).getStub();
-        return new StubTree((PsiFileStub)stub);
+        return datas.get(0);
       }
       else if (size != 0) {
         LOG.error("Twin stubs: " + vFile.getPresentableUrl() + " has " + size + " stub versions. Should only have one. id=" + id);
@@ -48,7 +48,7 @@ public class StubUpdatingIndex extends CustomImplementationFileBasedIndexExtensi
 
   public static final ID<Integer, SerializedStubTree> INDEX_ID = ID.create("Stubs");
 
-  private static final int VERSION = 20;
+  private static final int VERSION = 21;
 
   private static final DataExternalizer<SerializedStubTree> KEY_EXTERNALIZER = new DataExternalizer<SerializedStubTree>() {
     @Override
@@ -117,8 +117,12 @@ public class StubUpdatingIndex extends CustomImplementationFileBasedIndexExtensi
             final BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
             SerializationManager.getInstance().serialize(rootStub, bytes);
 
+            // the stub indices data is computed here rather than from the deserialized tree under the index write locks
+            final Map<StubIndexKey, Map<Object, TIntArrayList>> indexedStubs =
+              rootStub instanceof PsiFileStub ? new StubTree((PsiFileStub)rootStub).indexStubTree() : null;
+
             final int key = Math.abs(FileBasedIndex.getFileId(inputData.getFile()));
-            result.put(key, new SerializedStubTree(bytes.getInternalBuffer(), bytes.size()));
+            result.put(key, new SerializedStubTree(bytes.getInternalBuffer(), bytes.size(), indexedStubs));
           }
         });
 
@@ -147,6 +151,16 @@ public class StubUpdatingIndex extends CustomImplementationFileBasedIndexExtensi
     return true;
   }
 
+  /**
+   * Stub trees are not shared by the files with the same content, see {@link ContentHashIndexCache}:
+   * the data is keyed by the file id, a class file stub includes the inner classes read from the sibling files,
+   * and a Java source stub depends on the language level of its module.
+   */
+  @Override
+  public boolean dependsOnFileContentOnly() {
+    return false;
+  }
+
   @Override
   public int getVersion() {
     return getCumulativeVersion();
@@ -241,6 +255,23 @@ public class StubUpdatingIndex extends CustomImplementationFileBasedIndexExtensi
       }
     }
 
+    @Override
+    protected void lockForUpdate() {
+      // stub indices must be write-locked before this index
+      for (StubIndexKey key : getStubIndex().getAllStubIndexKeys()) {
+        getStubIndex().getWriteLock(key).lock();
+      }
+      super.lockForUpdate();
+    }
+
+    @Override
+    protected void unlockAfterUpdate() {
+      super.unlockAfterUpdate();
+      for (StubIndexKey key : getStubIndex().getAllStubIndexKeys()) {
+        getStubIndex().getWriteLock(key).unlock();
+      }
+    }
+
     @Override
     protected void updateWithMap(final int inputId, final Map<Integer, SerializedStubTree> newData, Callable<Collection<Integer>> oldKeysGetter)
       throws StorageException {
@@ -298,7 +329,8 @@ public class StubUpdatingIndex extends CustomImplementationFileBasedIndexExtensi
       final Map<StubIndexKey, Map<Object, TIntArrayList>> stubTree;
       if (!data.isEmpty()) {
         final SerializedStubTree stub = data.values().iterator().next();
-        stubTree = new StubTree((PsiFileStub)stub.getStub()).indexStubTree();
+        final Map<StubIndexKey, Map<Object, TIntArrayList>> indexedStubs = stub.getIndexedStubs();
+        stubTree = indexedStubs != null ? indexedStubs : new StubTree((PsiFileStub)stub.getStub()).indexStubTree();
       }
       else {
         stubTree = Collections.emptyMap();
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.impl.AbstractFileType;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.CommonProcessors;
+import com.intellij.util.containers.ConcurrentSLRUMap;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.KeyDescriptor;
+import com.intellij.util.io.PersistentHashMap;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the data an indexer has recently produced for a file content, keyed by the hash of the content, so that the files with
+ * the same content (the same library under another path, a checkout cloned again) get their data without running the indexer.
+ * Only the indices whose data depends on nothing but the content, the file type and the charset of a file may use it,
+ * see {@link FileBasedIndexExtension#dependsOnFileContentOnly()}.
+ * <p/>
+ * The most recently used contents are kept in memory. A cache made by {@link #create} also keeps the data on disk, so it
+ * survives restarts: the data of an indexer version is looked up with that version only, and the disk holds at most two
+ * generations of contents ("idea.indices.content.hash.cache.size" each), the older one is deleted when the newer one is full.
+ * The cache is cleared with the index.
+ */
+public class ContentHashIndexCache<K, V> {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.util.indexing.ContentHashIndexCache");
+
+  public static final boolean ENABLED = "true".equals(System.getProperty("idea.indices.content.hash.cache"));
+
+  /**
+   * The hash of the content being indexed, present only if the content is worth caching, i.e. it is a file being indexed
+   * rather than an unsaved document.
+   */
+  public static final Key<byte[]> CONTENT_HASH = Key.create("content.hash");
+
+  private static final int DEFAULT_SIZE = 1024;
+  private static final int DISK_GENERATION_SIZE = Integer.getInteger("idea.indices.content.hash.cache.size", 10000);
+  private static final int HASH_LENGTH = 20;
+
+  private final ConcurrentSLRUMap<ContentHash, Map<K, V>> myMap;
+  @Nullable private final DiskStore<K, V> myDiskStore;
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
+
+  public ContentHashIndexCache() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * @param size how many of the contents found by hash and how many of the other recently indexed contents are kept, each
+   */
+  public ContentHashIndexCache(int size) {
+    this(size, null);
+  }
+
+  private ContentHashIndexCache(int size, @Nullable DiskStore<K, V> diskStore) {
+    myMap = new ConcurrentSLRUMap<ContentHash, Map<K, V>>(size, size);
+    myDiskStore = diskStore;
+  }
+
+  /**
+   * @return the cache which keeps the data in the given directory as well. If the directory cannot be opened, it is deleted
+   *         and the data is kept in memory only.
+   */
+  @NotNull
+  public static <K, V> ContentHashIndexCache<K, V> create(@NotNull File dir,
+                                                          int version,
+                                                          @NotNull KeyDescriptor<K> keyDescriptor,
+                                                          @NotNull DataExternalizer<V> valueExternalizer) {
+    return create(dir, version, keyDescriptor, valueExternalizer, DEFAULT_SIZE, DISK_GENERATION_SIZE);
+  }
+
+  static <K, V> ContentHashIndexCache<K, V> create(@NotNull File dir,
+                                                   int version,
+                                                   @NotNull KeyDescriptor<K> keyDescriptor,
+                                                   @NotNull DataExternalizer<V> valueExternalizer,
+                                                   int size,
+                                                   int diskGenerationSize) {
+    final DiskStore<K, V> store = new DiskStore<K, V>(dir, version, new DataMapExternalizer<K, V>(keyDescriptor, valueExternalizer),
+                                                      diskGenerationSize);
+    try {
+      store.open();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      store.close();
+      FileUtil.delete(dir);
+      try {
+        store.open();
+      }
+      catch (IOException e1) {
+        LOG.info(e1);
+        store.close();
+        return new ContentHashIndexCache<K, V>(size);
+      }
+    }
+    return new ContentHashIndexCache<K, V>(size, store);
+  }
+
+  /**
+   * @return the hash of the content as read with the given file type and charset, or null if the data of such a file may change
+   *         while its content stays the same. The syntax of a custom file type may be edited while its name stays the same.
+   */
+  @Nullable
+  public static byte[] computeHash(@NotNull FileType fileType, @Nullable Charset charset, @Nullable byte[] content) {
+    if (fileType instanceof AbstractFileType) {
+      return null;
+    }
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      // the same bytes give different data when read as another file type or in another encoding
+      digest.update(fileType.getName().getBytes("UTF-8"));
+      digest.update((byte)0);
+      if (charset != null) {
+        digest.update(charset.name().getBytes("UTF-8"));
+      }
+      digest.update((byte)0);
+      if (content != null) {
+        digest.update(content);
+      }
+      return digest.digest();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return the data the indexer produced for the content with the given hash, or null if it is not known
+   */
+  @Nullable
+  public Map<K, V> get(@NotNull byte[] hash) {
+    final ContentHash key = new ContentHash(hash);
+    Map<K, V> data = myMap.get(key);
+    if (data == null && myDiskStore != null) {
+      data = myDiskStore.get(hash);
+      if (data != null) {
+        myMap.put(key, data);
+      }
+    }
+    (data != null ? myHits : myMisses).incrementAndGet();
+    return data;
+  }
+
+  /**
+   * @param data the data the indexer has produced for the content with the given hash, it must not be modified afterwards
+   */
+  public void put(@NotNull byte[] hash, @NotNull Map<K, V> data) {
+    myMap.put(new ContentHash(hash), data);
+    if (myDiskStore != null) {
+      myDiskStore.put(hash, data);
+    }
+  }
+
+  public void clear() {
+    myMap.clear();
+    if (myDiskStore != null) {
+      myDiskStore.clear();
+    }
+  }
+
+  public void flush() {
+    if (myDiskStore != null) {
+      myDiskStore.flush();
+    }
+  }
+
+  public void close() {
+    if (myDiskStore != null) {
+      myDiskStore.close();
+    }
+  }
+
+  /**
+   * @return the number of the lookups which have found the data since the previous call, the counter is reset
+   */
+  public int getAndResetHits() {
+    return myHits.getAndSet(0);
+  }
+
+  public int getAndResetMisses() {
+    return myMisses.getAndSet(0);
+  }
+
+  private static class ContentHash {
+    private final byte[] myHash;
+    private final int myHashCode;
+
+    private ContentHash(@NotNull byte[] hash) {
+      myHash = hash;
+      myHashCode = Arrays.hashCode(hash);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof ContentHash && Arrays.equals(myHash, ((ContentHash)o).myHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+
+  /**
+   * Two generations of the data on disk, each in its own subdirectory named by its number. The data found in the previous
+   * generation is copied to the current one, so the contents in use outlive the rotation.
+   */
+  private static class DiskStore<K, V> {
+    private final File myDir;
+    private final int myVersion;
+    private final DataMapExternalizer<K, V> myExternalizer;
+    private final int myGenerationSize;
+
+    private int myGeneration;
+    private PersistentHashMap<byte[], Map<K, V>> myCurrent;
+    @Nullable private PersistentHashMap<byte[], Map<K, V>> myPrevious;
+    private int myCurrentSize;
+
+    private DiskStore(@NotNull File dir, int version, @NotNull DataMapExternalizer<K, V> externalizer, int generationSize) {
+      myDir = dir;
+      myVersion = version;
+      myExternalizer = externalizer;
+      myGenerationSize = generationSize;
+    }
+
+    private synchronized void open() throws IOException {
+      myGeneration = 0;
+      final File[] files = myDir.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          try {
+            myGeneration = Math.max(myGeneration, Integer.parseInt(file.getName()));
+          }
+          catch (NumberFormatException ignored) {
+          }
+        }
+        for (File file : files) {
+          final String name = file.getName();
+          if (!name.equals(String.valueOf(myGeneration)) && !name.equals(String.valueOf(myGeneration - 1))) {
+            FileUtil.delete(file);
+          }
+        }
+      }
+
+      if (getGenerationDir(myGeneration - 1).exists()) {
+        myPrevious = openGeneration(myGeneration - 1);
+      }
+      myCurrent = openGeneration(myGeneration);
+      final CommonProcessors.CollectProcessor<byte[]> keys = new CommonProcessors.CollectProcessor<byte[]>();
+      myCurrent.processKeysWithExistingMapping(keys);
+      myCurrentSize = keys.getResults().size();
+    }
+
+    private File getGenerationDir(int generation) {
+      return new File(myDir, String.valueOf(generation));
+    }
+
+    private PersistentHashMap<byte[], Map<K, V>> openGeneration(int generation) throws IOException {
+      final File dir = getGenerationDir(generation);
+      dir.mkdirs();
+      return new PersistentHashMap<byte[], Map<K, V>>(new File(dir, "data"), new VersionedHashDescriptor(), myExternalizer);
+    }
+
+    @Nullable
+    private synchronized Map<K, V> get(@NotNull byte[] hash) {
+      if (myCurrent == null) return null;
+      final byte[] key = getKey(hash);
+      try {
+        Map<K, V> data = myCurrent.get(key);
+        if (data == null && myPrevious != null) {
+          data = myPrevious.get(key);
+          if (data != null) {
+            doPut(key, data);
+          }
+        }
+        return data;
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        clear();
+        return null;
+      }
+    }
+
+    private synchronized void put(@NotNull byte[] hash, @NotNull Map<K, V> data) {
+      if (myCurrent == null) return;
+      try {
+        doPut(getKey(hash), data);
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        clear();
+      }
+    }
+
+    private void doPut(byte[] key, Map<K, V> data) throws IOException {
+      if (myCurrentSize >= myGenerationSize) {
+        if (myPrevious != null) {
+          myPrevious.close();
+          FileUtil.delete(getGenerationDir(myGeneration - 1));
+        }
+        myPrevious = myCurrent;
+        myCurrent = null; // not to be closed twice if the next generation cannot be opened
+        myCurrent = openGeneration(++myGeneration);
+        myCurrentSize = 0;
+      }
+      myCurrent.put(key, data);
+      myCurrentSize++;
+    }
+
+    // the data of another indexer version is stored under another key
+    private byte[] getKey(byte[] hash) {
+      final byte[] key = new byte[HASH_LENGTH + 4];
+      System.arraycopy(hash, 0, key, 0, HASH_LENGTH);
+      key[HASH_LENGTH] = (byte)(myVersion >>> 24);
+      key[HASH_LENGTH + 1] = (byte)(myVersion >>> 16);
+      key[HASH_LENGTH + 2] = (byte)(myVersion >>> 8);
+      key[HASH_LENGTH + 3] = (byte)myVersion;
+      return key;
+    }
+
+    private synchronized void clear() {
+      close();
+      FileUtil.delete(myDir);
+      try {
+        open();
+      }
+      catch (IOException e) {
+        LOG.info(e);
+        close();
+      }
+    }
+
+    private synchronized void flush() {
+      if (myCurrent != null && myCurrent.isDirty()) {
+        myCurrent.force();
+      }
+    }
+
+    private synchronized void close() {
+      try {
+        if (myPrevious != null) {
+          myPrevious.close();
+        }
+        if (myCurrent != null) {
+          myCurrent.close();
+        }
+      }
+      catch (IOException e) {
+        LOG.info(e);
+      }
+      finally {
+        myPrevious = null;
+        myCurrent = null;
+      }
+    }
+  }
+
+  private static class VersionedHashDescriptor implements KeyDescriptor<byte[]> {
+    @Override
+    public int getHashCode(byte[] value) {
+      return Arrays.hashCode(value);
+    }
+
+    @Override
+    public boolean isEqual(byte[] val1, byte[] val2) {
+      return Arrays.equals(val1, val2);
+    }
+
+    @Override
+    public void save(DataOutput out, byte[] value) throws IOException {
+      out.write(value);
+    }
+
+    @Override
+    public byte[] read(DataInput in) throws IOException {
+      final byte[] key = new byte[HASH_LENGTH + 4];
+      in.readFully(key);
+      return key;
+    }
+  }
+
+  private static class DataMapExternalizer<K, V> implements DataExternalizer<Map<K, V>> {
+    private final KeyDescriptor<K> myKeyDescriptor;
+    private final DataExternalizer<V> myValueExternalizer;
+
+    private DataMapExternalizer(KeyDescriptor<K> keyDescriptor, DataExternalizer<V> valueExternalizer) {
+      myKeyDescriptor = keyDescriptor;
+      myValueExternalizer = valueExternalizer;
+    }
+
+    @Override
+    public void save(DataOutput out, Map<K, V> data) throws IOException {
+      DataInputOutputUtil.writeINT(out, data.size());
+      for (Map.Entry<K, V> entry : data.entrySet()) {
+        myKeyDescriptor.save(out, entry.getKey());
+        final V value = entry.getValue();
+        out.writeBoolean(value != null);
+        if (value != null) {
+          myValueExternalizer.save(out, value);
+        }
+      }
+    }
+
+    @Override
+    public Map<K, V> read(DataInput in) throws IOException {
+      final int size = DataInputOutputUtil.readINT(in);
+      final Map<K, V> data = new THashMap<K, V>(size);
+      for (int i = 0; i < size; i++) {
+        final K key = myKeyDescriptor.read(in);
+        data.put(key, in.readBoolean() ? myValueExternalizer.read(in) : null);
+      }
+      return data;
+    }
+  }
+}
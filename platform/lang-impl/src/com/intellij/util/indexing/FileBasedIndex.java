@@ -71,8 +71,6 @@ import com.intellij.util.io.*;
 import com.intellij.util.io.storage.HeavyProcessLatch;
 import com.intellij.util.messages.MessageBus;
 import com.intellij.util.messages.MessageBusConnection;
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntIterator;
 import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -470,6 +468,10 @@ public class FileBasedIndex implements ApplicationComponent {
     }
 
     final KeyDescriptor<K> keyDescriptor = extension.getKeyDescriptor();
+    if (ContentHashIndexCache.ENABLED && extension.dependsOnFileContent() && extension.dependsOnFileContentOnly()) {
+      index.setContentHashCache(ContentHashIndexCache.create(IndexInfrastructure.getContentHashCacheDir(indexId), extension.getVersion(),
+                                                             keyDescriptor, extension.getValueExternalizer()));
+    }
     index.setInputIdToDataKeysIndex(new Factory<PersistentHashMap<Integer, Collection<K>>>() {
       @Override
       public PersistentHashMap<Integer, Collection<K>> create() {
@@ -956,34 +958,35 @@ public class FileBasedIndex implements ApplicationComponent {
       final Lock readLock = index.getReadLock();
       try {
         readLock.lock();
-        List<TIntHashSet> locals = new ArrayList<TIntHashSet>();
+        List<int[]> locals = new ArrayList<int[]>();
         for (K dataKey : dataKeys) {
-          TIntHashSet local = new TIntHashSet();
-          locals.add(local);
+          int[] local = ArrayUtil.EMPTY_INT_ARRAY;
           final ValueContainer<V> container = index.getData(dataKey);
 
           for (final Iterator<V> valueIt = container.getValueIterator(); valueIt.hasNext();) {
             final V value = valueIt.next();
-            for (final ValueContainer.IntIterator inputIdsIterator = container.getInputIdsIterator(value); inputIdsIterator.hasNext();) {
-              final int id = inputIdsIterator.next();
-              local.add(id);
-            }
+            final int[] ids = container.getInputIds(value);
+            local = local.length == 0 ? ids : SortedIdSet.union(local, ids);
           }
+          if (local.length == 0) return true;
+          locals.add(local);
         }
 
         if (locals.isEmpty()) return true;
 
-        Collections.sort(locals, new Comparator<TIntHashSet>() {
+        Collections.sort(locals, new Comparator<int[]>() {
           @Override
-          public int compare(TIntHashSet o1, TIntHashSet o2) {
-            return o1.size() - o2.size();
+          public int compare(int[] o1, int[] o2) {
+            return o1.length - o2.length;
           }
         });
 
         final PersistentFS fs = (PersistentFS)ManagingFS.getInstance();
-        TIntIterator ids = join(locals).iterator();
-        while (ids.hasNext()) {
-          int id = ids.next();
+        int[] ids = locals.get(0);
+        for (int i = 1; i < locals.size() && ids.length > 0; i++) {
+          ids = SortedIdSet.intersect(ids, locals.get(i));
+        }
+        for (int id : ids) {
           //VirtualFile file = IndexInfrastructure.findFileById(fs, id);
           VirtualFile file = IndexInfrastructure.findFileByIdIfCached(fs, id);
           if (file != null && filter.accept(file)) {
@@ -1010,24 +1013,6 @@ public class FileBasedIndex implements ApplicationComponent {
     return true;
   }
 
-  private static TIntHashSet join(List<TIntHashSet> locals) {
-    TIntHashSet result = locals.get(0);
-    if (locals.size() > 1) {
-      TIntIterator it = result.iterator();
-
-      while (it.hasNext()) {
-        int id = it.next();
-        for (int i = 1; i < locals.size(); i++) {
-          if (!locals.get(i).contains(id)) {
-            it.remove();
-            break;
-          }
-        }
-      }
-    }
-    return result;
-  }
-
   public <K> void scheduleRebuild(final ID<K, ?> indexId, final Throwable e) {
     LOG.info(e);
     requestRebuild(indexId);
@@ -1383,6 +1368,15 @@ public class FileBasedIndex implements ApplicationComponent {
     return myChangedFilesCollector.getNumberOfPendingInvalidations();
   }
 
+  void logIndexingStatistics() {
+    for (ID<?, ?> indexId : myIndices.keySet()) {
+      final UpdatableIndex<?, ?, FileContent> index = getIndex(indexId);
+      if (index instanceof MapReduceIndex) {
+        ((MapReduceIndex)index).logUpdateStatistics();
+      }
+    }
+  }
+
   public Collection<VirtualFile> getFilesToUpdate(final Project project) {
     return ContainerUtil.findAll(myChangedFilesCollector.getAllFilesToUpdate(), new Condition<VirtualFile>() {
       @Override
@@ -1434,6 +1428,11 @@ public class FileBasedIndex implements ApplicationComponent {
             project = ProjectUtil.guessProjectForFile(file);
           }
           fc.putUserData(IndexingDataKeys.PROJECT, project);
+          if (ContentHashIndexCache.ENABLED) {
+            // computed after the project is known, the file type may be substituted in it
+            fc.putUserData(ContentHashIndexCache.CONTENT_HASH,
+                           ContentHashIndexCache.computeHash(fc.getFileType(), fc.getCharset(), fc.getContent()));
+          }
         }
 
         try {
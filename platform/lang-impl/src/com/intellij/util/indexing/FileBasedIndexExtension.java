@@ -48,6 +48,15 @@ public abstract class FileBasedIndexExtension<K, V> {
   
   public abstract int getVersion();
 
+  /**
+   * @return true if the data the indexer produces for a file is determined by the file content, file type and charset alone,
+   *         and not by the file path, the project or the other files. The data of such indices may be shared by the files with
+   *         the same content, see {@link ContentHashIndexCache}.
+   */
+  public boolean dependsOnFileContentOnly() {
+    return false;
+  }
+
   /**
    * @see FileBasedIndexExtension#DEFAULT_CACHE_SIZE
    */
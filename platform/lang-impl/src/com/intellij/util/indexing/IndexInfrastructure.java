@@ -35,7 +35,7 @@ import java.util.Locale;
 
 @SuppressWarnings({"HardCodedStringLiteral"})
 public class IndexInfrastructure {
-  private static final int VERSION = 8;
+  private static final int VERSION = 9;
   private static final TObjectLongHashMap<ID<?, ?>> ourIndexIdToCreationStamp = new TObjectLongHashMap<ID<?, ?>>();
   private static final boolean ourUnitTestMode = ApplicationManager.getApplication().isUnitTestMode();
 
@@ -54,6 +54,14 @@ public class IndexInfrastructure {
     return new File(getIndexRootDir(indexName), indexName.toString()+"_inputs");
   }
 
+  /**
+   * Not under the index root dir, which is deleted when the index is found corrupted, e.g. after a crash: the cache makes such
+   * a rebuild cheap. The cached data is looked up by the indexer version instead, see {@link ContentHashIndexCache}.
+   */
+  public static File getContentHashCacheDir(final ID<?, ?> indexName) {
+    return new File(new File(PathManager.getIndexRoot(), "content_hashes"), indexName.toString().toLowerCase(Locale.US));
+  }
+
   public static File getIndexRootDir(final ID<?, ?> indexName) {
     final String dirName = indexName.toString().toLowerCase(Locale.US);
     // store StubIndices under StubUpdating index' root to ensure they are deleted 
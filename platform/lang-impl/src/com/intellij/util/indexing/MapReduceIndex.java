@@ -18,6 +18,7 @@ package com.intellij.util.indexing;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Factory;
+import com.intellij.openapi.util.UserDataHolder;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.CommonProcessors;
 import com.intellij.util.Processor;
@@ -29,6 +30,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -46,7 +51,15 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
   private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
   
   private Factory<PersistentHashMap<Integer, Collection<Key>>> myInputsIndexFactory;
+  @Nullable private ContentHashIndexCache<Key, Value> myContentHashCache;
 
+  // updates whose data has already been computed by the indexer and which wait to be written to the storage
+  private final ConcurrentLinkedQueue<PendingUpdate<Key, Value>> myPendingUpdates = new ConcurrentLinkedQueue<PendingUpdate<Key, Value>>();
+
+  private final AtomicLong myMapTime = new AtomicLong();
+  private final AtomicLong myWriteTime = new AtomicLong();
+  private final AtomicInteger myUpdatesCount = new AtomicInteger();
+  private final AtomicInteger myWriteBatchesCount = new AtomicInteger();
 
   public MapReduceIndex(@Nullable final ID<Key, Value> indexId, DataIndexer<Key, Value, Input> indexer, final IndexStorage<Key, Value> storage) {
     myIndexId = indexId;
@@ -63,6 +76,9 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
     try {
       getWriteLock().lock();
       myStorage.clear();
+      if (myContentHashCache != null) {
+        myContentHashCache.clear();
+      }
       if (myInputsIndex != null) {
         final File baseFile = myInputsIndex.getBaseFile();
         try {
@@ -94,6 +110,9 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
         inputsIndex.force();
       }
       myStorage.flush();
+      if (myContentHashCache != null) {
+        myContentHashCache.flush();
+      }
     }
     catch (IOException e) {
       throw new StorageException(e);
@@ -121,6 +140,9 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
         myStorage.close();
       }
       finally {
+        if (myContentHashCache != null) {
+          myContentHashCache.close();
+        }
         if (myInputsIndex != null) {
           try {
             myInputsIndex.close();
@@ -186,6 +208,10 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
     myInputsIndex = createInputsIndex();
   }
 
+  public void setContentHashCache(@Nullable ContentHashIndexCache<Key, Value> cache) {
+    myContentHashCache = cache;
+  }
+
   private PersistentHashMap<Integer, Collection<Key>> createInputsIndex() throws IOException {
     Factory<PersistentHashMap<Integer, Collection<Key>>> factory = myInputsIndexFactory;
     if (factory != null) {
@@ -206,15 +232,98 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
   public final void update(final int inputId, @Nullable Input content) throws StorageException {
     assert myInputsIndex != null;
 
-    final Map<Key, Value> data = content != null ? myIndexer.map(content) : Collections.<Key, Value>emptyMap();
+    final long started = System.nanoTime();
+    final Map<Key, Value> data = content != null ? map(content) : Collections.<Key, Value>emptyMap();
+    myMapTime.addAndGet(System.nanoTime() - started);
+    myUpdatesCount.incrementAndGet();
+
+    // The thread which gets the write lock applies all the updates queued by the moment, including the ones of the threads
+    // still waiting for the lock, so that under contention many updates are written with a single lock acquisition.
+    // Once the lock is acquired, this update has been applied either by this thread or by one of the previous lock holders.
+    final PendingUpdate<Key, Value> update = new PendingUpdate<Key, Value>(inputId, data);
+    myPendingUpdates.offer(update);
+
+    lockForUpdate();
+    try {
+      if (!myPendingUpdates.isEmpty()) {
+        final long writeStarted = System.nanoTime();
+        PendingUpdate<Key, Value> pending;
+        while ((pending = myPendingUpdates.poll()) != null) {
+          try {
+            updateWithMap(pending.myInputId, pending.myData, createOldKeysGetter(pending.myInputId));
+          }
+          catch (Throwable e) {
+            pending.myError = e;
+          }
+        }
+        myWriteTime.addAndGet(System.nanoTime() - writeStarted);
+        myWriteBatchesCount.incrementAndGet();
+      }
+    }
+    finally {
+      unlockAfterUpdate();
+    }
 
-    updateWithMap(inputId, data, new Callable<Collection<Key>>() {
+    final Throwable error = update.myError;
+    if (error instanceof StorageException) throw (StorageException)error;
+    if (error instanceof RuntimeException) throw (RuntimeException)error;
+    if (error instanceof Error) throw (Error)error;
+    if (error != null) throw new StorageException(error);
+  }
+
+  private Map<Key, Value> map(@NotNull Input content) {
+    final ContentHashIndexCache<Key, Value> cache = myContentHashCache;
+    final byte[] hash = cache != null && content instanceof UserDataHolder ? ((UserDataHolder)content).getUserData(ContentHashIndexCache.CONTENT_HASH) : null;
+    if (hash == null) {
+      return myIndexer.map(content);
+    }
+
+    Map<Key, Value> data = cache.get(hash);
+    if (data == null) {
+      data = myIndexer.map(content);
+      cache.put(hash, data);
+    }
+    return data;
+  }
+
+  /**
+   * Acquires the locks the queued updates are applied under. An index whose {@link #updateWithMap} needs other locks
+   * to be taken before its write lock must take them here as well.
+   */
+  protected void lockForUpdate() {
+    getWriteLock().lock();
+  }
+
+  protected void unlockAfterUpdate() {
+    getWriteLock().unlock();
+  }
+
+  private Callable<Collection<Key>> createOldKeysGetter(final int inputId) {
+    return new Callable<Collection<Key>>() {
       @Override
       public Collection<Key> call() throws Exception {
         final Collection<Key> oldKeys = myInputsIndex.get(inputId);
         return oldKeys == null? Collections.<Key>emptyList() : oldKeys;
       }
-    });
+    };
+  }
+
+  /**
+   * Logs the time spent by the indexer and by writing to the storage since the previous call and resets the counters.
+   */
+  public void logUpdateStatistics() {
+    final int updates = myUpdatesCount.getAndSet(0);
+    final int batches = myWriteBatchesCount.getAndSet(0);
+    final long mapTime = myMapTime.getAndSet(0);
+    final long writeTime = myWriteTime.getAndSet(0);
+    final ContentHashIndexCache<Key, Value> cache = myContentHashCache;
+    final int cacheHits = cache != null ? cache.getAndResetHits() : 0;
+    final int cacheMisses = cache != null ? cache.getAndResetMisses() : 0;
+    if (updates > 0) {
+      LOG.info(myIndexId + ": " + updates + " updates, indexing " + TimeUnit.NANOSECONDS.toMillis(mapTime) + " ms, writing " +
+               TimeUnit.NANOSECONDS.toMillis(writeTime) + " ms in " + batches + " batches" +
+               (cache != null ? ", " + cacheHits + " of " + (cacheHits + cacheMisses) + " contents found by hash" : ""));
+    }
   }
 
   protected void updateWithMap(final int inputId, final Map<Key, Value> newData, Callable<Collection<Key>> oldKeysGetter) throws StorageException {
@@ -252,4 +361,15 @@ public class MapReduceIndex<Key, Value, Input> implements UpdatableIndex<Key,Val
     }
   }
 
+  private static class PendingUpdate<Key, Value> {
+    private final int myInputId;
+    private final Map<Key, Value> myData;
+    // written under the write lock by the thread which has applied the update, read by the update owner after acquiring the lock
+    private Throwable myError;
+
+    private PendingUpdate(int inputId, Map<Key, Value> data) {
+      myInputId = inputId;
+      myData = data;
+    }
+  }
 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.io.DataInputOutputUtil;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Set of non-negative input ids kept in ascending order: a sorted array for sparse sets and a bitmap for dense ones
+ * (the ids of the files containing a common identifier).
+ * Ids are serialized as gaps between the consecutive ids, so that large sets take about a byte per id.
+ */
+class SortedIdSet implements Cloneable {
+  private static final int MIN_BITMAP_SIZE = 64;
+  private static final int BITS_PER_ID_THRESHOLD = 32; // the bitmap is not larger than the array when there is an id per 32 bits
+
+  private int[] myIds; // null when the bitmap is used
+  private long[] myBits;
+  private int mySize;
+
+  SortedIdSet() {
+    myIds = new int[4];
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public boolean contains(int id) {
+    if (myIds == null) {
+      final int word = id >> 6;
+      return id >= 0 && word < myBits.length && (myBits[word] & (1L << id)) != 0;
+    }
+    return Arrays.binarySearch(myIds, 0, mySize, id) >= 0;
+  }
+
+  public boolean add(int id) {
+    if (myIds == null) {
+      final int word = id >> 6;
+      if (word >= myBits.length) {
+        myBits = Arrays.copyOf(myBits, Math.max(word + 1, myBits.length * 3 / 2));
+      }
+      if ((myBits[word] & (1L << id)) != 0) return false;
+      myBits[word] |= 1L << id;
+      mySize++;
+      if (mySize < myBits.length) {
+        switchToArray(toArray()); // a distant id has made the set sparse
+      }
+      return true;
+    }
+
+    int index;
+    if (mySize == 0 || myIds[mySize - 1] < id) {
+      index = mySize; // ids are usually added in ascending order
+    }
+    else {
+      index = Arrays.binarySearch(myIds, 0, mySize, id);
+      if (index >= 0) return false;
+      index = -index - 1;
+    }
+    if (mySize == myIds.length) {
+      myIds = Arrays.copyOf(myIds, mySize * 3 / 2 + 1);
+    }
+    System.arraycopy(myIds, index, myIds, index + 1, mySize - index);
+    myIds[index] = id;
+    mySize++;
+    if (mySize >= MIN_BITMAP_SIZE && myIds[mySize - 1] / BITS_PER_ID_THRESHOLD < mySize) {
+      switchToBitmap();
+    }
+    return true;
+  }
+
+  public boolean remove(int id) {
+    if (myIds == null) {
+      final int word = id >> 6;
+      if (id < 0 || word >= myBits.length || (myBits[word] & (1L << id)) == 0) return false;
+      myBits[word] &= ~(1L << id);
+      mySize--;
+      if (mySize < MIN_BITMAP_SIZE / 2 || mySize < myBits.length * 64 / BITS_PER_ID_THRESHOLD / 2) {
+        switchToArray(toArray());
+      }
+      return true;
+    }
+
+    final int index = Arrays.binarySearch(myIds, 0, mySize, id);
+    if (index < 0) return false;
+    System.arraycopy(myIds, index + 1, myIds, index, mySize - index - 1);
+    mySize--;
+    if (myIds.length >= 3 * mySize + 4) {
+      myIds = Arrays.copyOf(myIds, mySize + 1);
+    }
+    return true;
+  }
+
+  /**
+   * @return the ids in ascending order
+   */
+  public int[] toArray() {
+    if (myIds != null) {
+      return mySize == 0 ? ArrayUtil.EMPTY_INT_ARRAY : Arrays.copyOf(myIds, mySize);
+    }
+    final int[] result = new int[mySize];
+    final ValueContainer.IntIterator it = iterator();
+    for (int i = 0; i < result.length; i++) {
+      result[i] = it.next();
+    }
+    return result;
+  }
+
+  private void switchToArray(int[] ids) {
+    myIds = ids;
+    myBits = null;
+  }
+
+  private void switchToBitmap() {
+    final long[] bits = new long[(myIds[mySize - 1] >> 6) + 1];
+    for (int i = 0; i < mySize; i++) {
+      final int id = myIds[i];
+      bits[id >> 6] |= 1L << id;
+    }
+    myBits = bits;
+    myIds = null;
+  }
+
+  public ValueContainer.IntIterator iterator() {
+    if (myIds != null) {
+      final int[] ids = myIds;
+      final int size = mySize;
+      return new ValueContainer.IntIterator() {
+        private int myIndex;
+
+        @Override
+        public boolean hasNext() {
+          return myIndex < size;
+        }
+
+        @Override
+        public int next() {
+          return ids[myIndex++];
+        }
+
+        @Override
+        public int size() {
+          return size;
+        }
+      };
+    }
+
+    final long[] bits = myBits;
+    final int size = mySize;
+    return new ValueContainer.IntIterator() {
+      private int myNext = nextSetBit(bits, 0);
+
+      @Override
+      public boolean hasNext() {
+        return myNext >= 0;
+      }
+
+      @Override
+      public int next() {
+        final int result = myNext;
+        myNext = nextSetBit(bits, result + 1);
+        return result;
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private static int nextSetBit(long[] bits, int from) {
+    int word = from >> 6;
+    if (word >= bits.length) return -1;
+    long current = bits[word] & (-1L << from);
+    while (true) {
+      if (current != 0) return (word << 6) + Long.numberOfTrailingZeros(current);
+      if (++word == bits.length) return -1;
+      current = bits[word];
+    }
+  }
+
+  @Override
+  public SortedIdSet clone() {
+    try {
+      final SortedIdSet clone = (SortedIdSet)super.clone();
+      if (myIds != null) clone.myIds = myIds.clone();
+      if (myBits != null) clone.myBits = myBits.clone();
+      return clone;
+    }
+    catch (CloneNotSupportedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Writes the ascending ids as the first id followed by the gaps between the consecutive ids.
+   */
+  public static void writeSorted(DataOutput out, ValueContainer.IntIterator ids) throws IOException {
+    int prev = 0;
+    while (ids.hasNext()) {
+      final int id = ids.next();
+      assert id >= prev : "ids must be sorted: " + id + " after " + prev;
+      DataInputOutputUtil.writeINT(out, id - prev);
+      prev = id;
+    }
+  }
+
+  public static int[] readSorted(DataInput in, int count) throws IOException {
+    final int[] result = new int[count];
+    int prev = 0;
+    for (int i = 0; i < count; i++) {
+      prev += DataInputOutputUtil.readINT(in);
+      result[i] = prev;
+    }
+    return result;
+  }
+
+  /**
+   * @return the ids present in both ascending arrays
+   */
+  public static int[] intersect(int[] ids1, int[] ids2) {
+    if (ids1.length > ids2.length) {
+      final int[] t = ids1;
+      ids1 = ids2;
+      ids2 = t;
+    }
+    final int[] result = new int[ids1.length];
+    int size = 0;
+    int from = 0;
+    for (int id : ids1) {
+      // the arrays often differ in size a lot: gallop through the larger one
+      int bound = 1;
+      while (from + bound < ids2.length && ids2[from + bound] < id) bound <<= 1;
+      final int index = Arrays.binarySearch(ids2, from, Math.min(from + bound + 1, ids2.length), id);
+      if (index >= 0) {
+        result[size++] = id;
+        from = index + 1;
+      }
+      else {
+        from = -index - 1;
+      }
+      if (from >= ids2.length) break;
+    }
+    return size == result.length ? result : Arrays.copyOf(result, size);
+  }
+
+  /**
+   * @return the ids present in any of the ascending arrays
+   */
+  public static int[] union(int[] ids1, int[] ids2) {
+    final int[] result = new int[ids1.length + ids2.length];
+    int i = 0, j = 0, size = 0;
+    while (i < ids1.length && j < ids2.length) {
+      final int id1 = ids1[i];
+      final int id2 = ids2[j];
+      if (id1 <= id2) i++;
+      if (id2 <= id1) j++;
+      result[size++] = Math.min(id1, id2);
+    }
+    while (i < ids1.length) result[size++] = ids1[i++];
+    while (j < ids2.length) result[size++] = ids2[j++];
+    return size == result.length ? result : Arrays.copyOf(result, size);
+  }
+}
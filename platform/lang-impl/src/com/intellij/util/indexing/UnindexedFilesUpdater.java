@@ -68,6 +68,7 @@ public class UnindexedFilesUpdater implements CacheUpdater {
   @Override
   public void updatingDone() {
     LOG.info("Unindexed files update done in " + (System.currentTimeMillis() - myStarted) + " ms");
+    myIndex.logIndexingStatistics();
   }
 
   @Override
@@ -88,6 +88,9 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
       DataInputOutputUtil.writeSINT(out, -inputId);
     }
 
+    /**
+     * For every value writes the number of its input ids, negative for removed data, and the ascending ids delta-encoded.
+     */
     private void saveImpl(final DataOutput out, final ValueContainer<T> container, final boolean asRemovedData) throws IOException {
       DataInputOutputUtil.writeSINT(out, container.size());
       for (final Iterator<T> valueIterator = container.getValueIterator(); valueIterator.hasNext();) {
@@ -96,11 +99,8 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
 
         final ValueContainer.IntIterator ids = container.getInputIdsIterator(value);
         if (ids != null) {
-          DataInputOutputUtil.writeSINT(out, ids.size());
-          while (ids.hasNext()) {
-            final int id = ids.next();
-            DataInputOutputUtil.writeSINT(out, asRemovedData ? -id : id);
-          }
+          DataInputOutputUtil.writeSINT(out, asRemovedData ? -ids.size() : ids.size());
+          SortedIdSet.writeSorted(out, ids);
         }
         else {
           DataInputOutputUtil.writeSINT(out, 0);
@@ -123,13 +123,15 @@ class ValueContainerMap<Key, Value> extends PersistentHashMap<Key, ValueContaine
           for (int valueIdx = 0; valueIdx < valueCount; valueIdx++) {
             final T value = myExternalizer.read(in);
             final int idCount = DataInputOutputUtil.readSINT(in);
-            for (int i = 0; i < idCount; i++) {
-              final int id = DataInputOutputUtil.readSINT(in);
-              if (id < 0) {
-                valueContainer.removeValue(-id, value);
-                valueContainer.setNeedsCompacting(true);
+            final int[] ids = SortedIdSet.readSorted(in, Math.abs(idCount));
+            if (idCount < 0) {
+              for (int id : ids) {
+                valueContainer.removeValue(id, value);
               }
-              else {
+              valueContainer.setNeedsCompacting(true);
+            }
+            else {
+              for (int id : ids) {
                 valueContainer.addValue(id, value);
               }
             }
@@ -0,0 +1,134 @@
+package com.intellij.execution.impl;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConsoleRingBufferTest {
+  @Test
+  public void oldTextIsOverwritten() {
+    ConsoleRingBuffer buffer = new ConsoleRingBuffer(10);
+    buffer.append("0123456");
+    buffer.append("789abc");
+    assertEquals(3, buffer.getStartOffset());
+    assertEquals(13, buffer.getEndOffset());
+    assertEquals("3456789abc", buffer.getText(3, 13));
+    assertEquals("9a", buffer.getText(9, 11));
+
+    buffer.append("the text longer than the buffer");
+    assertEquals("the buffer", buffer.getText(buffer.getStartOffset(), buffer.getEndOffset()));
+  }
+
+  @Test
+  public void nothingIsRetainedAfterDispose() {
+    ConsoleRingBuffer buffer = new ConsoleRingBuffer(10);
+    assertEquals(-1, buffer.find("a", 0, true));
+    buffer.append("abc");
+    buffer.dispose();
+    buffer.append("def");
+    assertEquals(0, buffer.getEndOffset());
+    assertEquals(-1, buffer.find("a", 0, true));
+    assertEquals(-1, buffer.findLast("a", Long.MAX_VALUE, true));
+  }
+
+  @Test
+  public void findAcrossBufferEnd() {
+    ConsoleRingBuffer buffer = new ConsoleRingBuffer(16);
+    buffer.append("xxxxxxxxxxxxxx");
+    buffer.append("Error: failed\n");
+    assertEquals(14, buffer.find("Error", 0, true));
+    assertEquals(14, buffer.find("error", 0, false));
+    assertEquals(-1, buffer.find("error", 0, true));
+    assertEquals(-1, buffer.find("Error", 15, true));
+    assertEquals(-1, buffer.find("xxxxxxxxx", 0, true)); // overwritten
+    assertEquals(14, buffer.findLast("error", Long.MAX_VALUE, false));
+    assertEquals(-1, buffer.findLast("Error", 14, true));
+    assertEquals(-1, buffer.findLast("xxxxxxxxx", Long.MAX_VALUE, true));
+  }
+
+  @Test
+  public void findMatchesNaiveSearch() {
+    Random random = new Random(42);
+    ConsoleRingBuffer buffer = new ConsoleRingBuffer(1000);
+    StringBuilder all = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      StringBuilder line = new StringBuilder();
+      for (int j = random.nextInt(20); j >= 0; j--) {
+        line.append((char)('a' + random.nextInt(3)));
+      }
+      line.append('\n');
+      buffer.append(line);
+      all.append(line);
+    }
+    String retained = all.substring(all.length() - 1000);
+    long start = buffer.getStartOffset();
+    for (int i = 0; i < 200; i++) {
+      String pattern = retained.substring(random.nextInt(990)).substring(0, 1 + random.nextInt(5));
+      int from = random.nextInt(1000);
+      int expected = retained.indexOf(pattern, from);
+      assertEquals(pattern, expected < 0 ? -1 : start + expected, buffer.find(pattern, start + from, true));
+      expected = from > 0 ? retained.lastIndexOf(pattern, from - 1) : -1;
+      assertEquals(pattern, expected < 0 ? -1 : start + expected, buffer.findLast(pattern, start + from, true));
+    }
+  }
+
+  @Test
+  public void fragmentIsCutToWholeLines() {
+    ConsoleRingBuffer buffer = new ConsoleRingBuffer(120);
+    buffer.append("overwritten\n");
+    for (int i = 0; i < 20; i++) {
+      buffer.append("line " + i + "\n");
+    }
+    long offset = buffer.find("line 10", 0, true);
+
+    ConsoleHistoryViewer.Fragment fragment = ConsoleHistoryViewer.getFragment(buffer, offset, 7, 3);
+    assertNotNull(fragment);
+    assertEquals("line 10\n", fragment.text);
+    assertEquals(offset, fragment.start);
+
+    fragment = ConsoleHistoryViewer.getFragment(buffer, offset, 7, 10);
+    assertNotNull(fragment);
+    assertEquals("line 9\nline 10\nline 11\n", fragment.text);
+
+    fragment = ConsoleHistoryViewer.getFragment(buffer, offset, 7, 20);
+    assertNotNull(fragment);
+    assertEquals("line 8\nline 9\nline 10\nline 11\nline 12\n", fragment.text);
+    assertEquals(buffer.getText(fragment.start, fragment.start + fragment.text.length()), fragment.text);
+
+    // the retained text starts in the middle of a line, it is shown as is
+    fragment = ConsoleHistoryViewer.getFragment(buffer, buffer.getStartOffset(), 1, 1000);
+    assertNotNull(fragment);
+    assertEquals(buffer.getText(buffer.getStartOffset(), buffer.getEndOffset()), fragment.text);
+
+    assertNull(ConsoleHistoryViewer.getFragment(buffer, 0, 11, 10));
+  }
+
+  @Test
+  public void searchInLargeHistoryPerformance() throws Throwable {
+    int capacity = 64 * 1024 * 1024;
+    final ConsoleRingBuffer buffer = new ConsoleRingBuffer(capacity);
+    try {
+      String line = "[INFO] Running com.example.integration.SomeTest with the default configuration\n";
+      for (long written = 0; written < capacity + capacity / 2; written += line.length()) {
+        buffer.append(line);
+      }
+      buffer.append("[ERROR] Tests run: 1, Failures: 1\n");
+      buffer.append(line);
+      PlatformTestUtil.startPerformanceTest("Search in " + capacity / 1024 / 1024 + "M chars of console history", 1500, new ThrowableRunnable() {
+        @Override
+        public void run() throws Throwable {
+          long offset = buffer.find("failures: 1", buffer.getStartOffset(), false);
+          assertEquals("Failures: 1", buffer.getText(offset, offset + 11));
+          assertEquals(offset, buffer.findLast("Tests run", Long.MAX_VALUE, true) + 14);
+        }
+      }).cpuBound().assertTiming();
+    }
+    finally {
+      buffer.dispose();
+    }
+  }
+}
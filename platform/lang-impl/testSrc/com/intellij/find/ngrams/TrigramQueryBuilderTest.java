@@ -0,0 +1,113 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static com.intellij.find.ngrams.TrigramQuery.*;
+
+public class TrigramQueryBuilderTest extends TestCase {
+  public void testLiteral() {
+    assertQuery(literal("foobar"), "foobar");
+    assertQuery(literal("foobar"), "FooBar");
+    assertQuery(literal("foo.bar"), "foo\\.bar");
+    assertQuery(literal("foo(bar"), "\\Qfoo(bar\\E");
+  }
+
+  public void testTooShort() {
+    assertQuery(ALL, "fo");
+    assertQuery(ALL, "f.o");
+    assertQuery(ALL, ".*");
+    assertQuery(ALL, "a|bc");
+  }
+
+  public void testWildcards() {
+    assertQuery(and(literal("foo"), literal("bar")), "foo.*bar");
+    assertQuery(and(literal("foo"), literal("bar")), "foo\\w+bar");
+    assertQuery(and(literal("foo"), literal("bar")), "foo[^x]bar");
+    assertQuery(literal("foo"), "(?i)foo.?");
+  }
+
+  public void testAlternation() {
+    assertQuery(or(literal("foo"), literal("bar")), "foo|bar");
+    assertQuery(or(literal("xfoo"), literal("xbar")), "x(foo|bar)");
+    assertQuery(or(literal("getx"), literal("setx")), "[gs]etx");
+  }
+
+  public void testOptional() {
+    assertQuery(or(literal("colour"), literal("color")), "colou?r");
+    assertQuery(literal("abc"), "abc(def)?");
+  }
+
+  public void testUnsupported() {
+    assertQuery(ALL, "(?x)foo bar");
+    assertQuery(ALL, "foo(");
+  }
+
+  public void testQueriesAcceptMatchingTexts() {
+    String[] texts = {"class FooBar extends Baz {}", "int colour = getColor();", "a = b + c; // TODO fix it",
+      "<tag attr=\"value\">text</tag>", "foo\nbar\n  baz"};
+    String[] regExps = {"Foo\\w+", "c(o|ou)lo(u)?r", "get[A-Z]\\w+\\(", "TODO.*", "<(\\w+)[^>]*>.*</\\1>", "\\bbaz$",
+      "foo\\s+bar", "(?i)FOOBAR", "[a-c] = [b-d]", "attr=\"v[a-z]{3,}\"", "(?<=a )= b", "x?y*z{0,2}", "\\d+|class"};
+    for (String regExp : regExps) {
+      TrigramQuery query = TrigramQueryBuilder.forRegExp(regExp);
+      Pattern pattern = Pattern.compile(regExp, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+      for (String text : texts) {
+        if (pattern.matcher(text).find()) {
+          assertTrue(regExp + " in " + text + ": " + query, accepts(query, TrigramBuilder.buildTrigram(text)));
+        }
+      }
+    }
+  }
+
+  private static boolean accepts(TrigramQuery query, TIntHashSet trigrams) {
+    if (query.isAnd()) {
+      if (!trigrams.containsAll(query.getTrigrams())) return false;
+      for (TrigramQuery subQuery : query.getSubQueries()) {
+        if (!accepts(subQuery, trigrams)) return false;
+      }
+      return true;
+    }
+    for (int trigram : query.getTrigrams()) {
+      if (trigrams.contains(trigram)) return true;
+    }
+    for (TrigramQuery subQuery : query.getSubQueries()) {
+      if (accepts(subQuery, trigrams)) return true;
+    }
+    return false;
+  }
+
+  private static void assertQuery(TrigramQuery expected, String regExp) {
+    TrigramQuery actual = TrigramQueryBuilder.forRegExp(regExp);
+    assertEquals(regExp, normalize(expected), normalize(actual));
+  }
+
+  // the order of sub-queries depends on the way the query was built
+  private static String normalize(TrigramQuery query) {
+    if (query.isAll()) return "ALL";
+    String[] parts = new String[query.getSubQueries().size()];
+    for (int i = 0; i < parts.length; i++) {
+      parts[i] = normalize(query.getSubQueries().get(i));
+    }
+    Arrays.sort(parts);
+    return (query.isAnd() ? "AND" : "OR") + Arrays.toString(query.getTrigrams()) + Arrays.toString(parts);
+  }
+}
@@ -85,6 +85,11 @@ public class BulkChangesMergerTest {
     doTest("abcdefg", "a12bc3d", c("12", 1), c("3", 3));
   }
 
+  @Test
+  public void longUnchangedParts() {
+    doTest("0123456789abcdefghij0123456789klmnopqrst", "0123456789abcdefghij_0123456789klmnopqrst!", c("_", 20), c("!", 40));
+  }
+
   @Config(inplace = true)
   @Test
   public void inplaceZeroGroups() {
@@ -174,6 +179,8 @@ public class BulkChangesMergerTest {
       }
       CharSequence actual = myMerger.mergeToCharSequence(initial.toCharArray(), interestedSymbolsNumber, Arrays.asList(changes));
       assertEquals(expected, actual.toString());
+      CharSequence fromSequence = myMerger.mergeToCharSequence((CharSequence)initial, interestedSymbolsNumber, Arrays.asList(changes));
+      assertEquals(expected, fromSequence.toString());
     }
   }
   
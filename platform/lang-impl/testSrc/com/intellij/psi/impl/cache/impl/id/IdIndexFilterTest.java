@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.cache.impl.id;
+
+import com.intellij.psi.search.UsageSearchContext;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IdIndexFilterTest extends TestCase {
+  public void testNoFalseNegatives() throws Exception {
+    Random random = new Random(42);
+    for (int size : new int[]{0, 1, 10, 1000, 20000}) {
+      Map<IdIndexEntry, Integer> data = randomData(random, size);
+      int[] filter = IdIndexFilter.create(data);
+      for (Map.Entry<IdIndexEntry, Integer> entry : data.entrySet()) {
+        int mask = entry.getValue();
+        assertTrue(IdIndexFilter.mayContain(filter, entry.getKey(), mask));
+        assertTrue(IdIndexFilter.mayContain(filter, entry.getKey(), UsageSearchContext.ANY));
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      IdIndexFilter.EXTERNALIZER.save(new DataOutputStream(bytes), filter);
+      int[] read = IdIndexFilter.EXTERNALIZER.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      assertTrue(Arrays.equals(filter, read));
+    }
+  }
+
+  public void testFalsePositives() {
+    Random random = new Random(42);
+    Map<IdIndexEntry, Integer> data = randomData(random, 5000);
+    int[] filter = IdIndexFilter.create(data);
+    int falsePositives = 0;
+    int absent = 0;
+    for (int i = 0; i < 100000; i++) {
+      IdIndexEntry entry = new IdIndexEntry(random.nextInt());
+      Integer mask = data.get(entry);
+      if (mask == null) {
+        absent++;
+        if (IdIndexFilter.mayContain(filter, entry, UsageSearchContext.IN_CODE)) falsePositives++;
+      }
+    }
+    assertTrue(falsePositives + " of " + absent, falsePositives < absent / 50);
+
+    // the word is there, but in other contexts
+    int otherContext = 0;
+    for (Map.Entry<IdIndexEntry, Integer> entry : data.entrySet()) {
+      if (entry.getValue() == UsageSearchContext.IN_COMMENTS &&
+          IdIndexFilter.mayContain(filter, entry.getKey(), UsageSearchContext.IN_CODE | UsageSearchContext.IN_STRINGS)) {
+        otherContext++;
+      }
+    }
+    assertTrue(String.valueOf(otherContext), otherContext < data.size() / 50);
+  }
+
+  private static Map<IdIndexEntry, Integer> randomData(Random random, int size) {
+    Map<IdIndexEntry, Integer> data = new HashMap<IdIndexEntry, Integer>();
+    int[] masks = {UsageSearchContext.IN_CODE, UsageSearchContext.IN_COMMENTS, UsageSearchContext.IN_CODE | UsageSearchContext.IN_STRINGS,
+      UsageSearchContext.IN_PLAIN_TEXT, UsageSearchContext.IN_CODE | UsageSearchContext.IN_COMMENTS | UsageSearchContext.IN_FOREIGN_LANGUAGES};
+    while (data.size() < size) {
+      data.put(new IdIndexEntry(random.nextInt()), masks[random.nextInt(masks.length)]);
+    }
+    return data;
+  }
+}
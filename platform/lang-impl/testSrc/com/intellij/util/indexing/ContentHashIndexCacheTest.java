@@ -0,0 +1,181 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.ide.highlighter.custom.SyntaxTable;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.fileTypes.UnknownFileType;
+import com.intellij.openapi.fileTypes.impl.AbstractFileType;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
+import com.intellij.util.io.EnumeratorIntegerDescriptor;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+public class ContentHashIndexCacheTest extends TestCase {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("content", "hashes");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testHash() {
+    final byte[] content = "class A { }".getBytes();
+    final FileType type = PlainTextFileType.INSTANCE;
+    final byte[] hash = ContentHashIndexCache.computeHash(type, UTF_8, content);
+    assertTrue(Arrays.equals(hash, ContentHashIndexCache.computeHash(type, UTF_8, content.clone())));
+    assertFalse(Arrays.equals(hash, ContentHashIndexCache.computeHash(type, UTF_8, "class B { }".getBytes())));
+    assertFalse(Arrays.equals(hash, ContentHashIndexCache.computeHash(UnknownFileType.INSTANCE, UTF_8, content)));
+    assertFalse(Arrays.equals(hash, ContentHashIndexCache.computeHash(type, Charset.forName("UTF-16"), content)));
+    assertFalse(Arrays.equals(hash, ContentHashIndexCache.computeHash(type, null, content)));
+  }
+
+  public void testNoHashForCustomFileTypes() {
+    assertNull(ContentHashIndexCache.computeHash(new AbstractFileType(new SyntaxTable()), UTF_8, "a b c".getBytes()));
+  }
+
+  public void testFoundByHash() {
+    final ContentHashIndexCache<String, Integer> cache = new ContentHashIndexCache<String, Integer>();
+    final byte[] hash = hash(1);
+    assertNull(cache.get(hash));
+    final Map<String, Integer> data = Collections.singletonMap("a", 1);
+    cache.put(hash, data);
+    assertSame(data, cache.get(hash.clone()));
+    assertNull(cache.get(hash(2)));
+    assertEquals(1, cache.getAndResetHits());
+    assertEquals(2, cache.getAndResetMisses());
+    assertEquals(0, cache.getAndResetHits());
+
+    cache.clear();
+    assertNull(cache.get(hash));
+  }
+
+  public void testSizeIsBounded() {
+    final ContentHashIndexCache<String, Integer> cache = new ContentHashIndexCache<String, Integer>(10);
+    final Map<String, Integer> data = Collections.singletonMap("a", 1);
+    cache.put(hash(0), data);
+    assertNotNull(cache.get(hash(0)));
+    for (int i = 1; i <= 100; i++) {
+      cache.put(hash(i), data);
+    }
+
+    // the content found once is kept while the ones only put are evicted
+    assertNotNull(cache.get(hash(0)));
+    assertNotNull(cache.get(hash(100)));
+    int kept = 0;
+    for (int i = 1; i <= 100; i++) {
+      if (cache.get(hash(i)) != null) kept++;
+    }
+    assertTrue(String.valueOf(kept), kept <= 20);
+  }
+
+  public void testKeptOnDisk() {
+    ContentHashIndexCache<String, Integer> cache = createOnDisk(1, 100);
+    final Map<String, Integer> data = Collections.singletonMap("a", 1);
+    cache.put(hash(1), data);
+    cache.close();
+
+    cache = createOnDisk(1, 100);
+    assertEquals(data, cache.get(hash(1)));
+    assertNull(cache.get(hash(2)));
+    cache.close();
+
+    // the data of another indexer version is not served
+    cache = createOnDisk(2, 100);
+    assertNull(cache.get(hash(1)));
+    cache.put(hash(1), Collections.singletonMap("b", 2));
+    cache.close();
+
+    cache = createOnDisk(1, 100);
+    assertEquals(data, cache.get(hash(1)));
+    cache.clear();
+    assertNull(cache.get(hash(1)));
+    cache.close();
+  }
+
+  public void testDiskSizeIsBounded() {
+    ContentHashIndexCache<String, Integer> cache = createOnDisk(1, 10);
+    final Map<String, Integer> data = Collections.singletonMap("a", 1);
+    for (int i = 0; i < 100; i++) {
+      cache.put(hash(i), data);
+      if (i % 10 == 0) {
+        // read from disk to be copied from the previous generation, the memory cache is empty after reopening
+        cache.close();
+        cache = createOnDisk(1, 10);
+        assertNotNull(String.valueOf(i), cache.get(hash(0)));
+      }
+    }
+    cache.close();
+
+    cache = createOnDisk(1, 10);
+    assertNotNull(cache.get(hash(0)));
+    assertNotNull(cache.get(hash(99)));
+    int kept = 0;
+    for (int i = 1; i < 99; i++) {
+      if (cache.get(hash(i)) != null) kept++;
+    }
+    assertTrue(String.valueOf(kept), kept <= 20);
+    cache.close();
+    assertTrue(myDir.list().length <= 2);
+  }
+
+  public void testConcurrentAccess() throws Exception {
+    final ContentHashIndexCache<Integer, Integer> cache = new ContentHashIndexCache<Integer, Integer>(100);
+    ConcurrencyTestUtil.runConcurrently(4, new ConcurrencyTestUtil.ThreadBody() {
+      @Override
+      public void run(int thread) {
+        final Random random = new Random(thread);
+        for (int i = 0; i < 100000; i++) {
+          final int content = random.nextInt(1000);
+          final Map<Integer, Integer> data = cache.get(hash(content));
+          if (data != null) {
+            assertEquals(Collections.singletonMap(content, content), data);
+          }
+          else {
+            cache.put(hash(content), Collections.singletonMap(content, content));
+          }
+        }
+      }
+    });
+    assertEquals(400000, cache.getAndResetHits() + cache.getAndResetMisses());
+  }
+
+  private ContentHashIndexCache<String, Integer> createOnDisk(int version, int diskGenerationSize) {
+    return ContentHashIndexCache.create(myDir, version, new EnumeratorStringDescriptor(), EnumeratorIntegerDescriptor.INSTANCE, 10,
+                                        diskGenerationSize);
+  }
+
+  private static byte[] hash(int content) {
+    return ContentHashIndexCache.computeHash(PlainTextFileType.INSTANCE, UTF_8, String.valueOf(content).getBytes());
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.util.io.DataInputOutputUtil;
+import gnu.trove.TIntHashSet;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class SortedIdSetTest extends TestCase {
+  public void testAddRemove() {
+    Random random = new Random(42);
+    // sparse ids keep the array representation, dense ones switch to the bitmap and back
+    for (int maxId : new int[]{100, 1000, 1000000}) {
+      SortedIdSet set = new SortedIdSet();
+      TIntHashSet expected = new TIntHashSet();
+      for (int i = 0; i < 20000; i++) {
+        int id = random.nextInt(maxId);
+        if (random.nextInt(3) == 0) {
+          assertEquals(expected.remove(id), set.remove(id));
+        }
+        else {
+          assertEquals(expected.add(id), set.add(id));
+        }
+        assertEquals(expected.size(), set.size());
+      }
+      assertSameIds(expected, set);
+
+      SortedIdSet clone = set.clone();
+      for (int id : expected.toArray()) {
+        assertTrue(set.contains(id));
+        assertTrue(set.remove(id));
+      }
+      assertTrue(set.isEmpty());
+      assertSameIds(expected, clone);
+    }
+  }
+
+  public void testIntersectAndUnion() {
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      int[] ids1 = randomIds(random, random.nextInt(1000), 1 + random.nextInt(10000));
+      int[] ids2 = randomIds(random, random.nextInt(1000), 1 + random.nextInt(10000));
+      TIntHashSet set1 = new TIntHashSet(ids1);
+      TIntHashSet set2 = new TIntHashSet(ids2);
+
+      TIntHashSet intersection = new TIntHashSet();
+      TIntHashSet union = new TIntHashSet(ids1);
+      union.addAll(ids2);
+      for (int id : ids1) {
+        if (set2.contains(id)) intersection.add(id);
+      }
+      assertEquals(sorted(intersection), SortedIdSet.intersect(ids1, ids2));
+      assertEquals(sorted(union), SortedIdSet.union(ids1, ids2));
+      assertEquals(sorted(set1), SortedIdSet.intersect(ids1, ids1));
+    }
+  }
+
+  public void testSerializedSize() throws IOException {
+    Random random = new Random(42);
+    // the ids of a common identifier: every third file of a 200k-file project
+    int[] ids = randomIds(random, 70000, 200000);
+
+    BufferExposingByteArrayOutputStream plain = new BufferExposingByteArrayOutputStream();
+    DataOutputStream plainOut = new DataOutputStream(plain);
+    for (int id : ids) {
+      DataInputOutputUtil.writeSINT(plainOut, id);
+    }
+
+    SortedIdSet set = new SortedIdSet();
+    for (int id : ids) {
+      set.add(id);
+    }
+    BufferExposingByteArrayOutputStream deltas = new BufferExposingByteArrayOutputStream();
+    SortedIdSet.writeSorted(new DataOutputStream(deltas), set.iterator());
+    assertTrue(deltas.size() + " bytes delta-encoded, " + plain.size() + " bytes as plain ints", deltas.size() * 2 < plain.size());
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(deltas.getInternalBuffer(), 0, deltas.size()));
+    assertEquals(ids, SortedIdSet.readSorted(in, ids.length));
+  }
+
+  private static void assertSameIds(TIntHashSet expected, SortedIdSet set) {
+    assertEquals(sorted(expected), set.toArray());
+    int[] iterated = new int[set.size()];
+    ValueContainer.IntIterator it = set.iterator();
+    assertEquals(set.size(), it.size());
+    for (int i = 0; i < iterated.length; i++) {
+      assertTrue(it.hasNext());
+      iterated[i] = it.next();
+    }
+    assertFalse(it.hasNext());
+    assertEquals(sorted(expected), iterated);
+  }
+
+  private static int[] randomIds(Random random, int count, int maxId) {
+    TIntHashSet ids = new TIntHashSet();
+    for (int i = 0; i < count; i++) {
+      ids.add(random.nextInt(maxId));
+    }
+    return sorted(ids);
+  }
+
+  private static int[] sorted(TIntHashSet set) {
+    int[] ids = set.toArray();
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  private static void assertEquals(int[] expected, int[] actual) {
+    assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+  }
+}
@@ -57,7 +57,8 @@ public class OSProcessHandler extends BaseOSProcessHandler {
     // Override this method if you want to customize default destroy behaviour, e.g.
     // if you want use some soft-kill.
     final Process process = getProcess();
-    if (shouldDestroyProcessRecursively()) {
+    // the children would keep the output streams open and the blocking readers waiting on them
+    if (shouldDestroyProcessRecursively() || useBlockingRead()) {
       killProcessTree(process);
     }
     else {
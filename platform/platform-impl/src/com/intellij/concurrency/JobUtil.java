@@ -25,6 +25,7 @@ import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.util.Consumer;
 import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -40,21 +41,26 @@ public class JobUtil {
   private JobUtil() {
   }
 
-  private static <T> boolean invokeConcurrentlyForAll(@NotNull final List<T> things,
-                                                      boolean failFastOnAcquireReadAction,
-                                                      @NotNull final Processor<T> thingProcessor) throws ProcessCanceledException {
+  // one task per core, which split the list between them as they go, see ListRanges
+  static <T> boolean invokeConcurrentlyForAll(@NotNull final List<T> things,
+                                              boolean failFastOnAcquireReadAction,
+                                              @Nullable final ProgressIndicator progress,
+                                              @NotNull final Processor<T> thingProcessor) throws ProcessCanceledException {
     final Job<String> job = new JobImpl<String>(Job.DEFAULT_PRIORITY, failFastOnAcquireReadAction);
 
-    final int chunkSize = Math.max(1, things.size() / JobSchedulerImpl.CORES_COUNT / 20);
-    for (int i = 0; i < things.size(); i += chunkSize) {
-      // this job chunk is i..i+chunkSize-1
-      final int finalI = i;
+    final int workers = Math.min(things.size(), JobSchedulerImpl.CORES_COUNT);
+    final ListRanges ranges = new ListRanges(things.size(), workers);
+    for (int i = 0; i < workers; i++) {
+      final int worker = i;
       job.addTask(new Runnable() {
         public void run() {
           try {
-            for (int k = finalI; k < finalI + chunkSize && k < things.size(); k++) {
-              T thing = things.get(k);
-              if (!thingProcessor.process(thing)) {
+            int index;
+            while (!job.isCanceled() && (index = ranges.next(worker)) >= 0) {
+              if (progress != null && progress.isCanceled()) {
+                throw new ProcessCanceledException();
+              }
+              if (!thingProcessor.process(things.get(index))) {
                 job.cancel();
                 break;
               }
@@ -109,7 +115,7 @@ public class JobUtil {
 
     // can be already wrapped
     final ProgressWrapper wrapper = progress instanceof ProgressWrapper ? (ProgressWrapper)progress : ProgressWrapper.wrap(progress);
-    return invokeConcurrentlyForAll(things, failFastOnAcquireReadAction, new Processor<T>() {
+    return invokeConcurrentlyForAll(things, failFastOnAcquireReadAction, wrapper, new Processor<T>() {
       public boolean process(final T t) {
         final boolean[] result = new boolean[1];
         ((ProgressManagerImpl)ProgressManager.getInstance()).executeProcessUnderProgress(new Runnable() {
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.concurrency;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The indices of a list split between the workers processing it. A worker takes the indices from the start of its own range,
+ * and having run out of them, steals the second half of the largest range left. So the work is split as finely as needed and
+ * no further, and the workers only contend when stealing.
+ */
+class ListRanges {
+  // the ranges are kept a cache line apart, the start index in the high half of the long, the end index in the low one
+  private static final int STRIDE = 8;
+
+  private final AtomicLongArray myRanges;
+  private final int myWorkers;
+
+  ListRanges(int size, int workers) {
+    myWorkers = workers;
+    myRanges = new AtomicLongArray(workers * STRIDE);
+    for (int i = 0; i < workers; i++) {
+      myRanges.set(i * STRIDE, range((int)((long)size * i / workers), (int)((long)size * (i + 1) / workers)));
+    }
+  }
+
+  /**
+   * @return the next index for the worker to process, or -1 if no indices are left
+   */
+  int next(int worker) {
+    while (true) {
+      final long range = myRanges.get(worker * STRIDE);
+      final int from = from(range);
+      final int to = to(range);
+      if (from < to) {
+        if (myRanges.compareAndSet(worker * STRIDE, range, range(from + 1, to))) return from;
+      }
+      else if (!steal(worker)) {
+        return -1;
+      }
+    }
+  }
+
+  private boolean steal(int worker) {
+    while (true) {
+      int victim = -1;
+      long victimRange = 0;
+      int largest = 0;
+      for (int i = 0; i < myWorkers; i++) {
+        if (i == worker) continue;
+        final long range = myRanges.get(i * STRIDE);
+        final int size = to(range) - from(range);
+        if (size > largest) {
+          largest = size;
+          victim = i;
+          victimRange = range;
+        }
+      }
+      if (victim < 0) return false;
+
+      // the last index is taken as well, as its owner may be busy with a long one
+      final int middle = from(victimRange) + largest / 2;
+      if (myRanges.compareAndSet(victim * STRIDE, victimRange, range(from(victimRange), middle))) {
+        // nobody else changes an empty range
+        myRanges.set(worker * STRIDE, range(middle, to(victimRange)));
+        return true;
+      }
+    }
+  }
+
+  private static long range(int from, int to) {
+    return (long)from << 32 | to & 0xFFFFFFFFL;
+  }
+
+  private static int from(long range) {
+    return (int)(range >>> 32);
+  }
+
+  private static int to(long range) {
+    return (int)range;
+  }
+}
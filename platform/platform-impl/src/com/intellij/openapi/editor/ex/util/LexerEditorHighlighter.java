@@ -44,6 +44,11 @@ import java.util.Map;
 
 public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDocumentListener {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.editor.ex.util.LexerEditorHighlighter");
+  /**
+   * Texts longer than that are lexed lazily: only up to the offsets the iterators are requested for, plus {@link #LAZY_LEXING_LOOKAHEAD}.
+   */
+  private static final int LAZY_LEXING_THRESHOLD = Integer.getInteger("idea.editor.lazy.lexing.threshold", 1024 * 1024);
+  private static final int LAZY_LEXING_LOOKAHEAD = Integer.getInteger("idea.editor.lazy.lexing.lookahead", 64 * 1024);
   private HighlighterClient myEditor;
   private final Lexer myLexer;
   private final Map<IElementType, TextAttributes> myAttributesMap = new HashMap<IElementType, TextAttributes>();
@@ -51,6 +56,11 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
   private final SyntaxHighlighter myHighlighter;
   private EditorColorsScheme myScheme;
   private final int myInitialState;
+  /**
+   * The text being lexed lazily, null if the segments cover the whole text. The segments then cover a prefix of the text
+   * which ends before a token started in the initial lexer state, so lexing can be continued from there.
+   */
+  private CharSequence myLazyText;
 
   public LexerEditorHighlighter(@NotNull SyntaxHighlighter highlighter, @NotNull EditorColorsScheme scheme) {
     myScheme = scheme;
@@ -112,6 +122,7 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
         // bulk mode was reset
         doSetText(document.getCharsSequence());
       }
+      lexUpTo(startOffset + LAZY_LEXING_LOOKAHEAD);
 
       final int latestValidOffset = mySegments.getLastValidOffset();
       return new HighlighterIteratorImpl(startOffset <= latestValidOffset ? startOffset : latestValidOffset);
@@ -123,6 +134,10 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
     return state == myInitialState ? idx : -idx;
   }
 
+  protected boolean isLazyLexingSupported() {
+    return true;
+  }
+
   public boolean isValid() {
     Project project = myEditor.getProject();
     return project != null && !project.isDisposed();
@@ -152,6 +167,11 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
 
     CharSequence text = document.getCharsSequence();
     int oldStartOffset = e.getOffset();
+    final int lexedEnd = mySegments.getLastValidOffset();
+    if (myLazyText != null) {
+      myLazyText = text;
+      if (oldStartOffset > lexedEnd) return; // not lexed yet
+    }
 
     final int segmentIndex;
     try {
@@ -221,6 +241,12 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
 
       int tokenEnd = myLexer.getTokenEnd();
       data = packData(myLexer.getTokenType(), lexerState);
+      if (myLazyText != null && tokenStart >= newEndOffset && tokenStart >= lexedEnd + e.getNewLength() - e.getOldLength() &&
+          lexerState == myInitialState) {
+        // past the lexed part of the text, the rest is lexed on demand
+        repaintEnd = tokenStart;
+        break;
+      }
       if(tokenStart >= newEndOffset && lexerState == myInitialState) {
         int shiftedTokenStart = tokenStart - e.getNewLength() + e.getOldLength();
         int index = mySegments.findSegmentIndex(shiftedTokenStart);
@@ -234,6 +260,9 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
       insertSegmentCount++;
       myLexer.advance();
     }
+    if (myLexer.getTokenType() == null) {
+      myLazyText = null;
+    }
 
     final int shift = e.getNewLength() - e.getOldLength();
     if (repaintEnd > 0) {
@@ -302,20 +331,9 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
   }
 
   private void doSetText(final CharSequence text) {
-    final TokenProcessor processor = createTokenProcessor(0);
-    myLexer.start(text, 0, text.length(),myInitialState);
     mySegments.removeAll();
-    int i = 0;
-    while (true) {
-      final IElementType tokenType = myLexer.getTokenType();
-      if (tokenType == null) break;
-
-      int data = packData(tokenType, myLexer.getState());
-      processor.addToken(i, myLexer.getTokenStart(), myLexer.getTokenEnd(), data, tokenType);
-      i++;
-      myLexer.advance();
-    }
-    processor.finish();
+    myLazyText = text.length() > LAZY_LEXING_THRESHOLD && isLazyLexingSupported() ? text : null;
+    lexTokens(text, 0, myLazyText != null ? LAZY_LEXING_LOOKAHEAD : text.length());
 
     if(myEditor != null) {
       UIUtil.invokeLaterIfNeeded(new DumbAwareRunnable() {
@@ -327,6 +345,41 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
     }
   }
 
+  /**
+   * Lexes the text from the end of the segments in the initial state until a token started in the initial state at or after the limit,
+   * or until the end of the text.
+   */
+  private void lexTokens(CharSequence text, int startOffset, int limit) {
+    int i = mySegments.getSegmentCount();
+    final TokenProcessor processor = createTokenProcessor(i);
+    myLexer.start(text, startOffset, text.length(), myInitialState);
+    while (true) {
+      final IElementType tokenType = myLexer.getTokenType();
+      if (tokenType == null) {
+        myLazyText = null;
+        break;
+      }
+
+      int state = myLexer.getState();
+      if (myLazyText != null && state == myInitialState && myLexer.getTokenStart() >= limit) break;
+      int data = packData(tokenType, state);
+      processor.addToken(i, myLexer.getTokenStart(), myLexer.getTokenEnd(), data, tokenType);
+      i++;
+      myLexer.advance();
+    }
+    processor.finish();
+  }
+
+  /**
+   * Makes the segments cover the text up to the given offset if the text is lexed lazily.
+   */
+  private synchronized void lexUpTo(int offset) {
+    if (myLazyText == null) return;
+    final int lexedEnd = mySegments.getLastValidOffset();
+    if (offset < lexedEnd) return;
+    lexTokens(myLazyText, lexedEnd, offset);
+  }
+
   protected TokenProcessor createTokenProcessor(final int startIndex) {
     return new TokenProcessor();
   }
@@ -395,6 +448,9 @@ public class LexerEditorHighlighter implements EditorHighlighter, PrioritizedDoc
 
     @Override
     public boolean atEnd() {
+      if (myLazyText != null && mySegmentIndex >= mySegments.getSegmentCount()) {
+        lexUpTo(mySegments.getLastValidOffset() + LAZY_LEXING_LOOKAHEAD);
+      }
       return mySegmentIndex >= mySegments.getSegmentCount() || mySegmentIndex < 0;
     }
 
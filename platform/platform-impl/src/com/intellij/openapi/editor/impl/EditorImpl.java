@@ -2363,7 +2363,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
 
     Point position = new Point(0, visibleLine * lineHeight);
     if (startLine == 0 && myPrefixText != null) {
-      position.x = drawStringWithSoftWraps(g, myPrefixText, 0, myPrefixText.length, position, clip,
+      position.x = drawStringWithSoftWraps(g, myPrefixText, 0, 0, myPrefixText.length, position, clip,
                                            myPrefixAttributes.getEffectColor(), myPrefixAttributes.getEffectType(),
                                            myPrefixAttributes.getFontType(), myPrefixAttributes.getForegroundColor(), logicalPosition);
     }
@@ -2390,7 +2390,13 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
       int fontType = attributes.getFontType();
       g.setColor(currentColor);
 
-      final char[] chars = myDocument.getRawChars();
+      // only the painted part of the text is copied, the text of a large document is not kept in a single array
+      CharSequence text = myDocument.getCharsNoThreadCheck();
+      final int charsStart = start;
+      // a line which starts before the clip end is drawn to its end
+      final int charsEnd = Math.max(charsStart, myDocument.getLineEndOffset(myDocument.getLineNumber(Math.min(clipEndOffset,
+                                                                                                       text.length()))));
+      final char[] chars = CharArrayUtil.fromSequence(text, charsStart, charsEnd);
 
       while (!iterationState.atEnd() && !lIterator.atEnd()) {
         int hEnd = iterationState.getEndOffset();
@@ -2398,7 +2404,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
         if (hEnd >= lEnd) {
           FoldRegion collapsedFolderAt = myFoldingModel.getCollapsedRegionAtOffset(start);
           if (collapsedFolderAt == null) {
-            drawStringWithSoftWraps(g, chars, start, lEnd - lIterator.getSeparatorLength(), position, clip, effectColor,
+            drawStringWithSoftWraps(g, chars, charsStart, start, lEnd - lIterator.getSeparatorLength(), position, clip, effectColor,
                                     effectType, fontType, currentColor, logicalPosition);
             position.x = 0;
             if (position.y > clip.y + clip.height) {
@@ -2417,8 +2423,8 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
             SoftWrap softWrap = mySoftWrapModel.getSoftWrap(collapsedFolderAt.getStartOffset());
             if (softWrap != null) {
               position.x = drawStringWithSoftWraps(
-                g, chars, collapsedFolderAt.getStartOffset(), collapsedFolderAt.getStartOffset(), position, clip, effectColor, effectType,
-                fontType, currentColor, logicalPosition
+                g, chars, charsStart, collapsedFolderAt.getStartOffset(), collapsedFolderAt.getStartOffset(), position, clip, effectColor,
+                effectType, fontType, currentColor, logicalPosition
               );
             }
             int foldingXStart = position.x;
@@ -2431,8 +2437,8 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
 
           }
           else {
-            position.x = drawStringWithSoftWraps(g, chars, start, Math.min(hEnd, lEnd - lIterator.getSeparatorLength()) , position, clip,
-                                                 effectColor, effectType, fontType, currentColor, logicalPosition);
+            position.x = drawStringWithSoftWraps(g, chars, charsStart, start, Math.min(hEnd, lEnd - lIterator.getSeparatorLength()),
+                                                 position, clip, effectColor, effectType, fontType, currentColor, logicalPosition);
           }
 
           iterationState.advance();
@@ -2662,12 +2668,18 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
                                       Color fontColor,
                                       Ref<LogicalPosition> startDrawingLogicalPosition)
   {
-    return drawStringWithSoftWraps(g, text.toCharArray(), 0, text.length(), position, clip, effectColor, effectType,
+    return drawStringWithSoftWraps(g, text.toCharArray(), 0, 0, text.length(), position, clip, effectColor, effectType,
                                    fontType, fontColor, startDrawingLogicalPosition);
   }
 
+  /**
+   * @param text       the chars to draw, the first one is at offset {@code textStart}
+   * @param start      the document offset to start drawing at
+   * @param end        the document offset to end drawing at
+   */
   private int drawStringWithSoftWraps(Graphics g,
                                       final char[] text,
+                                      final int textStart,
                                       final int start,
                                       final int end,
                                       Point position,
@@ -2735,7 +2747,7 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
       // Draw token text before the wrap.
       if (softWrap.getStart() > startToUse) {
         position.x = drawString(
-          g, text, startToUse, softWrap.getStart(), position, clip, null, null, fontType, fontColor
+          g, text, startToUse - textStart, softWrap.getStart() - textStart, position, clip, null, null, fontType, fontColor
         );
       }
 
@@ -2779,7 +2791,8 @@ public final class EditorImpl extends UserDataHolderBase implements EditorEx, Hi
       position.x += mySoftWrapModel.paint(g, SoftWrapDrawingType.AFTER_SOFT_WRAP, position.x, position.y, getLineHeight());
       myForceRefreshFont = true;
     }
-    return position.x = drawString(g, text, startToUse, end, position, clip, effectColor, effectType, fontType, fontColor);
+    return position.x = drawString(g, text, startToUse - textStart, end - textStart, position, clip, effectColor, effectType, fontType,
+                                   fontColor);
   }
 
   private int drawString(Graphics g,
@@ -35,6 +35,8 @@ import gnu.trove.THashSet;
 import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 class CacheUpdateRunner {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.project.CacheUpdateRunner");
@@ -42,6 +44,9 @@ class CacheUpdateRunner {
   private final Project myProject;
   private final Collection<CacheUpdater> myUpdaters;
   private CacheUpdateSession mySession;
+  // per-stage timings of processFiles(), in nanoseconds summed over all the worker threads
+  private final AtomicLong myWaitingForContentTime = new AtomicLong();
+  private final AtomicLong myProcessingTime = new AtomicLong();
 
   CacheUpdateRunner(Project project, Collection<CacheUpdater> updaters) {
     myProject = project;
@@ -91,10 +96,12 @@ class CacheUpdateRunner {
         }
       };
 
+      final long started = System.currentTimeMillis();
       while (!myProject.isDisposed()) {
         indicator.checkCanceled();
         // todo wait for the user...
         if (processSomeFilesWhileUserIsInactive(queue, progressUpdater, processInReadAction)) {
+          logStageTimings(queue, files.size(), System.currentTimeMillis() - started);
           break;
         }
       }
@@ -110,6 +117,17 @@ class CacheUpdateRunner {
     }
   }
 
+  private void logStageTimings(FileContentQueue queue, int filesCount, long totalMillis) {
+    LOG.info("Processed " + filesCount + " files in " + totalMillis + " ms: " +
+             "loading " + toMillis(queue.getLoadingTime()) + " ms (" + queue.getLoadedBytes() / 1024 + " kb), " +
+             "processing " + toMillis(myProcessingTime.get()) + " ms, " +
+             "waiting for content " + toMillis(myWaitingForContentTime.get()) + " ms");
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
   public void updatingDone() {
     try {
       mySession.updatingDone();
@@ -210,7 +228,9 @@ class CacheUpdateRunner {
         if (myProject.isDisposed()) return;
         if (myInnerIndicator.isCanceled()) return;
 
+        final long waitingStarted = System.nanoTime();
         final FileContent fileContent = myQueue.take();
+        myWaitingForContentTime.addAndGet(System.nanoTime() - waitingStarted);
         if (fileContent == null) {
           myFinished.set(Boolean.TRUE);
           return;
@@ -225,7 +245,13 @@ class CacheUpdateRunner {
 
               final VirtualFile file = fileContent.getVirtualFile();
               myProgressUpdater.consume(file);
-              mySession.processFile(fileContent);
+              final long processingStarted = System.nanoTime();
+              try {
+                mySession.processFile(fileContent);
+              }
+              finally {
+                myProcessingTime.addAndGet(System.nanoTime() - processingStarted);
+              }
             }
           };
           if (myProcessInReadAction) {
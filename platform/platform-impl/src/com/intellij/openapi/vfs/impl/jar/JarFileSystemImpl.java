@@ -258,6 +258,13 @@ public class JarFileSystemImpl extends JarFileSystem implements ApplicationCompo
     return getHandler(file).getLength(file);
   }
 
+  /**
+   * @see com.intellij.openapi.vfs.impl.jar.JarHandlerBase#getEntryIndex(VirtualFile)
+   */
+  public int getEntryIndex(@NotNull final VirtualFile file) {
+    return getHandler(file).getEntryIndex(file);
+  }
+
   @Override
   @NotNull
   public OutputStream getOutputStream(@NotNull final VirtualFile file, final Object requestor, final long modStamp, final long timeStamp)
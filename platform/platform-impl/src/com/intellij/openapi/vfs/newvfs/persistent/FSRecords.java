@@ -19,6 +19,7 @@
  */
 package com.intellij.openapi.vfs.newvfs.persistent;
 
+import com.google.common.collect.MapMaker;
 import com.intellij.openapi.Forceable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
@@ -45,7 +46,10 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @SuppressWarnings({"PointlessArithmeticExpression", "HardCodedStringLiteral"})
 public class FSRecords implements Forceable {
@@ -88,6 +92,18 @@ public class FSRecords implements Forceable {
   private static final String CHILDREN_ATT = "FsRecords.DIRECTORY_CHILDREN";
   private static final Object lock = new Object();
 
+  // Fixed-size record fields are read under the read lock only, without taking the global lock above.
+  // Every modification of the records file is done under the global lock *and* the write lock.
+  private static final ReentrantReadWriteLock ourRecordsLock = new ReentrantReadWriteLock();
+  private static final Lock r = ourRecordsLock.readLock();
+  private static final Lock w = ourRecordsLock.writeLock();
+
+  // decoded children lists, read without locking; populated under the global lock and dropped whenever the children attribute
+  // is rewritten or the record is cleaned
+  private static final int CHILDREN_CACHE_SIZE = 8192;
+  private static final ConcurrentMap<Integer, int[]> ourChildrenCache =
+    new MapMaker().concurrencyLevel(4).maximumSize(CHILDREN_CACHE_SIZE).makeMap();
+
   private static volatile int ourLocalModificationCount = 0;
   private static volatile boolean ourIsDisposed;
 
@@ -190,7 +206,7 @@ public class FSRecords implements Forceable {
         myNames = new PersistentStringEnumerator(namesFile);
         myAttributes = new Storage(attributesFile.getCanonicalPath());
         myContents = new RefCountingStorage(contentsFile.getCanonicalPath());
-        myRecords = new ResizeableMappedFile(recordsFile, 20 * 1024, new PagedFileStorage.StorageLock(false));
+        myRecords = new ResizeableMappedFile(recordsFile, 20 * 1024, new PagedFileStorage.StorageLock(false, true));
 
         if (myRecords.length() == 0) {
           cleanRecord(0); // Clean header
@@ -300,7 +316,7 @@ public class FSRecords implements Forceable {
     private static void markDirty() {
       if (!myDirty) {
         myDirty = true;
-        myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, CONNECTED_MAGIC);
+        putRecordsInt(HEADER_CONNECTION_STATUS_OFFSET, CONNECTED_MAGIC);
       }
     }
 
@@ -367,15 +383,22 @@ public class FSRecords implements Forceable {
     }
 
     private static void setCurrentVersion() {
-      myRecords.putInt(HEADER_VERSION_OFFSET, VERSION);
-      myRecords.putLong(HEADER_TIMESTAMP_OFFSET, System.currentTimeMillis());
+      putRecordsInt(HEADER_VERSION_OFFSET, VERSION);
+      putRecordsLong(HEADER_TIMESTAMP_OFFSET, System.currentTimeMillis());
       myAttributes.setVersion(VERSION);
       myContents.setVersion(VERSION);
-      myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
+      putRecordsInt(HEADER_CONNECTION_STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
     }
 
     public static void cleanRecord(final int id) {
-      myRecords.put(id * RECORD_SIZE, ZEROES, 0, RECORD_SIZE);
+      w.lock();
+      try {
+        myRecords.put(id * RECORD_SIZE, ZEROES, 0, RECORD_SIZE);
+      }
+      finally {
+        w.unlock();
+      }
+      ourChildrenCache.remove(id);
     }
 
     public static PersistentStringEnumerator getNames() {
@@ -409,15 +432,22 @@ public class FSRecords implements Forceable {
 
       if (myRecords != null) {
         markClean();
-        myRecords.close();
-        myRecords = null;
+        w.lock();
+        try {
+          myRecords.close();
+          myRecords = null;
+        }
+        finally {
+          w.unlock();
+        }
       }
+      ourChildrenCache.clear();
     }
 
     private static void markClean() {
       if (myDirty) {
         myDirty = false;
-        myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, myCorrupted ? CORRUPTED_MAGIC : SAFELY_CLOSED_MAGIC);
+        putRecordsInt(HEADER_CONNECTION_STATUS_OFFSET, myCorrupted ? CORRUPTED_MAGIC : SAFELY_CLOSED_MAGIC);
       }
     }
 
@@ -517,7 +547,7 @@ public class FSRecords implements Forceable {
   }
 
   private static void doDeleteRecursively(final int id) {
-    for (int subrecord : list(id)) {
+    for (int subrecord : listShared(id)) {
       doDeleteRecursively(subrecord);
     }
 
@@ -688,7 +718,19 @@ public class FSRecords implements Forceable {
     }
   }
 
+  /**
+   * @return children ids of the record, a copy the caller may modify
+   */
   public static int[] list(int id) {
+    final int[] ids = listShared(id);
+    return ids.length == 0 ? ArrayUtil.EMPTY_INT_ARRAY : ids.clone();
+  }
+
+  // the array may be cached and shared with other callers, it must not be modified
+  private static int[] listShared(int id) {
+    int[] cached = ourChildrenCache.get(id);
+    if (cached != null) return cached;
+
     synchronized (lock) {
       try {
         final DataInputStream input = readAttribute(id, CHILDREN_ATT);
@@ -700,6 +742,8 @@ public class FSRecords implements Forceable {
           result[i] = input.readInt();
         }
         input.close();
+        // attribute writers need the global lock to find the page, so nobody could have rewritten the list since it was read
+        ourChildrenCache.put(id, result);
         return result;
       }
       catch (Throwable e) {
@@ -767,7 +811,7 @@ public class FSRecords implements Forceable {
     DbConnection.markDirty();
     ourLocalModificationCount++;
     final int count = getModCount() + 1;
-    getRecords().putInt(HEADER_GLOBAL_MODCOUNT_OFFSET, count);
+    putRecordsInt(HEADER_GLOBAL_MODCOUNT_OFFSET, count);
 
     int parent = id;
     while (parent != 0) {
@@ -781,25 +825,27 @@ public class FSRecords implements Forceable {
   }
 
   public static int getModCount() {
-    synchronized (lock) {
+    r.lock();
+    try {
       return getRecords().getInt(HEADER_GLOBAL_MODCOUNT_OFFSET);
     }
+    finally {
+      r.unlock();
+    }
   }
 
   public static int getParent(int id) {
-    synchronized (lock) {
-      try {
-        final int parentId = getRecordInt(id, PARENT_OFFSET);
-        if (parentId == id) {
-          LOG.error("Cyclic parent child relations in the database. id = " + id);
-          return 0;
-        }
-
-        return parentId;
-      }
-      catch (Throwable e) {
-        throw DbConnection.handleError(e);
+    try {
+      final int parentId = getRecordInt(id, PARENT_OFFSET);
+      if (parentId == id) {
+        LOG.error("Cyclic parent child relations in the database. id = " + id);
+        return 0;
       }
+
+      return parentId;
+    }
+    catch (Throwable e) {
+      throw DbConnection.handleError(e);
     }
   }
 
@@ -821,14 +867,12 @@ public class FSRecords implements Forceable {
   }
 
   public static String getName(int id) {
-    synchronized (lock) {
-      try {
-        final int nameId = getRecordInt(id, NAME_OFFSET);
-        return nameId != 0 ? getNames().valueOf(nameId) : "";
-      }
-      catch (Throwable e) {
-        throw DbConnection.handleError(e);
-      }
+    try {
+      final int nameId = getRecordInt(id, NAME_OFFSET);
+      return nameId != 0 ? getNames().valueOf(nameId) : "";
+    }
+    catch (Throwable e) {
+      throw DbConnection.handleError(e);
     }
   }
 
@@ -845,9 +889,7 @@ public class FSRecords implements Forceable {
   }
 
   public static int getFlags(int id) {
-    synchronized (lock) {
-      return getRecordInt(id, FLAGS_OFFSET);
-    }
+    return getRecordInt(id, FLAGS_OFFSET);
   }
 
   public static void setFlags(int id, int flags, final boolean markAsChange) {
@@ -865,16 +907,14 @@ public class FSRecords implements Forceable {
   }
 
   public static long getLength(int id) {
-    synchronized (lock) {
-      return getRecords().getLong(getOffset(id, LENGTH_OFFSET));
-    }
+    return getRecordLong(id, LENGTH_OFFSET);
   }
 
   public static void setLength(int id, long len) {
     synchronized (lock) {
       try {
         incModCount(id);
-        getRecords().putLong(getOffset(id, LENGTH_OFFSET), len);
+        putRecordLong(id, LENGTH_OFFSET, len);
       }
       catch (Throwable e) {
         throw DbConnection.handleError(e);
@@ -883,16 +923,14 @@ public class FSRecords implements Forceable {
   }
 
   public static long getTimestamp(int id) {
-    synchronized (lock) {
-      return getRecords().getLong(getOffset(id, TIMESTAMP_OFFSET));
-    }
+    return getRecordLong(id, TIMESTAMP_OFFSET);
   }
 
   public static void setTimestamp(int id, long value) {
     synchronized (lock) {
       try {
         incModCount(id);
-        getRecords().putLong(getOffset(id, TIMESTAMP_OFFSET), value);
+        putRecordLong(id, TIMESTAMP_OFFSET, value);
       }
       catch (Throwable e) {
         throw DbConnection.handleError(e);
@@ -901,9 +939,7 @@ public class FSRecords implements Forceable {
   }
 
   public static int getModCount(int id) {
-    synchronized (lock) {
-      return getRecordInt(id, MODCOUNT_OFFSET);
-    }
+    return getRecordInt(id, MODCOUNT_OFFSET);
   }
 
   private static void setModCount(int id, int value) {
@@ -927,11 +963,51 @@ public class FSRecords implements Forceable {
   }
 
   private static int getRecordInt(int id, int offset) {
-    return getRecords().getInt(getOffset(id, offset));
+    r.lock();
+    try {
+      return getRecords().getInt(getOffset(id, offset));
+    }
+    finally {
+      r.unlock();
+    }
+  }
+
+  private static long getRecordLong(int id, int offset) {
+    r.lock();
+    try {
+      return getRecords().getLong(getOffset(id, offset));
+    }
+    finally {
+      r.unlock();
+    }
   }
 
   private static void putRecordInt(int id, int offset, int value) {
-    getRecords().putInt(getOffset(id, offset), value);
+    putRecordsInt(getOffset(id, offset), value);
+  }
+
+  private static void putRecordLong(int id, int offset, long value) {
+    putRecordsLong(getOffset(id, offset), value);
+  }
+
+  private static void putRecordsInt(int offset, int value) {
+    w.lock();
+    try {
+      getRecords().putInt(offset, value);
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
+  private static void putRecordsLong(int offset, long value) {
+    w.lock();
+    try {
+      getRecords().putLong(offset, value);
+    }
+    finally {
+      w.unlock();
+    }
   }
 
   private static int getOffset(int id, int offset) {
@@ -1129,6 +1205,9 @@ public class FSRecords implements Forceable {
     protected void doFlush() throws IOException {
       synchronized (myAttributeId) {
         super.doFlush();
+        if (CHILDREN_ATT.equals(myAttributeId)) {
+          ourChildrenCache.remove(myFileId);
+        }
       }
     }
 
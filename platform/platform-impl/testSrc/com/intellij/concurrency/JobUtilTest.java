@@ -0,0 +1,126 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.concurrency;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class JobUtilTest extends TestCase {
+  public void testRanges() throws Exception {
+    for (int size : new int[]{0, 1, 5, 1000, 100000}) {
+      for (int workers = 1; workers <= 8; workers++) {
+        final AtomicIntegerArray counts = new AtomicIntegerArray(size);
+        final ListRanges ranges = new ListRanges(size, workers);
+        ConcurrencyTestUtil.runConcurrently(workers, new ConcurrencyTestUtil.ThreadBody() {
+          @Override
+          public void run(int worker) {
+            int index;
+            while ((index = ranges.next(worker)) >= 0) {
+              counts.incrementAndGet(index);
+            }
+          }
+        });
+        for (int i = 0; i < size; i++) {
+          assertEquals(1, counts.get(i));
+        }
+      }
+    }
+  }
+
+  public void testImbalancedElements() {
+    // the slow elements are at the start, where the first worker would get them all with a fixed split
+    final AtomicInteger processed = new AtomicInteger();
+    List<Integer> things = new ArrayList<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      things.add(i < 20 ? 50 : 0);
+    }
+    assertTrue(JobUtil.invokeConcurrentlyForAll(things, false, null, new Processor<Integer>() {
+      @Override
+      public boolean process(Integer sleep) {
+        if (sleep > 0) {
+          try {
+            Thread.sleep(sleep);
+          }
+          catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        }
+        processed.incrementAndGet();
+        return true;
+      }
+    }));
+    assertEquals(things.size(), processed.get());
+  }
+
+  public void testStopsOnFalseAndCancel() {
+    List<Integer> things = Arrays.asList(new Integer[100000]);
+    final AtomicInteger count = new AtomicInteger();
+    assertFalse(JobUtil.invokeConcurrentlyForAll(things, false, null, new Processor<Integer>() {
+      @Override
+      public boolean process(Integer integer) {
+        return count.incrementAndGet() < 100;
+      }
+    }));
+    assertTrue(String.valueOf(count.get()), count.get() < things.size());
+
+    final EmptyProgressIndicator progress = new EmptyProgressIndicator();
+    count.set(0);
+    try {
+      // the tasks are run in the caller thread on a single core, and their exceptions are not rethrown
+      assertFalse(JobUtil.invokeConcurrentlyForAll(things, false, progress, new Processor<Integer>() {
+        @Override
+        public boolean process(Integer integer) {
+          if (count.incrementAndGet() == 100) progress.cancel();
+          return true;
+        }
+      }));
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+    assertTrue(String.valueOf(count.get()), count.get() < things.size());
+  }
+
+  public void testManyTinyTasks() {
+    final List<Integer> things = Arrays.asList(new Integer[1000000]);
+    final AtomicInteger count = new AtomicInteger();
+    final Processor<Integer> processor = new Processor<Integer>() {
+      @Override
+      public boolean process(Integer integer) {
+        count.incrementAndGet();
+        return true;
+      }
+    };
+    PlatformTestUtil.startPerformanceTest("Processing " + things.size() + " tiny tasks", 150, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        count.set(0);
+        assertTrue(JobUtil.invokeConcurrentlyForAll(things, false, null, processor));
+        assertEquals(things.size(), count.get());
+      }
+    }).cpuBound().usesAllCPUCores().assertTiming();
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.ex.util;
+
+import com.intellij.lang.Language;
+import com.intellij.lexer.Lexer;
+import com.intellij.lexer.LexerBase;
+import com.intellij.mock.MockDocument;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.highlighter.HighlighterClient;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.openapi.editor.impl.event.DocumentEventImpl;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterBase;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.tree.IElementType;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class LexerEditorHighlighterTest extends TestCase {
+  private static final IElementType WORD = new IElementType("WORD", Language.ANY);
+  private static final IElementType SPACE = new IElementType("SPACE", Language.ANY);
+  private static final IElementType COMMENT = new IElementType("COMMENT", Language.ANY);
+
+  public void testLargeTextIsLexedOnDemand() {
+    String text = generateText(new Random(42), 4 * 1024 * 1024);
+    LexerEditorHighlighter highlighter = createHighlighter();
+    highlighter.setText(text);
+    assertTrue(highlighter.getSegments().getLastValidOffset() < text.length() / 2);
+
+    int offset = text.length() * 3 / 4;
+    HighlighterIterator iterator = highlighter.createIterator(offset);
+    assertTrue(iterator.getStart() <= offset && offset < iterator.getEnd());
+    assertTrue(highlighter.getSegments().getLastValidOffset() < text.length());
+
+    assertEquals(lex(text), collect(highlighter.createIterator(0)));
+    assertEquals(text.length(), highlighter.getSegments().getLastValidOffset());
+  }
+
+  public void testChangesOfLazilyLexedText() {
+    Random random = new Random(42);
+    MockDocument document = new MockDocument(generateText(random, 2 * 1024 * 1024));
+    LexerEditorHighlighter highlighter = createHighlighter();
+    highlighter.setEditor(new TestClient(document));
+    highlighter.setText(document.getCharsSequence());
+
+    for (int i = 0; i < 200; i++) {
+      int lexedEnd = highlighter.getSegments().getLastValidOffset();
+      int offset = random.nextInt(i % 2 == 0 ? lexedEnd + 1 : document.getTextLength());
+      int end = Math.min(document.getTextLength(), offset + random.nextInt(10));
+      String[] replacements = {"", " ", "x", "/*", "*/", "\n", "/* a\nb"};
+      String replacement = replacements[random.nextInt(replacements.length)];
+      String old = document.getText().substring(offset, end);
+      document.replaceString(offset, end, replacement);
+      highlighter.documentChanged(new DocumentEventImpl(document, offset, old, replacement, 0, false));
+      if (i % 50 == 0) {
+        highlighter.createIterator(random.nextInt(document.getTextLength()));
+      }
+    }
+    assertEquals(lex(document.getText()), collect(highlighter.createIterator(0)));
+  }
+
+  private static LexerEditorHighlighter createHighlighter() {
+    return new LexerEditorHighlighter(new SyntaxHighlighterBase() {
+      @NotNull
+      @Override
+      public Lexer getHighlightingLexer() {
+        return new TestLexer();
+      }
+
+      @NotNull
+      @Override
+      public TextAttributesKey[] getTokenHighlights(IElementType tokenType) {
+        return EMPTY;
+      }
+    }, null);
+  }
+
+  private static List<String> lex(CharSequence text) {
+    List<String> tokens = new ArrayList<String>();
+    Lexer lexer = new TestLexer();
+    lexer.start(text);
+    while (lexer.getTokenType() != null) {
+      tokens.add(lexer.getTokenType() + ":" + lexer.getTokenStart() + ":" + lexer.getTokenEnd());
+      lexer.advance();
+    }
+    return tokens;
+  }
+
+  private static List<String> collect(HighlighterIterator iterator) {
+    List<String> tokens = new ArrayList<String>();
+    while (!iterator.atEnd()) {
+      tokens.add(iterator.getTokenType() + ":" + iterator.getStart() + ":" + iterator.getEnd());
+      iterator.advance();
+    }
+    return tokens;
+  }
+
+  private static String generateText(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    while (builder.length() < length) {
+      switch (random.nextInt(10)) {
+        case 0:
+          builder.append("/* comment\n * of several\n * lines */");
+          break;
+        case 1:
+          builder.append('\n');
+          break;
+        default:
+          builder.append("word").append(random.nextInt(100)).append(' ');
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Words, spaces and block comments; the comments are split at line ends and the lines after the first one start in a non-initial state.
+   */
+  private static class TestLexer extends LexerBase {
+    private CharSequence myBuffer;
+    private int myEnd;
+    private int myTokenStart;
+    private int myTokenEnd;
+    private int myState;
+    private int myTokenState;
+    private IElementType myTokenType;
+
+    @Override
+    public void start(CharSequence buffer, int startOffset, int endOffset, int initialState) {
+      myBuffer = buffer;
+      myEnd = endOffset;
+      myTokenEnd = startOffset;
+      myState = initialState;
+      advance();
+    }
+
+    @Override
+    public int getState() {
+      return myTokenState;
+    }
+
+    @Override
+    public IElementType getTokenType() {
+      return myTokenType;
+    }
+
+    @Override
+    public int getTokenStart() {
+      return myTokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+      return myTokenEnd;
+    }
+
+    @Override
+    public void advance() {
+      myTokenStart = myTokenEnd;
+      myTokenState = myState;
+      if (myTokenStart >= myEnd) {
+        myTokenType = null;
+        return;
+      }
+      int i = myTokenStart;
+      if (myState == 1 || startsWith(i, "/*")) {
+        myTokenType = COMMENT;
+        if (myState == 0) i += 2;
+        myState = 1;
+        while (i < myEnd) {
+          if (startsWith(i, "*/")) {
+            i += 2;
+            myState = 0;
+            break;
+          }
+          if (myBuffer.charAt(i++) == '\n') break;
+        }
+      }
+      else if (Character.isWhitespace(myBuffer.charAt(i))) {
+        myTokenType = SPACE;
+        while (i < myEnd && Character.isWhitespace(myBuffer.charAt(i))) i++;
+      }
+      else {
+        myTokenType = WORD;
+        while (i < myEnd && !Character.isWhitespace(myBuffer.charAt(i)) && !startsWith(i, "/*")) i++;
+      }
+      myTokenEnd = i;
+    }
+
+    private boolean startsWith(int offset, String prefix) {
+      return offset + prefix.length() <= myEnd && prefix.contentEquals(myBuffer.subSequence(offset, offset + prefix.length()));
+    }
+
+    @Override
+    public CharSequence getBufferSequence() {
+      return myBuffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+      return myEnd;
+    }
+  }
+
+  private static class TestClient implements HighlighterClient {
+    private final Document myDocument;
+
+    TestClient(Document document) {
+      myDocument = document;
+    }
+
+    @Override
+    public Project getProject() {
+      return null;
+    }
+
+    @Override
+    public void repaint(int start, int end) {
+    }
+
+    @Override
+    public Document getDocument() {
+      return myDocument;
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.text.CharArrayCharSequence;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ImmutableTextTest extends TestCase {
+  public void testRandomModifications() {
+    Random random = new Random(42);
+    StringBuilder expected = new StringBuilder(randomText(random, 10000));
+    ImmutableText text = ImmutableText.valueOf(new CharArrayCharSequence(expected.toString().toCharArray()));
+    for (int i = 0; i < 5000; i++) {
+      int start = random.nextInt(expected.length() + 1);
+      int end = Math.min(expected.length(), start + random.nextInt(100));
+      switch (random.nextInt(3)) {
+        case 0:
+          String inserted = randomText(random, random.nextInt(200));
+          expected.insert(start, inserted);
+          text = text.insert(start, inserted);
+          break;
+        case 1:
+          expected.delete(start, end);
+          text = text.delete(start, end);
+          break;
+        default:
+          String replacement = randomText(random, random.nextInt(10));
+          expected.replace(start, end, replacement);
+          text = text.replace(start, end, replacement);
+      }
+      assertEquals(expected.length(), text.length());
+      if (i % 100 == 0) {
+        assertEquals(expected.toString(), text.toString());
+        int from = random.nextInt(expected.length() + 1);
+        int to = from + random.nextInt(expected.length() - from + 1);
+        assertEquals(expected.substring(from, to), text.subSequence(from, to).toString());
+      }
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      assertEquals(expected.charAt(i), text.charAt(i));
+    }
+    char[] chars = new char[expected.length() + 2];
+    text.getChars(0, text.length(), chars, 1);
+    assertEquals(expected.toString(), new String(chars, 1, expected.length()));
+  }
+
+  public void testTypingKeepsTreeBalanced() {
+    ImmutableText text = ImmutableText.valueOf(randomText(new Random(42), 1000000));
+    int offset = 500000;
+    for (int i = 0; i < 100000; i++) {
+      text = text.insert(offset++, "x");
+      if (i % 10 == 9) {
+        text = text.insert(offset, "\n");
+        offset = (offset * 31) % text.length();
+      }
+    }
+    assertEquals(1110000, text.length());
+    // AVL tree height bound
+    assertTrue(String.valueOf(text.getDepth()), text.getDepth() <= 1.45 * Math.log(text.length()) / Math.log(2));
+  }
+
+  public void testOldVersionsAreNotChanged() {
+    ImmutableText original = ImmutableText.valueOf("0123456789");
+    ImmutableText modified = original.insert(5, "abc").delete(0, 2);
+    assertEquals("0123456789", original.toString());
+    assertEquals("234abc56789", modified.toString());
+    assertEquals("4abc5", modified.subSequence(2, 7).toString());
+  }
+
+  public void testInsertIntoLargeTextPerformance() {
+    final char[] chars = new char[64 * 1024 * 1024];
+    Arrays.fill(chars, 'a');
+    final ImmutableText original = ImmutableText.valueOf(new CharArrayCharSequence(chars));
+    final ImmutableText[] result = {null};
+    PlatformTestUtil.startPerformanceTest("10000 inserts into a 64M chars text", 200, new ThrowableRunnable() {
+      @Override
+      public void run() {
+        ImmutableText text = original;
+        for (int i = 0; i < 10000; i++) {
+          text = text.insert(i * 7, "b");
+        }
+        result[0] = text;
+      }
+    }).cpuBound().assertTiming();
+    assertEquals('b', result[0].charAt(0));
+    assertEquals('a', result[0].charAt(1));
+    assertEquals(chars.length + 10000, result[0].length());
+  }
+
+  private static String randomText(Random random, int length) {
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = random.nextInt(20) == 0 ? '\n' : (char)('a' + random.nextInt(26));
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.editor.impl;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.util.text.CharArrayUtil;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Editing a document large enough to keep its text in a rope and painting it after every keystroke mustn't copy
+ * the whole text.
+ */
+public class LargeDocumentPaintTest extends AbstractEditorProcessingOnDocumentModificationTest {
+  private static final int LINES = 110 * 1000;
+  private static final int LINE_LENGTH = 80;
+  private static final int EDITS = 10;
+
+  public void testEditingAndPaintingDontCopyText() throws Exception {
+    char[] line = new char[LINE_LENGTH];
+    Arrays.fill(line, 'a');
+    line[LINE_LENGTH - 1] = '\n';
+    StringBuilder text = new StringBuilder(LINES * LINE_LENGTH);
+    for (int i = 0; i < LINES; i++) {
+      text.append(line);
+    }
+    init(text.toString());
+    Document document = myEditor.getDocument();
+    assertTrue(CharArrayUtil.fromSequenceWithoutCopying(document.getCharsSequence()) == null);
+
+    int offset = document.getTextLength() / 2;
+    myEditor.getCaretModel().moveToOffset(offset);
+    BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+    paint(image);
+
+    long allocated = -allocatedBytes();
+    for (int i = 0; i < EDITS; i++) {
+      document.insertString(offset++, "x");
+      paint(image);
+    }
+    allocated += allocatedBytes();
+
+    // a single copy of the text takes two bytes per char
+    long textSize = 2L * document.getTextLength();
+    assertTrue("allocated " + allocated + " bytes for " + EDITS + " edits, the text takes " + textSize, allocated < textSize);
+  }
+
+  private void paint(BufferedImage image) {
+    Graphics g = image.getGraphics();
+    try {
+      Rectangle visibleArea = myEditor.getScrollingModel().getVisibleArea();
+      g.setClip(0, visibleArea.y, image.getWidth(), image.getHeight());
+      ((EditorImpl)myEditor).paint(g);
+    }
+    finally {
+      g.dispose();
+    }
+  }
+
+  private static long allocatedBytes() {
+    com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a record tree with one and with all available threads. The 50k-file tree is a quick check, the 500k-file one is
+ * about the size of a large project with its libraries. The records are freed after each test.
+ */
+public class FSRecordsPerformanceTest extends LightPlatformTestCase {
+  private int myRoot;
+
+  @SuppressWarnings("JUnitTestCaseWithNonTrivialConstructors")
+  public FSRecordsPerformanceTest() {
+    PlatformTestCase.initPlatformLangPrefix();
+  }
+
+  // returns the number of records in the tree below the root
+  private int createTree(int topDirCount, int subDirCount, int fileCount) {
+    myRoot = FSRecords.createRecord();
+    FSRecords.setName(myRoot, "fsRecordsPerformanceRoot");
+    int[] topDirs = new int[topDirCount];
+    for (int i = 0; i < topDirCount; i++) {
+      topDirs[i] = createChild(myRoot, "dir" + i);
+      int[] subDirs = new int[subDirCount];
+      for (int j = 0; j < subDirCount; j++) {
+        subDirs[j] = createChild(topDirs[i], "sub" + j);
+        int[] files = new int[fileCount];
+        for (int k = 0; k < fileCount; k++) {
+          files[k] = createChild(subDirs[j], "file" + k + ".txt");
+          FSRecords.setTimestamp(files[k], k);
+          FSRecords.setLength(files[k], k);
+        }
+        FSRecords.updateList(subDirs[j], files);
+      }
+      FSRecords.updateList(topDirs[i], subDirs);
+    }
+    FSRecords.updateList(myRoot, topDirs);
+    return topDirCount + topDirCount * subDirCount + topDirCount * subDirCount * fileCount;
+  }
+
+  private static int createChild(int parent, String name) {
+    int id = FSRecords.createRecord();
+    FSRecords.setParent(id, parent);
+    FSRecords.setName(id, name);
+    return id;
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myRoot != 0) {
+        FSRecords.deleteRecordRecursively(myRoot);
+      }
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testSingleThreadedWalk() throws Exception {
+    doTestWalk(createTree(20, 50, 50), 1, 600);
+  }
+
+  public void testConcurrentWalk() throws Exception {
+    doTestWalk(createTree(20, 50, 50), Runtime.getRuntime().availableProcessors(), 600);
+  }
+
+  public void testSingleThreadedWalkOf500kFiles() throws Exception {
+    doTestWalk(createTree(50, 100, 100), 1, 6000);
+  }
+
+  public void testConcurrentWalkOf500kFiles() throws Exception {
+    doTestWalk(createTree(50, 100, 100), Runtime.getRuntime().availableProcessors(), 6000);
+  }
+
+  private void doTestWalk(final int total, final int threads, int expectedMs) {
+    String message = (threads == 1 ? "Single threaded" : "Concurrent") + " walk of " + total + " VFS records";
+    PlatformTestUtil.TestInfo test = PlatformTestUtil.startPerformanceTest(message, expectedMs, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        assertEquals(total * threads, walkConcurrently(threads));
+      }
+    }).cpuBound();
+    if (threads > 1) {
+      test.usesAllCPUCores();
+    }
+    test.assertTiming();
+  }
+
+  // every thread walks the whole tree, so that the amount of work per thread doesn't depend on the number of threads
+  private int walkConcurrently(int threadCount) throws Exception {
+    final AtomicInteger visited = new AtomicInteger();
+    ConcurrencyTestUtil.runConcurrently(threadCount, new ConcurrencyTestUtil.ThreadBody() {
+      @Override
+      public void run(int thread) {
+        visited.addAndGet(walk(myRoot));
+      }
+    });
+    return visited.get();
+  }
+
+  private static int walk(int parent) {
+    int count = 0;
+    for (int child : FSRecords.list(parent)) {
+      assertEquals(parent, FSRecords.getParent(child));
+      assertNotNull(FSRecords.getName(child));
+      FSRecords.getFlags(child);
+      FSRecords.getTimestamp(child);
+      FSRecords.getLength(child);
+      count += 1 + walk(child);
+    }
+    return count;
+  }
+}
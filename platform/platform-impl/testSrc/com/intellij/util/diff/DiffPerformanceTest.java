@@ -0,0 +1,59 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class DiffPerformanceTest extends TestCase {
+  private static final int LINES = 1000000;
+
+  public void testMillionLinesWithFewChanges() throws Exception {
+    doTest(10, 2000);
+  }
+
+  // goes past the step limit of IntLCS to the linear-space MyersLCS
+  public void testMillionLinesWithManyChanges() throws Exception {
+    doTest(100000, 5000);
+  }
+
+  private static void doTest(final int changes, int expectedMs) throws Exception {
+    Random random = new Random(changes);
+    final String[] before = new String[LINES];
+    for (int i = 0; i < LINES; i++) {
+      before[i] = "line " + random.nextInt(LINES / 2);
+    }
+    final String[] after = before.clone();
+    for (int i = 0; i < changes; i++) {
+      after[random.nextInt(LINES)] = "changed " + random.nextInt(LINES / 2);
+    }
+    PlatformTestUtil.startPerformanceTest("Diff of " + LINES + " lines with " + changes + " changes", expectedMs, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        Diff.Change change = Diff.buildChanges(before, after);
+        int changed = 0;
+        for (; change != null; change = change.link) {
+          changed += change.deleted;
+        }
+        assertTrue(changed > 0);
+        assertTrue(changed <= changes * 2);
+      }
+    }).cpuBound().assertTiming();
+  }
+}
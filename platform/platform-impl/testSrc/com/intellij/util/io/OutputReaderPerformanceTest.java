@@ -0,0 +1,87 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InputStreamReader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class OutputReaderPerformanceTest extends TestCase {
+  private static final int OUTPUT_SIZE = 32 * 1024 * 1024;
+  private static final String LINE = "0123456789012345678901234567890123456789";
+
+  private ExecutorService myExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myExecutor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testBlockingReadThroughput() throws Exception {
+    doTest(true, 1000);
+  }
+
+  public void testPollingReadThroughput() throws Exception {
+    doTest(false, 1500);
+  }
+
+  private void doTest(final boolean blocking, int expectedMs) throws Exception {
+    if (!SystemInfo.isUnix) return;
+    final String mode = blocking ? "blocking" : "polling";
+    PlatformTestUtil.startPerformanceTest("Reading " + OUTPUT_SIZE / 1024 / 1024 + " MB of process output, " + mode, expectedMs, new ThrowableRunnable() {
+      @Override
+      public void run() throws Exception {
+        Process process = new ProcessBuilder("sh", "-c", "yes " + LINE + " | head -c " + OUTPUT_SIZE).start();
+        final long[] length = {0};
+        final int[] deliveries = {0};
+        OutputReader reader = new OutputReader(new InputStreamReader(process.getInputStream(), "US-ASCII"), blocking) {
+          @Override
+          protected void onTextAvailable(@NotNull String text) {
+            length[0] += text.length();
+            deliveries[0]++;
+          }
+
+          @Override
+          protected Future<?> executeOnPooledThread(Runnable runnable) {
+            return myExecutor.submit(runnable);
+          }
+        };
+        process.waitFor();
+        reader.stop();
+        reader.waitFor();
+        assertEquals(OUTPUT_SIZE, length[0]);
+        if (blocking) {
+          // the lines of a chunk go to the listeners at once, the polling reader delivers them one by one
+          assertTrue(String.valueOf(deliveries[0]), deliveries[0] < OUTPUT_SIZE / (LINE.length() + 1) / 10);
+        }
+      }
+    }).assertTiming();
+  }
+}
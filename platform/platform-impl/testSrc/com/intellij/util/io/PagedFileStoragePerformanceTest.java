@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Random access to a storage from 1, 4 and 16 threads, with the per-file page segments of a concurrent {@link PagedFileStorage.StorageLock}
+ * and with the lock-wide buffers cache, which is accessed under the lock. The latter is the baseline the former is compared with,
+ * its expected time is twice as long.
+ */
+public class PagedFileStoragePerformanceTest extends TestCase {
+  private static final int SIZE = 64 * 1024 * 1024;
+  private static final int OPERATIONS = 4000000;
+
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = FileUtil.createTempFile("storage", ".tmp");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myFile);
+    super.tearDown();
+  }
+
+  public void testConcurrentStorage1Thread() throws Exception {
+    doTest(true, 1, 1000);
+  }
+
+  public void testConcurrentStorage4Threads() throws Exception {
+    doTest(true, 4, 1000);
+  }
+
+  public void testConcurrentStorage16Threads() throws Exception {
+    doTest(true, 16, 1000);
+  }
+
+  public void testBuffersCache1Thread() throws Exception {
+    doTest(false, 1, 2000);
+  }
+
+  public void testBuffersCache4Threads() throws Exception {
+    doTest(false, 4, 2000);
+  }
+
+  public void testBuffersCache16Threads() throws Exception {
+    doTest(false, 16, 2000);
+  }
+
+  private void doTest(boolean concurrent, final int threads, int expectedMs) throws Exception {
+    final PagedFileStorage.StorageLock lock = new PagedFileStorage.StorageLock(!concurrent, concurrent);
+    final PagedFileStorage storage = new PagedFileStorage(myFile, lock, 1024 * 1024, true);
+    try {
+      synchronized (lock) {
+        storage.resize((long)SIZE);
+      }
+      String message = "Random access to a " + (concurrent ? "concurrent storage" : "storage under the lock") + " from " + threads + (threads == 1 ? " thread" : " threads");
+      PlatformTestUtil.TestInfo test = PlatformTestUtil.startPerformanceTest(message, expectedMs, new ThrowableRunnable() {
+        @Override
+        public void run() throws Exception {
+          ConcurrencyTestUtil.runConcurrently(threads, new ConcurrencyTestUtil.ThreadBody() {
+            @Override
+            public void run(int thread) {
+              Random random = new Random(thread);
+              for (int i = 0; i < OPERATIONS / threads; i++) {
+                int addr = random.nextInt(SIZE / 4) * 4;
+                if (i % 4 == 0) {
+                  if (lock.isConcurrent()) {
+                    storage.putInt(addr, addr);
+                  }
+                  else {
+                    synchronized (lock) {
+                      storage.putInt(addr, addr);
+                    }
+                  }
+                }
+                else {
+                  int value;
+                  if (lock.isConcurrent()) {
+                    value = storage.getInt(addr);
+                  }
+                  else {
+                    synchronized (lock) {
+                      value = storage.getInt(addr);
+                    }
+                  }
+                  assertTrue(value == 0 || value == addr);
+                }
+              }
+            }
+          });
+        }
+      }).cpuBound();
+      if (threads > 1) {
+        test.usesAllCPUCores();
+      }
+      test.assertTiming();
+    }
+    finally {
+      synchronized (lock) {
+        storage.close();
+      }
+    }
+  }
+}
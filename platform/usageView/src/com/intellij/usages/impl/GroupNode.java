@@ -217,8 +217,7 @@ public class GroupNode extends Node implements Navigatable, Comparable<GroupNode
     GroupNode groupNode = this;
     while (true) {
       groupNode.myRecursiveUsageCount++;
-      final GroupNode node = groupNode;
-      myTreeModel.nodeChanged(node);
+      getBuilder().nodeChangedLater(groupNode);
       TreeNode parent = groupNode.getParent();
       if (!(parent instanceof GroupNode)) return;
       groupNode = (GroupNode)parent;
@@ -31,8 +31,8 @@ import org.jetbrains.annotations.Nullable;
 class UsageNodeTreeBuilder {
   private final GroupNode myRoot;
   private final UsageTarget[] myTargets;
-  private UsageGroupingRule[] myGroupingRules;
-  private UsageFilteringRule[] myFilteringRules;
+  private volatile UsageGroupingRule[] myGroupingRules;
+  private volatile UsageFilteringRule[] myFilteringRules;
 
   UsageNodeTreeBuilder(@NotNull UsageTarget[] targets,
                        @NotNull UsageGroupingRule[] groupingRules,
@@ -53,7 +53,11 @@ class UsageNodeTreeBuilder {
   }
 
   public boolean isVisible(@NotNull Usage usage) {
-    for (final UsageFilteringRule rule : myFilteringRules) {
+    return isVisible(usage, myFilteringRules);
+  }
+
+  private boolean isVisible(@NotNull Usage usage, @NotNull UsageFilteringRule[] filteringRules) {
+    for (final UsageFilteringRule rule : filteringRules) {
       final boolean visible;
       if (rule instanceof UsageFilteringRuleEx) {
         visible = ((UsageFilteringRuleEx) rule).isVisible(usage, myTargets);
@@ -68,25 +72,72 @@ class UsageNodeTreeBuilder {
     return true;
   }
 
-  @Nullable
-  UsageNode appendUsage(@NotNull Usage usage) {
-    if (!isVisible(usage)) return null;
+  /**
+   * Applies the rules to the usage without touching the tree, so it can be done in the search threads under read action.
+   */
+  @NotNull
+  GroupedUsage group(@NotNull Usage usage) {
+    final UsageGroupingRule[] groupingRules = myGroupingRules;
+    final UsageFilteringRule[] filteringRules = myFilteringRules;
+    if (!isVisible(usage, filteringRules)) return new GroupedUsage(usage, null, groupingRules, filteringRules);
 
-    GroupNode lastGroupNode = myRoot;
-    for (int i = 0; i < myGroupingRules.length; i++) {
-      final UsageGroupingRule rule = myGroupingRules[i];
-      final UsageGroup group;
+    final UsageGroup[] groups = new UsageGroup[groupingRules.length];
+    for (int i = 0; i < groupingRules.length; i++) {
+      final UsageGroupingRule rule = groupingRules[i];
       if (rule instanceof UsageGroupingRuleEx) {
-        group = ((UsageGroupingRuleEx) rule).groupUsage(usage, myTargets);
+        groups[i] = ((UsageGroupingRuleEx) rule).groupUsage(usage, myTargets);
       }
       else {
-        group = rule.groupUsage(usage);
+        groups[i] = rule.groupUsage(usage);
       }
+    }
+    return new GroupedUsage(usage, groups, groupingRules, filteringRules);
+  }
+
+  @Nullable
+  UsageNode appendUsage(@NotNull Usage usage) {
+    return appendUsage(group(usage));
+  }
+
+  @Nullable
+  UsageNode appendUsage(@NotNull GroupedUsage grouped) {
+    if (grouped.myGroupingRules != myGroupingRules || grouped.myFilteringRules != myFilteringRules) {
+      // the rules have changed since the usage was grouped
+      grouped = group(grouped.myUsage);
+    }
+    if (grouped.myGroups == null) return null;
+
+    GroupNode lastGroupNode = myRoot;
+    for (int i = 0; i < grouped.myGroups.length; i++) {
+      final UsageGroup group = grouped.myGroups[i];
       if (group != null) {
         lastGroupNode = lastGroupNode.addGroup(group, i);
       }
     }
 
-    return lastGroupNode.addUsage(usage);
+    return lastGroupNode.addUsage(grouped.myUsage);
+  }
+
+  static class GroupedUsage {
+    private final Usage myUsage;
+    // null if the usage is filtered out
+    private final UsageGroup[] myGroups;
+    private final UsageGroupingRule[] myGroupingRules;
+    private final UsageFilteringRule[] myFilteringRules;
+
+    private GroupedUsage(@NotNull Usage usage,
+                         @Nullable UsageGroup[] groups,
+                         @NotNull UsageGroupingRule[] groupingRules,
+                         @NotNull UsageFilteringRule[] filteringRules) {
+      myUsage = usage;
+      myGroups = groups;
+      myGroupingRules = groupingRules;
+      myFilteringRules = filteringRules;
+    }
+
+    @NotNull
+    Usage getUsage() {
+      return myUsage;
+    }
   }
 }
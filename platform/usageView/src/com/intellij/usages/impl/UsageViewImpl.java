@@ -31,6 +31,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.ui.SimpleToolWindowPanel;
 import com.intellij.openapi.ui.Splitter;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Factory;
@@ -239,10 +240,10 @@ public class UsageViewImpl implements UsageView, UsageModelTracker.UsageModelTra
         }
       });
     }
-    myTransferToEDTQueue = new TransferToEDTQueue<Usage>("Insert usages", new Processor<Usage>() {
+    myTransferToEDTQueue = new TransferToEDTQueue<UsageNodeTreeBuilder.GroupedUsage>("Insert usages", new Processor<UsageNodeTreeBuilder.GroupedUsage>() {
       @Override
-      public boolean process(Usage usage) {
-        appendUsage(usage);
+      public boolean process(UsageNodeTreeBuilder.GroupedUsage grouped) {
+        doAppendUsage(grouped);
         return true;
       }
     }, new Condition<Object>() {
@@ -704,9 +705,19 @@ public class UsageViewImpl implements UsageView, UsageModelTracker.UsageModelTra
     }
   }
 
-  private final TransferToEDTQueue<Usage> myTransferToEDTQueue;
-  public void appendUsageLater(@NotNull Usage usage) {
-    myTransferToEDTQueue.offer(usage);
+  private final TransferToEDTQueue<UsageNodeTreeBuilder.GroupedUsage> myTransferToEDTQueue;
+  public void appendUsageLater(@NotNull final Usage usage) {
+    // the grouping rules are applied here, in the search thread, so that only the tree nodes are inserted in the EDT
+    final UsageNodeTreeBuilder.GroupedUsage grouped =
+      ApplicationManager.getApplication().runReadAction(new Computable<UsageNodeTreeBuilder.GroupedUsage>() {
+        @Override
+        public UsageNodeTreeBuilder.GroupedUsage compute() {
+          return usage.isValid() ? myBuilder.group(usage) : null;
+        }
+      });
+    if (grouped != null) {
+      myTransferToEDTQueue.offer(grouped);
+    }
   }
   public void drainQueuedUsageNodes() {
     assert !ApplicationManager.getApplication().isDispatchThread() : Thread.currentThread();
@@ -726,13 +737,19 @@ public class UsageViewImpl implements UsageView, UsageModelTracker.UsageModelTra
   }
 
   public UsageNode doAppendUsage(@NotNull Usage usage) {
+    ApplicationManager.getApplication().assertReadAccessAllowed();
+    return usage.isValid() ? doAppendUsage(myBuilder.group(usage)) : null;
+  }
+
+  private UsageNode doAppendUsage(@NotNull UsageNodeTreeBuilder.GroupedUsage grouped) {
     // invoke in ReadAction to be be sure that usages are not invalidated while the tree is being built
     ApplicationManager.getApplication().assertReadAccessAllowed();
+    final Usage usage = grouped.getUsage();
     if (!usage.isValid()) {
       // because the view is built incrementally, the usage may be already invalid, so need to filter such cases
       return null;
     }
-    UsageNode node = myBuilder.appendUsage(usage);
+    UsageNode node = myBuilder.appendUsage(grouped);
     myUsageNodes.put(usage, node == null ? NULL_NODE : node);
     if (!myIsFirstVisibleUsageFound && node != null) { //first visible usage found;
       myIsFirstVisibleUsageFound = true;
@@ -17,11 +17,16 @@ package com.intellij.usages.impl;
 
 import com.intellij.usages.UsageTarget;
 import com.intellij.usages.UsageViewPresentation;
+import com.intellij.openapi.application.ApplicationManager;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
 
+import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 public class UsageViewTreeModelBuilder extends DefaultTreeModel {
   private final RootGroupNode myRootNode;
@@ -31,6 +36,18 @@ public class UsageViewTreeModelBuilder extends DefaultTreeModel {
   private UsageTargetNode[] myTargetNodes;
   private final String myTargetsNodeText;
   private final boolean myDetachedMode;
+  // the nodes whose usage count has changed, repainted once per batch of inserted usages instead of once per usage
+  private final Set<TreeNode> myChangedNodes = new LinkedHashSet<TreeNode>();
+  private final Runnable myFlushChangedNodes = new Runnable() {
+    @Override
+    public void run() {
+      final TreeNode[] nodes = myChangedNodes.toArray(new TreeNode[myChangedNodes.size()]);
+      myChangedNodes.clear();
+      for (TreeNode node : nodes) {
+        nodeChanged(node);
+      }
+    }
+  };
 
   public UsageViewTreeModelBuilder(UsageViewPresentation presentation, UsageTarget[] targets) {
     //noinspection HardCodedStringLiteral
@@ -114,6 +131,14 @@ public class UsageViewTreeModelBuilder extends DefaultTreeModel {
     }
   }
 
+  void nodeChangedLater(@NotNull TreeNode node) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    if (myChangedNodes.isEmpty()) {
+      SwingUtilities.invokeLater(myFlushChangedNodes);
+    }
+    myChangedNodes.add(node);
+  }
+
   public boolean isDetachedMode() {
     return myDetachedMode;
   }
@@ -27,6 +27,12 @@ import java.util.concurrent.*;
 
 public class BaseOSProcessHandler extends ProcessHandler {
   private static final Logger LOG = Logger.getInstance("#com.intellij.execution.process.OSProcessHandlerBase");
+  private static final boolean BLOCKING_READ = !"false".equals(System.getProperty("idea.process.output.blocking.read"));
+  /**
+   * How long the termination waits for the end of the output after the process has exited: the streams may be kept open by its children.
+   * The output read after that is dropped.
+   */
+  private static final long OUTPUT_WAIT_TIMEOUT_MS = 1000;
   @NotNull
   protected final Process myProcess;
   @Nullable
@@ -63,7 +69,8 @@ public class BaseOSProcessHandler extends ProcessHandler {
     addProcessListener(new ProcessAdapter() {
       public void startNotified(final ProcessEvent event) {
         try {
-          final OutputReader stdoutReader = new OutputReader(createProcessOutReader()) {
+          final boolean blocking = useBlockingRead();
+          final OutputReader stdoutReader = new OutputReader(createProcessOutReader(), blocking) {
             protected void onTextAvailable(@NotNull String text) {
               notifyTextAvailable(text, ProcessOutputTypes.STDOUT);
             }
@@ -74,7 +81,7 @@ public class BaseOSProcessHandler extends ProcessHandler {
             }
           };
 
-          final OutputReader stderrReader = new OutputReader(createProcessErrReader()) {
+          final OutputReader stderrReader = new OutputReader(createProcessErrReader(), blocking) {
             protected void onTextAvailable(@NotNull String text) {
               notifyTextAvailable(text, ProcessOutputTypes.STDERR);
             }
@@ -94,8 +101,20 @@ public class BaseOSProcessHandler extends ProcessHandler {
                 stdoutReader.stop();
 
                 try {
-                  stderrReader.waitFor();
-                  stdoutReader.waitFor();
+                  if (blocking) {
+                    boolean finished = stderrReader.waitFor(OUTPUT_WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    finished &= stdoutReader.waitFor(OUTPUT_WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (!finished) {
+                      // the output of the process' children must not come after its termination
+                      LOG.debug("Output streams are still open after the process has terminated: " + myCommandLine);
+                      stderrReader.discardOutput();
+                      stdoutReader.discardOutput();
+                    }
+                  }
+                  else {
+                    stderrReader.waitFor();
+                    stdoutReader.waitFor();
+                  }
                 }
                 catch (InterruptedException ignore) {
                 }
@@ -114,6 +133,16 @@ public class BaseOSProcessHandler extends ProcessHandler {
 
     super.startNotify();
   }
+
+  /**
+   * @return true if the output is read with blocking calls, each stream keeping a pooled thread waiting for the output,
+   * false if the streams are polled. A blocking reader ends when the stream is closed by everyone who writes to it,
+   * so {@link #doDestroyProcess()} should destroy the children of the process too.
+   */
+  protected boolean useBlockingRead() {
+    return BLOCKING_READ;
+  }
+
   protected void onOSProcessTerminated(final int exitCode) {
     notifyProcessTerminated(exitCode);
   }
@@ -51,12 +51,34 @@ public class Diff {
     Enumerator<T> enumerator = new Enumerator<T>(objects1.length + objects2.length, TObjectHashingStrategy.CANONICAL);
     int[] ints1 = enumerator.enumerate(objects1, startShift, endCut);
     int[] ints2 = enumerator.enumerate(objects2, startShift, endCut);
+    return buildChanges(ints1, ints2, startShift);
+  }
+
+  /**
+   * Same as {@link #buildChanges(Object[], Object[])} for the sequences already enumerated, e.g. lines read from a stream
+   * and put into an {@link Enumerator}: equal elements should have equal ids.
+   */
+  @Nullable
+  public static Change buildChanges(@NotNull int[] ints1, @NotNull int[] ints2) {
+    return buildChanges(ints1, ints2, 0);
+  }
+
+  @Nullable
+  private static Change buildChanges(int[] ints1, int[] ints2, int startShift) {
     Reindexer reindexer = new Reindexer();
     int[][] discarded = reindexer.discardUnique(ints1, ints2);
-    IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
-    intLCS.execute();
     ChangeBuilder builder = new ChangeBuilder(startShift);
-    reindexer.reindex(intLCS.getPaths(), builder);
+    try {
+      IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
+      intLCS.execute();
+      reindexer.reindex(intLCS.getPaths(), builder);
+    }
+    catch (FilesTooBigForDiffException e) {
+      // too many steps to remember, the linear space algorithm is slower but has no limit
+      MyersLCS lcs = new MyersLCS(discarded[0], discarded[1]);
+      lcs.execute();
+      reindexer.reindex(lcs.getChanges1(), lcs.getChanges2(), builder);
+    }
     return builder.getFirstChange();
   }
 
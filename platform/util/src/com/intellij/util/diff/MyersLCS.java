@@ -0,0 +1,245 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import java.util.Arrays;
+
+/**
+ * Linear space variation of the Myers' O(ND) algorithm: the middle snake of the edit graph is searched from both ends, then
+ * both halves are processed recursively. Unlike {@link IntLCS} it doesn't remember the paths, so there is no limit on the input size.
+ * <p/>
+ * When the edit distance is large the search for the middle snake is stopped after a number of steps and the furthest reaching
+ * point is taken instead (the heuristic used by xdiff), so the result may be not minimal but the time stays about O((N + M) sqrt(N + M)).
+ */
+class MyersLCS {
+  private static final int MIN_COST_LIMIT = 256;
+
+  private final int[] myFirst;
+  private final int[] mySecond;
+  private final boolean[] myChanges1;
+  private final boolean[] myChanges2;
+  private final int myCostLimit;
+
+  // furthest reaching x on each diagonal, shifted by myOffset
+  private final int[] myForward;
+  private final int[] myBackward;
+  private final int myOffset;
+
+  public MyersLCS(int[] first, int[] second) {
+    this(first, second, true);
+  }
+
+  /**
+   * @param heuristic whether the search for the middle snake may be cut short; without it the result is minimal
+   */
+  public MyersLCS(int[] first, int[] second, boolean heuristic) {
+    myFirst = first;
+    mySecond = second;
+    myChanges1 = new boolean[first.length];
+    myChanges2 = new boolean[second.length];
+    int diagonals = first.length + second.length + 3;
+    myCostLimit = heuristic ? Math.max(MIN_COST_LIMIT, (int)Math.sqrt(diagonals)) : Integer.MAX_VALUE;
+    myOffset = second.length + 1;
+    myForward = new int[diagonals];
+    myBackward = new int[diagonals];
+  }
+
+  public void execute() {
+    Arrays.fill(myChanges1, false);
+    Arrays.fill(myChanges2, false);
+    lcs(0, myFirst.length, 0, mySecond.length);
+  }
+
+  /**
+   * @return for each element of the first array, whether it is not in the common subsequence
+   */
+  public boolean[] getChanges1() {
+    return myChanges1;
+  }
+
+  public boolean[] getChanges2() {
+    return myChanges2;
+  }
+
+  private void lcs(int start1, int end1, int start2, int end2) {
+    while (true) {
+      while (start1 < end1 && start2 < end2 && myFirst[start1] == mySecond[start2]) {
+        start1++;
+        start2++;
+      }
+      while (start1 < end1 && start2 < end2 && myFirst[end1 - 1] == mySecond[end2 - 1]) {
+        end1--;
+        end2--;
+      }
+      if (start1 == end1 || start2 == end2) {
+        Arrays.fill(myChanges1, start1, end1, true);
+        Arrays.fill(myChanges2, start2, end2, true);
+        return;
+      }
+
+      long split = findSplit(start1, end1, start2, end2);
+      int x = (int)(split >> 32);
+      int y = (int)split;
+      if (x == start1 && y == start2 || x == end1 && y == end2) {
+        // the cut short search made no progress
+        Arrays.fill(myChanges1, start1, end1, true);
+        Arrays.fill(myChanges2, start2, end2, true);
+        return;
+      }
+      // recurse into the smaller half to keep the depth logarithmic
+      if (x - start1 + y - start2 < end1 - x + end2 - y) {
+        lcs(start1, x, start2, y);
+        start1 = x;
+        start2 = y;
+      }
+      else {
+        lcs(x, end1, y, end2);
+        end1 = x;
+        end2 = y;
+      }
+    }
+  }
+
+  /**
+   * @return the point the edit path goes through, x in the high and y in the low half
+   */
+  private long findSplit(int start1, int end1, int start2, int end2) {
+    // diagonal k holds the points with x - y == k - (start1 - start2), forward paths start on kMin, backward ones on kMax
+    int kMin = start1 - end2;
+    int kMax = end1 - start2;
+    int kForward = start1 - start2;
+    int kBackward = end1 - end2;
+    boolean odd = ((kBackward - kForward) & 1) != 0;
+
+    myForward[kForward + myOffset] = start1;
+    myBackward[kBackward + myOffset] = end1;
+    int forwardMin = kForward;
+    int forwardMax = kForward;
+    int backwardMin = kBackward;
+    int backwardMax = kBackward;
+
+    for (int d = 1; ; d++) {
+      // forward step: the diagonals one further from the start one
+      if (forwardMin > kMin) {
+        myForward[--forwardMin - 1 + myOffset] = -1;
+      }
+      else {
+        forwardMin++;
+      }
+      if (forwardMax < kMax) {
+        myForward[++forwardMax + 1 + myOffset] = -1;
+      }
+      else {
+        forwardMax--;
+      }
+      for (int k = forwardMax; k >= forwardMin; k -= 2) {
+        int x;
+        if (myForward[k - 1 + myOffset] >= myForward[k + 1 + myOffset]) {
+          x = myForward[k - 1 + myOffset] + 1;
+        }
+        else {
+          x = myForward[k + 1 + myOffset];
+        }
+        int y = x - k;
+        while (x < end1 && y < end2 && myFirst[x] == mySecond[y]) {
+          x++;
+          y++;
+        }
+        myForward[k + myOffset] = x;
+        if (odd && backwardMin <= k && k <= backwardMax && myBackward[k + myOffset] <= x) {
+          return point(x, y);
+        }
+      }
+
+      // backward step
+      if (backwardMin > kMin) {
+        myBackward[--backwardMin - 1 + myOffset] = Integer.MAX_VALUE;
+      }
+      else {
+        backwardMin++;
+      }
+      if (backwardMax < kMax) {
+        myBackward[++backwardMax + 1 + myOffset] = Integer.MAX_VALUE;
+      }
+      else {
+        backwardMax--;
+      }
+      for (int k = backwardMax; k >= backwardMin; k -= 2) {
+        int x;
+        if (myBackward[k - 1 + myOffset] < myBackward[k + 1 + myOffset]) {
+          x = myBackward[k - 1 + myOffset];
+        }
+        else {
+          x = myBackward[k + 1 + myOffset] - 1;
+        }
+        int y = x - k;
+        while (x > start1 && y > start2 && myFirst[x - 1] == mySecond[y - 1]) {
+          x--;
+          y--;
+        }
+        myBackward[k + myOffset] = x;
+        if (!odd && forwardMin <= k && k <= forwardMax && x <= myForward[k + myOffset]) {
+          return point(x, y);
+        }
+      }
+
+      if (d >= myCostLimit) {
+        return furthestPoint(start1, end1, start2, end2, forwardMin, forwardMax, backwardMin, backwardMax);
+      }
+    }
+  }
+
+  private long furthestPoint(int start1, int end1, int start2, int end2,
+                             int forwardMin, int forwardMax, int backwardMin, int backwardMax) {
+    int bestForward = -1;
+    long forwardPoint = 0;
+    for (int k = forwardMax; k >= forwardMin; k -= 2) {
+      int x = Math.min(myForward[k + myOffset], end1);
+      int y = x - k;
+      if (y > end2) {
+        x = end2 + k;
+        y = end2;
+      }
+      if (x < start1 || y < start2) continue;
+      if (x + y > bestForward) {
+        bestForward = x + y;
+        forwardPoint = point(x, y);
+      }
+    }
+    int bestBackward = Integer.MAX_VALUE;
+    long backwardPoint = 0;
+    for (int k = backwardMax; k >= backwardMin; k -= 2) {
+      int x = Math.max(myBackward[k + myOffset], start1);
+      int y = x - k;
+      if (y < start2) {
+        x = start2 + k;
+        y = start2;
+      }
+      if (x > end1 || y > end2) continue;
+      if (x + y < bestBackward) {
+        bestBackward = x + y;
+        backwardPoint = point(x, y);
+      }
+    }
+    if (bestBackward == Integer.MAX_VALUE) return forwardPoint;
+    if (bestForward < 0) return backwardPoint;
+    return bestForward - (start1 + start2) > (end1 + end2) - bestBackward ? forwardPoint : backwardPoint;
+  }
+
+  private static long point(int x, int y) {
+    return ((long)x << 32) | (y & 0xFFFFFFFFL);
+  }
+}
@@ -100,6 +100,28 @@ class Reindexer {
         }
       }
     });
+    buildChanges(changes1, changes2, builder);
+  }
+
+  /**
+   * @param discardedChanges1 changed elements of the first array returned by {@link #discardUnique(int[], int[])}
+   */
+  public void reindex(boolean[] discardedChanges1, boolean[] discardedChanges2, LCSBuilder builder) {
+    boolean[] changes1 = restoreChanges(discardedChanges1, 0);
+    boolean[] changes2 = restoreChanges(discardedChanges2, 1);
+    buildChanges(changes1, changes2, builder);
+  }
+
+  private boolean[] restoreChanges(boolean[] discardedChanges, int array) {
+    boolean[] changes = new boolean[myOriginalLengths[array]];
+    Arrays.fill(changes, true);
+    for (int i = 0; i < discardedChanges.length; i++) {
+      if (!discardedChanges[i]) changes[myOldIndecies[array][i]] = false;
+    }
+    return changes;
+  }
+
+  private static void buildChanges(boolean[] changes1, boolean[] changes2, LCSBuilder builder) {
     int x = 0;
     int y = 0;
     while (x < changes1.length && y < changes2.length) {
@@ -23,25 +23,49 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public abstract class OutputReader {
   private static final Logger LOG = Logger.getInstance("#com.intellij.util.io.OutputReader");
 
   private final Reader myReader;
+  private final boolean myBlocking;
   private volatile boolean isStopped = false;
+  private volatile boolean myWaitingForInput = false;
+  private boolean myOutputDiscarded = false;
 
   private final Semaphore myReadFullySemaphore = new Semaphore();
   private final Future<?> myFinishedFuture;
 
 
   private final char[] myBuffer = new char[8192];
+  private final StringBuilder myToken = new StringBuilder();
   private boolean skipLF = false;
+  private int myLinesEnd = 0; // the length of the complete lines at the start of myToken, in blocking mode
 
   public OutputReader(@NotNull Reader reader) {
+    this(reader, false);
+  }
+
+  /**
+   * @param blocking if true, the reader thread waits for the output in {@link Reader#read(char[])} instead of polling
+   *                 {@link Reader#ready()} and sleeping, so the text is delivered as soon as it's written and an idle process costs nothing.
+   *                 The complete lines of every chunk read are delivered at once, and the rest of a line once nothing more is ready
+   *                 to be read. After {@link #stop()} the output is read until the end of the stream, so the thread ends only when
+   *                 everyone who writes to the stream, including the children of the process, has closed it.
+   */
+  public OutputReader(@NotNull Reader reader, boolean blocking) {
     myReader = reader;
+    myBlocking = blocking;
     myFinishedFuture = executeOnPooledThread(new Runnable() {
       public void run() {
-        doRun();
+        if (myBlocking) {
+          doRunBlocking();
+        }
+        else {
+          doRun();
+        }
       }
     });
   }
@@ -75,42 +99,109 @@ public abstract class OutputReader {
     }
   }
 
-  private synchronized boolean readAvailable() throws IOException {
-    char[] buffer = myBuffer;
-    StringBuilder token = new StringBuilder();
+  private void doRunBlocking() {
+    try {
+      try {
+        while (true) {
+          if (!myReader.ready()) {
+            synchronized (this) {
+              flushToken(); // the rest of the line is not written yet
+            }
+            // everything written so far has been read, the read below waits for more
+            myWaitingForInput = true;
+            myReadFullySemaphore.up();
+          }
+          int n = myReader.read(myBuffer);
+          myWaitingForInput = false;
+          if (n < 0 || myOutputDiscarded) break;
+          synchronized (this) {
+            processInput(n);
+            flushLines();
+          }
+        }
+      }
+      finally {
+        synchronized (this) {
+          if (skipLF) myToken.append('\r');
+          flushToken();
+        }
+        myReadFullySemaphore.up();
+        myReader.close();
+      }
+    }
+    catch (IOException e) {
+      if (!myOutputDiscarded) {
+        LOG.info(e);
+      }
+    }
+    catch (Exception e) {
+      LOG.error(e);
+    }
+  }
 
+  private synchronized boolean readAvailable() throws IOException {
     boolean read = false;
     while (myReader.ready()) {
-      int n = myReader.read(buffer);
+      int n = myReader.read(myBuffer);
       if (n <= 0) break;
       read = true;
+      processInput(n);
+    }
 
-      for (int i = 0; i < n; i++) {
-        char c = buffer[i];
-        if (skipLF && c != '\n') {
-          token.append('\r');
-        }
+    flushToken();
+    return read;
+  }
 
-        if (c == '\r') {
-          skipLF = true;
+  private void processInput(int n) {
+    char[] buffer = myBuffer;
+    StringBuilder token = myToken;
+    for (int i = 0; i < n; i++) {
+      char c = buffer[i];
+      if (skipLF && c != '\n') {
+        token.append('\r');
+      }
+
+      if (c == '\r') {
+        skipLF = true;
+      }
+      else {
+        skipLF = false;
+        token.append(c);
+      }
+
+      if (c == '\n') {
+        if (myBlocking) {
+          myLinesEnd = token.length();
         }
         else {
-          skipLF = false;
-          token.append(c);
-        }
-
-        if (c == '\n') {
-          onTextAvailable(token.toString());
+          deliver(token.toString());
           token.setLength(0);
         }
       }
     }
+  }
 
-    if (token.length() != 0) {
-      onTextAvailable(token.toString());
-      token.setLength(0);
+  // delivers the complete lines read so far as a single text
+  private void flushLines() {
+    if (myLinesEnd > 0) {
+      deliver(myToken.substring(0, myLinesEnd));
+      myToken.delete(0, myLinesEnd);
+      myLinesEnd = 0;
+    }
+  }
+
+  private void flushToken() {
+    if (myToken.length() != 0) {
+      deliver(myToken.toString());
+      myToken.setLength(0);
+    }
+    myLinesEnd = 0;
+  }
+
+  private void deliver(String text) {
+    if (!myOutputDiscarded) {
+      onTextAvailable(text);
     }
-    return read;
   }
 
   protected abstract void onTextAvailable(@NotNull String text);
@@ -118,6 +209,11 @@ public abstract class OutputReader {
   public void readFully() throws InterruptedException {
     myReadFullySemaphore.down();
     while (!myReadFullySemaphore.waitForUnsafe(10)) {
+      if (myWaitingForInput || myFinishedFuture.isDone()) {
+        // everything written so far has been read
+        myReadFullySemaphore.up();
+        return;
+      }
       if (isStopped) {
         waitFor();
         return;
@@ -129,6 +225,15 @@ public abstract class OutputReader {
     isStopped = true;
   }
 
+  /**
+   * Makes the reader drop the output it reads from now on, e.g. the output of a child that keeps the stream of a terminated process
+   * open. Once the method returns, {@link #onTextAvailable(String)} is not called anymore. A blocking reader closes the stream
+   * and ends as soon as its pending read returns.
+   */
+  public synchronized void discardOutput() {
+    myOutputDiscarded = true;
+  }
+
   public void waitFor() throws InterruptedException {
     try {
       myFinishedFuture.get();
@@ -137,4 +242,21 @@ public abstract class OutputReader {
       LOG.error(e);
     }
   }
+
+  /**
+   * @return false if the reader hasn't finished in time, e.g. when the stream is kept open by a child of the terminated process
+   */
+  public boolean waitFor(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    try {
+      myFinishedFuture.get(timeout, unit);
+      return true;
+    }
+    catch (ExecutionException e) {
+      LOG.error(e);
+      return true;
+    }
+    catch (TimeoutException e) {
+      return false;
+    }
+  }
 }
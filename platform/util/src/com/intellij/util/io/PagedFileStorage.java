@@ -30,8 +30,20 @@ import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Paged memory mapped file storage.
+ * <p/>
+ * Storages registered with a {@link StorageLock} created in concurrent mode (see {@link StorageLock#StorageLock(boolean, boolean)})
+ * keep their pages in a per-file segment instead of the lock-wide {@code BuffersCache}: already mapped pages are looked up without
+ * any locking, only mapping a new page takes the segment's own lock. Such storages may be accessed without holding the
+ * {@link StorageLock}, provided the caller doesn't {@link #resize(long)} or {@link #close()} the storage concurrently.
+ * <p/>
+ * All accessors have {@code long}-addressed variants, so the storage itself is not limited to 2Gb.
+ *
  * @author max
  */
 public class PagedFileStorage implements Forceable {
@@ -72,15 +84,40 @@ public class PagedFileStorage implements Forceable {
     private static final int FILE_INDEX_MASK = 0xFFFF0000;
     private static final int FILE_INDEX_SHIFT = 16;
     private final boolean checkThreadAccess;
+    private final boolean myConcurrent;
 
     public StorageLock() {
       this(true);
     }
 
     public StorageLock(boolean checkThreadAccess) {
-      this.checkThreadAccess = checkThreadAccess;
+      this(checkThreadAccess, false);
+    }
+
+    /**
+     * @param concurrent if true, storages using this lock keep mapped pages in per-file segments which are read without locking,
+     *                   and the lock only bounds the total size of mapped pages
+     */
+    public StorageLock(boolean checkThreadAccess, boolean concurrent) {
+      this(checkThreadAccess, concurrent, UPPER_LIMIT);
+    }
+
+    /**
+     * @param concurrentSizeLimit the total size of pages mapped by the concurrent storages using this lock
+     */
+    StorageLock(boolean checkThreadAccess, boolean concurrent, long concurrentSizeLimit) {
+      this.checkThreadAccess = checkThreadAccess && !concurrent;
+      myConcurrent = concurrent;
+      myConcurrentSizeLimit = concurrentSizeLimit;
     }
 
+    public boolean isConcurrent() {
+      return myConcurrent;
+    }
+
+    private final AtomicLong myConcurrentMappedSize = new AtomicLong();
+    private final long myConcurrentSizeLimit;
+
     private final BuffersCache myBuffersCache = new BuffersCache();
     private final ConcurrentHashMap<Integer, PagedFileStorage> myIndex2Storage = new ConcurrentHashMap<Integer, PagedFileStorage>();
     
@@ -162,13 +199,13 @@ public class PagedFileStorage implements Forceable {
       private MappedBufferWrapper createValue(Integer key) {
         checkThreadAccess();
         PagedFileStorage owner = getRegisteredPagedFileStorageByIndex(key & FILE_INDEX_MASK);
-        int off = (key & MAX_PAGES_COUNT) * owner.myPageSize;
+        long off = (long)(key & MAX_PAGES_COUNT) * owner.myPageSize;
         if (off > owner.length()) {
           throw new IndexOutOfBoundsException("off=" + off + " key.owner.length()=" + owner.length());
         }
         ++changeCount;
         ReadWriteMappedBufferWrapper wrapper =
-          new ReadWriteMappedBufferWrapper(owner.myFile, off, Math.min((int)(owner.length() - off), owner.myPageSize));
+          new ReadWriteMappedBufferWrapper(owner.myFile, off, (int)Math.min(owner.length() - off, owner.myPageSize));
         IOException oome = null;
         while (true) {
           try {
@@ -249,9 +286,222 @@ public class PagedFileStorage implements Forceable {
         }
       }
     }
+
+    private void releaseConcurrentMemory(PagesSegment requester) {
+      long limit = myConcurrentSizeLimit;
+      if (myConcurrentMappedSize.get() <= limit) return;
+      requester.evictOldest(limit, true);
+      if (myConcurrentMappedSize.get() <= limit) return;
+
+      for (PagedFileStorage storage : myIndex2Storage.values()) {
+        PagesSegment segment = storage.mySegment;
+        if (segment == null || segment == requester) continue;
+        segment.evictOldest(limit, false);
+        if (myConcurrentMappedSize.get() <= limit) return;
+      }
+    }
+  }
+
+  /**
+   * Pages of a single storage in concurrent mode. Reads of mapped pages don't lock, mapping and eviction are done under
+   * {@link #myMappingLock}.
+   * <p/>
+   * Every access to a page is made between {@link #enter()} and {@link #exit(int)}, which count the threads inside in a few
+   * striped counters. An evicted page is first unpublished from {@link #myPages} and retired, and the retired pages are unmapped
+   * as soon as no thread is inside: a thread entering after that can't see them anymore. Unless a page buffer has escaped
+   * through {@link #getByteBuffer(int)}, in which case evicted pages are only flushed and the mapping is released when the
+   * buffer is garbage collected. Resizing and closing unmap all pages, they must not be concurrent with access anyway.
+   */
+  private class PagesSegment {
+    private static final int READER_STRIPES = 16;
+    // a stripe per cache line
+    private static final int READER_STRIPE_STEP = 16;
+
+    private final ReentrantLock myMappingLock = new ReentrantLock();
+    private volatile MappedBufferWrapper[] myPages = new MappedBufferWrapper[16];
+    private final LinkedList<Integer> myMappingOrder = new LinkedList<Integer>();
+    private final AtomicIntegerArray myReaders = new AtomicIntegerArray(READER_STRIPES * READER_STRIPE_STEP);
+    private final List<MappedBufferWrapper> myRetiredPages = new ArrayList<MappedBufferWrapper>();
+    private volatile boolean myHasRetiredPages;
+    private volatile boolean myPagesEscaped;
+
+    private int enter() {
+      int stripe = (int)(Thread.currentThread().getId() % READER_STRIPES) * READER_STRIPE_STEP;
+      myReaders.incrementAndGet(stripe);
+      return stripe;
+    }
+
+    private void exit(int stripe) {
+      if (myReaders.decrementAndGet(stripe) == 0 && myHasRetiredPages && myMappingLock.tryLock()) {
+        try {
+          unmapRetiredIfIdle();
+        }
+        finally {
+          myMappingLock.unlock();
+        }
+      }
+    }
+
+    private boolean isIdle() {
+      for (int i = 0; i < READER_STRIPES; i++) {
+        if (myReaders.get(i * READER_STRIPE_STEP) != 0) return false;
+      }
+      return true;
+    }
+
+    // under myMappingLock
+    private void unmapRetiredIfIdle() {
+      // the retired pages were unpublished before this check, so a thread which entered after it won't find them
+      if (!myHasRetiredPages || !isIdle()) return;
+      for (MappedBufferWrapper wrapper : myRetiredPages) {
+        wrapper.dispose();
+      }
+      myRetiredPages.clear();
+      myHasRetiredPages = false;
+    }
+
+    private ByteBuffer getPage(int page) {
+      MappedBufferWrapper[] pages = myPages;
+      if (page < pages.length) {
+        MappedBufferWrapper wrapper = pages[page];
+        if (wrapper != null) {
+          MappedByteBuffer buf = wrapper.getIfCached();
+          if (buf != null) return buf;
+        }
+      }
+      return mapPage(page);
+    }
+
+    private ByteBuffer mapPage(int page) {
+      MappedByteBuffer buf;
+      myMappingLock.lock();
+      try {
+        MappedBufferWrapper[] pages = myPages;
+        if (page < pages.length && pages[page] != null) {
+          buf = pages[page].getIfCached();
+          if (buf != null) return buf;
+          dropPage(page);
+        }
+
+        long off = (long)page * myPageSize;
+        if (off > length()) {
+          throw new IndexOutOfBoundsException("off=" + off + " length()=" + length());
+        }
+
+        ReadWriteMappedBufferWrapper wrapper =
+          new ReadWriteMappedBufferWrapper(myFile, off, (int)Math.min(length() - off, myPageSize));
+        try {
+          buf = wrapper.buf();
+        }
+        catch (IOException e) {
+          throw new MappingFailedException("Cannot map buffer", e);
+        }
+
+        if (page >= pages.length) {
+          MappedBufferWrapper[] newPages = new MappedBufferWrapper[Math.max(page + 1, pages.length * 2)];
+          System.arraycopy(pages, 0, newPages, 0, pages.length);
+          pages = newPages;
+        }
+        pages[page] = wrapper;
+        myPages = pages;
+        myMappingOrder.addLast(page);
+        myLock.myConcurrentMappedSize.addAndGet(wrapper.myLength);
+        unmapRetiredIfIdle();
+      }
+      finally {
+        myMappingLock.unlock();
+      }
+
+      myLock.releaseConcurrentMemory(this);
+      return buf;
+    }
+
+    private void evictOldest(long sizeLimit, boolean block) {
+      if (block) {
+        myMappingLock.lock();
+      }
+      else if (!myMappingLock.tryLock()) {
+        return;
+      }
+      try {
+        // keep the most recently mapped page, it was requested by someone
+        while (myMappingOrder.size() > 1 && myLock.myConcurrentMappedSize.get() > sizeLimit) {
+          retirePage(myMappingOrder.removeFirst());
+        }
+        unmapRetiredIfIdle();
+      }
+      finally {
+        myMappingLock.unlock();
+      }
+    }
+
+    private void retirePage(int page) {
+      MappedBufferWrapper wrapper = dropPage(page);
+      if (wrapper == null) return;
+      if (myPagesEscaped) {
+        wrapper.flush();
+      }
+      else {
+        myRetiredPages.add(wrapper);
+        myHasRetiredPages = true;
+      }
+    }
+
+    @Nullable
+    private MappedBufferWrapper dropPage(int page) {
+      MappedBufferWrapper[] pages = myPages;
+      MappedBufferWrapper wrapper = pages[page];
+      if (wrapper == null) return null;
+      pages[page] = null;
+      // publish the removal before anyone checks whether the page is still in use
+      myPages = pages;
+      myLock.myConcurrentMappedSize.addAndGet(-wrapper.myLength);
+      return wrapper;
+    }
+
+    private void dropAll() {
+      myMappingLock.lock();
+      try {
+        MappedBufferWrapper[] pages = myPages;
+        for (int i = 0; i < pages.length; i++) {
+          MappedBufferWrapper wrapper = dropPage(i);
+          if (wrapper != null) wrapper.dispose();
+        }
+        myMappingOrder.clear();
+        for (MappedBufferWrapper wrapper : myRetiredPages) {
+          wrapper.dispose();
+        }
+        myRetiredPages.clear();
+        myHasRetiredPages = false;
+      }
+      finally {
+        myMappingLock.unlock();
+      }
+    }
+
+    private int getMappedPagesCount() {
+      myMappingLock.lock();
+      try {
+        int count = myRetiredPages.size();
+        for (MappedBufferWrapper wrapper : myPages) {
+          if (wrapper != null) count++;
+        }
+        return count;
+      }
+      finally {
+        myMappingLock.unlock();
+      }
+    }
+
+    private void flush() {
+      for (MappedBufferWrapper wrapper : myPages) {
+        if (wrapper != null) wrapper.flush();
+      }
+    }
   }
 
   private final byte[] myTypedIOBuffer;
+  @Nullable private final PagesSegment mySegment;
   private boolean isDirty = false;
   private final File myFile;
   protected long mySize = -1;
@@ -264,8 +514,9 @@ public class PagedFileStorage implements Forceable {
     myLock = lock;
     myPageSize = Math.max(pageSize, Page.PAGE_SIZE);
     myValuesAreBufferAligned = valuesAreBufferAligned;
+    mySegment = lock.isConcurrent() ? new PagesSegment() : null;
     myStorageIndex = lock.registerPagedFileStorage(this);
-    myTypedIOBuffer = valuesAreBufferAligned ? null:new byte[8];
+    myTypedIOBuffer = valuesAreBufferAligned || mySegment != null ? null:new byte[8];
   }
 
   public PagedFileStorage(File file, StorageLock lock) throws IOException {
@@ -277,37 +528,70 @@ public class PagedFileStorage implements Forceable {
   }
 
   public void putInt(int addr, int value) {
+    putInt((long)addr, value);
+  }
+
+  public void putInt(long addr, int value) {
     if (myValuesAreBufferAligned) {
       isDirty = true;
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      getBuffer(page).putInt(page_offset, value);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        getBuffer(page).putInt(page_offset, value);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      Bits.putInt(myTypedIOBuffer, 0, value);
-      put(addr, myTypedIOBuffer, 0, 4);
+      byte[] buffer = getTypedIOBuffer();
+      Bits.putInt(buffer, 0, value);
+      put(addr, buffer, 0, 4);
     }
   }
 
   public int getInt(int addr) {
+    return getInt((long)addr);
+  }
+
+  public int getInt(long addr) {
     if (myValuesAreBufferAligned) {
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      return getBuffer(page).getInt(page_offset);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        return getBuffer(page).getInt(page_offset);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      get(addr, myTypedIOBuffer, 0, 4);
-      return Bits.getInt(myTypedIOBuffer, 0);
+      byte[] buffer = getTypedIOBuffer();
+      get(addr, buffer, 0, 4);
+      return Bits.getInt(buffer, 0);
     }
   }
 
   public final void putShort(int addr, short value) {
+    putShort((long)addr, value);
+  }
+
+  public final void putShort(long addr, short value) {
     if (myValuesAreBufferAligned) {
       isDirty = true;
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      getBuffer(page).putShort(page_offset, value);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        getBuffer(page).putShort(page_offset, value);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      Bits.putShort(myTypedIOBuffer, 0, value);
-      put(addr, myTypedIOBuffer, 0, 2);
+      byte[] buffer = getTypedIOBuffer();
+      Bits.putShort(buffer, 0, value);
+      put(addr, buffer, 0, 2);
     }
   }
 
@@ -315,30 +599,59 @@ public class PagedFileStorage implements Forceable {
     return addr % myPageSize;
   }
   
+  /**
+   * The returned buffer is used outside of {@link PagesSegment#enter()}, so the pages of a concurrent storage are never unmapped
+   * on eviction after that.
+   */
   ByteBuffer getByteBuffer(int address) {
+    if (mySegment != null) {
+      mySegment.myPagesEscaped = true;
+    }
     return getBuffer(address / myPageSize);
   }
 
   public final short getShort(int addr) {
+    return getShort((long)addr);
+  }
+
+  public final short getShort(long addr) {
     if (myValuesAreBufferAligned) {
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      return getBuffer(page).getShort(page_offset);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        return getBuffer(page).getShort(page_offset);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      get(addr, myTypedIOBuffer, 0, 2);
-      return Bits.getShort(myTypedIOBuffer, 0);
+      byte[] buffer = getTypedIOBuffer();
+      get(addr, buffer, 0, 2);
+      return Bits.getShort(buffer, 0);
     }
   }
 
   public void putLong(int addr, long value) {
+    putLong((long)addr, value);
+  }
+
+  public void putLong(long addr, long value) {
     if (myValuesAreBufferAligned) {
       isDirty = true;
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      getBuffer(page).putLong(page_offset, value);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        getBuffer(page).putLong(page_offset, value);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      Bits.putLong(myTypedIOBuffer, 0, value);
-      put(addr, myTypedIOBuffer, 0, 8);
+      byte[] buffer = getTypedIOBuffer();
+      Bits.putLong(buffer, 0, value);
+      put(addr, buffer, 0, 8);
     }
   }
 
@@ -352,86 +665,158 @@ public class PagedFileStorage implements Forceable {
   }
 
   public long getLong(int addr) {
+    return getLong((long)addr);
+  }
+
+  public long getLong(long addr) {
     if (myValuesAreBufferAligned) {
-      int page = addr / myPageSize;
-      int page_offset = addr % myPageSize;
-      return getBuffer(page).getLong(page_offset);
+      int page = (int)(addr / myPageSize);
+      int page_offset = (int)(addr % myPageSize);
+      int stripe = enter();
+      try {
+        return getBuffer(page).getLong(page_offset);
+      }
+      finally {
+        exit(stripe);
+      }
     } else {
-      get(addr, myTypedIOBuffer, 0, 8);
-      return Bits.getLong(myTypedIOBuffer, 0);
+      byte[] buffer = getTypedIOBuffer();
+      get(addr, buffer, 0, 8);
+      return Bits.getLong(buffer, 0);
     }
   }
 
   public byte get(int index) {
-    int page = index / myPageSize;
-    int offset = index % myPageSize;
+    return get((long)index);
+  }
 
-    return getBuffer(page).get(offset);
+  public byte get(long index) {
+    int page = (int)(index / myPageSize);
+    int offset = (int)(index % myPageSize);
+
+    int stripe = enter();
+    try {
+      return getBuffer(page).get(offset);
+    }
+    finally {
+      exit(stripe);
+    }
   }
 
   public void put(int index, byte value) {
+    put((long)index, value);
+  }
+
+  public void put(long index, byte value) {
     isDirty = true;
-    int page = index / myPageSize;
-    int offset = index % myPageSize;
+    int page = (int)(index / myPageSize);
+    int offset = (int)(index % myPageSize);
 
-    getBuffer(page).put(offset, value);
+    int stripe = enter();
+    try {
+      getBuffer(page).put(offset, value);
+    }
+    finally {
+      exit(stripe);
+    }
   }
 
   public void get(int index, byte[] dst, int offset, int length) {
-    int i = index;
+    get((long)index, dst, offset, length);
+  }
+
+  public void get(long index, byte[] dst, int offset, int length) {
+    long i = index;
     int o = offset;
     int l = length;
 
-    while (l > 0) {
-      int page = i / myPageSize;
-      int page_offset = i % myPageSize;
+    int stripe = enter();
+    try {
+      while (l > 0) {
+        int page = (int)(i / myPageSize);
+        int page_offset = (int)(i % myPageSize);
+
+        int page_len = Math.min(l, myPageSize - page_offset);
+        final ByteBuffer buffer = getBufferForBulkAccess(page);
+        try {
+          buffer.position(page_offset);
+        }
+        catch (IllegalArgumentException iae) {
+          throw new IllegalArgumentException("can't position buffer to offset " + page_offset + ", " +
+                                             "buffer.limit=" + buffer.limit() + ", " +
+                                             "page=" + page + ", " +
+                                             "file=" + myFile.getName() + ", "+
+                                             "file.length=" + mySize);
+        }
+        buffer.get(dst, o, page_len);
 
-      int page_len = Math.min(l, myPageSize - page_offset);
-      final ByteBuffer buffer = getBuffer(page);
-      try {
-        buffer.position(page_offset);
+        l -= page_len;
+        o += page_len;
+        i += page_len;
       }
-      catch (IllegalArgumentException iae) {
-        throw new IllegalArgumentException("can't position buffer to offset " + page_offset + ", " +
-                                           "buffer.limit=" + buffer.limit() + ", " +
-                                           "page=" + page + ", " +
-                                           "file=" + myFile.getName() + ", "+
-                                           "file.length=" + mySize);
-      }
-      buffer.get(dst, o, page_len);
-
-      l -= page_len;
-      o += page_len;
-      i += page_len;
+    }
+    finally {
+      exit(stripe);
     }
   }
 
   public void put(int index, byte[] src, int offset, int length) {
+    put((long)index, src, offset, length);
+  }
+
+  public void put(long index, byte[] src, int offset, int length) {
     isDirty = true;
-    int i = index;
+    long i = index;
     int o = offset;
     int l = length;
 
-    while (l > 0) {
-      int page = i / myPageSize;
-      int page_offset = i % myPageSize;
+    int stripe = enter();
+    try {
+      while (l > 0) {
+        int page = (int)(i / myPageSize);
+        int page_offset = (int)(i % myPageSize);
+
+        int page_len = Math.min(l, myPageSize - page_offset);
+        final ByteBuffer buffer = getBufferForBulkAccess(page);
+        try {
+          buffer.position(page_offset);
+        }
+        catch (IllegalArgumentException iae) {
+          throw new IllegalArgumentException("can't position buffer to offset " + page_offset);
+        }
+        buffer.put(src, o, page_len);
 
-      int page_len = Math.min(l, myPageSize - page_offset);
-      final ByteBuffer buffer = getBuffer(page);
-      try {
-        buffer.position(page_offset);
+        l -= page_len;
+        o += page_len;
+        i += page_len;
       }
-      catch (IllegalArgumentException iae) {
-        throw new IllegalArgumentException("can't position buffer to offset " + page_offset);
-      }
-      buffer.put(src, o, page_len);
+    }
+    finally {
+      exit(stripe);
+    }
+  }
+
+  private byte[] getTypedIOBuffer() {
+    // concurrent storages are used by several threads at once, so they can't share a scratch buffer
+    return myTypedIOBuffer != null ? myTypedIOBuffer : new byte[8];
+  }
 
-      l -= page_len;
-      o += page_len;
-      i += page_len;
+  private int enter() {
+    return mySegment != null ? mySegment.enter() : -1;
+  }
+
+  private void exit(int stripe) {
+    if (mySegment != null) {
+      mySegment.exit(stripe);
     }
   }
 
+  private ByteBuffer getBufferForBulkAccess(int page) {
+    ByteBuffer buffer = getBuffer(page);
+    // position is a per-buffer state, don't let concurrent readers move it under each other
+    return mySegment != null ? buffer.duplicate() : buffer;
+  }
+
   public void close() {
     try {
       force();
@@ -444,6 +829,10 @@ public class PagedFileStorage implements Forceable {
   }
 
   private void unmapAll() {
+    if (mySegment != null) {
+      mySegment.dropAll();
+      return;
+    }
     myLock.myBuffersCache.unmapBuffersForOwner(myStorageIndex);
 
     myLastPage = UNKNOWN_PAGE;
@@ -453,7 +842,11 @@ public class PagedFileStorage implements Forceable {
   }
 
   public void resize(int newSize) throws IOException {
-    int oldSize = (int)myFile.length();
+    resize((long)newSize);
+  }
+
+  public void resize(long newSize) throws IOException {
+    long oldSize = myFile.length();
     if (oldSize == newSize) return;
 
     final long started = IOStatistics.DEBUG ? System.currentTimeMillis():0;
@@ -464,7 +857,7 @@ public class PagedFileStorage implements Forceable {
 
     // it is not guaranteed that new partition will consist of null
     // after resize, so we should fill it manually
-    int delta = newSize - oldSize;
+    long delta = newSize - oldSize;
     if (delta > 0) fillWithZeros(oldSize, delta);
 
     if (IOStatistics.DEBUG) {
@@ -475,7 +868,7 @@ public class PagedFileStorage implements Forceable {
     }
   }
 
-  private void resizeFile(int newSize) throws IOException {
+  private void resizeFile(long newSize) throws IOException {
     RandomAccessFile raf = new RandomAccessFile(myFile, RW);
     try {
       raf.setLength(newSize);
@@ -487,12 +880,12 @@ public class PagedFileStorage implements Forceable {
   }
 
   private final static int MAX_FILLER_SIZE = 8192;
-  private void fillWithZeros(int from, int length) {
+  private void fillWithZeros(long from, long length) {
     byte[] buff = new byte[MAX_FILLER_SIZE];
     Arrays.fill(buff, (byte)0);
 
     while (length > 0) {
-      final int filled = Math.min(length, MAX_FILLER_SIZE);
+      final int filled = (int)Math.min(length, MAX_FILLER_SIZE);
       put(from, buff, 0, filled);
       length -= filled;
       from += filled;
@@ -508,6 +901,11 @@ public class PagedFileStorage implements Forceable {
   }
 
   private ByteBuffer getBuffer(int page) {
+    if (mySegment != null) {
+      assert page <= MAX_PAGES_COUNT;
+      return mySegment.getPage(page);
+    }
+
     if (myLastPage == page) {
       MappedByteBuffer buf = myLastBuffer.getIfCached();
       if (buf != null && myLastChangeCount == myLock.myBuffersCache.changeCount) return buf;
@@ -548,7 +946,12 @@ public class PagedFileStorage implements Forceable {
 
   public void force() {
     long started = IOStatistics.DEBUG ? System.currentTimeMillis():0;
-    myLock.myBuffersCache.flushBuffersForOwner(myStorageIndex);
+    if (mySegment != null) {
+      mySegment.flush();
+    }
+    else {
+      myLock.myBuffersCache.flushBuffersForOwner(myStorageIndex);
+    }
 
     isDirty = false;
     if (IOStatistics.DEBUG) {
@@ -559,6 +962,14 @@ public class PagedFileStorage implements Forceable {
     }
   }
 
+  /**
+   * @return the number of pages of a concurrent storage which are mapped, including the evicted ones not unmapped yet
+   */
+  int getMappedPagesCount() {
+    assert mySegment != null;
+    return mySegment.getMappedPagesCount();
+  }
+
   public boolean isDirty() {
     return isDirty;
   }
@@ -115,7 +115,8 @@ abstract class PersistentEnumeratorBase<Data> implements Forceable, Closeable {
     return ourFlyweight;
   }
 
-  protected static final PagedFileStorage.StorageLock ourLock = new PagedFileStorage.StorageLock();
+  protected static final PagedFileStorage.StorageLock ourLock =
+    new PagedFileStorage.StorageLock(true, Boolean.getBoolean("idea.concurrent.paged.storage"));
 
   private static final int ENUMERATION_CACHE_SIZE;
   static {
@@ -22,9 +22,13 @@ import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.openapi.util.io.ByteSequence;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.CommonProcessors;
+import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.LimitedPool;
 import com.intellij.util.containers.SLRUCache;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -33,6 +37,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author Eugene Zhuravlev
@@ -50,6 +55,17 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     INITIAL_INDEX_SIZE = property == null ? 4 * 1024 : Integer.valueOf(property);
   }
 
+  // part of value records which should be garbage for the value storage to be compacted on open
+  private static final double GARBAGE_RATIO_TO_COMPACT;
+  static {
+    String property = System.getProperty("idea.persistent.map.compaction.garbage.ratio");
+    GARBAGE_RATIO_TO_COMPACT = property == null ? 0.5 : Double.valueOf(property);
+  }
+  private static final boolean BACKGROUND_COMPACTION = !"false".equals(System.getProperty("idea.persistent.map.background.compaction"));
+  private static final int COMPACTION_CHUNK_SIZE = 1024;
+  private static final ExecutorService ourCompactionExecutor =
+    ConcurrencyUtil.newSingleThreadExecutor("PersistentHashMap compaction", Thread.MIN_PRIORITY);
+
   @NonNls
   public static final String DATA_FILE_EXTENSION = ".values";
   private long myLiveAndGarbageKeysCounter; // first four bytes contain live keys count (updated via LIVE_KEY_MASK), last four bytes - number of dead keys
@@ -62,6 +78,7 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   private final boolean myCanReEnumerate;
   private int myWatermarkId;
   private boolean myIntAddressForNewRecord;
+  @Nullable private BackgroundCompaction myBackgroundCompaction;
   private static final boolean doHardConsistencyChecks = false;
 
   private static class AppendStream extends DataOutputStream {
@@ -197,8 +214,15 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
       myWatermarkId = (int)myEnumerator.getMetaData2();
       myCanReEnumerate = myEnumerator.canReEnumerate();
 
+      FileUtil.delete(getCompactedDataFile(file));
       if (makesSenseToCompact()) {
-        compact();
+        if (BACKGROUND_COMPACTION) {
+          myBackgroundCompaction = new BackgroundCompaction();
+          ourCompactionExecutor.execute(myBackgroundCompaction);
+        }
+        else {
+          compact();
+        }
       }
     }
     catch (IOException e) {
@@ -220,14 +244,24 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
 
   private boolean makesSenseToCompact() {
     final long fileSize = getDataFile(myEnumerator.myFile).length();
-    if (fileSize > 5 * 1024 * 1024) { // file is longer than 5MB and more than 50% of keys is garbage
+    if (fileSize > 5 * 1024 * 1024) { // file is longer than 5MB and enough of the records (50% by default) are garbage
       int liveKeys = (int)(myLiveAndGarbageKeysCounter / LIVE_KEY_MASK);
       int oldKeys = (int)(myLiveAndGarbageKeysCounter & 0xFFFFFFFF);
-      return oldKeys > liveKeys;
+      return oldKeys > ((long)liveKeys + oldKeys) * GARBAGE_RATIO_TO_COMPACT;
     }
     return false;
   }
 
+  /**
+   * @return part of the live values already copied by the running background compaction, or -1 if the values are not being compacted
+   */
+  public double getCompactionProgress() {
+    synchronized (myEnumerator) {
+      final BackgroundCompaction compaction = myBackgroundCompaction;
+      return compaction == null ? -1 : compaction.getProgress();
+    }
+  }
+
   private static File checkDataFiles(final File file) {
     if (!file.exists()) {
       deleteFilesStartingWith(getDataFile(file));
@@ -253,6 +287,10 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     return new File(file.getParentFile(), file.getName() + DATA_FILE_EXTENSION);
   }
 
+  private static File getCompactedDataFile(final File file) {
+    return new File(getDataFile(file).getPath() + ".new");
+  }
+
   public final void put(Key key, Value value) throws IOException {
     synchronized (myEnumerator) {
       doPut(key, value);
@@ -454,6 +492,9 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
         myAppendCacheFlusher.stop();
         myAppendCache.clear();
         myValueStorage.dispose();
+        if (myBackgroundCompaction != null) {
+          myBackgroundCompaction.abort();
+        }
       }
       finally {
         super.close();
@@ -464,8 +505,11 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
   // made public for tests
   public void compact() throws IOException {
     synchronized (myEnumerator) {
+      if (myBackgroundCompaction != null) {
+        myBackgroundCompaction.abort();
+      }
       final long now = System.currentTimeMillis();
-      final String newPath = getDataFile(myEnumerator.myFile).getPath() + ".new";
+      final String newPath = getCompactedDataFile(myEnumerator.myFile).getPath();
       final PersistentHashMapValueStorage newStorage = PersistentHashMapValueStorage.create(newPath);
       myValueStorage.switchToCompactionMode();
       myLiveAndGarbageKeysCounter = 0;
@@ -495,6 +539,148 @@ public class PersistentHashMap<Key, Value> extends PersistentEnumeratorDelegate<
     }
   }
 
+  /**
+   * Copies live values to a new storage chunk by chunk, releasing the locks between chunks, so that the map stays usable meanwhile.
+   * Values are copied from the addresses seen when the compaction started; only the final switch to the new storage is done in one go,
+   * and it copies again just the values which were changed in between.
+   */
+  private class BackgroundCompaction implements Runnable {
+    private final TIntArrayList myKeyIds = new TIntArrayList();
+    private final TLongArrayList myOldAddresses = new TLongArrayList();
+    private final TLongArrayList myNewAddresses = new TLongArrayList();
+    private final TIntIntHashMap myKeyIdToIndex = new TIntIntHashMap();
+    private PersistentHashMapValueStorage myNewStorage;
+    private volatile int myProcessed;
+    private int myCopiedAtSwitch;
+
+    @Override
+    public void run() {
+      final long started = System.currentTimeMillis();
+      try {
+        if (!start()) return;
+        int total = myKeyIds.size();
+        for (int from = 0; from < total; from += COMPACTION_CHUNK_SIZE) {
+          if (!copyChunk(from, Math.min(total, from + COMPACTION_CHUNK_SIZE))) return;
+        }
+        finish(started);
+      }
+      catch (Throwable t) {
+        LOG.error("Background compaction of " + myEnumerator.myFile.getPath() + " failed", t);
+        synchronized (myEnumerator) {
+          if (myBackgroundCompaction == this) abort();
+        }
+      }
+    }
+
+    private double getProgress() {
+      int total = myKeyIds.size();
+      return total == 0 ? 0 : (double)myProcessed / total;
+    }
+
+    private boolean isCancelled() {
+      return myBackgroundCompaction != this || myEnumerator.isClosed();
+    }
+
+    private boolean start() throws IOException {
+      synchronized (myEnumerator) {
+        synchronized (PersistentEnumerator.ourLock) {
+          if (isCancelled()) return false;
+          clearAppenderCaches();
+          myNewStorage = PersistentHashMapValueStorage.create(getCompactedDataFile(myEnumerator.myFile).getPath());
+
+          traverseAllRecords(new PersistentEnumerator.RecordsProcessor() {
+            public boolean process(final int keyId) throws IOException {
+              final HeaderRecord record = readValueId(keyId);
+              if (record.address != NULL_ADDR) {
+                myKeyIdToIndex.put(keyId, myKeyIds.size());
+                myKeyIds.add(keyId);
+                myOldAddresses.add(record.address);
+                myNewAddresses.add(NULL_ADDR);
+              }
+              return true;
+            }
+          });
+          return true;
+        }
+      }
+    }
+
+    private boolean copyChunk(int from, int to) throws IOException {
+      synchronized (myEnumerator) {
+        synchronized (PersistentEnumerator.ourLock) {
+          if (isCancelled()) return false;
+          for (int i = from; i < to; i++) {
+            final long oldAddress = myOldAddresses.getQuick(i);
+            // values changed since the start are copied during the switch
+            if (readValueId(myKeyIds.getQuick(i)).address == oldAddress) {
+              byte[] bytes = myValueStorage.readBytesWithoutRelinking(oldAddress);
+              myNewAddresses.setQuick(i, myNewStorage.appendBytes(new ByteSequence(bytes), 0));
+            }
+          }
+          myProcessed = to;
+          return true;
+        }
+      }
+    }
+
+    private void finish(long started) throws IOException {
+      synchronized (myEnumerator) {
+        synchronized (PersistentEnumerator.ourLock) {
+          if (isCancelled()) return;
+          final long switchStarted = System.currentTimeMillis();
+          clearAppenderCaches();
+          myValueStorage.switchToCompactionMode();
+          myLiveAndGarbageKeysCounter = 0;
+
+          traverseAllRecords(new PersistentEnumerator.RecordsProcessor() {
+            public boolean process(final int keyId) throws IOException {
+              final HeaderRecord record = readValueId(keyId);
+              if (record.address != NULL_ADDR) {
+                long newAddress = NULL_ADDR;
+                if (myKeyIdToIndex.containsKey(keyId)) {
+                  int index = myKeyIdToIndex.get(keyId);
+                  if (myOldAddresses.getQuick(index) == record.address) newAddress = myNewAddresses.getQuick(index);
+                }
+                if (newAddress == NULL_ADDR) {
+                  newAddress = myNewStorage.appendBytes(new ByteSequence(myValueStorage.readBytesWithoutRelinking(record.address)), 0);
+                  myCopiedAtSwitch++;
+                }
+                updateValueId(keyId, new HeaderRecord(newAddress), record, null, getCurrentKey());
+                myLiveAndGarbageKeysCounter += LIVE_KEY_MASK;
+              }
+              return true;
+            }
+          });
+
+          myValueStorage.dispose();
+          myNewStorage.dispose();
+          myBackgroundCompaction = null;
+
+          FileUtil.rename(getCompactedDataFile(myEnumerator.myFile), getDataFile(myEnumerator.myFile));
+
+          myValueStorage = PersistentHashMapValueStorage.create(getDataFile(myEnumerator.myFile).getPath());
+          myEnumerator.markDirty(true);
+          myEnumerator.putMetaData(myLiveAndGarbageKeysCounter);
+
+          final long now = System.currentTimeMillis();
+          LOG.info("Compacted " + myEnumerator.myFile.getPath() + " in background in " + (now - started) + "ms, " +
+                   myKeyIds.size() + " live values at start, " + myCopiedAtSwitch + " values copied during the switch taking " +
+                   (now - switchStarted) + "ms");
+        }
+      }
+    }
+
+    // should be called under the map lock
+    private void abort() {
+      if (myBackgroundCompaction == this) myBackgroundCompaction = null;
+      if (myNewStorage != null) {
+        myNewStorage.dispose();
+        myNewStorage = null;
+      }
+      FileUtil.delete(getCompactedDataFile(myEnumerator.myFile));
+    }
+  }
+
   private HeaderRecord readValueId(final int keyId) {
     long address = myEnumerator.myStorage.getInt(keyId + myParentValueRefOffset);
     if (address == 0 || address == -POSITIVE_VALUE_SHIFT) {
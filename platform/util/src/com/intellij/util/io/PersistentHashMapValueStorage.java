@@ -121,7 +121,18 @@ public class PersistentHashMapValueStorage {
   /**
    * Reads bytes pointed by tailChunkAddress into result passed, returns new address if linked list compactification have been performed
    */
-  public Pair<Long, byte[]> readBytes(long tailChunkAddress) throws IOException {    
+  public Pair<Long, byte[]> readBytes(long tailChunkAddress) throws IOException {
+    return readBytes(tailChunkAddress, !myCompactionMode);
+  }
+
+  /**
+   * Reads bytes pointed by tailChunkAddress without relinking the chunks, so the storage is not modified
+   */
+  byte[] readBytesWithoutRelinking(long tailChunkAddress) throws IOException {
+    return readBytes(tailChunkAddress, false).second;
+  }
+
+  private Pair<Long, byte[]> readBytes(long tailChunkAddress, boolean relinkChunks) throws IOException {
     force();
 
     long chunk = tailChunkAddress;
@@ -178,7 +189,7 @@ public class PersistentHashMapValueStorage {
       }
     }
 
-    if (chunkCount > 1 && !myCompactionMode) {
+    if (chunkCount > 1 && relinkChunks) {
       long l = appendBytes(new ByteSequence(result), 0);
       return new Pair<Long, byte[]>(l, result);
     }
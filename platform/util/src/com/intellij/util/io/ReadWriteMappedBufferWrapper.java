@@ -30,7 +30,7 @@ import java.nio.channels.FileChannel;
 public class ReadWriteMappedBufferWrapper extends MappedBufferWrapper {
   @NonNls private static final String RW = "rw";
 
-  public ReadWriteMappedBufferWrapper(final File file, int offset, int len) {
+  public ReadWriteMappedBufferWrapper(final File file, long offset, int len) {
     super(file, offset, len);
   }
 
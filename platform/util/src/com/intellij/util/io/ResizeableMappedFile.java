@@ -59,7 +59,7 @@ public class ResizeableMappedFile implements Forceable {
     return myStorage.length();
   }
 
-  private void resize(final int size) {
+  private void resize(final long size) {
     try {
       myStorage.resize(size);
     }
@@ -70,6 +70,10 @@ public class ResizeableMappedFile implements Forceable {
 
   void ensureSize(final long pos) {
     if (pos + 16 > Integer.MAX_VALUE) throw new RuntimeException("FATAL ERROR: Can't get over 2^32 address space");
+    ensureLongSize(pos);
+  }
+
+  private void ensureLongSize(final long pos) {
     myLogicalSize = Math.max(pos, myLogicalSize);
     while (pos >= realSize()) {
       expand();
@@ -77,8 +81,11 @@ public class ResizeableMappedFile implements Forceable {
   }
 
   private void expand() {
-    final long newSize = Math.min(Integer.MAX_VALUE, ((realSize() + 1) * 13) >> 3);
-    resize((int)newSize);
+    final long realSize = realSize();
+    long newSize = ((realSize + 1) * 13) >> 3;
+    // int-addressed clients rely on the file reaching exactly Integer.MAX_VALUE before failing
+    if (realSize < Integer.MAX_VALUE) newSize = Math.min(Integer.MAX_VALUE, newSize);
+    resize(newSize);
   }
 
   private File getLengthFile() {
@@ -189,6 +196,51 @@ public class ResizeableMappedFile implements Forceable {
     myStorage.put(index, src, offset, length);
   }
 
+  public int getInt(long index) {
+    return myStorage.getInt(index);
+  }
+
+  public void putInt(long index, int value) {
+    ensureLongSize(index + 4);
+    myStorage.putInt(index, value);
+  }
+
+  public short getShort(long index) {
+    return myStorage.getShort(index);
+  }
+
+  public void putShort(long index, short value) {
+    ensureLongSize(index + 2);
+    myStorage.putShort(index, value);
+  }
+
+  public long getLong(long index) {
+    return myStorage.getLong(index);
+  }
+
+  public void putLong(long index, long value) {
+    ensureLongSize(index + 8);
+    myStorage.putLong(index, value);
+  }
+
+  public byte get(long index) {
+    return myStorage.get(index);
+  }
+
+  public void put(long index, byte value) {
+    ensureLongSize(index + 1);
+    myStorage.put(index, value);
+  }
+
+  public void get(long index, byte[] dst, int offset, int length) {
+    myStorage.get(index, dst, offset, length);
+  }
+
+  public void put(long index, byte[] src, int offset, int length) {
+    ensureLongSize(index + length);
+    myStorage.put(index, src, offset, length);
+  }
+
   public void close() {
     try {
       force();
@@ -67,7 +67,7 @@ public class CharArrayUtil {
   public static void getChars(CharSequence src, char[] dst, int srcOffset, int dstOffset, int len) {
     if (len >= GET_CHARS_THRESHOLD) {
       if (src instanceof String) {
-        ((String)src).getChars(srcOffset, len, dst, dstOffset);
+        ((String)src).getChars(srcOffset, srcOffset + len, dst, dstOffset);
         return;
       }
       else if (src instanceof CharBuffer) {
@@ -79,7 +79,7 @@ public class CharArrayUtil {
         return;
       }
       else if (src instanceof CharSequenceBackedByArray) {
-        ((CharSequenceBackedByArray)src.subSequence(srcOffset, len)).getChars(dst, dstOffset);
+        ((CharSequenceBackedByArray)src.subSequence(srcOffset, srcOffset + len)).getChars(dst, dstOffset);
         return;
       }
       else if (src instanceof StringBuffer) {
@@ -121,6 +121,16 @@ public class CharArrayUtil {
     return null;
   }
 
+  /**
+   * @return a new array with the given range of the sequence
+   */
+  @NotNull
+  public static char[] fromSequence(@NotNull CharSequence seq, int start, int end) {
+    char[] result = new char[end - start];
+    getChars(seq, result, start, 0, result.length);
+    return result;
+  }
+
   public static char[] fromSequence(CharSequence seq) {
     if (seq instanceof CharSequenceBackedByArray) {
       return ((CharSequenceBackedByArray)seq).getChars();
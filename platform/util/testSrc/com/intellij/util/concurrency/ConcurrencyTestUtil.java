@@ -0,0 +1,61 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrencyTestUtil {
+  private ConcurrencyTestUtil() {
+  }
+
+  public interface ThreadBody {
+    void run(int thread) throws Exception;
+  }
+
+  /**
+   * Runs the body in the given number of threads at once and waits for all of them. The first failure of a thread,
+   * an assertion one included, is rethrown.
+   */
+  public static void runConcurrently(int count, final ThreadBody body) throws Exception {
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < count; i++) {
+      final int thread = i;
+      threads.add(new Thread("concurrent test thread " + i) {
+        @Override
+        public void run() {
+          try {
+            body.run(thread);
+          }
+          catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
+    if (!errors.isEmpty()) {
+      final Throwable error = errors.get(0);
+      if (error instanceof Error) throw (Error)error;
+      if (error instanceof Exception) throw (Exception)error;
+      throw new RuntimeException(error);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class MyersLCSTest extends TestCase {
+  public void testMinimalWithoutHeuristic() {
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      int[] first = randomArray(random, random.nextInt(30), 1 + random.nextInt(4));
+      int[] second = randomArray(random, random.nextInt(30), 1 + random.nextInt(4));
+      MyersLCS lcs = new MyersLCS(first, second, false);
+      lcs.execute();
+      assertEquals(lcsLength(first, second), checkCommonSubsequence(first, second, lcs));
+    }
+  }
+
+  public void testValidWithHeuristic() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10; i++) {
+      int[] first = randomArray(random, 2000 + random.nextInt(2000), 3);
+      int[] second = randomArray(random, 2000 + random.nextInt(2000), 3);
+      MyersLCS lcs = new MyersLCS(first, second);
+      lcs.execute();
+      int length = checkCommonSubsequence(first, second, lcs);
+      assertTrue(length > 0);
+      assertTrue(length <= lcsLength(first, second));
+    }
+  }
+
+  public void testLargeFiles() throws FilesTooBigForDiffException {
+    int lines = 100000;
+    for (int changes : new int[]{10, 10000}) {
+      Random random = new Random(changes);
+      String[] before = new String[lines];
+      for (int i = 0; i < lines; i++) {
+        before[i] = "line " + random.nextInt(lines / 2);
+      }
+      String[] after = before.clone();
+      for (int i = 0; i < changes; i++) {
+        after[random.nextInt(lines)] = "changed " + random.nextInt(lines / 2);
+      }
+      Diff.Change change = Diff.buildChanges(before, after);
+
+      int index1 = 0;
+      int index2 = 0;
+      int changed = 0;
+      for (; change != null; change = change.link) {
+        for (; index1 < change.line0; index1++, index2++) {
+          assertEquals(before[index1], after[index2]);
+        }
+        assertEquals(change.line1, index2);
+        index1 += change.deleted;
+        index2 += change.inserted;
+        changed += change.deleted;
+      }
+      if (changes < 100) assertTrue(changed <= changes);
+    }
+  }
+
+  private static int[] randomArray(Random random, int length, int alphabet) {
+    int[] result = new int[length];
+    for (int i = 0; i < length; i++) {
+      result[i] = random.nextInt(alphabet);
+    }
+    return result;
+  }
+
+  private static int checkCommonSubsequence(int[] first, int[] second, MyersLCS lcs) {
+    boolean[] changes1 = lcs.getChanges1();
+    boolean[] changes2 = lcs.getChanges2();
+    int x = 0;
+    int y = 0;
+    int length = 0;
+    while (true) {
+      while (x < first.length && changes1[x]) x++;
+      while (y < second.length && changes2[y]) y++;
+      if (x == first.length || y == second.length) break;
+      assertEquals(first[x], second[y]);
+      x++;
+      y++;
+      length++;
+    }
+    while (x < first.length) assertTrue(changes1[x++]);
+    while (y < second.length) assertTrue(changes2[y++]);
+    return length;
+  }
+
+  private static int lcsLength(int[] first, int[] second) {
+    int[][] lengths = new int[first.length + 1][second.length + 1];
+    for (int i = first.length - 1; i >= 0; i--) {
+      for (int j = second.length - 1; j >= 0; j--) {
+        lengths[i][j] = first[i] == second[j] ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+      }
+    }
+    return lengths[0][0];
+  }
+}
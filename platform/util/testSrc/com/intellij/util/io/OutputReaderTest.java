@@ -0,0 +1,150 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class OutputReaderTest extends TestCase {
+  private ExecutorService myExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myExecutor.shutdownNow();
+    super.tearDown();
+  }
+
+  public void testLinesAreSplitTheSameWay() throws Exception {
+    String text = "first\r\nsecond\rthird\n\nlast";
+    assertEquals(Arrays.asList("first\n", "second\rthird\n", "\n", "last"), readLines(text, false));
+    assertEquals(StringUtil.join(readLines(text, false), ""), StringUtil.join(readLines(text, true), ""));
+  }
+
+  public void testLinesReadAtOnceAreDeliveredAtOnce() throws Exception {
+    PipedWriter writer = new PipedWriter();
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    OutputReader reader = createReader(new PipedReader(writer), lines);
+    writer.write("first\r\nsecond\n\nthird");
+    writer.flush();
+    reader.readFully();
+    assertEquals(Arrays.asList("first\nsecond\n\n", "third"), lines);
+    writer.close();
+    reader.stop();
+    reader.waitFor();
+  }
+
+  public void testReadFullyWaitsForWrittenOutput() throws Exception {
+    PipedWriter writer = new PipedWriter();
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    OutputReader reader = createReader(new PipedReader(writer), lines);
+    for (int i = 0; i < 20; i++) {
+      writer.write("line " + i + "\npart");
+      writer.flush();
+      reader.readFully();
+      assertEquals(Arrays.asList("line " + i + "\n", "part"), lines);
+      lines.clear();
+      writer.write("\n");
+      writer.flush();
+      reader.readFully();
+      assertEquals(Arrays.asList("\n"), lines);
+      lines.clear();
+    }
+    writer.close();
+    reader.stop();
+    reader.waitFor();
+  }
+
+  public void testDiscardedOutputIsNotDelivered() throws Exception {
+    PipedWriter writer = new PipedWriter();
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    OutputReader reader = createReader(new PipedReader(writer), lines);
+    writer.write("before\n");
+    writer.flush();
+    reader.readFully();
+    reader.discardOutput();
+    writer.write("after\n");
+    writer.close();
+    reader.stop();
+    reader.waitFor();
+    assertEquals(Arrays.asList("before\n"), lines);
+  }
+
+  public void testDiscardingReaderEndsWhileStreamIsOpen() throws Exception {
+    PipedWriter writer = new PipedWriter();
+    final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+    OutputReader reader = createReader(new PipedReader(writer), lines);
+    reader.stop();
+    reader.discardOutput();
+    // a child of the terminated process still writes and never closes the stream
+    writer.write("after\n");
+    writer.flush();
+    assertTrue(reader.waitFor(10, TimeUnit.SECONDS));
+    assertTrue(lines.isEmpty());
+  }
+
+  private OutputReader createReader(Reader input, final List<String> lines) {
+    return new OutputReader(input, true) {
+      @Override
+      protected void onTextAvailable(@NotNull String text) {
+        lines.add(text);
+      }
+
+      @Override
+      protected Future<?> executeOnPooledThread(Runnable runnable) {
+        return myExecutor.submit(runnable);
+      }
+    };
+  }
+
+  private List<String> readLines(String text, boolean blocking) throws InterruptedException {
+    final List<String> lines = new ArrayList<String>();
+    OutputReader reader = new OutputReader(new StringReader(text), blocking) {
+      @Override
+      protected void onTextAvailable(@NotNull String text) {
+        lines.add(text);
+      }
+
+      @Override
+      protected Future<?> executeOnPooledThread(Runnable runnable) {
+        return myExecutor.submit(runnable);
+      }
+    };
+    reader.readFully();
+    reader.stop();
+    reader.waitFor();
+    return lines;
+  }
+}
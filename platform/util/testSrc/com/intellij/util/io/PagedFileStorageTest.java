@@ -16,6 +16,7 @@
 package com.intellij.util.io;
 
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.ConcurrencyTestUtil;
 import junit.framework.TestCase;
 
 import java.io.File;
@@ -72,4 +73,61 @@ public class PagedFileStorageTest extends TestCase {
       assertEquals(1234, file.getInt(Integer.MAX_VALUE - 20));
     }
   }
+
+  public void testConcurrentStorage() throws Exception {
+    final PagedFileStorage storage = new PagedFileStorage(f, new PagedFileStorage.StorageLock(true, true), Page.PAGE_SIZE, false);
+    final int size = 16 * Page.PAGE_SIZE;
+    storage.resize((long)size);
+
+    ConcurrencyTestUtil.runConcurrently(8, new ConcurrencyTestUtil.ThreadBody() {
+      @Override
+      public void run(int thread) {
+        // every thread owns its own stripe of addresses, unaligned and crossing page boundaries
+        for (long addr = thread * 12 + 1; addr + 8 < size; addr += 8 * 12) {
+          storage.putLong(addr, addr);
+        }
+        for (long addr = thread * 12 + 1; addr + 8 < size; addr += 8 * 12) {
+          assertEquals(addr, storage.getLong(addr));
+        }
+      }
+    });
+    storage.close();
+  }
+
+  public void testConcurrentStorageEviction() throws Exception {
+    final int pages = 64;
+    final int mappedPagesLimit = 4;
+    final int threads = 4;
+    PagedFileStorage.StorageLock lock = new PagedFileStorage.StorageLock(true, true, mappedPagesLimit * Page.PAGE_SIZE);
+    final PagedFileStorage storage = new PagedFileStorage(f, lock, Page.PAGE_SIZE, true);
+    storage.resize((long)pages * Page.PAGE_SIZE);
+
+    ConcurrencyTestUtil.runConcurrently(threads, new ConcurrencyTestUtil.ThreadBody() {
+      @Override
+      public void run(int thread) {
+        // every page is mapped, evicted and mapped again many times while the others are read
+        for (int round = 0; round < 10; round++) {
+          for (int page = 0; page < pages; page++) {
+            long addr = (long)page * Page.PAGE_SIZE + thread * 8;
+            storage.putLong(addr, addr + round);
+          }
+          for (int page = 0; page < pages; page++) {
+            long addr = (long)page * Page.PAGE_SIZE + thread * 8;
+            assertEquals(addr + round, storage.getLong(addr));
+          }
+        }
+      }
+    });
+    // the evicted pages are unmapped once no thread reads them
+    int mapped = storage.getMappedPagesCount();
+    assertTrue(String.valueOf(mapped), mapped <= mappedPagesLimit + threads);
+
+    storage.resize((long)(pages + 1) * Page.PAGE_SIZE);
+    assertEquals(1, storage.getMappedPagesCount()); // the one filled with zeros
+    for (int page = 0; page < pages; page++) {
+      assertEquals((long)page * Page.PAGE_SIZE + 9, storage.getLong((long)page * Page.PAGE_SIZE));
+    }
+    storage.close();
+    assertEquals(0, storage.getMappedPagesCount());
+  }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PersistentHashMapTest extends TestCase {
+  private static final int KEYS = 10000;
+
+  private File myDir;
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("persistentHashMap", "");
+    myFile = new File(myDir, "map");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  public void testBackgroundCompaction() throws Exception {
+    PersistentHashMap<String, String> map = createMap();
+    try {
+      for (int round = 0; round < 4; round++) {
+        for (int i = 0; i < KEYS; i++) {
+          map.put(key(i), value(i, round));
+        }
+      }
+    }
+    finally {
+      map.close();
+    }
+    long sizeBefore = new File(myDir, "map" + PersistentHashMap.DATA_FILE_EXTENSION).length();
+
+    map = createMap();
+    try {
+      // the map is usable while the values are being compacted
+      for (int i = 0; i < KEYS; i += 2) {
+        map.put(key(i), value(i, 4));
+      }
+      for (int i = 0; i < KEYS; i++) {
+        assertEquals(value(i, i % 2 == 0 ? 4 : 3), map.get(key(i)));
+      }
+
+      long deadline = System.currentTimeMillis() + 60000;
+      while (map.getCompactionProgress() >= 0) {
+        assertTrue("Compaction takes too long", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+
+      for (int i = 0; i < KEYS; i++) {
+        assertEquals(value(i, i % 2 == 0 ? 4 : 3), map.get(key(i)));
+      }
+    }
+    finally {
+      map.close();
+    }
+    long sizeAfter = new File(myDir, "map" + PersistentHashMap.DATA_FILE_EXTENSION).length();
+    assertTrue(sizeBefore + " -> " + sizeAfter, sizeAfter < sizeBefore / 2);
+    assertFalse(new File(myDir, "map" + PersistentHashMap.DATA_FILE_EXTENSION + ".new").exists());
+
+    map = createMap();
+    try {
+      for (int i = 0; i < KEYS; i++) {
+        assertEquals(value(i, i % 2 == 0 ? 4 : 3), map.get(key(i)));
+      }
+    }
+    finally {
+      map.close();
+    }
+  }
+
+  private PersistentHashMap<String, String> createMap() throws IOException {
+    return new PersistentHashMap<String, String>(myFile, new EnumeratorStringDescriptor(), new EnumeratorStringDescriptor());
+  }
+
+  private static String key(int i) {
+    return "key" + i;
+  }
+
+  private static String value(int i, int round) {
+    return round + StringUtil.repeatSymbol('v', 200) + i;
+  }
+}
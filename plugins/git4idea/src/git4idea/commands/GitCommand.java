@@ -29,6 +29,7 @@ public class GitCommand {
   public static final GitCommand CHECKOUT = write("checkout");
   public static final GitCommand COMMIT = write("commit");
   public static final GitCommand CONFIG = meta("config");
+  public static final GitCommand CAT_FILE = meta("cat-file");
   public static final GitCommand CHECK_ATTR = read("check-attr");
   public static final GitCommand CHERRY_PICK = write("cherry-pick");
   public static final GitCommand CLONE = write("clone");
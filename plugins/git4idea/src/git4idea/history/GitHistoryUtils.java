@@ -21,6 +21,7 @@ import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vcs.FilePathImpl;
 import com.intellij.openapi.vcs.FileStatus;
@@ -35,6 +36,7 @@ import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.AsynchConsumer;
 import com.intellij.util.Consumer;
+import com.intellij.util.Processor;
 import com.intellij.util.concurrency.Semaphore;
 import git4idea.GitBranch;
 import git4idea.GitFileRevision;
@@ -540,6 +542,73 @@ public class GitHistoryUtils {
     return rc;
   }
 
+  /**
+   * @return full and short hashes of the commits the starting points (or all refs, if there are none) point to
+   */
+  public static List<Pair<String, String>> refTips(Project project, @NotNull VirtualFile root, @NotNull Collection<String> startingPoints)
+    throws VcsException {
+    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
+    GitLogParser parser = new GitLogParser(project, HASH, SHORT_HASH);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.addParameters("--no-walk", parser.getPretty());
+    if (startingPoints.isEmpty()) {
+      h.addParameters("--all");
+    } else {
+      h.addParameters(new ArrayList<String>(startingPoints));
+    }
+    h.endOptions();
+    String output = h.run();
+
+    final List<Pair<String, String>> rc = new ArrayList<Pair<String, String>>();
+    for (GitLogRecord record : parser.parse(output)) {
+      rc.add(new Pair<String, String>(record.getHash(), record.getShortHash()));
+    }
+    return rc;
+  }
+
+  /**
+   * @return those of the full hashes which are commits present in the repository, e.g. not pruned by gc
+   */
+  public static Set<String> existingCommits(Project project, @NotNull VirtualFile root, @NotNull final Collection<String> hashes)
+    throws VcsException {
+    if (hashes.isEmpty()) return Collections.emptySet();
+    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.CAT_FILE);
+    h.setNoSSH(true);
+    h.setSilent(true);
+    h.addParameters("--batch-check");
+    h.setInputProcessor(new Processor<OutputStream>() {
+      @Override
+      public boolean process(OutputStream stream) {
+        try {
+          try {
+            for (String hash : hashes) {
+              stream.write((hash + "\n").getBytes("US-ASCII"));
+            }
+          }
+          finally {
+            stream.close();
+          }
+        }
+        catch (IOException e) {
+          LOG.info(e);
+        }
+        return true;
+      }
+    });
+    String output = h.run();
+
+    // "<hash> <type> <size>" for the objects found, "<hash> missing" for the others
+    final Set<String> rc = new HashSet<String>();
+    for (String line : StringUtil.splitByLines(output)) {
+      final String[] parts = line.split(" ");
+      if (parts.length == 3 && "commit".equals(parts[1])) {
+        rc.add(parts[0]);
+      }
+    }
+    return rc;
+  }
+
   public static List<GitCommit> history(final Project project, @NotNull VirtualFile root, String... parameters) throws VcsException {
     final List<GitCommit> commits = new ArrayList<GitCommit>();
     final Semaphore semaphore = new Semaphore();
@@ -834,11 +903,28 @@ public class GitHistoryUtils {
   public static void hashesWithParents(Project project, FilePath path, final AsynchConsumer<CommitHashPlusParents> consumer,
                                        final Getter<Boolean> isCanceled,
                                        Collection<VirtualFile> paths, final String... parameters) throws VcsException {
+    hashesWithParents(project, path, consumer, isCanceled, paths, false, parameters);
+  }
+
+  /**
+   * Same as {@link #hashesWithParents(Project, FilePath, AsynchConsumer, Getter, Collection, String...)}, but gives the full hashes
+   * and the author emails
+   */
+  public static void fullHashesWithParents(Project project, FilePath path, final AsynchConsumer<CommitHashPlusParents> consumer,
+                                           final Getter<Boolean> isCanceled, final String... parameters) throws VcsException {
+    hashesWithParents(project, path, consumer, isCanceled, null, true, parameters);
+  }
+
+  private static void hashesWithParents(Project project, FilePath path, final AsynchConsumer<CommitHashPlusParents> consumer,
+                                        final Getter<Boolean> isCanceled, Collection<VirtualFile> paths, final boolean full,
+                                        final String... parameters) throws VcsException {
     // adjust path using change manager
     path = getLastCommitName(project, path);
     final VirtualFile root = GitUtil.getGitRoot(path);
     final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
-    final GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NAME,  SHORT_HASH, COMMIT_TIME, SHORT_PARENTS, AUTHOR_NAME);
+    final GitLogParser parser = full
+                                ? new GitLogParser(project, GitLogParser.NameStatus.NAME, HASH, COMMIT_TIME, PARENTS, AUTHOR_NAME, AUTHOR_EMAIL)
+                                : new GitLogParser(project, GitLogParser.NameStatus.NAME, SHORT_HASH, COMMIT_TIME, SHORT_PARENTS, AUTHOR_NAME);
     h.setNoSSH(true);
     h.setStdoutSuppressed(true);
     h.addParameters(parameters);
@@ -864,9 +950,14 @@ public class GitHistoryUtils {
               return;
             }
             GitLogRecord record = parser.parseOneRecord(line);
-            consumer.consume(new CommitHashPlusParents(record.getShortHash(),
-                                                       record.getParentsShortHashes(), record.getLongTimeStamp() * 1000,
-                                                       record.getAuthorName()));
+            if (full) {
+              consumer.consume(new CommitHashPlusParents(record.getHash(), record.getParentsHashes(), record.getLongTimeStamp() * 1000,
+                                                         record.getAuthorName(), record.getAuthorEmail()));
+            } else {
+              consumer.consume(new CommitHashPlusParents(record.getShortHash(),
+                                                         record.getParentsShortHashes(), record.getLongTimeStamp() * 1000,
+                                                         record.getAuthorName()));
+            }
           }
         } catch (ProcessCanceledException e) {
           h.cancel();
@@ -86,6 +86,8 @@ public abstract class AbstractHash {
 
   private static class Many extends AbstractHash {
     private final long[] myData;
+    // the number of digits after the leading zeros
+    private final int myLength;
 
     private Many(final String shortForm) {
       int nullsSize = 0;
@@ -93,25 +95,34 @@ public abstract class AbstractHash {
         if (shortForm.charAt(nullsSize) != '0') break;
       }
       final String withoutNulls = shortForm.substring(nullsSize);
-      final int length = withoutNulls.length();
-      final int size = (length >> 3) + 1 + nullsSize;
+      myLength = withoutNulls.length();
+      final int size = ((myLength + 7) >> 3) + nullsSize;
       myData = new long[size];
       for (int i = 0; i < nullsSize; i++) {
         myData[i] = 0;
       }
       for (int i = 0; i < (size - nullsSize); i++) {
         final int idx = i << 3;
-        final int end = Math.min(idx + 8, length);
+        final int end = Math.min(idx + 8, myLength);
         myData[i + nullsSize] = Long.parseLong(withoutNulls.substring(idx, end), 16);
       }
     }
 
-    // todo?
     @Override
     public String getString() {
-      final StringBuilder sb = new StringBuilder(myData.length << 3);
-      for (long l : myData) {
-        sb.append(Long.toHexString(l));
+      final int nullsSize = myData.length - ((myLength + 7) >> 3);
+      final StringBuilder sb = new StringBuilder(nullsSize + myLength);
+      for (int i = 0; i < nullsSize; i++) {
+        sb.append('0');
+      }
+      for (int i = nullsSize; i < myData.length; i++) {
+        final String chunk = Long.toHexString(myData[i]);
+        // the zeros inside the hash are kept: every chunk but the last one has 8 digits
+        final int chunkLength = Math.min(8, myLength - ((i - nullsSize) << 3));
+        for (int j = chunk.length(); j < chunkLength; j++) {
+          sb.append('0');
+        }
+        sb.append(chunk);
       }
       return sb.toString();
     }
@@ -123,6 +134,7 @@ public abstract class AbstractHash {
 
       Many many = (Many)o;
 
+      if (myLength != many.myLength) return false;
       if (!Arrays.equals(myData, many.myData)) return false;
 
       return true;
@@ -130,7 +142,7 @@ public abstract class AbstractHash {
 
     @Override
     public int hashCode() {
-      return Arrays.hashCode(myData);
+      return 31 * Arrays.hashCode(myData) + myLength;
     }
   }
 
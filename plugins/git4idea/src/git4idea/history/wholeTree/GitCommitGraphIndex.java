@@ -0,0 +1,375 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.containers.SLRUMap;
+import com.intellij.util.io.PersistentStringEnumerator;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Commit graph of one repository kept on disk, so the log can be shown and filtered by author and date without asking git
+ * for the whole history each time.
+ * <p/>
+ * Full hashes and authors ("name &lt;email&gt;", as git matches them with --author) are enumerated into ints; the commits file
+ * holds one record per commit in the order they were appended: hash id, author id, time and parent hash ids. Everything but
+ * the strings is loaded into columns on open.
+ * <p/>
+ * Commits can only be appended: new commits are those not reachable from {@link #getHeads()}.
+ */
+public class GitCommitGraphIndex {
+  private static final int VERSION = 2;
+  // rows are sorted by time packing the seconds above the row number
+  private static final int ROW_BITS = 29;
+  private static final long MAX_SECONDS = (1L << (63 - ROW_BITS)) - 1;
+
+  private final Object myLock = new Object();
+  private final File myDir;
+  private final PersistentStringEnumerator myHashes;
+  private final PersistentStringEnumerator myUsers;
+  private final File myCommitsFile;
+
+  // columns; row = index of the commit record in the commits file
+  private final TIntArrayList myHashIds = new TIntArrayList();
+  private final TIntArrayList myAuthorIds = new TIntArrayList();
+  private final TLongArrayList myTimes = new TLongArrayList();
+  // parents of row i are myParentIds[myParentStarts[i] .. myParentStarts[i + 1])
+  private final TIntArrayList myParentStarts = new TIntArrayList();
+  private final TIntArrayList myParentIds = new TIntArrayList();
+  private final TIntIntHashMap myRowByHashId = new TIntIntHashMap();
+  // rows that some indexed commit has as a parent
+  private final BitSet myHasChildren = new BitSet();
+  private final TIntHashSet myParentHashIds = new TIntHashSet();
+  private final TIntObjectHashMap<String> myAuthors = new TIntObjectHashMap<String>();
+  // rows sorted by time descending; null when to be recalculated
+  private int[] myByTime;
+  // rows reachable from a tip row
+  private final SLRUMap<Integer, BitSet> myReachable = new SLRUMap<Integer, BitSet>(20, 20);
+
+  public GitCommitGraphIndex(@NotNull File dir) throws IOException {
+    myDir = dir;
+    myDir.mkdirs();
+    myCommitsFile = new File(dir, "commits");
+    myHashes = new PersistentStringEnumerator(new File(dir, "hashes"));
+    try {
+      myUsers = new PersistentStringEnumerator(new File(dir, "users"));
+    }
+    catch (IOException e) {
+      myHashes.close();
+      throw e;
+    }
+    try {
+      load();
+    }
+    catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Removes the stored data, e.g. when it is corrupted or git can't update it
+   */
+  public static void clear(@NotNull File dir) {
+    FileUtil.delete(dir);
+  }
+
+  private void load() throws IOException {
+    if (!myCommitsFile.exists()) {
+      final DataOutputStream out = new DataOutputStream(new FileOutputStream(myCommitsFile));
+      try {
+        out.writeInt(VERSION);
+      }
+      finally {
+        out.close();
+      }
+    }
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myCommitsFile)));
+    long position = 4;
+    try {
+      if (in.readInt() != VERSION) throw new IOException("Unknown version of " + myCommitsFile);
+      myParentStarts.add(0);
+      while (true) {
+        final int hashId;
+        try {
+          hashId = in.readInt();
+        }
+        catch (EOFException e) {
+          break;
+        }
+        final int authorId;
+        final long time;
+        final int[] parents;
+        try {
+          authorId = in.readInt();
+          time = in.readLong();
+          parents = new int[in.readInt()];
+          for (int i = 0; i < parents.length; i++) {
+            parents[i] = in.readInt();
+          }
+        }
+        catch (EOFException e) {
+          // the last append was interrupted
+          break;
+        }
+        addRow(hashId, authorId, time, parents);
+        position += 4 + 4 + 8 + 4 + 4 * parents.length;
+      }
+    }
+    finally {
+      in.close();
+    }
+    if (position < myCommitsFile.length()) {
+      final RandomAccessFile file = new RandomAccessFile(myCommitsFile, "rw");
+      try {
+        file.setLength(position);
+      }
+      finally {
+        file.close();
+      }
+    }
+  }
+
+  private void addRow(int hashId, int authorId, long time, int[] parents) {
+    final int row = myHashIds.size();
+    myHashIds.add(hashId);
+    myAuthorIds.add(authorId);
+    myTimes.add(time);
+    myParentIds.add(parents);
+    myParentStarts.add(myParentIds.size());
+    myRowByHashId.put(hashId, row);
+    // parents usually come after the children
+    if (myParentHashIds.contains(hashId)) {
+      myHasChildren.set(row);
+    }
+    for (int parent : parents) {
+      myParentHashIds.add(parent);
+      if (myRowByHashId.containsKey(parent)) {
+        myHasChildren.set(myRowByHashId.get(parent));
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    synchronized (myLock) {
+      try {
+        myHashes.close();
+      }
+      finally {
+        myUsers.close();
+      }
+    }
+  }
+
+  public int size() {
+    synchronized (myLock) {
+      return myHashIds.size();
+    }
+  }
+
+  /**
+   * @return the indexed commits without indexed children, newest first: the commits not reachable from them are not in the index yet.
+   *         Some of them may be gone from the repository, e.g. the tips of deleted branches after gc.
+   */
+  @NotNull
+  public List<String> getHeads() throws IOException {
+    return getHeads(Integer.MAX_VALUE);
+  }
+
+  @NotNull
+  public List<String> getHeads(int maxCount) throws IOException {
+    synchronized (myLock) {
+      final List<String> result = new ArrayList<String>();
+      for (int row : getByTime()) {
+        if (result.size() >= maxCount) break;
+        if (!myHasChildren.get(row)) {
+          result.add(myHashes.valueOf(myHashIds.get(row)));
+        }
+      }
+      return result;
+    }
+  }
+
+  public boolean contains(@NotNull String hash) throws IOException {
+    synchronized (myLock) {
+      final int id = myHashes.tryEnumerate(hash);
+      return id != 0 && myRowByHashId.containsKey(id);
+    }
+  }
+
+  /**
+   * Appends the commits that are not indexed yet. Parents may be appended later than their children, but the batch should be
+   * complete: the heads of an interrupted load would hide the commits that were not loaded from the next update.
+   * <p/>
+   * The commits should have full hashes and the author emails.
+   */
+  public void append(@NotNull List<CommitHashPlusParents> commits) throws IOException {
+    synchronized (myLock) {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myCommitsFile, true)));
+      try {
+        for (CommitHashPlusParents commit : commits) {
+          final int hashId = myHashes.enumerate(commit.getHash());
+          if (myRowByHashId.containsKey(hashId)) continue;
+          final int authorId = myUsers.enumerate(getAuthor(commit.getAuthorName(), commit.getAuthorEmail()));
+          final List<AbstractHash> parentHashes = commit.getParents();
+          final int[] parents = new int[parentHashes.size()];
+          for (int i = 0; i < parents.length; i++) {
+            parents[i] = myHashes.enumerate(parentHashes.get(i).getString());
+          }
+          out.writeInt(hashId);
+          out.writeInt(authorId);
+          out.writeLong(commit.getTime());
+          out.writeInt(parents.length);
+          for (int parent : parents) {
+            out.writeInt(parent);
+          }
+          addRow(hashId, authorId, commit.getTime(), parents);
+        }
+      }
+      finally {
+        out.close();
+        myHashes.force();
+        myUsers.force();
+        myByTime = null;
+        myReachable.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the rows of the commits reachable from any of the tips; the tips that are not indexed are ignored
+   */
+  @NotNull
+  public BitSet getReachable(@NotNull Collection<String> tips) throws IOException {
+    synchronized (myLock) {
+      final BitSet result = new BitSet();
+      for (String tip : tips) {
+        final int id = myHashes.tryEnumerate(tip);
+        if (id == 0 || !myRowByHashId.containsKey(id)) continue;
+        final int row = myRowByHashId.get(id);
+        if (result.get(row)) continue;
+        BitSet reachable = myReachable.get(row);
+        if (reachable == null) {
+          reachable = walk(row);
+          myReachable.put(row, reachable);
+        }
+        result.or(reachable);
+      }
+      return result;
+    }
+  }
+
+  private BitSet walk(int tip) {
+    final BitSet result = new BitSet();
+    final TIntArrayList stack = new TIntArrayList();
+    stack.add(tip);
+    result.set(tip);
+    while (!stack.isEmpty()) {
+      final int row = stack.remove(stack.size() - 1);
+      for (int i = myParentStarts.get(row); i < myParentStarts.get(row + 1); i++) {
+        final int parentId = myParentIds.get(i);
+        if (!myRowByHashId.containsKey(parentId)) continue;
+        final int parent = myRowByHashId.get(parentId);
+        if (!result.get(parent)) {
+          result.set(parent);
+          stack.add(parent);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param rows    only these rows, or all if null
+   * @param author  matched against "name &lt;email&gt;" of the author
+   * @param after   the commits strictly after this time, or -1
+   * @param before  the commits strictly before this time, or -1
+   * @return the matching commits, newest first
+   */
+  @NotNull
+  public List<CommitHashPlusParents> find(@Nullable BitSet rows, @Nullable Pattern author, long after, long before, int maxCount)
+    throws IOException {
+    synchronized (myLock) {
+      final int[] byTime = getByTime();
+      final List<CommitHashPlusParents> result = new ArrayList<CommitHashPlusParents>();
+      for (int row : byTime) {
+        if (maxCount > 0 && result.size() >= maxCount) break;
+        final long time = myTimes.get(row);
+        if (before >= 0 && time >= before) continue;
+        if (after >= 0 && time <= after) break;
+        if (rows != null && !rows.get(row)) continue;
+        final String authorString = getAuthor(myAuthorIds.get(row));
+        if (author != null && !author.matcher(authorString).find()) continue;
+        final String[] parents = new String[myParentStarts.get(row + 1) - myParentStarts.get(row)];
+        for (int i = 0; i < parents.length; i++) {
+          parents[i] = myHashes.valueOf(myParentIds.get(myParentStarts.get(row) + i));
+        }
+        final int emailStart = authorString.lastIndexOf(" <");
+        final String name = emailStart < 0 ? authorString : authorString.substring(0, emailStart);
+        final String email = emailStart < 0 ? null : authorString.substring(emailStart + 2, authorString.length() - 1);
+        result.add(new CommitHashPlusParents(myHashes.valueOf(myHashIds.get(row)), parents, time, name, email));
+      }
+      return result;
+    }
+  }
+
+  @NotNull
+  private static String getAuthor(@NotNull String name, @Nullable String email) {
+    return email == null ? name : name + " <" + email + ">";
+  }
+
+  private String getAuthor(int id) throws IOException {
+    String author = myAuthors.get(id);
+    if (author == null) {
+      author = myUsers.valueOf(id);
+      myAuthors.put(id, author);
+    }
+    return author;
+  }
+
+  private int[] getByTime() {
+    if (myByTime == null) {
+      final long[] keys = new long[myHashIds.size()];
+      for (int row = 0; row < keys.length; row++) {
+        final long seconds = Math.min(MAX_SECONDS, Math.max(0, myTimes.get(row) / 1000));
+        keys[row] = ((MAX_SECONDS - seconds) << ROW_BITS) | row;
+      }
+      Arrays.sort(keys);
+      final int[] byTime = keys.length == 0 ? ArrayUtil.EMPTY_INT_ARRAY : new int[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        byTime[i] = (int)(keys[i] & ((1 << ROW_BITS) - 1));
+      }
+      myByTime = byTime;
+    }
+    return myByTime;
+  }
+
+  @Override
+  public String toString() {
+    return "GitCommitGraphIndex[" + myDir + "]";
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history.wholeTree;
+
+import com.intellij.lifecycle.PeriodicalTasksCloser;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.Getter;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vcs.FilePathImpl;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vcs.changes.FilePathsHelper;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.AsynchConsumer;
+import git4idea.history.GitHistoryUtils;
+import git4idea.history.browser.ChangesFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Commit graph indexes of the project's git roots, see {@link GitCommitGraphIndex}.
+ * <p/>
+ * Disabled with -Dgit.log.graph.index=false
+ */
+public class GitCommitGraphIndexes {
+  private static final Logger LOG = Logger.getInstance("#git4idea.history.wholeTree.GitCommitGraphIndexes");
+  private static final boolean ENABLED = !"false".equals(System.getProperty("git.log.graph.index"));
+  // the shortest hash git prints with %h
+  private static final int DEFAULT_ABBREVIATION = 7;
+  // the newest indexed heads excluded from the update besides the indexed ref tips, each of them is a command line argument
+  private static final int MAX_EXCLUDED_HEADS = 100;
+
+  private final Project myProject;
+  private final File myDir;
+  private final Object myLock = new Object();
+  private final Map<VirtualFile, GitCommitGraphIndex> myIndexes = new HashMap<VirtualFile, GitCommitGraphIndex>();
+  private boolean myDisposed;
+
+  public static GitCommitGraphIndexes getInstance(final Project project) {
+    return PeriodicalTasksCloser.getInstance().safeGetService(project, GitCommitGraphIndexes.class);
+  }
+
+  public GitCommitGraphIndexes(final Project project) {
+    myProject = project;
+    final File vcsFile = new File(PathManager.getSystemPath(), "vcs");
+    myDir = new File(new File(vcsFile, "git_graph"), project.getLocationHash());
+    Disposer.register(project, new Disposable() {
+      @Override
+      public void dispose() {
+        closeAll();
+      }
+    });
+  }
+
+  /**
+   * @return whether the log with these parameters can be loaded from the index: filters by author and date only, date order
+   */
+  public static boolean canAnswer(@NotNull Collection<ChangesFilter.Filter> filters, boolean topoOrder) {
+    if (!ENABLED || topoOrder) return false;
+    for (ChangesFilter.Filter filter : filters) {
+      if (!(filter instanceof ChangesFilter.Author) && !(filter instanceof ChangesFilter.BeforeDate) &&
+          !(filter instanceof ChangesFilter.AfterDate)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Nullable
+  private GitCommitGraphIndex getIndex(@NotNull VirtualFile root) {
+    synchronized (myLock) {
+      if (myDisposed) return null;
+      GitCommitGraphIndex index = myIndexes.get(root);
+      if (index == null) {
+        final String path = FilePathsHelper.convertPath(root);
+        final File dir = getDir(root);
+        try {
+          index = new GitCommitGraphIndex(dir);
+        }
+        catch (IOException e) {
+          LOG.info("Rebuilding commit graph index of " + path, e);
+          GitCommitGraphIndex.clear(dir);
+          try {
+            index = new GitCommitGraphIndex(dir);
+          }
+          catch (IOException e1) {
+            LOG.info(e1);
+            return null;
+          }
+        }
+        myIndexes.put(root, index);
+      }
+      return index;
+    }
+  }
+
+  private File getDir(@NotNull VirtualFile root) {
+    final String path = FilePathsHelper.convertPath(root);
+    return new File(myDir, root.getName() + "." + Integer.toHexString(path.hashCode()));
+  }
+
+  /**
+   * Brings the index of the root up to date, then passes the commits reachable from the starting points (or from all refs)
+   * that match the filters to the consumer, newest first.
+   *
+   * @return false if the index can not be used, so the commits should be loaded from git
+   */
+  public boolean load(@NotNull VirtualFile root, @NotNull Collection<String> startingPoints,
+                      @NotNull Collection<ChangesFilter.Filter> filters, @NotNull AsynchConsumer<CommitHashPlusParents> consumer,
+                      @NotNull Getter<Boolean> isCanceled, int maxCount) throws VcsException {
+    final GitCommitGraphIndex index = getIndex(root);
+    if (index == null) return false;
+
+    final StringBuilder authors = new StringBuilder();
+    long before = -1;
+    long after = -1;
+    for (ChangesFilter.Filter filter : filters) {
+      if (filter instanceof ChangesFilter.Author) {
+        // git shows the commits matching any of the authors
+        if (authors.length() > 0) authors.append('|');
+        authors.append("(?:").append(((ChangesFilter.Author)filter).getRegexp()).append(')');
+      }
+      else if (filter instanceof ChangesFilter.BeforeDate) {
+        final long time = ((ChangesFilter.BeforeDate)filter).getDate().getTime();
+        before = before < 0 ? time : Math.min(before, time);
+      }
+      else if (filter instanceof ChangesFilter.AfterDate) {
+        after = Math.max(after, ((ChangesFilter.AfterDate)filter).getDate().getTime());
+      }
+    }
+
+    final Pattern author;
+    try {
+      author = authors.length() == 0 ? null : Pattern.compile(authors.toString());
+    }
+    catch (PatternSyntaxException e) {
+      // let git report it
+      return false;
+    }
+    try {
+      final List<Pair<String, String>> tipHashes = GitHistoryUtils.refTips(myProject, root, startingPoints);
+      final List<String> tips = new ArrayList<String>(tipHashes.size());
+      // the log shows the short hashes git gives now, the index keeps the full ones
+      int abbreviation = DEFAULT_ABBREVIATION;
+      for (Pair<String, String> tip : tipHashes) {
+        tips.add(tip.getFirst());
+        abbreviation = Math.max(abbreviation, tip.getSecond().length());
+      }
+      try {
+        if (!update(root, index, tips, isCanceled)) return false;
+      }
+      catch (VcsException e) {
+        // the index can't be brought up to date, e.g. it refers to the commits git has pruned
+        LOG.info("Rebuilding commit graph index of " + root.getPath(), e);
+        forget(root, index);
+        GitCommitGraphIndex.clear(getDir(root));
+        return false;
+      }
+      final List<CommitHashPlusParents> commits = index.find(index.getReachable(tips), author, after, before, maxCount);
+      try {
+        for (CommitHashPlusParents commit : commits) {
+          consumer.consume(abbreviate(commit, abbreviation));
+        }
+      }
+      catch (ProcessCanceledException e) {
+        // the log was closed
+      }
+      consumer.finished();
+      return true;
+    }
+    catch (IOException e) {
+      LOG.info(e);
+      forget(root, index);
+      return false;
+    }
+  }
+
+  private static CommitHashPlusParents abbreviate(@NotNull CommitHashPlusParents commit, int length) {
+    final List<AbstractHash> parents = commit.getParents();
+    final String[] shortParents = new String[parents.size()];
+    for (int i = 0; i < shortParents.length; i++) {
+      shortParents[i] = abbreviate(parents.get(i).getString(), length);
+    }
+    return new CommitHashPlusParents(abbreviate(commit.getHash(), length), shortParents, commit.getTime(), commit.getAuthorName());
+  }
+
+  private static String abbreviate(@NotNull String hash, int length) {
+    return hash.length() <= length ? hash : hash.substring(0, length);
+  }
+
+  // loads the commits reachable from the tips that are not indexed yet
+  private boolean update(@NotNull VirtualFile root, @NotNull GitCommitGraphIndex index, @NotNull List<String> tips,
+                         @NotNull Getter<Boolean> isCanceled) throws VcsException, IOException {
+    final List<String> parameters = new ArrayList<String>();
+    // the indexed tips exist and everything reachable from them is indexed
+    final Set<String> excluded = new LinkedHashSet<String>();
+    for (String tip : tips) {
+      if (index.contains(tip)) {
+        excluded.add(tip);
+      }
+      else {
+        parameters.add(tip);
+      }
+    }
+    if (parameters.isEmpty()) return true;
+    // the old tips of the moved refs save loading their history again, unless the refs are gone and gc has pruned them:
+    // git fails on the hashes it doesn't know
+    final List<String> heads = index.getHeads(MAX_EXCLUDED_HEADS);
+    heads.removeAll(excluded);
+    excluded.addAll(GitHistoryUtils.existingCommits(myProject, root, heads));
+    for (String hash : excluded) {
+      parameters.add("^" + hash);
+    }
+    parameters.add("--date-order");
+
+    final List<CommitHashPlusParents> commits = new ArrayList<CommitHashPlusParents>();
+    GitHistoryUtils.fullHashesWithParents(myProject, new FilePathImpl(root), new AsynchConsumer<CommitHashPlusParents>() {
+      @Override
+      public void finished() {
+      }
+
+      @Override
+      public void consume(CommitHashPlusParents commitHashPlusParents) {
+        commits.add(commitHashPlusParents);
+      }
+    }, isCanceled, ArrayUtil.toStringArray(parameters));
+    // only a complete batch can be appended
+    if (Boolean.TRUE.equals(isCanceled.get())) return false;
+    index.append(commits);
+    return true;
+  }
+
+  private void forget(@NotNull VirtualFile root, @NotNull GitCommitGraphIndex index) {
+    synchronized (myLock) {
+      if (myIndexes.get(root) == index) {
+        myIndexes.remove(root);
+      }
+    }
+    try {
+      index.close();
+    }
+    catch (IOException e) {
+      LOG.info(e);
+    }
+  }
+
+  private void closeAll() {
+    synchronized (myLock) {
+      myDisposed = true;
+      for (GitCommitGraphIndex index : myIndexes.values()) {
+        try {
+          index.close();
+        }
+        catch (IOException e) {
+          LOG.info(e);
+        }
+      }
+      myIndexes.clear();
+    }
+  }
+}
@@ -286,6 +286,11 @@ public class LoaderAndRefresherImpl implements LoaderAndRefresher<CommitHashPlus
   private void loadShort(final long continuation, int maxCount) {
     final Collection<ChangesFilter.Filter> filters = addContinuation(continuation);
     try {
+      if (GitCommitGraphIndexes.canAnswer(filters, myTopoOrder) &&
+          GitCommitGraphIndexes.getInstance(myProject).load(myRootHolder.getRoot(), myStartingPoints, filters, myRepeatingLoadConsumer,
+                                                            myProgressAnalog, maxCount)) {
+        return;
+      }
       myLowLevelAccess.loadHashesWithParents(myStartingPoints, filters, myRepeatingLoadConsumer, myProgressAnalog, maxCount, myTopoOrder);
     }
     catch (VcsException e) {
@@ -43,6 +43,13 @@ public class AbstractHashTest extends TestCase {
     Assert.assertFalse(abstractHash.getClass().getName().contains("AbstractHash.StringPresentation"));
     Assert.assertEquals(hash, abstractHash.getString());
   }
+  public void testInnerNulls() throws Exception {
+    final String hash = "0a00000001b000000000000c000d00000000000e";
+    final AbstractHash abstractHash = AbstractHash.create(hash);
+    Assert.assertEquals(hash, abstractHash.getString());
+    Assert.assertEquals(abstractHash, AbstractHash.create(hash));
+    Assert.assertFalse(abstractHash.equals(AbstractHash.create("0a0000000001b000000000000c000d00000000000e")));
+  }
   public void testLeadingNulls() throws Exception {
     final String hash0 = "0";
     final AbstractHash abstractHash0 = AbstractHash.create(hash0);
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2000-2011 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.tests;
+
+import com.intellij.openapi.util.io.FileUtil;
+import git4idea.history.wholeTree.CommitHashPlusParents;
+import git4idea.history.wholeTree.GitCommitGraphIndex;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class GitCommitGraphIndexTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("git_graph", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtil.delete(myDir);
+    super.tearDown();
+  }
+
+  // a <- b <- c (master)
+  //       \
+  //        d <- e (feature)
+  public void testIncrementalUpdate() throws Exception {
+    GitCommitGraphIndex index = new GitCommitGraphIndex(myDir);
+    index.append(Arrays.asList(commit("c", 3, "alice", "b"), commit("b", 2, "bob", "a"), commit("a", 1, "alice")));
+    assertEquals(Arrays.asList("c"), index.getHeads());
+    index.close();
+
+    index = new GitCommitGraphIndex(myDir);
+    assertEquals(3, index.size());
+    assertTrue(index.contains("a"));
+    assertFalse(index.contains("e"));
+    // what git log e ^c gives, parents first this time
+    index.append(Arrays.asList(commit("d", 4, "bob", "b"), commit("e", 5, "carol", "d")));
+    assertEquals(Arrays.asList("e", "c"), index.getHeads());
+    assertEquals(Arrays.asList("e"), index.getHeads(1));
+
+    assertEquals(Arrays.asList("e", "d", "c", "b", "a"), hashes(index, null, null, -1, -1, 0));
+    assertEquals(Arrays.asList("c", "b", "a"), hashes(index, Arrays.asList("c"), null, -1, -1, 0));
+    assertEquals(Arrays.asList("e", "d", "b", "a"), hashes(index, Arrays.asList("e"), null, -1, -1, 0));
+    assertEquals(Arrays.asList("c", "a"), hashes(index, Arrays.asList("c", "e"), Pattern.compile("alice"), -1, -1, 0));
+    assertEquals(Arrays.asList("d", "c"), hashes(index, null, null, 2000, 5000, 0));
+    assertEquals(Arrays.asList("e", "d"), hashes(index, null, null, -1, -1, 2));
+    index.close();
+  }
+
+  public void testAuthorMatchesEmail() throws Exception {
+    GitCommitGraphIndex index = new GitCommitGraphIndex(myDir);
+    index.append(Arrays.asList(commit("b", 2, "bob", "a"), commit("a", 1, "alice")));
+
+    assertEquals(Arrays.asList("a"), hashes(index, null, Pattern.compile("alice@example"), -1, -1, 0));
+    assertEquals(Arrays.asList("b"), hashes(index, null, Pattern.compile("^bob <bob@"), -1, -1, 0));
+    List<CommitHashPlusParents> commits = index.find(null, Pattern.compile("alice"), -1, -1, 0);
+    assertEquals("alice", commits.get(0).getAuthorName());
+    assertEquals("alice@example.com", commits.get(0).getAuthorEmail());
+    index.close();
+  }
+
+  public void testFullHashes() throws Exception {
+    String first = "0a00000001b000000000000c000d00000000000e";
+    String second = "0a00000001b000000000000c000d00000000000f";
+    GitCommitGraphIndex index = new GitCommitGraphIndex(myDir);
+    index.append(Arrays.asList(commit(second, 2, "bob", first), commit(first, 1, "alice")));
+    index.close();
+
+    index = new GitCommitGraphIndex(myDir);
+    assertEquals(Arrays.asList(second), index.getHeads());
+    List<CommitHashPlusParents> commits = index.find(index.getReachable(Arrays.asList(second)), null, -1, -1, 0);
+    assertEquals(2, commits.size());
+    assertEquals(second, commits.get(0).getHash());
+    assertEquals(first, commits.get(0).getParents().get(0).getString());
+    assertEquals(first, commits.get(1).getHash());
+    index.close();
+  }
+
+  public void testInterruptedAppendIsDropped() throws Exception {
+    GitCommitGraphIndex index = new GitCommitGraphIndex(myDir);
+    index.append(Arrays.asList(commit("b", 2, "bob", "a"), commit("a", 1, "alice")));
+    index.close();
+
+    FileOutputStream stream = new FileOutputStream(new File(myDir, "commits"), true);
+    stream.write(new byte[]{0, 0, 0, 1, 0, 0});
+    stream.close();
+
+    index = new GitCommitGraphIndex(myDir);
+    assertEquals(2, index.size());
+    index.append(Arrays.asList(commit("c", 3, "carol", "b")));
+    index.close();
+    index = new GitCommitGraphIndex(myDir);
+    assertEquals(Arrays.asList("c", "b", "a"), hashes(index, Arrays.asList("c"), null, -1, -1, 0));
+    index.close();
+  }
+
+  public void testLargeHistory() throws Exception {
+    int count = 500000;
+    Random random = new Random(42);
+    List<CommitHashPlusParents> commits = new ArrayList<CommitHashPlusParents>(count);
+    for (int i = count - 1; i >= 0; i--) {
+      String[] parents = i == 0 ? new String[0] : i > 1 && random.nextInt(10) == 0
+                                                  ? new String[]{hash(i - 1), hash(random.nextInt(i - 1))}
+                                                  : new String[]{hash(i - 1)};
+      commits.add(new CommitHashPlusParents(hash(i), parents, i * 1000L, "user" + random.nextInt(50), null));
+    }
+    GitCommitGraphIndex index = new GitCommitGraphIndex(myDir);
+    index.append(commits);
+    index.close();
+
+    index = new GitCommitGraphIndex(myDir);
+    List<String> page = hashes(index, Arrays.asList(hash(count - 1)), Pattern.compile("user7"), -1, -1, 100);
+    assertEquals(100, page.size());
+    assertEquals(count, index.size());
+    index.close();
+  }
+
+  private static String hash(int i) {
+    return Integer.toHexString(0x1000000 + i);
+  }
+
+  private static CommitHashPlusParents commit(String hash, long seconds, String author, String... parents) {
+    return new CommitHashPlusParents(hash, parents, seconds * 1000, author, author + "@example.com");
+  }
+
+  private static List<String> hashes(GitCommitGraphIndex index, Collection<String> tips, Pattern author, long after, long before,
+                                     int maxCount) throws IOException {
+    final List<String> result = new ArrayList<String>();
+    for (CommitHashPlusParents commit : index.find(tips == null ? null : index.getReachable(tips), author, after, before, maxCount)) {
+      result.add(commit.getHash());
+    }
+    return result;
+  }
+}